@@ -27,6 +27,9 @@ import net.jcip.annotations.Immutable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.fhkn.in.uce.core.events.FlightEvent;
+import de.fhkn.in.uce.core.events.FlightEventType;
+import de.fhkn.in.uce.core.events.FlightEvents;
 import de.fhkn.in.uce.plugininterface.NATFeatureRealization;
 import de.fhkn.in.uce.stun.attribute.ChangeRequest;
 import de.fhkn.in.uce.stun.attribute.OtherAddress;
@@ -60,6 +63,7 @@ final class DeterminingTcpNatFiltering implements DeterminingNATFeatureRealizati
 
     @Override
     public NATFeatureRealization executeTest() {
+        final FlightEvent event = FlightEvents.begin(FlightEventType.NAT_INVESTIGATION);
         NATFeatureRealization result = NATFeatureRealization.DONT_CARE;
         Socket toStunServer = null;
         try {
@@ -100,6 +104,9 @@ final class DeterminingTcpNatFiltering implements DeterminingNATFeatureRealizati
                 // do nothing
             }
         }
+        if (event.isEnabled()) {
+            event.commit("filtering", result.name(), 0); //$NON-NLS-1$
+        }
         return result;
     }
 
@@ -27,6 +27,9 @@ import net.jcip.annotations.Immutable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.fhkn.in.uce.core.events.FlightEvent;
+import de.fhkn.in.uce.core.events.FlightEventType;
+import de.fhkn.in.uce.core.events.FlightEvents;
 import de.fhkn.in.uce.plugininterface.NATFeatureRealization;
 import de.fhkn.in.uce.stun.attribute.OtherAddress;
 import de.fhkn.in.uce.stun.attribute.XorMappedAddress;
@@ -67,6 +70,7 @@ final class DeterminingTcpNatMapping implements DeterminingNATFeatureRealization
 
     @Override
     public NATFeatureRealization executeTest() {
+        final FlightEvent event = FlightEvents.begin(FlightEventType.NAT_INVESTIGATION);
         NATFeatureRealization result = NATFeatureRealization.DONT_CARE;
         try {
             final Message responseI = this.executeTestI(this.primaryStunServerAddress.getAddress(),
@@ -104,7 +108,9 @@ final class DeterminingTcpNatMapping implements DeterminingNATFeatureRealization
         } catch (final Exception e) {
             this.logger.error("Exception while investigating NAT mapping behavior.", e);
         }
-
+        if (event.isEnabled()) {
+            event.commit("mapping", result.name(), 0); //$NON-NLS-1$
+        }
         return result;
     }
 
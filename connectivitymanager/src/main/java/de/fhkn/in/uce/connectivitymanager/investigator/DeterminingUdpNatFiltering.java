@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.connectivitymanager.investigator;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+
+import net.jcip.annotations.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhkn.in.uce.plugininterface.NATFeatureRealization;
+import de.fhkn.in.uce.stun.attribute.ChangeRequest;
+import de.fhkn.in.uce.stun.attribute.OtherAddress;
+import de.fhkn.in.uce.stun.attribute.XorMappedAddress;
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageStaticFactory;
+
+/**
+ * Implementation of {@link DeterminingNATFeatureRealization} to investigate the
+ * filtering behavior in case of UDP. This is a implementation of section 4.4 of
+ * RFC 5780: binding requests with a CHANGE-REQUEST attribute are answered from
+ * another endpoint of the stun server, a NAT with filtering drops these
+ * responses.
+ *
+ * <p>
+ * The tests II and III are expected to time out behind a filtering NAT. A lost
+ * response can not be distinguished from a filtered one anyway, so these tests
+ * use {@value #CHANGE_REQUEST_MAX_TRANSMISSIONS} transmissions and wait
+ * {@value #CHANGE_REQUEST_LAST_TIMEOUT_FACTOR} times the initial
+ * retransmission timeout after the last one instead of the full 39.5 seconds.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+@Immutable
+final class DeterminingUdpNatFiltering implements DeterminingNATFeatureRealization {
+    /**
+     * The number of transmissions of the requests with a CHANGE-REQUEST
+     * attribute.
+     */
+    static final int CHANGE_REQUEST_MAX_TRANSMISSIONS = 3;
+    /**
+     * The factor of the initial retransmission timeout to wait after the last
+     * transmission of a request with a CHANGE-REQUEST attribute.
+     */
+    static final int CHANGE_REQUEST_LAST_TIMEOUT_FACTOR = 4;
+    private final Logger logger = LoggerFactory.getLogger(DeterminingUdpNatFiltering.class);
+    private final int sourcePort;
+    private final InetSocketAddress primaryStunServerAddress;
+    private final int rtoInMillis;
+
+    /**
+     * Creates a {@link DeterminingUdpNatFiltering} with the given source port.
+     * The source port should be the same as used in the application.
+     *
+     * @param sourcePort
+     *            the port which is used by the application
+     * @param primaryStunServerAddress
+     *            the primary endpoint of the stun server
+     */
+    public DeterminingUdpNatFiltering(final int sourcePort, final InetSocketAddress primaryStunServerAddress) {
+        this(sourcePort, primaryStunServerAddress, StunUdpClient.DEFAULT_RTO_IN_MILLIS);
+    }
+
+    /**
+     * Creates a {@link DeterminingUdpNatFiltering} with the given source port
+     * and initial retransmission timeout.
+     *
+     * @param sourcePort
+     *            the port which is used by the application
+     * @param primaryStunServerAddress
+     *            the primary endpoint of the stun server
+     * @param rtoInMillis
+     *            the initial retransmission timeout of the requests
+     */
+    public DeterminingUdpNatFiltering(final int sourcePort, final InetSocketAddress primaryStunServerAddress,
+            final int rtoInMillis) {
+        this.sourcePort = sourcePort;
+        this.primaryStunServerAddress = primaryStunServerAddress;
+        this.rtoInMillis = rtoInMillis;
+    }
+
+    @Override
+    public NATFeatureRealization executeTest() {
+        NATFeatureRealization result = NATFeatureRealization.DONT_CARE;
+        DatagramSocket socket = null;
+        try {
+            socket = this.createBoundSocket();
+            final StunUdpClient client = new StunUdpClient(socket, this.rtoInMillis,
+                    StunUdpClient.DEFAULT_MAX_TRANSMISSIONS, StunUdpClient.DEFAULT_LAST_TIMEOUT_FACTOR);
+            final StunUdpClient changeRequestClient = new StunUdpClient(socket, this.rtoInMillis,
+                    CHANGE_REQUEST_MAX_TRANSMISSIONS, CHANGE_REQUEST_LAST_TIMEOUT_FACTOR);
+            final Message responseTestI = this.executeTestRun(client, ChangeRequest.FLAGS_NOT_SET);
+            if (responseTestI.hasAttribute(OtherAddress.class)) {
+                try {
+                    final Message responseTestII = this.executeTestRun(changeRequestClient,
+                            ChangeRequest.CHANGE_IP_AND_PORT);
+                    if (responseTestII.hasAttribute(XorMappedAddress.class)) {
+                        result = NATFeatureRealization.ENDPOINT_INDEPENDENT;
+                    }
+                } catch (final SocketTimeoutException eII) {
+                    try {
+                        final Message responseTestIII = this.executeTestRun(changeRequestClient,
+                                ChangeRequest.CHANGE_PORT);
+                        if (responseTestIII.hasAttribute(XorMappedAddress.class)) {
+                            result = NATFeatureRealization.ADDRESS_DEPENDENT;
+                        }
+                    } catch (final SocketTimeoutException eIII) {
+                        result = NATFeatureRealization.ADDRESS_AND_PORT_DEPENDENT;
+                    }
+                }
+            }
+        } catch (final Exception e) {
+            this.logger.error("Exception while executing tests for determining udp filtering behavior", e);
+        } finally {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+        return result;
+    }
+
+    private Message executeTestRun(final StunUdpClient client, final int changeRequestFlag) throws IOException {
+        this.logger.debug("Sending binding request with change request flag = {}", changeRequestFlag); //$NON-NLS-1$
+        final Message request = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.BINDING);
+        if (changeRequestFlag != ChangeRequest.FLAGS_NOT_SET) {
+            request.addAttribute(new ChangeRequest(changeRequestFlag));
+        }
+        return client.sendRequest(request, this.primaryStunServerAddress);
+    }
+
+    private DatagramSocket createBoundSocket() throws IOException {
+        final DatagramSocket socket = new DatagramSocket(null);
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(this.sourcePort));
+        return socket;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.connectivitymanager.investigator;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+
+import net.jcip.annotations.Immutable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhkn.in.uce.plugininterface.NATFeatureRealization;
+import de.fhkn.in.uce.stun.attribute.OtherAddress;
+import de.fhkn.in.uce.stun.attribute.XorMappedAddress;
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageStaticFactory;
+import de.fhkn.in.uce.stun.util.MessageFormatException;
+
+/**
+ * Implementation of {@link DeterminingNATFeatureRealization} to investigate the
+ * mapping behavior in case of UDP. This is a implementation of section 4.3 of
+ * RFC 5780. All tests are sent from the same socket, so unlike the TCP tests no
+ * new connections have to be established and a test needs one round trip if no
+ * datagram gets lost.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+@Immutable
+final class DeterminingUdpNatMapping implements DeterminingNATFeatureRealization {
+    private final Logger logger = LoggerFactory.getLogger(DeterminingUdpNatMapping.class);
+    private final int sourcePort;
+    private final InetSocketAddress primaryStunServerAddress;
+    private final int rtoInMillis;
+
+    /**
+     * Creates a {@link DeterminingUdpNatMapping} with the given source port.
+     * The source port should be the same as used in the application.
+     *
+     * @param sourcePort
+     *            the port which is used by the application
+     * @param primaryStunServerAddress
+     *            the primary endpoint of the stun server
+     */
+    public DeterminingUdpNatMapping(final int sourcePort, final InetSocketAddress primaryStunServerAddress) {
+        this(sourcePort, primaryStunServerAddress, StunUdpClient.DEFAULT_RTO_IN_MILLIS);
+    }
+
+    /**
+     * Creates a {@link DeterminingUdpNatMapping} with the given source port
+     * and initial retransmission timeout.
+     *
+     * @param sourcePort
+     *            the port which is used by the application
+     * @param primaryStunServerAddress
+     *            the primary endpoint of the stun server
+     * @param rtoInMillis
+     *            the initial retransmission timeout of the requests
+     */
+    public DeterminingUdpNatMapping(final int sourcePort, final InetSocketAddress primaryStunServerAddress,
+            final int rtoInMillis) {
+        this.sourcePort = sourcePort;
+        this.primaryStunServerAddress = primaryStunServerAddress;
+        this.rtoInMillis = rtoInMillis;
+    }
+
+    @Override
+    public NATFeatureRealization executeTest() {
+        NATFeatureRealization result = NATFeatureRealization.DONT_CARE;
+        DatagramSocket socket = null;
+        try {
+            socket = this.createBoundSocket();
+            final StunUdpClient client = new StunUdpClient(socket, this.rtoInMillis,
+                    StunUdpClient.DEFAULT_MAX_TRANSMISSIONS, StunUdpClient.DEFAULT_LAST_TIMEOUT_FACTOR);
+            final Message responseI = this.executeTestRun(client, this.primaryStunServerAddress);
+            final XorMappedAddress mappedAddressI = this.getMappedAddressFromMessage(responseI);
+            if (this.isLocalEndpoint(mappedAddressI.getEndpoint())) {
+                result = NATFeatureRealization.NOT_REALIZED;
+            } else {
+                final InetSocketAddress alternateAddress = this.getAlternateSTUNServerAddressFromMessage(responseI);
+                final Message responseII = this.executeTestRun(client,
+                        new InetSocketAddress(alternateAddress.getAddress(), this.primaryStunServerAddress.getPort()));
+                final XorMappedAddress mappedAddressII = this.getMappedAddressFromMessage(responseII);
+                if (mappedAddressII.equals(mappedAddressI)) {
+                    result = NATFeatureRealization.ENDPOINT_INDEPENDENT;
+                } else {
+                    final Message responseIII = this.executeTestRun(client, alternateAddress);
+                    final XorMappedAddress mappedAddressIII = this.getMappedAddressFromMessage(responseIII);
+                    if (mappedAddressIII.equals(mappedAddressII)) {
+                        result = NATFeatureRealization.ADDRESS_DEPENDENT;
+                    } else {
+                        result = NATFeatureRealization.ADDRESS_AND_PORT_DEPENDENT;
+                    }
+                }
+            }
+        } catch (final Exception e) {
+            this.logger.error("Exception while investigating UDP NAT mapping behavior.", e); //$NON-NLS-1$
+        } finally {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+        return result;
+    }
+
+    private Message executeTestRun(final StunUdpClient client, final InetSocketAddress stunServerAddress)
+            throws IOException {
+        final Message request = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.BINDING);
+        return client.sendRequest(request, stunServerAddress);
+    }
+
+    private boolean isLocalEndpoint(final InetSocketAddress endpoint) throws IOException {
+        return (this.sourcePort == endpoint.getPort())
+                && (NetworkInterface.getByInetAddress(endpoint.getAddress()) != null);
+    }
+
+    private XorMappedAddress getMappedAddressFromMessage(final Message message) throws MessageFormatException {
+        if (!message.hasAttribute(XorMappedAddress.class)) {
+            throw new MessageFormatException("The required XOR-MAPPED-ADDRESS attribute is not provided.");
+        }
+        return message.getAttribute(XorMappedAddress.class);
+    }
+
+    private InetSocketAddress getAlternateSTUNServerAddressFromMessage(final Message message)
+            throws MessageFormatException {
+        if (!message.hasAttribute(OtherAddress.class)) {
+            throw new MessageFormatException("The required OTHER-ADDRESS attribute is not provided."); //$NON-NLS-1$
+        }
+        return message.getAttribute(OtherAddress.class).getEndpoint();
+    }
+
+    private DatagramSocket createBoundSocket() throws IOException {
+        final DatagramSocket socket = new DatagramSocket(null);
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(this.sourcePort));
+        return socket;
+    }
+}
@@ -29,6 +29,8 @@ public final class InfrastructureInvestigatorImpl implements InfrastructreInvest
     private static final String PROPERTY_STUN_SERVER = "de.fhkn.in.uce.connectivitymanager.investigator.stunserver"; //$NON-NLS-1$ 
     private static final String PROPERTY_NAME_PRIMARY_IP = "stunserver.primary.address"; //$NON-NLS-1$
     private static final String PROPERTY_NAME_PRIMARY_PORT = "stunserver.primary.port"; //$NON-NLS-1$ 
+    private static final String PROPERTY_NAME_TRANSPORT = "stunserver.transport"; //$NON-NLS-1$
+    private static final String TRANSPORT_UDP = "udp"; //$NON-NLS-1$
     private final Logger logger = LoggerFactory.getLogger(InfrastructureInvestigatorImpl.class);
     private final ResourceBundle bundle;
 
@@ -46,17 +48,35 @@ public final class InfrastructureInvestigatorImpl implements InfrastructreInvest
     }
 
     private NATFeatureRealization investigateMappingBehavior(final int sourcePort) {
-        final DeterminingNATFeatureRealization determineMapping = new DeterminingTcpNatMapping(sourcePort,
-                this.getPrimaryStunServerAddress());
+        final DeterminingNATFeatureRealization determineMapping;
+        if (this.isUdpTransport()) {
+            determineMapping = new DeterminingUdpNatMapping(sourcePort, this.getPrimaryStunServerAddress());
+        } else {
+            determineMapping = new DeterminingTcpNatMapping(sourcePort, this.getPrimaryStunServerAddress());
+        }
         return determineMapping.executeTest();
     }
 
     private NATFeatureRealization invetigateFilteringBehavior(final int sourcePort) {
-        final DeterminingNATFeatureRealization determineFiltering = new DeterminingTcpNatFiltering(sourcePort,
-                this.getPrimaryStunServerAddress());
+        final DeterminingNATFeatureRealization determineFiltering;
+        if (this.isUdpTransport()) {
+            determineFiltering = new DeterminingUdpNatFiltering(sourcePort, this.getPrimaryStunServerAddress());
+        } else {
+            determineFiltering = new DeterminingTcpNatFiltering(sourcePort, this.getPrimaryStunServerAddress());
+        }
         return determineFiltering.executeTest();
     }
 
+    /**
+     * The NAT behavior is investigated via TCP unless the optional property
+     * {@value #PROPERTY_NAME_TRANSPORT} is set to {@value #TRANSPORT_UDP}, the
+     * UDP tests require a stun server which is started with UDP support.
+     */
+    private boolean isUdpTransport() {
+        return this.bundle.containsKey(PROPERTY_NAME_TRANSPORT)
+                && TRANSPORT_UDP.equalsIgnoreCase(this.bundle.getString(PROPERTY_NAME_TRANSPORT).trim());
+    }
+
     private InetSocketAddress getPrimaryStunServerAddress() {
         final String stunServerIp = this.bundle.getString(PROPERTY_NAME_PRIMARY_IP);
         final int stunServerPort = Integer.valueOf(this.bundle.getString(PROPERTY_NAME_PRIMARY_PORT));
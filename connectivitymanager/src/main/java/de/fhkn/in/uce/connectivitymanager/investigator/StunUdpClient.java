@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.connectivitymanager.investigator;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageReader;
+import de.fhkn.in.uce.stun.util.MessageFormatException;
+
+/**
+ * Client for STUN transactions over UDP. Requests are retransmitted as
+ * described in section 7.2.1 of RFC 5389: the first retransmission is sent
+ * after the retransmission timeout (RTO), which is doubled after each
+ * retransmission. After the last of Rc transmissions the client waits Rm times
+ * the initial RTO for a response before the transaction fails. With the default
+ * values a transaction times out after 39.5 seconds.
+ *
+ * <p>
+ * Received datagrams which are not a response to the current transaction are
+ * ignored. The source of a response is not checked because responses to
+ * requests with a CHANGE-REQUEST attribute are sent from another endpoint of
+ * the stun server.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+@NotThreadSafe
+final class StunUdpClient {
+    /**
+     * The default initial retransmission timeout in milliseconds.
+     */
+    static final int DEFAULT_RTO_IN_MILLIS = 500;
+    /**
+     * The default number of transmissions of a request (Rc).
+     */
+    static final int DEFAULT_MAX_TRANSMISSIONS = 7;
+    /**
+     * The default factor of the initial retransmission timeout to wait after
+     * the last transmission (Rm).
+     */
+    static final int DEFAULT_LAST_TIMEOUT_FACTOR = 16;
+    private static final int MAX_DATAGRAM_SIZE = 1500;
+    private final Logger logger = LoggerFactory.getLogger(StunUdpClient.class);
+    private final DatagramSocket socket;
+    private final int rtoInMillis;
+    private final int maxTransmissions;
+    private final int lastTimeoutFactor;
+    private final MessageReader messageReader;
+    private final byte[] receiveBuffer;
+
+    /**
+     * Creates a {@link StunUdpClient} with the default retransmission values
+     * of RFC 5389.
+     *
+     * @param socket
+     *            the bound socket to send requests and receive responses
+     */
+    StunUdpClient(final DatagramSocket socket) {
+        this(socket, DEFAULT_RTO_IN_MILLIS, DEFAULT_MAX_TRANSMISSIONS, DEFAULT_LAST_TIMEOUT_FACTOR);
+    }
+
+    /**
+     * Creates a {@link StunUdpClient} with the given retransmission values.
+     *
+     * @param socket
+     *            the bound socket to send requests and receive responses
+     * @param rtoInMillis
+     *            the initial retransmission timeout in milliseconds
+     * @param maxTransmissions
+     *            the number of transmissions of a request (Rc)
+     * @param lastTimeoutFactor
+     *            the factor of the initial retransmission timeout to wait
+     *            after the last transmission (Rm)
+     */
+    StunUdpClient(final DatagramSocket socket, final int rtoInMillis, final int maxTransmissions,
+            final int lastTimeoutFactor) {
+        if ((rtoInMillis <= 0) || (maxTransmissions <= 0) || (lastTimeoutFactor <= 0)) {
+            throw new IllegalArgumentException("Retransmission values must be positive"); //$NON-NLS-1$
+        }
+        this.socket = socket;
+        this.rtoInMillis = rtoInMillis;
+        this.maxTransmissions = maxTransmissions;
+        this.lastTimeoutFactor = lastTimeoutFactor;
+        this.messageReader = MessageReader.createMessageReader();
+        this.receiveBuffer = new byte[MAX_DATAGRAM_SIZE];
+    }
+
+    /**
+     * Sends the given request to the stun server and waits for the response
+     * with the same transaction id. The request is retransmitted until a
+     * response is received or the transaction times out.
+     *
+     * @param request
+     *            the request to send
+     * @param stunServerAddress
+     *            the endpoint of the stun server the request is sent to
+     * @return the success or error response to the request
+     * @throws SocketTimeoutException
+     *             if no response is received before the transaction times out
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    Message sendRequest(final Message request, final InetSocketAddress stunServerAddress) throws IOException {
+        final byte[] encodedRequest = request.toByteArray();
+        final DatagramPacket requestPacket = new DatagramPacket(encodedRequest, encodedRequest.length,
+                stunServerAddress);
+        long timeoutInMillis = this.rtoInMillis;
+        for (int transmission = 1; transmission <= this.maxTransmissions; transmission++) {
+            if (transmission == this.maxTransmissions) {
+                timeoutInMillis = (long) this.rtoInMillis * this.lastTimeoutFactor;
+            }
+            this.logger.debug("Sending request to {}, transmission {}", stunServerAddress, transmission); //$NON-NLS-1$
+            this.socket.send(requestPacket);
+            final Message response = this.receiveResponse(request.getHeader().getTransactionId(), timeoutInMillis);
+            if (response != null) {
+                return response;
+            }
+            timeoutInMillis *= 2;
+        }
+        throw new SocketTimeoutException("No response from " + stunServerAddress + " after " //$NON-NLS-1$ //$NON-NLS-2$
+                + this.maxTransmissions + " transmissions"); //$NON-NLS-1$
+    }
+
+    private Message receiveResponse(final byte[] transactionId, final long timeoutInMillis) throws IOException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutInMillis);
+        final DatagramPacket packet = new DatagramPacket(this.receiveBuffer, this.receiveBuffer.length);
+        while (true) {
+            final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                return null;
+            }
+            this.socket.setSoTimeout((int) remainingMillis);
+            packet.setLength(this.receiveBuffer.length);
+            try {
+                this.socket.receive(packet);
+            } catch (final SocketTimeoutException e) {
+                return null;
+            }
+            final Message message = this.decode(packet);
+            if ((message != null) && (message.isSuccessResponse() || message.isFailureResponse())
+                    && Arrays.equals(transactionId, message.getHeader().getTransactionId())) {
+                return message;
+            }
+            this.logger.debug("Ignoring unexpected datagram from {}", packet.getSocketAddress()); //$NON-NLS-1$
+        }
+    }
+
+    private Message decode(final DatagramPacket packet) throws IOException {
+        try {
+            return this.messageReader.readSTUNMessage(ByteBuffer.wrap(packet.getData(), packet.getOffset(),
+                    packet.getLength()));
+        } catch (final MessageFormatException e) {
+            return null;
+        }
+    }
+}
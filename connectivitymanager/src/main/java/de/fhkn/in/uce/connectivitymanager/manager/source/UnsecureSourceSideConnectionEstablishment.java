@@ -41,6 +41,9 @@ import de.fhkn.in.uce.connectivitymanager.registry.NATTraversalRegistry;
 import de.fhkn.in.uce.connectivitymanager.registry.NATTraversalRegistryImpl;
 import de.fhkn.in.uce.connectivitymanager.selector.NATTraversalSelection;
 import de.fhkn.in.uce.connectivitymanager.selector.strategy.ConnectionSetupTimeSelection;
+import de.fhkn.in.uce.core.events.FlightEvent;
+import de.fhkn.in.uce.core.events.FlightEventType;
+import de.fhkn.in.uce.core.events.FlightEvents;
 import de.fhkn.in.uce.plugininterface.NATBehavior;
 import de.fhkn.in.uce.plugininterface.NATSituation;
 import de.fhkn.in.uce.plugininterface.NATTraversalTechnique;
@@ -163,6 +166,8 @@ public final class UnsecureSourceSideConnectionEstablishment implements Connecti
             if (supportedTravTechsByTarget.contains(natTraversalTechnique.getMetaData().getAttribute())) {
                 logger.debug("Trying to establish connection via {}", natTraversalTechnique.getMetaData()
                         .getTraversalTechniqueName());
+                final FlightEvent event = FlightEvents.begin(FlightEventType.TRAVERSAL_ATTEMPT);
+                String outcome = "failed"; //$NON-NLS-1$
                 Future<Socket> future = null;
                 try {
                     final Callable<Socket> socketTask = new SocketTask(targetId, natTraversalTechnique,
@@ -170,6 +175,7 @@ public final class UnsecureSourceSideConnectionEstablishment implements Connecti
                     future = executor.submit(socketTask);
                     resultSocket = future.get(natTraversalTechnique.getMetaData().getTimeout(), TimeUnit.MILLISECONDS);
                 } catch (final TimeoutException toe) {
+                    outcome = "timeout"; //$NON-NLS-1$
                     this.logger.error("Timeout while creating source-side connection via {}.", natTraversalTechnique //$NON-NLS-1$
                             .getMetaData().getTraversalTechniqueName());
                     // do nothing, try next traversal technique
@@ -180,7 +186,12 @@ public final class UnsecureSourceSideConnectionEstablishment implements Connecti
                         future.cancel(true);
                     }
                 }
-                if (resultSocket != null && resultSocket.isConnected()) {
+                final boolean connected = resultSocket != null && resultSocket.isConnected();
+                if (event.isEnabled()) {
+                    event.commit(natTraversalTechnique.getMetaData().getTraversalTechniqueName(),
+                            connected ? "connected" : outcome, 0); //$NON-NLS-1$
+                }
+                if (connected) {
                     break;
                 }
             } else {
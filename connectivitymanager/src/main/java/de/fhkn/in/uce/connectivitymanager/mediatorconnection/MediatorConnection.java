@@ -22,14 +22,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.ResourceBundle;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.fhkn.in.uce.core.KeepAliveTask;
+import de.fhkn.in.uce.core.concurrent.HashedWheelTimer;
+import de.fhkn.in.uce.core.concurrent.Timeout;
 import de.fhkn.in.uce.plugininterface.NATBehavior;
 import de.fhkn.in.uce.plugininterface.message.NATTraversalTechniqueAttribute;
 import de.fhkn.in.uce.stun.attribute.ErrorCode;
@@ -58,7 +58,7 @@ public final class MediatorConnection {
             .getBundle("de.fhkn.in.uce.connectivitymanager.mediatorconnection.mediator"); //$NON-NLS-1$
     private final Socket controlConnection;
     private final MessageReader messageReader;
-    private final ScheduledExecutorService keepAliveExecutor;
+    private volatile Timeout keepAliveTimeout;
 
     /**
      * Creates a mediator connection and connects to the mediator address in the
@@ -69,7 +69,6 @@ public final class MediatorConnection {
      */
     public MediatorConnection() throws Exception {
         this.messageReader = MessageReader.createMessageReader();
-        this.keepAliveExecutor = Executors.newScheduledThreadPool(1);
         final InetSocketAddress mediatorAddress = this.getMediatorAddress();
         this.controlConnection = new Socket();
         this.controlConnection.setReuseAddress(true);
@@ -121,7 +120,16 @@ public final class MediatorConnection {
 
     private void startKeepAlive(final String targetId, final int delayInSeconds) {
         final Runnable keepAliveTask = new KeepAliveTask(targetId, this.controlConnection);
-        this.keepAliveExecutor.scheduleWithFixedDelay(keepAliveTask, delayInSeconds, delayInSeconds, TimeUnit.SECONDS);
+        this.stopKeepAlive();
+        this.keepAliveTimeout = HashedWheelTimer.getShared().newPeriodicTimeout(keepAliveTask, delayInSeconds,
+                delayInSeconds, TimeUnit.SECONDS);
+    }
+
+    private void stopKeepAlive() {
+        final Timeout timeout = this.keepAliveTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
     }
 
     /**
@@ -135,7 +143,7 @@ public final class MediatorConnection {
     public void deregisterTarget(final String targetId) throws Exception {
         this.sendDeregisterMesage(targetId);
         this.waitForDeRegisterResponseMessage();
-        this.keepAliveExecutor.shutdownNow();
+        this.stopKeepAlive();
     }
 
     private void sendDeregisterMesage(final String targetId) throws Exception {
@@ -199,7 +207,7 @@ public final class MediatorConnection {
      */
     public void close() {
         try {
-            this.keepAliveExecutor.shutdownNow();
+            this.stopKeepAlive();
             this.controlConnection.close();
         } catch (final Exception e) {
             logger.error(e.getMessage());
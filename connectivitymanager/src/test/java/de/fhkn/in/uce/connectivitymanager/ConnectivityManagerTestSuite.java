@@ -22,6 +22,7 @@ import org.junit.runners.Suite;
 import de.fhkn.in.uce.connectivitymanager.connection.configuration.TestConnectionConfigurationImpl;
 import de.fhkn.in.uce.connectivitymanager.connection.configuration.TestDefaultConnectionConfiguration;
 import de.fhkn.in.uce.connectivitymanager.connection.configuration.TestServiceClass;
+import de.fhkn.in.uce.connectivitymanager.investigator.TestStunUdpClient;
 import de.fhkn.in.uce.connectivitymanager.manager.TestConnectivityManager;
 import de.fhkn.in.uce.connectivitymanager.manager.TestUnsecureConnectionEstablishment;
 import de.fhkn.in.uce.connectivitymanager.registry.TestNATTraversalRegistryImpl;
@@ -46,7 +47,8 @@ import de.fhkn.in.uce.connectivitymanager.selector.weighting.TestConnectionSetup
         TestNATTraversalRegistryImpl.class, TestNATTraversalTechniqueNotFoundException.class,
         TestConnectionSetupTimeSelection.class, TestServiceClass.class, TestDefaultConnectionConfiguration.class,
         TestConnectionConfigurationImpl.class, TestParameterGenerator.class, TestKeyExchange.class,
-        TestHmacStreams.class, TestConnectivityManager.class, TestUnsecureConnectionEstablishment.class })
+        TestHmacStreams.class, TestConnectivityManager.class, TestUnsecureConnectionEstablishment.class,
+        TestStunUdpClient.class })
 public final class ConnectivityManagerTestSuite {
 
     private ConnectivityManagerTestSuite() {
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.connectivitymanager.investigator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhkn.in.uce.stun.attribute.XorMappedAddress;
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageReader;
+import de.fhkn.in.uce.stun.message.MessageStaticFactory;
+
+public class TestStunUdpClient {
+    private DatagramSocket serverSocket;
+    private DatagramSocket clientSocket;
+    private InetSocketAddress serverAddress;
+    private Message request;
+
+    @Before
+    public void setUp() throws Exception {
+        final InetAddress loopback = InetAddress.getByName("127.0.0.1"); //$NON-NLS-1$
+        this.serverSocket = new DatagramSocket(0, loopback);
+        this.serverAddress = (InetSocketAddress) this.serverSocket.getLocalSocketAddress();
+        this.clientSocket = new DatagramSocket(0, loopback);
+        this.request = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.BINDING);
+    }
+
+    @After
+    public void tearDown() {
+        this.serverSocket.close();
+        this.clientSocket.close();
+    }
+
+    @Test
+    public void testRetransmitsUntilResponse() throws Exception {
+        final AtomicInteger receivedRequests = new AtomicInteger();
+        final Thread server = this.startServer(2, receivedRequests, false);
+        final StunUdpClient client = new StunUdpClient(this.clientSocket, 50, 7, 16);
+
+        final Message response = client.sendRequest(this.request, this.serverAddress);
+        server.join();
+
+        assertTrue(response.isSuccessResponse());
+        assertArrayEquals(this.request.getHeader().getTransactionId(), response.getHeader().getTransactionId());
+        assertEquals(this.clientSocket.getLocalSocketAddress(), response.getAttribute(XorMappedAddress.class)
+                .getEndpoint());
+        assertEquals(2, receivedRequests.get());
+    }
+
+    @Test
+    public void testIgnoresResponsesOfOtherTransactions() throws Exception {
+        final AtomicInteger receivedRequests = new AtomicInteger();
+        final Thread server = this.startServer(1, receivedRequests, true);
+        final StunUdpClient client = new StunUdpClient(this.clientSocket, 1000, 7, 16);
+
+        final Message response = client.sendRequest(this.request, this.serverAddress);
+        server.join();
+
+        assertArrayEquals(this.request.getHeader().getTransactionId(), response.getHeader().getTransactionId());
+        assertEquals(1, receivedRequests.get());
+    }
+
+    @Test
+    public void testTimeoutAfterLastTransmission() throws Exception {
+        final AtomicInteger receivedRequests = new AtomicInteger();
+        final Thread server = this.startServer(Integer.MAX_VALUE, receivedRequests, false);
+        final StunUdpClient client = new StunUdpClient(this.clientSocket, 20, 3, 4);
+        final long start = System.currentTimeMillis();
+        try {
+            client.sendRequest(this.request, this.serverAddress);
+            fail("SocketTimeoutException expected"); //$NON-NLS-1$
+        } catch (final SocketTimeoutException e) {
+            // 20 + 40 + 4 * 20 milliseconds
+            assertTrue(System.currentTimeMillis() - start >= 140);
+        }
+        this.serverSocket.close();
+        server.join();
+
+        assertEquals(3, receivedRequests.get());
+    }
+
+    /**
+     * Starts a server which answers the n-th received request, all requests
+     * before are dropped.
+     */
+    private Thread startServer(final int answeredRequest, final AtomicInteger receivedRequests,
+            final boolean sendUnrelatedResponseFirst) {
+        final Thread server = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final byte[] buffer = new byte[1500];
+                    final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    while (receivedRequests.incrementAndGet() < answeredRequest) {
+                        packet.setLength(buffer.length);
+                        serverSocket.receive(packet);
+                    }
+                    packet.setLength(buffer.length);
+                    serverSocket.receive(packet);
+                    final Message received = MessageReader.createMessageReader().readSTUNMessage(
+                            ByteBuffer.wrap(buffer, 0, packet.getLength()));
+                    if (sendUnrelatedResponseFirst) {
+                        final Message unrelated = MessageStaticFactory.newSTUNMessageInstance(
+                                STUNMessageClass.REQUEST, STUNMessageMethod.BINDING).buildSuccessResponse();
+                        send(unrelated, packet);
+                    }
+                    final Message response = received.buildSuccessResponse();
+                    response.addAttribute(new XorMappedAddress((InetSocketAddress) packet.getSocketAddress()));
+                    send(response, packet);
+                } catch (final Exception e) {
+                    // server socket closed
+                    receivedRequests.decrementAndGet();
+                }
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private void send(final Message message, final DatagramPacket to) throws Exception {
+        final byte[] encoded = message.toByteArray();
+        this.serverSocket.send(new DatagramPacket(encoded, encoded.length, to.getSocketAddress()));
+    }
+}
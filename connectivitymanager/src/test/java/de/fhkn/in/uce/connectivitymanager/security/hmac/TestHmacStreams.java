@@ -37,7 +37,6 @@ import org.junit.Before;
 import org.junit.Test;
 
 public final class TestHmacStreams {
-    private static final int PORT = 55973;
     private Key sharedKey = null;
 
     @Before
@@ -51,8 +50,9 @@ public final class TestHmacStreams {
     public void testWriteInt() throws Exception {
         final Integer numberToWrite = 42;
         final ExecutorService executor = Executors.newFixedThreadPool(2);
-        Future<Integer> serverResult = executor.submit(this.getServerTaskReadInt());
-        executor.execute(this.getClientTaskWriteInt(numberToWrite));
+        final ServerSocket serverSocket = new ServerSocket(0);
+        Future<Integer> serverResult = executor.submit(this.getServerTaskReadInt(serverSocket));
+        executor.execute(this.getClientTaskWriteInt(serverSocket.getLocalPort(), numberToWrite));
         final Integer actualResult = serverResult.get(60, TimeUnit.SECONDS);
         executor.shutdownNow();
 
@@ -63,8 +63,9 @@ public final class TestHmacStreams {
     public void testWriteByte() throws Exception {
         final byte[] byteToWrite = ByteBuffer.allocate(4).putInt(42).array();
         final ExecutorService executor = Executors.newFixedThreadPool(2);
-        Future<ByteBuffer> serverResult = executor.submit(this.getServerTaskReadByte());
-        executor.execute(this.getClientTaskWriteByte(byteToWrite));
+        final ServerSocket serverSocket = new ServerSocket(0);
+        Future<ByteBuffer> serverResult = executor.submit(this.getServerTaskReadByte(serverSocket));
+        executor.execute(this.getClientTaskWriteByte(serverSocket.getLocalPort(), byteToWrite));
         final ByteBuffer actualResult = serverResult.get(60, TimeUnit.SECONDS);
         executor.shutdownNow();
 
@@ -75,23 +76,22 @@ public final class TestHmacStreams {
     public void testWriteByteWithOffset() throws Exception {
         final byte[] byteToWrite = ByteBuffer.allocate(4).putInt(42).array();
         final ExecutorService executor = Executors.newFixedThreadPool(2);
-        Future<ByteBuffer> serverResult = executor.submit(this.getServerTaskReadByteWithOffset());
-        executor.execute(this.getClientTaskWriteByteWithOffset(byteToWrite));
+        final ServerSocket serverSocket = new ServerSocket(0);
+        Future<ByteBuffer> serverResult = executor.submit(this.getServerTaskReadByteWithOffset(serverSocket));
+        executor.execute(this.getClientTaskWriteByteWithOffset(serverSocket.getLocalPort(), byteToWrite));
         final ByteBuffer actualResult = serverResult.get(60, TimeUnit.SECONDS);
         executor.shutdownNow();
 
         assertTrue(Arrays.equals(byteToWrite, actualResult.array()));
     }
 
-    private Callable<Integer> getServerTaskReadInt() {
+    private Callable<Integer> getServerTaskReadInt(final ServerSocket serverSocket) {
         return new Callable<Integer>() {
 
             @Override
             public Integer call() {
                 int result = -1;
-                ServerSocket serverSocket;
                 try {
-                    serverSocket = new ServerSocket(PORT);
                     final Socket socket = serverSocket.accept();
                     final HmacInputStream hmacIn = new HmacInputStream(socket.getInputStream(), sharedKey);
                     result = hmacIn.read();
@@ -105,15 +105,13 @@ public final class TestHmacStreams {
         };
     }
 
-    private Callable<ByteBuffer> getServerTaskReadByte() {
+    private Callable<ByteBuffer> getServerTaskReadByte(final ServerSocket serverSocket) {
         return new Callable<ByteBuffer>() {
 
             @Override
             public ByteBuffer call() {
                 byte[] tmp = new byte[4];
-                ServerSocket serverSocket;
                 try {
-                    serverSocket = new ServerSocket(PORT);
                     final Socket socket = serverSocket.accept();
                     final HmacInputStream hmacIn = new HmacInputStream(socket.getInputStream(), sharedKey);
                     final int read = hmacIn.read(tmp);
@@ -127,15 +125,13 @@ public final class TestHmacStreams {
         };
     }
 
-    private Callable<ByteBuffer> getServerTaskReadByteWithOffset() {
+    private Callable<ByteBuffer> getServerTaskReadByteWithOffset(final ServerSocket serverSocket) {
         return new Callable<ByteBuffer>() {
 
             @Override
             public ByteBuffer call() {
                 byte[] tmp = new byte[4];
-                ServerSocket serverSocket;
                 try {
-                    serverSocket = new ServerSocket(PORT);
                     final Socket socket = serverSocket.accept();
                     final HmacInputStream hmacIn = new HmacInputStream(socket.getInputStream(), sharedKey);
                     final int read = hmacIn.read(tmp, 0, tmp.length);
@@ -149,13 +145,13 @@ public final class TestHmacStreams {
         };
     }
 
-    private Runnable getClientTaskWriteInt(final int toWrite) {
+    private Runnable getClientTaskWriteInt(final int port, final int toWrite) {
         return new Runnable() {
 
             @Override
             public void run() {
                 try {
-                    final Socket socket = new Socket("localhost", PORT);
+                    final Socket socket = new Socket("localhost", port);
                     final HmacOutputStream hmacOut = new HmacOutputStream(socket.getOutputStream(), sharedKey);
                     hmacOut.write(toWrite);
                     hmacOut.flush();
@@ -168,13 +164,13 @@ public final class TestHmacStreams {
         };
     }
 
-    private Runnable getClientTaskWriteByte(final byte[] toWrite) {
+    private Runnable getClientTaskWriteByte(final int port, final byte[] toWrite) {
         return new Runnable() {
 
             @Override
             public void run() {
                 try {
-                    final Socket socket = new Socket("localhost", PORT);
+                    final Socket socket = new Socket("localhost", port);
                     final HmacOutputStream hmacOut = new HmacOutputStream(socket.getOutputStream(), sharedKey);
                     hmacOut.write(toWrite);
                     hmacOut.flush();
@@ -187,13 +183,13 @@ public final class TestHmacStreams {
         };
     }
 
-    private Runnable getClientTaskWriteByteWithOffset(final byte[] toWrite) {
+    private Runnable getClientTaskWriteByteWithOffset(final int port, final byte[] toWrite) {
         return new Runnable() {
 
             @Override
             public void run() {
                 try {
-                    final Socket socket = new Socket("localhost", PORT);
+                    final Socket socket = new Socket("localhost", port);
                     final HmacOutputStream hmacOut = new HmacOutputStream(socket.getOutputStream(), sharedKey);
                     hmacOut.write(toWrite, 0, toWrite.length);
                     hmacOut.flush();
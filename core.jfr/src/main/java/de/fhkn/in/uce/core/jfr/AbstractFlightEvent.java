@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.jfr;
+
+import jdk.jfr.Event;
+
+import de.fhkn.in.uce.core.events.FlightEvent;
+
+/**
+ * Base class of the Java Flight Recorder events of UCE. The fields are only
+ * set if the event passes the threshold and is committed.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+abstract class AbstractFlightEvent extends Event implements FlightEvent {
+
+    @Override
+    public final void commit(final String subject, final String outcome, final long value) {
+        if (this.shouldCommit()) {
+            this.setFields(subject, outcome, value);
+            this.commit();
+        }
+    }
+
+    /**
+     * Sets the fields of the event.
+     *
+     * @param subject
+     *            the subject of the event
+     * @param outcome
+     *            the outcome of the recorded operation
+     * @param value
+     *            the value of the event
+     */
+    abstract void setFields(String subject, String outcome, long value);
+}
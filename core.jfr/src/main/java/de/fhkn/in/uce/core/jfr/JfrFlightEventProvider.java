@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.jfr;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import jdk.jfr.EventType;
+
+import de.fhkn.in.uce.core.events.FlightEvent;
+import de.fhkn.in.uce.core.events.FlightEventProvider;
+import de.fhkn.in.uce.core.events.FlightEventType;
+import de.fhkn.in.uce.core.events.FlightEvents;
+
+/**
+ * {@link FlightEventProvider} which records the events of UCE as Java Flight
+ * Recorder events in the category "UCE". The events are only created if they
+ * are enabled in a running recording, otherwise the shared disabled event is
+ * returned without allocating anything. The {@link EventType}s are looked up
+ * once, when the provider is created.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class JfrFlightEventProvider implements FlightEventProvider {
+    private final Map<FlightEventType, EventType> eventTypes;
+
+    /**
+     * Creates a {@link JfrFlightEventProvider} and registers the Java Flight
+     * Recorder events of UCE.
+     */
+    public JfrFlightEventProvider() {
+        this.eventTypes = new EnumMap<FlightEventType, EventType>(FlightEventType.class);
+        this.eventTypes.put(FlightEventType.NAT_INVESTIGATION, EventType.getEventType(NatInvestigationEvent.class));
+        this.eventTypes.put(FlightEventType.TRAVERSAL_ATTEMPT, EventType.getEventType(TraversalAttemptEvent.class));
+        this.eventTypes.put(FlightEventType.MEDIATOR_MESSAGE, EventType.getEventType(MediatorMessageEvent.class));
+        this.eventTypes.put(FlightEventType.RELAY_ALLOCATION, EventType.getEventType(RelayAllocationEvent.class));
+        this.eventTypes.put(FlightEventType.RELAY_TRANSFER, EventType.getEventType(RelayTransferEvent.class));
+    }
+
+    @Override
+    public FlightEvent begin(final FlightEventType type) {
+        final EventType eventType = this.eventTypes.get(type);
+        if ((eventType == null) || !eventType.isEnabled()) {
+            return FlightEvents.disabled();
+        }
+        final AbstractFlightEvent event;
+        switch (type) {
+        case NAT_INVESTIGATION:
+            event = new NatInvestigationEvent();
+            break;
+        case TRAVERSAL_ATTEMPT:
+            event = new TraversalAttemptEvent();
+            break;
+        case MEDIATOR_MESSAGE:
+            event = new MediatorMessageEvent();
+            break;
+        case RELAY_ALLOCATION:
+            event = new RelayAllocationEvent();
+            break;
+        case RELAY_TRANSFER:
+            event = new RelayTransferEvent();
+            break;
+        default:
+            return FlightEvents.disabled();
+        }
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One direction of a relayed connection, from its start until it is closed.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+@Name("de.fhkn.in.uce.RelayTransfer") //$NON-NLS-1$
+@Label("Relay Transfer") //$NON-NLS-1$
+@Description("One direction of a relayed connection, from its start until it is closed.") //$NON-NLS-1$
+@Category({ "UCE", "Relay" }) //$NON-NLS-1$ //$NON-NLS-2$
+final class RelayTransferEvent extends AbstractFlightEvent {
+    @Label("Connection") //$NON-NLS-1$
+    String connection;
+    @Label("Outcome") //$NON-NLS-1$
+    String outcome;
+    @Label("Bytes") //$NON-NLS-1$
+    @DataAmount
+    long bytes;
+
+    @Override
+    void setFields(final String subject, final String outcome, final long value) {
+        this.connection = subject;
+        this.outcome = outcome;
+        this.bytes = value;
+    }
+}
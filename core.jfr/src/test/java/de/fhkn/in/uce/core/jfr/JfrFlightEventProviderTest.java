@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.jfr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+import de.fhkn.in.uce.core.events.FlightEvent;
+import de.fhkn.in.uce.core.events.FlightEventType;
+import de.fhkn.in.uce.core.events.FlightEvents;
+
+/**
+ * Tests the {@link JfrFlightEventProvider}.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public class JfrFlightEventProviderTest {
+
+    @Test
+    public void testDisabledWithoutRecording() {
+        final FlightEvent event = FlightEvents.begin(FlightEventType.RELAY_TRANSFER);
+        assertFalse(event.isEnabled());
+        assertSame(FlightEvents.disabled(), event);
+    }
+
+    @Test
+    public void testRecordedEvents() throws Exception {
+        final File file = File.createTempFile("uce", ".jfr"); //$NON-NLS-1$ //$NON-NLS-2$
+        final Recording recording = new Recording();
+        try {
+            recording.enable("de.fhkn.in.uce.RelayTransfer"); //$NON-NLS-1$
+            recording.enable("de.fhkn.in.uce.NatInvestigation"); //$NON-NLS-1$
+            recording.disable("de.fhkn.in.uce.MediatorMessage"); //$NON-NLS-1$
+            recording.start();
+            final FlightEvent transfer = FlightEvents.begin(FlightEventType.RELAY_TRANSFER);
+            assertTrue(transfer.isEnabled());
+            transfer.commit("a -> b", "closed", 42); //$NON-NLS-1$ //$NON-NLS-2$
+            final FlightEvent investigation = FlightEvents.begin(FlightEventType.NAT_INVESTIGATION);
+            investigation.commit("mapping", "ENDPOINT_INDEPENDENT", 0); //$NON-NLS-1$ //$NON-NLS-2$
+            // disabled in the recording
+            assertFalse(FlightEvents.begin(FlightEventType.MEDIATOR_MESSAGE).isEnabled());
+            recording.stop();
+            recording.dump(file.toPath());
+            final List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+            for (final RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                if (event.getEventType().getName().startsWith("de.fhkn.in.uce.")) { //$NON-NLS-1$
+                    events.add(event);
+                }
+            }
+            assertEquals(2, events.size());
+            assertEquals("a -> b", events.get(0).getString("connection")); //$NON-NLS-1$ //$NON-NLS-2$
+            assertEquals(42, events.get(0).getLong("bytes")); //$NON-NLS-1$
+            assertEquals("ENDPOINT_INDEPENDENT", events.get(1).getString("result")); //$NON-NLS-1$ //$NON-NLS-2$
+        } finally {
+            recording.close();
+            file.delete();
+        }
+    }
+}
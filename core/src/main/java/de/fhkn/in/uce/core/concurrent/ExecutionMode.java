@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.concurrent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the executors and thread factories for the blocking
+ * thread-per-connection tasks of the servers. By default these are cached
+ * thread pools and {@link ThreadGroupThreadFactory}s. If the system property
+ * {@value #VIRTUAL_THREADS_PROPERTY} is {@code true} and the JDK supports
+ * virtual threads (Java 21+), each task runs in its own virtual thread
+ * instead, so an idle connection does not occupy a platform thread.
+ *
+ * <p>
+ * Virtual threads are looked up by reflection, so the code base still builds
+ * and runs on older JDKs, which fall back to platform threads. A virtual
+ * thread is created once when the class is loaded, so JDKs which only offer
+ * virtual threads as a preview feature (Java 19 and 20) fall back to
+ * platform threads as well unless the preview is enabled.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class ExecutionMode {
+    /**
+     * Name of the system property which enables virtual threads.
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "uce.virtualThreads"; //$NON-NLS-1$
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionMode.class);
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_FACTORY;
+    private static volatile boolean warned = false;
+
+    static {
+        Method newExecutor = null;
+        Method ofVirtual = null;
+        Method factory = null;
+        try {
+            newExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor"); //$NON-NLS-1$
+            ofVirtual = Thread.class.getMethod("ofVirtual"); //$NON-NLS-1$
+            factory = Class.forName("java.lang.Thread$Builder").getMethod("factory"); //$NON-NLS-1$ //$NON-NLS-2$
+        } catch (final NoSuchMethodException e) {
+            newExecutor = null;
+        } catch (final ClassNotFoundException e) {
+            newExecutor = null;
+        }
+        if ((newExecutor != null) && !canCreateVirtualThread(ofVirtual, factory)) {
+            newExecutor = null;
+        }
+        NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = newExecutor;
+        OF_VIRTUAL = (newExecutor != null) ? ofVirtual : null;
+        BUILDER_FACTORY = (newExecutor != null) ? factory : null;
+    }
+
+    private ExecutionMode() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Creates an unstarted virtual thread. Fails e.g. with an
+     * {@link UnsupportedOperationException} if virtual threads are a preview
+     * feature which is not enabled.
+     */
+    private static boolean canCreateVirtualThread(final Method ofVirtual, final Method factory) {
+        try {
+            final ThreadFactory threadFactory = (ThreadFactory) factory.invoke(ofVirtual.invoke(null));
+            threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    // never started
+                }
+            });
+            return true;
+        } catch (final IllegalAccessException e) {
+            return false;
+        } catch (final InvocationTargetException e) {
+            return false;
+        } catch (final RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether the running JDK supports virtual threads.
+     *
+     * @return true if virtual threads are supported, false otherwise
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Returns whether tasks run in virtual threads, i.e. virtual threads are
+     * requested by the system property {@value #VIRTUAL_THREADS_PROPERTY} and
+     * supported by the JDK.
+     *
+     * @return true if virtual threads are used, false otherwise
+     */
+    public static boolean isVirtualThreadsEnabled() {
+        if (!Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+            return false;
+        }
+        if (!isVirtualThreadsSupported()) {
+            if (!warned) {
+                warned = true;
+                logger.warn("Virtual threads are not supported by this JDK, using platform threads"); //$NON-NLS-1$
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates an executor which starts a new virtual thread per task if
+     * virtual threads are enabled, otherwise a cached thread pool.
+     *
+     * @return the new executor
+     */
+    public static ExecutorService newCachedThreadPool() {
+        if (isVirtualThreadsEnabled()) {
+            return (ExecutorService) invoke(NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR, null);
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Creates a factory for virtual threads if virtual threads are enabled,
+     * otherwise a {@link ThreadGroupThreadFactory}. Virtual threads are always
+     * daemon threads.
+     *
+     * @return the new thread factory
+     */
+    public static ThreadFactory newThreadFactory() {
+        if (isVirtualThreadsEnabled()) {
+            return (ThreadFactory) invoke(BUILDER_FACTORY, invoke(OF_VIRTUAL, null));
+        }
+        return new ThreadGroupThreadFactory();
+    }
+
+    /**
+     * Creates an executor which starts a new virtual thread per task if
+     * virtual threads are enabled, otherwise a cached thread pool of
+     * {@link ThreadGroupThreadFactory} threads.
+     *
+     * @return the new executor
+     */
+    public static ExecutorService newDaemonCachedThreadPool() {
+        if (isVirtualThreadsEnabled()) {
+            return newCachedThreadPool();
+        }
+        return Executors.newCachedThreadPool(new ThreadGroupThreadFactory());
+    }
+
+    private static Object invoke(final Method method, final Object target) {
+        try {
+            return method.invoke(target);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException("Could not create virtual threads", e); //$NON-NLS-1$
+        } catch (final InvocationTargetException e) {
+            throw new IllegalStateException("Could not create virtual threads", e.getCause()); //$NON-NLS-1$
+        }
+    }
+}
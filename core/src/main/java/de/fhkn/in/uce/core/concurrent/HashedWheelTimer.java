@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.concurrent;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timer for a large number of cancellable timeouts whose precision only has
+ * to be in the range of a tick, like keep-alive and refresh intervals or
+ * connection deadlines. The timeouts are kept in a wheel of buckets, each
+ * bucket is processed by a single thread when its tick has passed. Scheduling
+ * and cancelling a timeout are O(1) and do not block: new and cancelled
+ * timeouts are queued and moved into or out of the wheel by the timer thread.
+ *
+ * <p>
+ * Expired tasks are handed over to the executor of the timer, so a task which
+ * blocks, e.g. by writing to a socket, does not delay other timeouts. The
+ * {@link #getShared() shared timer} is meant to be used by all components of a
+ * VM, so one thread serves all their timeouts.
+ * </p>
+ *
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class HashedWheelTimer {
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+    private static final long SHARED_TICK_IN_MILLIS = 100;
+    private static final int SHARED_TICKS_PER_WHEEL = 512;
+    // bounds the time a single tick spends with moving new timeouts
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+    private static final int STATE_INIT = 0;
+    private static final int STATE_STARTED = 1;
+    private static final int STATE_STOPPED = 2;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor taskExecutor;
+    private final Queue<WheelTimeout> pendingTimeouts;
+    private final Queue<WheelTimeout> cancelledTimeouts;
+    private final AtomicInteger state;
+    private final CountDownLatch startTimeInitialized;
+    private final Thread workerThread;
+    private volatile long startTime;
+
+    /**
+     * Creates a {@link HashedWheelTimer}. The timer thread is started with
+     * the first timeout.
+     *
+     * @param tickDuration
+     *            the duration of a tick, the precision of the timeouts
+     * @param unit
+     *            the unit of the tick duration
+     * @param ticksPerWheel
+     *            the number of buckets, rounded up to a power of two
+     * @param taskExecutor
+     *            the executor which runs the expired tasks
+     * @throws IllegalArgumentException
+     *             if the tick duration or the ticks per wheel are not
+     *             positive
+     * @throws NullPointerException
+     *             if the executor is null
+     */
+    public HashedWheelTimer(final long tickDuration, final TimeUnit unit, final int ticksPerWheel,
+            final Executor taskExecutor) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive: " + tickDuration); //$NON-NLS-1$
+        }
+        if ((ticksPerWheel <= 0) || (ticksPerWheel > (1 << 30))) {
+            throw new IllegalArgumentException("Illegal ticks per wheel: " + ticksPerWheel); //$NON-NLS-1$
+        }
+        if (taskExecutor == null) {
+            throw new NullPointerException();
+        }
+        int wheelSize = 1;
+        while (wheelSize < ticksPerWheel) {
+            wheelSize <<= 1;
+        }
+        this.wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            this.wheel[i] = new Bucket();
+        }
+        this.mask = wheelSize - 1;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.taskExecutor = taskExecutor;
+        this.pendingTimeouts = new ConcurrentLinkedQueue<WheelTimeout>();
+        this.cancelledTimeouts = new ConcurrentLinkedQueue<WheelTimeout>();
+        this.state = new AtomicInteger(STATE_INIT);
+        this.startTimeInitialized = new CountDownLatch(1);
+        this.workerThread = new ThreadGroupThreadFactory().newThread(new Worker());
+    }
+
+    /**
+     * Returns the timer which is shared by all components of the VM. It ticks
+     * every 100 milliseconds and runs the expired tasks by the executor of
+     * {@link ExecutionMode#newDaemonCachedThreadPool()}.
+     *
+     * @return the shared timer
+     */
+    public static HashedWheelTimer getShared() {
+        return SharedHolder.INSTANCE;
+    }
+
+    /**
+     * Schedules the given task to be run once after the given delay.
+     *
+     * @param task
+     *            the task to run
+     * @param delay
+     *            the delay after which the task is run
+     * @param unit
+     *            the unit of the delay
+     * @return the handle to cancel the task
+     * @throws IllegalStateException
+     *             if the timer is stopped
+     */
+    public Timeout newTimeout(final Runnable task, final long delay, final TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        this.start();
+        final long deadline = System.nanoTime() + unit.toNanos(Math.max(delay, 0)) - this.startTime;
+        final WheelTimeout timeout = new WheelTimeout(task, deadline);
+        this.pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Schedules the given task to be run periodically, the first time after
+     * the initial delay and then after the given delay between the end of a
+     * run and the start of the next one, like
+     * {@link java.util.concurrent.ScheduledExecutorService#scheduleWithFixedDelay(Runnable, long, long, TimeUnit)}
+     * .
+     *
+     * @param task
+     *            the task to run
+     * @param initialDelay
+     *            the delay of the first run
+     * @param delay
+     *            the delay between the runs
+     * @param unit
+     *            the unit of the delays
+     * @return the handle to cancel further runs of the task
+     * @throws IllegalStateException
+     *             if the timer is stopped
+     */
+    public Timeout newPeriodicTimeout(final Runnable task, final long initialDelay, final long delay,
+            final TimeUnit unit) {
+        final PeriodicTimeout periodicTimeout = new PeriodicTimeout(task, delay, unit);
+        periodicTimeout.schedule(initialDelay);
+        return periodicTimeout;
+    }
+
+    /**
+     * Stops the timer thread. Timeouts which are not expired yet are not run
+     * anymore.
+     */
+    public void stop() {
+        if (this.state.getAndSet(STATE_STOPPED) == STATE_STARTED) {
+            this.workerThread.interrupt();
+        }
+    }
+
+    private void start() {
+        switch (this.state.get()) {
+        case STATE_INIT:
+            if (this.state.compareAndSet(STATE_INIT, STATE_STARTED)) {
+                this.workerThread.start();
+            }
+            break;
+        case STATE_STARTED:
+            break;
+        default:
+            throw new IllegalStateException("Timer is stopped"); //$NON-NLS-1$
+        }
+        // the deadlines of new timeouts are relative to the start time, so
+        // it has to be known even if the caller is interrupted
+        boolean interrupted = false;
+        while (true) {
+            try {
+                this.startTimeInitialized.await();
+                break;
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Processes the buckets of the wheel tick by tick.
+     */
+    private final class Worker implements Runnable {
+        private long tick;
+
+        @Override
+        public void run() {
+            HashedWheelTimer.this.startTime = System.nanoTime();
+            HashedWheelTimer.this.startTimeInitialized.countDown();
+            while (HashedWheelTimer.this.state.get() == STATE_STARTED) {
+                final long deadline = this.waitForNextTick();
+                if (deadline < 0) {
+                    break;
+                }
+                this.removeCancelledTimeouts();
+                this.transferPendingTimeouts();
+                HashedWheelTimer.this.wheel[(int) (this.tick & HashedWheelTimer.this.mask)].expireTimeouts(deadline,
+                        HashedWheelTimer.this.pendingTimeouts);
+                this.tick++;
+            }
+        }
+
+        private long waitForNextTick() {
+            final long deadline = HashedWheelTimer.this.tickNanos * (this.tick + 1);
+            while (true) {
+                final long currentTime = System.nanoTime() - HashedWheelTimer.this.startTime;
+                final long sleepTimeInMillis = (deadline - currentTime + 999999) / 1000000;
+                if (sleepTimeInMillis <= 0) {
+                    return currentTime;
+                }
+                try {
+                    Thread.sleep(sleepTimeInMillis);
+                } catch (final InterruptedException e) {
+                    if (HashedWheelTimer.this.state.get() == STATE_STOPPED) {
+                        return -1;
+                    }
+                }
+            }
+        }
+
+        private void transferPendingTimeouts() {
+            for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+                final WheelTimeout timeout = HashedWheelTimer.this.pendingTimeouts.poll();
+                if (timeout == null) {
+                    return;
+                }
+                if (timeout.isCancelled()) {
+                    continue;
+                }
+                final long calculatedTick = timeout.deadline / HashedWheelTimer.this.tickNanos;
+                timeout.remainingRounds = (calculatedTick - this.tick) / HashedWheelTimer.this.wheel.length;
+                // timeouts which are already due go into the current bucket
+                final long targetTick = Math.max(calculatedTick, this.tick);
+                HashedWheelTimer.this.wheel[(int) (targetTick & HashedWheelTimer.this.mask)].add(timeout);
+            }
+        }
+
+        private void removeCancelledTimeouts() {
+            WheelTimeout timeout;
+            while ((timeout = HashedWheelTimer.this.cancelledTimeouts.poll()) != null) {
+                if (timeout.bucket != null) {
+                    timeout.bucket.remove(timeout);
+                }
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of the timeouts of a tick, only accessed by the timer
+     * thread.
+     */
+    private static final class Bucket {
+        private WheelTimeout head;
+        private WheelTimeout tail;
+
+        void add(final WheelTimeout timeout) {
+            timeout.bucket = this;
+            if (this.head == null) {
+                this.head = timeout;
+                this.tail = timeout;
+            } else {
+                this.tail.next = timeout;
+                timeout.prev = this.tail;
+                this.tail = timeout;
+            }
+        }
+
+        void expireTimeouts(final long deadline, final Queue<WheelTimeout> pendingTimeouts) {
+            WheelTimeout timeout = this.head;
+            while (timeout != null) {
+                final WheelTimeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    this.remove(timeout);
+                    if (timeout.deadline <= deadline) {
+                        timeout.expire();
+                    } else {
+                        // should not happen as timeouts are placed into the
+                        // bucket of their tick, place it again on the next tick
+                        logger.warn("Timeout placed into the wrong bucket"); //$NON-NLS-1$
+                        pendingTimeouts.add(timeout);
+                    }
+                } else if (timeout.isCancelled()) {
+                    this.remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(final WheelTimeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                this.head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                this.tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    /**
+     * A single timeout in the wheel.
+     */
+    private final class WheelTimeout implements Timeout {
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger timeoutState = new AtomicInteger(INIT);
+        // accessed by the timer thread only
+        private long remainingRounds;
+        private Bucket bucket;
+        private WheelTimeout prev;
+        private WheelTimeout next;
+
+        WheelTimeout(final Runnable task, final long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!this.timeoutState.compareAndSet(INIT, CANCELLED)) {
+                return false;
+            }
+            HashedWheelTimer.this.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.timeoutState.get() == CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return this.timeoutState.get() == EXPIRED;
+        }
+
+        void expire() {
+            if (!this.timeoutState.compareAndSet(INIT, EXPIRED)) {
+                return;
+            }
+            try {
+                HashedWheelTimer.this.taskExecutor.execute(this.task);
+            } catch (final RejectedExecutionException e) {
+                logger.warn("Could not run expired task {}", this.task); //$NON-NLS-1$
+            }
+        }
+    }
+
+    /**
+     * Timeout of a periodic task, reschedules the task after each run until
+     * it is cancelled.
+     */
+    private final class PeriodicTimeout implements Timeout, Runnable {
+        private final Runnable task;
+        private final long delay;
+        private final TimeUnit unit;
+        private volatile boolean cancelled;
+        private volatile Timeout current;
+
+        PeriodicTimeout(final Runnable task, final long delay, final TimeUnit unit) {
+            this.task = task;
+            this.delay = delay;
+            this.unit = unit;
+        }
+
+        void schedule(final long nextDelay) {
+            this.current = HashedWheelTimer.this.newTimeout(this, nextDelay, this.unit);
+            if (this.cancelled) {
+                this.current.cancel();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (this.cancelled) {
+                return;
+            }
+            try {
+                this.task.run();
+            } finally {
+                if (!this.cancelled && (HashedWheelTimer.this.state.get() != STATE_STOPPED)) {
+                    this.schedule(this.delay);
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            if (this.cancelled) {
+                return false;
+            }
+            this.cancelled = true;
+            this.current.cancel();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return false;
+        }
+    }
+
+    /**
+     * Holder of the shared timer, which is created on first use.
+     */
+    private static final class SharedHolder {
+        static final HashedWheelTimer INSTANCE = new HashedWheelTimer(SHARED_TICK_IN_MILLIS, TimeUnit.MILLISECONDS,
+                SHARED_TICKS_PER_WHEEL, ExecutionMode.newDaemonCachedThreadPool());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.concurrent;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * View of an executor which is shared by several components. The components
+ * may shut the view down as they would do with an executor of their own, but
+ * this does not affect the shared executor. Only its owner shuts it down, e.g.
+ * when all components are stopped.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class SharedExecutorService extends AbstractExecutorService {
+    private final Executor delegate;
+
+    /**
+     * Creates a view of the given executor.
+     *
+     * @param delegate
+     *            the shared executor which executes the tasks
+     */
+    public SharedExecutorService(final Executor delegate) {
+        if (delegate == null) {
+            throw new NullPointerException();
+        }
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        this.delegate.execute(command);
+    }
+
+    /**
+     * Does nothing, the shared executor is shut down by its owner.
+     */
+    @Override
+    public void shutdown() {
+        // shut down by the owner
+    }
+
+    /**
+     * Does nothing, the shared executor is shut down by its owner.
+     *
+     * @return an empty list
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return (this.delegate instanceof ExecutorService) && ((ExecutorService) this.delegate).isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return (this.delegate instanceof ExecutorService) && ((ExecutorService) this.delegate).isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        if (this.delegate instanceof ExecutorService) {
+            return ((ExecutorService) this.delegate).awaitTermination(timeout, unit);
+        }
+        return false;
+    }
+}
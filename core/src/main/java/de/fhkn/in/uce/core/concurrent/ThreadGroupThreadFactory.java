@@ -17,11 +17,14 @@
 package de.fhkn.in.uce.core.concurrent;
 
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of {@link ThreadFactory} that creates daemon threads.
  * All created threads belong to the same thread group. The thread group used
- * is the one, the original creator thread belongs to.
+ * is the one, the original creator thread belongs to. Optionally the threads
+ * are named with a common prefix and are no daemon threads, e.g. the threads
+ * of a server which have to keep the VM alive.
  * 
  * @author thomas zink, daniel maier
  * 
@@ -29,10 +32,37 @@ import java.util.concurrent.ThreadFactory;
 public class ThreadGroupThreadFactory implements ThreadFactory {
 
     private static final ThreadGroup threadGroup = Thread.currentThread().getThreadGroup();
+    private final String namePrefix;
+    private final boolean daemon;
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    /**
+     * Creates a factory for unnamed daemon threads.
+     */
+    public ThreadGroupThreadFactory() {
+        this(null, true);
+    }
+
+    /**
+     * Creates a factory for threads which are named by the given prefix and
+     * a running number.
+     * 
+     * @param namePrefix
+     *            the prefix of the thread names, null for the default names
+     * @param daemon
+     *            true if the threads are daemon threads
+     */
+    public ThreadGroupThreadFactory(String namePrefix, boolean daemon) {
+        this.namePrefix = namePrefix;
+        this.daemon = daemon;
+    }
 
     public Thread newThread(Runnable r) {
         Thread thread = new Thread(threadGroup, r);
-        thread.setDaemon(true);
+        if (namePrefix != null) {
+            thread.setName(namePrefix + "-" + threadNumber.incrementAndGet());
+        }
+        thread.setDaemon(daemon);
         return thread;
     }
 }
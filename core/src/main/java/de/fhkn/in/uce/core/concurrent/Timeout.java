@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.concurrent;
+
+/**
+ * Handle of a task which is scheduled by a {@link HashedWheelTimer}.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public interface Timeout {
+
+    /**
+     * Cancels the scheduled task. A periodic task is not run again.
+     *
+     * @return true if the task was cancelled, false if it is already expired
+     *         or cancelled
+     */
+    boolean cancel();
+
+    /**
+     * Returns whether the task was cancelled.
+     *
+     * @return true if the task was cancelled, otherwise false
+     */
+    boolean isCancelled();
+
+    /**
+     * Returns whether the task was handed over for execution. A periodic task
+     * never expires, it is cancelled at some point.
+     *
+     * @return true if the task expired, otherwise false
+     */
+    boolean isExpired();
+}
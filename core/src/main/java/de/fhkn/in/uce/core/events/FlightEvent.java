@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.events;
+
+/**
+ * A flight recorder event which was begun and is committed when the recorded
+ * operation is finished. Callers check {@link #isEnabled()} before computing
+ * the fields, so a disabled event costs nothing but the check.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public interface FlightEvent {
+
+    /**
+     * Returns whether the event is recorded.
+     *
+     * @return true if the event is recorded, false otherwise
+     */
+    boolean isEnabled();
+
+    /**
+     * Ends the event and commits it with the given fields if it is recorded.
+     * The meaning of the fields is given by the {@link FlightEventType}.
+     *
+     * @param subject
+     *            the subject of the event
+     * @param outcome
+     *            the outcome of the recorded operation
+     * @param value
+     *            the value of the event
+     */
+    void commit(String subject, String outcome, long value);
+}
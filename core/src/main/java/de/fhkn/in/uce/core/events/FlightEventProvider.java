@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.events;
+
+/**
+ * Service provider interface for flight recorder events. An implementation is
+ * looked up by {@link java.util.ServiceLoader}, e.g. the one of the
+ * {@code core.jfr} module which records Java Flight Recorder events.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public interface FlightEventProvider {
+
+    /**
+     * Begins an event of the given type.
+     *
+     * @param type
+     *            the type of the event
+     * @return the begun event, a disabled event if events of the type are not
+     *         recorded
+     */
+    FlightEvent begin(FlightEventType type);
+}
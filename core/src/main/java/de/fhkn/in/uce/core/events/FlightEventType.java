@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.events;
+
+/**
+ * Types of the domain-specific flight recorder events. Each event has a
+ * duration from {@link FlightEvents#begin(FlightEventType)} to
+ * {@link FlightEvent#commit(String, String, long)} and the three fields
+ * subject, outcome and value, whose meaning depends on the type.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public enum FlightEventType {
+    /**
+     * Investigation of a NAT feature. Subject is the feature ("mapping" or
+     * "filtering"), outcome the determined realization, value is unused.
+     */
+    NAT_INVESTIGATION,
+    /**
+     * Attempt to establish a connection with a NAT traversal technique.
+     * Subject is the name of the technique, outcome "connected", "timeout" or
+     * "failed", value is unused.
+     */
+    TRAVERSAL_ATTEMPT,
+    /**
+     * Handling of a message by the mediator. Subject is the message method,
+     * outcome "handled" or "failed", value is unused.
+     */
+    MEDIATOR_MESSAGE,
+    /**
+     * Allocation request to the relay server. Subject is the relay endpoint,
+     * outcome "allocated" or "insufficient_capacity", value the lifetime in
+     * seconds.
+     */
+    RELAY_ALLOCATION,
+    /**
+     * Transfer of one direction of a relayed connection. Subject is the
+     * source and target of the data, outcome "closed" or "failed", value the
+     * number of relayed bytes.
+     */
+    RELAY_TRANSFER;
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.events;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entry point for recording domain-specific flight recorder events, like NAT
+ * investigations, traversal attempts or relay allocations:
+ *
+ * <pre>
+ * final FlightEvent event = FlightEvents.begin(FlightEventType.RELAY_TRANSFER);
+ * // relay the data
+ * if (event.isEnabled()) {
+ *     event.commit(source + &quot; -&gt; &quot; + target, &quot;closed&quot;, bytes);
+ * }
+ * </pre>
+ *
+ * <p>
+ * The events are recorded by the first {@link FlightEventProvider} found on
+ * the class path. Without a provider, or if the provider can not be loaded
+ * (e.g. the JFR provider on a JDK without {@code jdk.jfr}), all events are
+ * disabled and {@link #begin(FlightEventType)} returns a shared no-op event.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class FlightEvents {
+    private static final Logger logger = LoggerFactory.getLogger(FlightEvents.class);
+    private static final FlightEvent DISABLED = new DisabledEvent();
+    private static final FlightEventProvider PROVIDER = loadProvider();
+
+    private FlightEvents() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Begins an event of the given type.
+     *
+     * @param type
+     *            the type of the event
+     * @return the begun event, a disabled event if events of the type are not
+     *         recorded
+     */
+    public static FlightEvent begin(final FlightEventType type) {
+        if (PROVIDER == null) {
+            return DISABLED;
+        }
+        return PROVIDER.begin(type);
+    }
+
+    /**
+     * Returns a disabled event, e.g. for a provider which does not record
+     * events of a type.
+     *
+     * @return the shared disabled event
+     */
+    public static FlightEvent disabled() {
+        return DISABLED;
+    }
+
+    private static FlightEventProvider loadProvider() {
+        try {
+            final Iterator<FlightEventProvider> providers = ServiceLoader.load(FlightEventProvider.class,
+                    FlightEvents.class.getClassLoader()).iterator();
+            if (providers.hasNext()) {
+                final FlightEventProvider provider = providers.next();
+                logger.info("Recording flight events with {}", provider.getClass().getName()); //$NON-NLS-1$
+                return provider;
+            }
+        } catch (final ServiceConfigurationError e) {
+            logger.warn("Could not load flight event provider, events are disabled", e); //$NON-NLS-1$
+        } catch (final LinkageError e) {
+            logger.warn("Could not load flight event provider, events are disabled", e); //$NON-NLS-1$
+        }
+        return null;
+    }
+
+    private static final class DisabledEvent implements FlightEvent {
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void commit(final String subject, final String outcome, final long value) {
+            // not recorded
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter which can be incremented by many threads without contention, like
+ * {@code java.util.concurrent.atomic.LongAdder}. The value is spread over
+ * several cells, a thread updates the cell chosen by its id, so concurrent
+ * updates usually do not hit the same cache line. Reading the value sums up
+ * all cells and is therefore more expensive than an update.
+ *
+ * <p>
+ * Updates do not allocate. This class is thread-safe.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class Counter {
+    // a cell every 8 longs, so each cell has its own cache line
+    private static final int PADDING_SHIFT = 3;
+    private static final int CELL_COUNT = cellCount();
+    private final AtomicLongArray cells;
+
+    /**
+     * Creates a {@link Counter} with the value 0.
+     */
+    public Counter() {
+        this.cells = new AtomicLongArray(CELL_COUNT << PADDING_SHIFT);
+    }
+
+    private static int cellCount() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        int count = 1;
+        while (count < processors) {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    /**
+     * Increments the counter by one.
+     */
+    public void increment() {
+        this.add(1);
+    }
+
+    /**
+     * Decrements the counter by one.
+     */
+    public void decrement() {
+        this.add(-1);
+    }
+
+    /**
+     * Adds the given value to the counter.
+     *
+     * @param value
+     *            the value to add
+     */
+    public void add(final long value) {
+        final int cell = (int) (Thread.currentThread().getId() & (CELL_COUNT - 1));
+        this.cells.addAndGet(cell << PADDING_SHIFT, value);
+    }
+
+    /**
+     * Returns the current value of the counter. Concurrent updates may or may
+     * not be included.
+     *
+     * @return the sum of all updates
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < CELL_COUNT; i++) {
+            sum += this.cells.get(i << PADDING_SHIFT);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of values like latencies with fixed, exponentially growing
+ * buckets. The upper bound of bucket {@code i} is {@code 2^i}, the last bucket
+ * counts all larger values. With 40 buckets and values in microseconds the
+ * buckets cover everything up to about 12 days with a relative error below
+ * factor two, which is enough to see how latencies are distributed.
+ *
+ * <p>
+ * Recording a value is allocation-free, it increments the bucket counter and
+ * adds the value to the sum. This class is thread-safe, a snapshot read while
+ * values are recorded may be slightly inconsistent.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class Histogram {
+    /**
+     * Number of buckets of a histogram.
+     */
+    public static final int BUCKET_COUNT = 40;
+    private final AtomicLongArray buckets;
+    private final Counter sum;
+
+    /**
+     * Creates an empty {@link Histogram}.
+     */
+    public Histogram() {
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.sum = new Counter();
+    }
+
+    /**
+     * Records the given value. Negative values are recorded as 0.
+     *
+     * @param value
+     *            the value to record
+     */
+    public void record(final long value) {
+        final long nonNegative = Math.max(value, 0);
+        this.buckets.incrementAndGet(bucketIndex(nonNegative));
+        this.sum.add(nonNegative);
+    }
+
+    private static int bucketIndex(final long value) {
+        if (value <= 1) {
+            return 0;
+        }
+        // smallest i with value <= 2^i
+        final int index = 64 - Long.numberOfLeadingZeros(value - 1);
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Returns the upper bound of the given bucket, the last bucket has no
+     * upper bound and returns {@link Long#MAX_VALUE}.
+     *
+     * @param bucket
+     *            the index of the bucket
+     * @return the largest value counted by the bucket
+     */
+    public static long getUpperBound(final int bucket) {
+        if (bucket >= BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+        return 1L << bucket;
+    }
+
+    /**
+     * Returns the number of recorded values per bucket.
+     *
+     * @return the counts of the buckets
+     */
+    public long[] getBucketCounts() {
+        final long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = this.buckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += this.buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the sum of the recorded values.
+     *
+     * @return the sum of the values
+     */
+    public long getSum() {
+        return this.sum.sum();
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the recorded values,
+     * i.e. the upper bound of the bucket which contains the percentile.
+     *
+     * @param percentile
+     *            the percentile between 0 and 100
+     * @return the upper bound of the percentile, 0 if no value is recorded
+     */
+    public long getPercentile(final double percentile) {
+        final long[] counts = this.getBucketCounts();
+        long total = 0;
+        for (final long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if ((seen >= rank) && (seen > 0)) {
+                return getUpperBound(i);
+            }
+        }
+        return getUpperBound(BUCKET_COUNT - 1);
+    }
+}
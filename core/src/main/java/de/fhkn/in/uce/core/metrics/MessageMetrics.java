@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import de.fhkn.in.uce.stun.header.MessageMethod;
+import de.fhkn.in.uce.stun.message.MessageTrafficListener;
+
+/**
+ * Counts the STUN messages and bytes read and written per method, e.g.
+ * {@code stun.read.binding.messages} and {@code stun.written.binding.bytes}.
+ * The counters of a method are looked up by its 12 bit encoding, so counting
+ * does not allocate.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class MessageMetrics implements MessageTrafficListener {
+    private static final int METHOD_COUNT = 1 << 12;
+    private static final String PREFIX = "stun."; //$NON-NLS-1$
+    private final MetricsRegistry registry;
+    private final AtomicReferenceArray<Counter[]> readCounters;
+    private final AtomicReferenceArray<Counter[]> writtenCounters;
+
+    /**
+     * Creates {@link MessageMetrics} which register their counters at the
+     * given registry.
+     *
+     * @param registry
+     *            the registry of the counters
+     */
+    public MessageMetrics(final MetricsRegistry registry) {
+        this.registry = registry;
+        this.readCounters = new AtomicReferenceArray<Counter[]>(METHOD_COUNT);
+        this.writtenCounters = new AtomicReferenceArray<Counter[]>(METHOD_COUNT);
+    }
+
+    @Override
+    public void messageRead(final MessageMethod method, final int encodedLength) {
+        this.count(this.readCounters, "read.", method, encodedLength); //$NON-NLS-1$
+    }
+
+    @Override
+    public void messageWritten(final MessageMethod method, final int encodedLength) {
+        this.count(this.writtenCounters, "written.", method, encodedLength); //$NON-NLS-1$
+    }
+
+    private void count(final AtomicReferenceArray<Counter[]> counters, final String direction,
+            final MessageMethod method, final int encodedLength) {
+        final int index = method.encode() & (METHOD_COUNT - 1);
+        Counter[] methodCounters = counters.get(index);
+        if (methodCounters == null) {
+            final String prefix = PREFIX + direction + methodName(method);
+            // concurrent creators get the same counters from the registry
+            methodCounters = new Counter[] { this.registry.counter(prefix + ".messages"), //$NON-NLS-1$
+                    this.registry.counter(prefix + ".bytes") }; //$NON-NLS-1$
+            // only named methods are cached, so a method which is seen first
+            // without its name gets its proper counters later on
+            if (method instanceof Enum<?>) {
+                counters.set(index, methodCounters);
+            }
+        }
+        methodCounters[0].increment();
+        methodCounters[1].add(encodedLength);
+    }
+
+    private static String methodName(final MessageMethod method) {
+        if (method instanceof Enum<?>) {
+            return ((Enum<?>) method).name().toLowerCase();
+        }
+        return "method_" + Integer.toHexString(method.encode()); //$NON-NLS-1$
+    }
+}
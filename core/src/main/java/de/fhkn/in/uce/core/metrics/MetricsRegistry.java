@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.regex.Pattern;
+
+import de.fhkn.in.uce.stun.message.MessageTraffic;
+
+/**
+ * Registry of the metrics of a VM. Components get or create their
+ * {@link Counter}s and {@link Histogram}s by name and register
+ * {@link Gauge}s, exporters read all metrics by name. Names consist of
+ * letters, digits, underscores and dots, the dots separate the name of the
+ * component from the name of the metric, e.g.
+ * {@code socketlistener.3478.accepted}.
+ *
+ * <p>
+ * The {@link #getShared() shared registry} is used by all servers of the VM.
+ * When it is created, it installs the {@link MessageMetrics} which count the
+ * STUN messages read and written.
+ * </p>
+ *
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class MetricsRegistry {
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_.]*"); //$NON-NLS-1$
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentMap<String, Counter> upDownCounters = new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+    /**
+     * Returns the registry which is shared by all components of the VM.
+     *
+     * @return the shared registry
+     */
+    public static MetricsRegistry getShared() {
+        return SharedHolder.INSTANCE;
+    }
+
+    /**
+     * Returns the counter with the given name, it is created if it does not
+     * exist yet. The value of a counter only grows, e.g. the number of
+     * accepted connections.
+     *
+     * @param name
+     *            the name of the counter
+     * @return the counter
+     * @throws IllegalArgumentException
+     *             if the name is illegal
+     */
+    public Counter counter(final String name) {
+        return getOrCreate(this.counters, checkName(name));
+    }
+
+    /**
+     * Returns the counter with the given name whose value can go up and down,
+     * e.g. the number of active tasks. It is created if it does not exist yet
+     * and is exported as gauge.
+     *
+     * @param name
+     *            the name of the counter
+     * @return the counter
+     * @throws IllegalArgumentException
+     *             if the name is illegal
+     */
+    public Counter upDownCounter(final String name) {
+        return getOrCreate(this.upDownCounters, checkName(name));
+    }
+
+    private static Counter getOrCreate(final ConcurrentMap<String, Counter> map, final String name) {
+        Counter counter = map.get(name);
+        if (counter == null) {
+            final Counter newCounter = new Counter();
+            counter = map.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the histogram with the given name, it is created if it does not
+     * exist yet.
+     *
+     * @param name
+     *            the name of the histogram
+     * @return the histogram
+     * @throws IllegalArgumentException
+     *             if the name is illegal
+     */
+    public Histogram histogram(final String name) {
+        checkName(name);
+        Histogram histogram = this.histograms.get(name);
+        if (histogram == null) {
+            final Histogram newHistogram = new Histogram();
+            histogram = this.histograms.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Registers the given gauge, a gauge which is already registered with the
+     * name is replaced.
+     *
+     * @param name
+     *            the name of the gauge
+     * @param gauge
+     *            the gauge
+     * @throws IllegalArgumentException
+     *             if the name is illegal
+     */
+    public void gauge(final String name, final Gauge gauge) {
+        if (gauge == null) {
+            throw new NullPointerException();
+        }
+        this.gauges.put(checkName(name), gauge);
+    }
+
+    /**
+     * Registers gauges for the number of threads, active threads, queued and
+     * completed tasks of the given executor, if it is a
+     * {@link ThreadPoolExecutor}. Other executors are ignored.
+     *
+     * @param name
+     *            the name of the executor, prefix of the names of the gauges
+     * @param executor
+     *            the executor
+     */
+    public void registerExecutor(final String name, final ExecutorService executor) {
+        checkName(name);
+        if (!(executor instanceof ThreadPoolExecutor)) {
+            return;
+        }
+        final ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        this.gauge(name + ".threads", new Gauge() { //$NON-NLS-1$
+            @Override
+            public long getValue() {
+                return pool.getPoolSize();
+            }
+        });
+        this.gauge(name + ".active", new Gauge() { //$NON-NLS-1$
+            @Override
+            public long getValue() {
+                return pool.getActiveCount();
+            }
+        });
+        this.gauge(name + ".queued", new Gauge() { //$NON-NLS-1$
+            @Override
+            public long getValue() {
+                return pool.getQueue().size();
+            }
+        });
+        this.gauge(name + ".completed", new Gauge() { //$NON-NLS-1$
+            @Override
+            public long getValue() {
+                return pool.getCompletedTaskCount();
+            }
+        });
+    }
+
+    /**
+     * Returns the counters sorted by name.
+     *
+     * @return the counters
+     */
+    public SortedMap<String, Counter> getCounters() {
+        return new TreeMap<String, Counter>(this.counters);
+    }
+
+    /**
+     * Returns the values of the gauges and the up-down counters sorted by
+     * name.
+     *
+     * @return the current values of the gauges
+     */
+    public SortedMap<String, Long> getGaugeValues() {
+        final SortedMap<String, Long> values = new TreeMap<String, Long>();
+        for (final Map.Entry<String, Gauge> entry : this.gauges.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().getValue());
+        }
+        for (final Map.Entry<String, Counter> entry : this.upDownCounters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().sum());
+        }
+        return values;
+    }
+
+    /**
+     * Returns the histograms sorted by name.
+     *
+     * @return the histograms
+     */
+    public SortedMap<String, Histogram> getHistograms() {
+        return new TreeMap<String, Histogram>(this.histograms);
+    }
+
+    private static String checkName(final String name) {
+        if ((name == null) || !NAME_PATTERN.matcher(name).matches()) {
+            throw new IllegalArgumentException("Illegal metric name: " + name); //$NON-NLS-1$
+        }
+        return name;
+    }
+
+    /**
+     * Holder of the shared registry, which is created on first use.
+     */
+    private static final class SharedHolder {
+        static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+        static {
+            MessageTraffic.setListener(new MessageMetrics(INSTANCE));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.runtime;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import de.fhkn.in.uce.core.concurrent.ExecutionMode;
+import de.fhkn.in.uce.core.concurrent.HashedWheelTimer;
+import de.fhkn.in.uce.core.concurrent.SharedExecutorService;
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+import de.fhkn.in.uce.core.socketlistener.RejectionPolicy;
+import de.fhkn.in.uce.core.socketlistener.WorkerPool;
+
+/**
+ * Resources which are shared by several servers running in the same VM, e.g.
+ * the stun server, relay server and mediator of the master server. Instead of
+ * creating private thread pools the servers use
+ * <ul>
+ * <li>the handler executor for the tasks which handle accepted connections.
+ * It can be bounded by a {@link WorkerPool}, otherwise it is a cached thread
+ * pool,</li>
+ * <li>the blocking executor for tasks which block as long as a socket is open
+ * and therefore must not be queued, like accept loops, relay transfers or
+ * control connections. It is unbounded,</li>
+ * <li>the shared {@link HashedWheelTimer} and {@link MetricsRegistry}.</li>
+ * </ul>
+ * The servers get {@link SharedExecutorService views} of the executors, so a
+ * server which shuts down its executors does not affect the other servers.
+ * The owner of the context shuts the executors down after all servers are
+ * stopped.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class ServerContext {
+    private final ExecutorService handlerExecutor;
+    private final ExecutorService blockingExecutor;
+    private final RejectionPolicy rejectionPolicy;
+    private final ExecutorService handlerView;
+    private final ExecutorService blockingView;
+
+    private ServerContext(final ExecutorService handlerExecutor, final RejectionPolicy rejectionPolicy,
+            final ExecutorService blockingExecutor) {
+        this.handlerExecutor = handlerExecutor;
+        this.rejectionPolicy = rejectionPolicy;
+        this.blockingExecutor = blockingExecutor;
+        this.handlerView = new SharedExecutorService(handlerExecutor);
+        this.blockingView = new SharedExecutorService(blockingExecutor);
+    }
+
+    /**
+     * Creates a context whose handler executor is bounded by the given worker
+     * pool. The executors are registered in the shared
+     * {@link MetricsRegistry} as "runtime.handler" and "runtime.blocking".
+     *
+     * @param workerPool
+     *            the bounds of the handler executor, null for a cached thread
+     *            pool
+     * @return the new context
+     */
+    public static ServerContext create(final WorkerPool workerPool) {
+        final ExecutorService handlerExecutor = (workerPool != null) ? workerPool.newExecutor() : ExecutionMode
+                .newCachedThreadPool();
+        final RejectionPolicy rejectionPolicy = (workerPool != null) ? workerPool.getRejectionPolicy() : null;
+        final ExecutorService blockingExecutor = ExecutionMode.newCachedThreadPool();
+        final MetricsRegistry metrics = MetricsRegistry.getShared();
+        metrics.registerExecutor("runtime.handler", handlerExecutor); //$NON-NLS-1$
+        metrics.registerExecutor("runtime.blocking", blockingExecutor); //$NON-NLS-1$
+        return new ServerContext(handlerExecutor, rejectionPolicy, blockingExecutor);
+    }
+
+    /**
+     * Returns the executor for the tasks which handle accepted connections.
+     *
+     * @return a view of the shared handler executor
+     */
+    public ExecutorService getHandlerExecutor() {
+        return this.handlerView;
+    }
+
+    /**
+     * Returns the policy for connections which are rejected by the handler
+     * executor.
+     *
+     * @return the rejection policy, null if the handler executor is unbounded
+     */
+    public RejectionPolicy getRejectionPolicy() {
+        return this.rejectionPolicy;
+    }
+
+    /**
+     * Returns the executor for tasks which block as long as a socket is open.
+     *
+     * @return a view of the shared, unbounded blocking executor
+     */
+    public ExecutorService getBlockingExecutor() {
+        return this.blockingView;
+    }
+
+    /**
+     * Returns the shared timer.
+     *
+     * @return the shared timer
+     */
+    public HashedWheelTimer getTimer() {
+        return HashedWheelTimer.getShared();
+    }
+
+    /**
+     * Returns the shared metrics registry.
+     *
+     * @return the shared metrics registry
+     */
+    public MetricsRegistry getMetrics() {
+        return MetricsRegistry.getShared();
+    }
+
+    /**
+     * Shuts the executors down, already submitted tasks are still executed.
+     */
+    public void shutdown() {
+        this.handlerExecutor.shutdown();
+        this.blockingExecutor.shutdown();
+    }
+
+    /**
+     * Waits until the executors terminated after {@link #shutdown()}.
+     *
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the unit of the timeout
+     * @return true if the executors terminated, false if the timeout elapsed
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return this.handlerExecutor.awaitTermination(timeout, unit)
+                && this.blockingExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Shuts the executors down and interrupts the running tasks.
+     */
+    public void shutdownNow() {
+        this.handlerExecutor.shutdownNow();
+        this.blockingExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.socketlistener;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a new connection is admitted before any work is done for
+ * it. Two limits are applied:
+ * <ul>
+ * <li>every source address gets a token bucket which is refilled with the
+ * given rate of connections per second up to the given burst, a connection is
+ * only admitted if a token is left.</li>
+ * <li>the number of admitted connections which are not released yet is
+ * limited globally.</li>
+ * </ul>
+ * A limit of 0 disables the corresponding check. Admitted connections have to
+ * be released when their handling is finished, e.g. by running the handling
+ * task wrapped by {@link #releaseAfter(Runnable)}.
+ *
+ * <p>
+ * Buckets of sources which were idle long enough to be full again are removed
+ * from time to time, so the memory used by this class only depends on the
+ * number of recently active sources.
+ * </p>
+ *
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class AdmissionControl {
+    private static final long SWEEP_INTERVAL_IN_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final String SPEC_SEPARATOR = ","; //$NON-NLS-1$
+    private final double connectionsPerSecond;
+    private final double burst;
+    private final int maxConnections;
+    private final ConcurrentMap<InetAddress, TokenBucket> buckets;
+    private final AtomicInteger activeConnections;
+    private final AtomicLong nextSweepNanos;
+
+    /**
+     * Creates an {@link AdmissionControl}.
+     *
+     * @param connectionsPerSecond
+     *            the rate of new connections per second a single source
+     *            address is allowed to open, 0 for no limit
+     * @param burst
+     *            the number of connections a single source address can open
+     *            at once, values below 1 are replaced by the rate rounded up
+     * @param maxConnections
+     *            the maximum number of admitted connections which are not
+     *            released yet, 0 for no limit
+     * @throws IllegalArgumentException
+     *             if the rate or the maximum number of connections is
+     *             negative
+     */
+    public AdmissionControl(final double connectionsPerSecond, final int burst, final int maxConnections) {
+        if (connectionsPerSecond < 0) {
+            throw new IllegalArgumentException("Connections per second must not be negative"); //$NON-NLS-1$
+        }
+        if (maxConnections < 0) {
+            throw new IllegalArgumentException("Maximum connections must not be negative"); //$NON-NLS-1$
+        }
+        this.connectionsPerSecond = connectionsPerSecond;
+        this.burst = (burst >= 1) ? burst : Math.max(1.0, Math.ceil(connectionsPerSecond));
+        this.maxConnections = maxConnections;
+        this.buckets = new ConcurrentHashMap<InetAddress, TokenBucket>();
+        this.activeConnections = new AtomicInteger();
+        this.nextSweepNanos = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL_IN_NANOS);
+    }
+
+    /**
+     * Creates an {@link AdmissionControl} from a specification of the form
+     * {@code connectionsPerSecond,burst,maxConnections}, e.g.
+     * {@code 5,10,1000}. Burst and maximum connections are optional.
+     *
+     * @param spec
+     *            the specification
+     * @return the admission control for the given specification
+     * @throws IllegalArgumentException
+     *             if the specification is malformed
+     */
+    public static AdmissionControl valueOf(final String spec) {
+        final String[] values = spec.split(SPEC_SEPARATOR);
+        if (values.length > 3) {
+            throw new IllegalArgumentException("Illegal admission control specification: " + spec); //$NON-NLS-1$
+        }
+        try {
+            final double rate = Double.parseDouble(values[0].trim());
+            final int burst = (values.length > 1) ? Integer.parseInt(values[1].trim()) : 0;
+            final int maxConnections = (values.length > 2) ? Integer.parseInt(values[2].trim()) : 0;
+            return new AdmissionControl(rate, burst, maxConnections);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Illegal admission control specification: " + spec); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Tries to admit a new connection from the given source address. If the
+     * connection is admitted it has to be released by {@link #release()}
+     * after it is handled.
+     *
+     * @param source
+     *            the address the connection was received from
+     * @return true if the connection is admitted, false if it should be
+     *         rejected
+     */
+    public boolean tryAcquire(final InetAddress source) {
+        if (!this.tryAcquireGlobal()) {
+            return false;
+        }
+        if ((this.connectionsPerSecond > 0) && !this.tryTakeToken(source)) {
+            this.release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Releases a connection which was admitted by
+     * {@link #tryAcquire(InetAddress)}.
+     */
+    public void release() {
+        this.activeConnections.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of admitted connections which are not released yet.
+     *
+     * @return the number of active connections
+     */
+    public int getActiveConnections() {
+        return this.activeConnections.get();
+    }
+
+    /**
+     * Wraps the given handling task of an admitted connection into a task
+     * which releases the connection after the given task has finished.
+     *
+     * @param task
+     *            the task which handles an admitted connection
+     * @return the task which releases the connection afterwards
+     */
+    public Runnable releaseAfter(final Runnable task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    AdmissionControl.this.release();
+                }
+            }
+        };
+    }
+
+    private boolean tryAcquireGlobal() {
+        if (this.maxConnections == 0) {
+            this.activeConnections.incrementAndGet();
+            return true;
+        }
+        int active;
+        do {
+            active = this.activeConnections.get();
+            if (active >= this.maxConnections) {
+                return false;
+            }
+        } while (!this.activeConnections.compareAndSet(active, active + 1));
+        return true;
+    }
+
+    private boolean tryTakeToken(final InetAddress source) {
+        final long now = System.nanoTime();
+        this.sweepIfDue(now);
+        TokenBucket bucket = this.buckets.get(source);
+        if (bucket == null) {
+            final TokenBucket newBucket = new TokenBucket(this.burst, now);
+            bucket = this.buckets.putIfAbsent(source, newBucket);
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        }
+        return bucket.tryTake(now, this.connectionsPerSecond, this.burst);
+    }
+
+    private void sweepIfDue(final long now) {
+        final long nextSweep = this.nextSweepNanos.get();
+        if ((now - nextSweep < 0) || !this.nextSweepNanos.compareAndSet(nextSweep, now + SWEEP_INTERVAL_IN_NANOS)) {
+            return;
+        }
+        // a source which races with the removal of its bucket at most gets a
+        // fresh bucket, the idle bucket would have been full anyway
+        final Iterator<TokenBucket> iterator = this.buckets.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isFull(now, this.connectionsPerSecond, this.burst)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Token bucket of a single source address.
+     */
+    private static final class TokenBucket {
+        private double tokens;
+        private long lastRefillNanos;
+
+        TokenBucket(final double tokens, final long now) {
+            this.tokens = tokens;
+            this.lastRefillNanos = now;
+        }
+
+        synchronized boolean tryTake(final long now, final double rate, final double burst) {
+            this.refill(now, rate, burst);
+            if (this.tokens < 1.0) {
+                return false;
+            }
+            this.tokens -= 1.0;
+            return true;
+        }
+
+        synchronized boolean isFull(final long now, final double rate, final double burst) {
+            this.refill(now, rate, burst);
+            return this.tokens >= burst;
+        }
+
+        private void refill(final long now, final double rate, final double burst) {
+            final long elapsedNanos = now - this.lastRefillNanos;
+            if (elapsedNanos > 0) {
+                this.tokens = Math.min(burst, this.tokens + (elapsedNanos * rate) / TimeUnit.SECONDS.toNanos(1));
+                this.lastRefillNanos = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.socketlistener;
+
+import de.fhkn.in.uce.core.metrics.Counter;
+import de.fhkn.in.uce.core.metrics.Histogram;
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+
+/**
+ * The metrics of the connections which are accepted at one port, recorded in
+ * the {@link MetricsRegistry#getShared() shared registry} with the prefix
+ * {@code socketlistener.<port>}. Accepted and rejected connections are
+ * counted, a task is counted as active between {@link #taskStarted()} and
+ * {@link #taskFinished(long)} and its duration is recorded. Listeners of the
+ * same port share the same metrics.
+ *
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class ListenerMetrics {
+    private final Counter acceptedConnections;
+    private final Counter rejectedByAdmission;
+    private final Counter rejectedByExecutor;
+    private final Counter activeTasks;
+    private final Histogram taskDurations;
+
+    /**
+     * Creates the metrics for the given port.
+     *
+     * @param port
+     *            the local port the connections are accepted at
+     */
+    public ListenerMetrics(final int port) {
+        final MetricsRegistry registry = MetricsRegistry.getShared();
+        final String prefix = "socketlistener." + port + "."; //$NON-NLS-1$ //$NON-NLS-2$
+        this.acceptedConnections = registry.counter(prefix + "accepted"); //$NON-NLS-1$
+        this.rejectedByAdmission = registry.counter(prefix + "rejected_admission"); //$NON-NLS-1$
+        this.rejectedByExecutor = registry.counter(prefix + "rejected_executor"); //$NON-NLS-1$
+        this.activeTasks = registry.upDownCounter(prefix + "active_tasks"); //$NON-NLS-1$
+        this.taskDurations = registry.histogram(prefix + "task_duration_micros"); //$NON-NLS-1$
+    }
+
+    /**
+     * Counts an accepted connection.
+     */
+    public void accepted() {
+        this.acceptedConnections.increment();
+    }
+
+    /**
+     * Counts a connection which was not admitted by an
+     * {@link AdmissionControl}.
+     */
+    public void rejectedByAdmission() {
+        this.rejectedByAdmission.increment();
+    }
+
+    /**
+     * Counts a connection whose task was rejected by the executor.
+     */
+    public void rejectedByExecutor() {
+        this.rejectedByExecutor.increment();
+    }
+
+    /**
+     * Counts a task as active.
+     *
+     * @return the start time of the task which has to be passed to
+     *         {@link #taskFinished(long)}
+     */
+    public long taskStarted() {
+        this.activeTasks.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the duration of a task which is no longer active.
+     *
+     * @param startNanos
+     *            the start time returned by {@link #taskStarted()}
+     */
+    public void taskFinished(final long startNanos) {
+        this.taskDurations.record((System.nanoTime() - startNanos) / 1000);
+        this.activeTasks.decrement();
+    }
+}
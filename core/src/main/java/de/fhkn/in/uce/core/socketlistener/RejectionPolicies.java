@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.socketlistener;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhkn.in.uce.core.concurrent.ThreadGroupThreadFactory;
+import de.fhkn.in.uce.stun.attribute.ErrorCode;
+import de.fhkn.in.uce.stun.attribute.ErrorCode.STUNErrorCode;
+import de.fhkn.in.uce.stun.header.MessageHeader;
+import de.fhkn.in.uce.stun.header.MessageMethod;
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageStaticFactory;
+
+/**
+ * Factory methods for the common {@link RejectionPolicy}s.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class RejectionPolicies {
+    private static final Logger logger = LoggerFactory.getLogger(RejectionPolicies.class);
+    private static final RejectionPolicy CLOSE_CONNECTION = new CloseConnectionPolicy();
+
+    private RejectionPolicies() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Returns a policy which closes rejected connections right away.
+     *
+     * @return the policy which closes rejected connections
+     */
+    public static RejectionPolicy closeConnection() {
+        return CLOSE_CONNECTION;
+    }
+
+    /**
+     * Returns a policy which stops accepting connections until the executor
+     * takes the rejected task. Meanwhile new connections queue up in the
+     * backlog of the server socket, so clients see a growing latency instead
+     * of an error. The connection is closed if the executor is shut down or
+     * the listener is interrupted while waiting.
+     *
+     * @param pauseInMillis
+     *            the time to wait before the task is passed to the executor
+     *            again
+     * @return the policy which pauses accepting connections
+     */
+    public static RejectionPolicy pauseAccepting(final long pauseInMillis) {
+        return new PauseAcceptingPolicy(pauseInMillis);
+    }
+
+    /**
+     * Returns a policy which answers the first request of a rejected
+     * connection with a failure response and closes it afterwards. The
+     * request is read by a single thread of the policy with a short timeout,
+     * only its header is decoded, so the method of the request does not have
+     * to be known. Its attributes are read and discarded, so closing the
+     * connection does not reset it before the client got the response. If
+     * this thread is busy too, connections are closed without response.
+     *
+     * @param errorCode
+     *            the error code of the failure response
+     * @param reasonPhrase
+     *            the reason phrase of the failure response
+     * @return the policy which responds with an error
+     */
+    public static RejectionPolicy respondWithError(final STUNErrorCode errorCode, final String reasonPhrase) {
+        return new ErrorResponsePolicy(errorCode, reasonPhrase);
+    }
+
+    static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        } catch (final IOException ignore) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * Policy which closes rejected connections.
+     */
+    private static final class CloseConnectionPolicy implements RejectionPolicy {
+        @Override
+        public boolean rejected(final Socket socket, final Runnable task, final ExecutorService executor) {
+            logger.warn("Closing connection from {}, no worker available", socket.getRemoteSocketAddress()); //$NON-NLS-1$
+            closeQuietly(socket);
+            return false;
+        }
+    }
+
+    /**
+     * Policy which waits until the executor takes the task.
+     */
+    private static final class PauseAcceptingPolicy implements RejectionPolicy {
+        private final long pauseInMillis;
+
+        PauseAcceptingPolicy(final long pauseInMillis) {
+            if (pauseInMillis <= 0) {
+                throw new IllegalArgumentException("Pause must be positive: " + pauseInMillis); //$NON-NLS-1$
+            }
+            this.pauseInMillis = pauseInMillis;
+        }
+
+        @Override
+        public boolean rejected(final Socket socket, final Runnable task, final ExecutorService executor) {
+            logger.debug("No worker available, pausing to accept connections"); //$NON-NLS-1$
+            while (!executor.isShutdown()) {
+                try {
+                    Thread.sleep(this.pauseInMillis);
+                    executor.execute(task);
+                    return true;
+                } catch (final RejectedExecutionException e) {
+                    // still busy
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            closeQuietly(socket);
+            return false;
+        }
+    }
+
+    /**
+     * Policy which responds to the first request with a failure response.
+     */
+    private static final class ErrorResponsePolicy implements RejectionPolicy {
+        private static final int READ_TIMEOUT_IN_MILLIS = 1000;
+        private static final int DISCARD_BUFFER_SIZE = 512;
+        private static final int MAX_PENDING_RESPONSES = 64;
+        private static final int MESSAGE_TYPE_MASK = 0x3FFF;
+        private static final int MESSAGE_CLASS_MASK = 0x0110;
+        private static final int MESSAGE_METHOD_MASK = 0x3EEF;
+        private final STUNErrorCode errorCode;
+        private final String reasonPhrase;
+        private final ThreadPoolExecutor responder;
+
+        ErrorResponsePolicy(final STUNErrorCode errorCode, final String reasonPhrase) {
+            this.errorCode = errorCode;
+            this.reasonPhrase = reasonPhrase;
+            this.responder = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+                    MAX_PENDING_RESPONSES), new ThreadGroupThreadFactory());
+            this.responder.allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public boolean rejected(final Socket socket, final Runnable task, final ExecutorService executor) {
+            try {
+                this.responder.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        ErrorResponsePolicy.this.respond(socket);
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                closeQuietly(socket);
+            }
+            return false;
+        }
+
+        private void respond(final Socket socket) {
+            try {
+                final long deadline = System.currentTimeMillis() + READ_TIMEOUT_IN_MILLIS;
+                socket.setSoTimeout(READ_TIMEOUT_IN_MILLIS);
+                final byte[] header = new byte[MessageHeader.HEADER_LENGTH];
+                new DataInputStream(socket.getInputStream()).readFully(header);
+                final ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+                final Message response = this.createFailureResponse(headerBuffer);
+                if (response != null) {
+                    // unread bytes would make close() reset the connection
+                    // and the client could lose the response
+                    discard(socket, headerBuffer.getShort(2) & 0xFFFF, deadline);
+                    response.writeTo(socket.getOutputStream());
+                    logger.warn("Rejected request from {} with {}", socket.getRemoteSocketAddress(), //$NON-NLS-1$
+                            this.errorCode);
+                }
+            } catch (final IOException e) {
+                logger.debug("Could not respond to rejected connection: {}", e.getMessage()); //$NON-NLS-1$
+            } finally {
+                closeQuietly(socket);
+            }
+        }
+
+        /**
+         * Reads and discards the given number of bytes. All reads together
+         * may take until the deadline.
+         */
+        private static void discard(final Socket socket, final int length, final long deadline) throws IOException {
+            final InputStream in = socket.getInputStream();
+            final byte[] buffer = new byte[Math.min(length, DISCARD_BUFFER_SIZE)];
+            int remaining = length;
+            while (remaining > 0) {
+                final long timeout = deadline - System.currentTimeMillis();
+                if (timeout <= 0) {
+                    throw new SocketTimeoutException("Request was not read in time"); //$NON-NLS-1$
+                }
+                socket.setSoTimeout((int) timeout);
+                final int read = in.read(buffer, 0, Math.min(remaining, buffer.length));
+                if (read < 0) {
+                    throw new EOFException("Request ended before its attributes"); //$NON-NLS-1$
+                }
+                remaining -= read;
+            }
+        }
+
+        private Message createFailureResponse(final ByteBuffer header) throws IOException {
+            final int messageType = header.getShort(0) & 0xFFFF;
+            if (((messageType & ~MESSAGE_TYPE_MASK) != 0) || ((messageType & MESSAGE_CLASS_MASK) != 0)
+                    || (header.getInt(4) != MessageHeader.MAGIC_COOKIE)) {
+                // not a stun request
+                return null;
+            }
+            final byte[] transactionId = new byte[header.capacity() - 8];
+            header.position(8);
+            header.get(transactionId);
+            final Message response = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.FAILURE_RESPONSE,
+                    new EncodedMethod(messageType & MESSAGE_METHOD_MASK), transactionId);
+            response.addAttribute(new ErrorCode(this.errorCode, this.reasonPhrase));
+            return response;
+        }
+    }
+
+    /**
+     * The method of a request which is only known by its encoding.
+     */
+    private static final class EncodedMethod implements MessageMethod {
+        private final int encoded;
+
+        EncodedMethod(final int encoded) {
+            this.encoded = encoded;
+        }
+
+        @Override
+        public int encode() {
+            return this.encoded;
+        }
+    }
+}
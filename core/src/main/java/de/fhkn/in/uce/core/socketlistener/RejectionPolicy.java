@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.socketlistener;
+
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Handles an accepted connection whose handling task was rejected by the
+ * executor of a {@link SocketListener}, e.g. because all threads of a bounded
+ * {@link WorkerPool} are busy and its queue is full. Implementations for
+ * common cases are provided by {@link RejectionPolicies}.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public interface RejectionPolicy {
+
+    /**
+     * Handles the rejected task of the given connection. The policy either
+     * manages to execute the task after all or takes care that the socket
+     * gets closed. The method is called by the thread of the
+     * {@link SocketListener}, so no further connections are accepted while it
+     * runs.
+     *
+     * @param socket
+     *            the accepted connection
+     * @param task
+     *            the rejected task which handles the connection
+     * @param executor
+     *            the executor which rejected the task
+     * @return true if the task was executed after all, false if the
+     *         connection was rejected
+     */
+    boolean rejected(Socket socket, Runnable task, ExecutorService executor);
+}
@@ -21,17 +21,30 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.net.ServerSocketFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+
 /**
  * A {@link SocketListener} is a thread that waits for incoming connections over
  * a server socket. If such a connection is established, it starts a task via the
  * executor framework to handle it. The server socket, executor and a factory
- * for handling tasks are configurable.
+ * for handling tasks are configurable. Optionally an {@link AdmissionControl}
+ * decides whether a connection is handled at all, rejected connections are
+ * closed right away without creating a task for them. If the executor rejects
+ * a task, e.g. because it is bounded by a {@link WorkerPool}, a
+ * {@link RejectionPolicy} decides what happens to the connection.
+ * 
+ * <p>
+ * The listener counts accepted and rejected connections, active tasks and
+ * the duration of the tasks in the {@link MetricsRegistry#getShared() shared
+ * registry}, prefixed by {@code socketlistener.<port>}.
+ * </p>
  *
  * @author thomas zink, daniel maier
  */
@@ -40,6 +53,10 @@ public class SocketListener extends Thread {
     private final ServerSocket server;
     private final ExecutorService executor;
     private final SocketTaskFactory tasks;
+    private final AdmissionControl admissionControl;
+    private final RejectionPolicy rejectionPolicy;
+    // set when the listener starts, as the server socket may be bound later
+    private ListenerMetrics metrics;
 
     /**
      * Creates a new {@link SocketListener}.
@@ -58,12 +75,72 @@ public class SocketListener extends Thread {
             ServerSocket server,
             final ExecutorService executor,
             final SocketTaskFactory taskFactory) {
+        this(server, executor, taskFactory, null);
+    }
+
+    /**
+     * Creates a new {@link SocketListener} which only handles the connections
+     * admitted by the given {@link AdmissionControl}.
+     *
+     * @param server
+     *            the server socket on that this {@link ListenerThread} should
+     *            wait for new connections
+     * @param executor
+     *            the executor that is used to execute the handling tasks
+     * @param taskFactory
+     *            factory that is used to create the handling tasks
+     * @param admissionControl
+     *            decides which connections are handled, null to handle all
+     *            connections
+     * @throws NullPointerException
+     *             if one of the parameters except the admission control is
+     *             null
+     */
+    public SocketListener(
+            ServerSocket server,
+            final ExecutorService executor,
+            final SocketTaskFactory taskFactory,
+            final AdmissionControl admissionControl) {
+        this(server, executor, taskFactory, admissionControl, null);
+    }
+
+    /**
+     * Creates a new {@link SocketListener} which only handles the connections
+     * admitted by the given {@link AdmissionControl} and hands the connections
+     * whose tasks are rejected by the executor over to the given
+     * {@link RejectionPolicy}.
+     *
+     * @param server
+     *            the server socket on that this {@link ListenerThread} should
+     *            wait for new connections
+     * @param executor
+     *            the executor that is used to execute the handling tasks, e.g.
+     *            created by {@link WorkerPool#newExecutor()}
+     * @param taskFactory
+     *            factory that is used to create the handling tasks
+     * @param admissionControl
+     *            decides which connections are handled, null to handle all
+     *            connections
+     * @param rejectionPolicy
+     *            handles connections whose tasks are rejected by the executor,
+     *            null to close them
+     * @throws NullPointerException
+     *             if the server socket, executor or task factory is null
+     */
+    public SocketListener(
+            ServerSocket server,
+            final ExecutorService executor,
+            final SocketTaskFactory taskFactory,
+            final AdmissionControl admissionControl,
+            final RejectionPolicy rejectionPolicy) {
         if ((executor == null) || (taskFactory  == null) || (server == null)) {
             throw new NullPointerException();
         }
         this.server = server;
         this.executor = executor;
         this.tasks = taskFactory;
+        this.admissionControl = admissionControl;
+        this.rejectionPolicy = (rejectionPolicy != null) ? rejectionPolicy : RejectionPolicies.closeConnection();
     }
 
 
@@ -97,20 +174,28 @@ public class SocketListener extends Thread {
     }
 
     /**
-     * Runs in a loop until the interrupt status of this thread is set or an
-     * {@link IOException} occurs. Waits for a new connection via the server socket
-     * and then executes a task to handle it via the given executor. The task is
-     * created by the {@link SocketTaskFactory} member and the accepted socket
-     * gets handed over to it. Before the thread terminates the given
-     * executor is shutdown.
+     * Runs in a loop until the interrupt status of this thread is set, an
+     * {@link IOException} occurs or the executor is shut down. Waits for a new
+     * connection via the server socket and then executes a task to handle it via
+     * the given executor. The task is created by the {@link SocketTaskFactory}
+     * member and the accepted socket gets handed over to it. Before the thread
+     * terminates the given executor is shutdown.
      */
     @Override
     public final void run() {
+        metrics = new ListenerMetrics(server.getLocalPort());
         try {
             while (!isInterrupted()) {
                 Socket s = server.accept();
-                logger.info("New connection from: {}", s);
-                executor.execute(tasks.getTask(s));
+                metrics.accepted();
+                try {
+                    handle(s);
+                } catch (RejectedExecutionException e) {
+                    // nothing will be handled anymore, terminate the listener
+                    logger.info("Executor is shut down, closing connection from: {}", s);
+                    closeQuietly(s);
+                    break;
+                }
             }
         } catch (IOException e) {
             logger.error("IOException while accepting connection: {}", e.getMessage());
@@ -120,6 +205,75 @@ public class SocketListener extends Thread {
         }
     }
 
+    private void handle(Socket s) throws IOException {
+        if (admissionControl == null) {
+            logger.info("New connection from: {}", s);
+            execute(s, tasks.getTask(s));
+        } else if (admissionControl.tryAcquire(s.getInetAddress())) {
+            logger.info("New connection from: {}", s);
+            executeAdmitted(s);
+        } else {
+            logger.debug("Rejected connection from: {}", s);
+            metrics.rejectedByAdmission();
+            closeQuietly(s);
+        }
+    }
+
+    private boolean execute(Socket s, Runnable task) {
+        Runnable measuredTask = new MeasuredTask(task);
+        try {
+            executor.execute(measuredTask);
+            return true;
+        } catch (RejectedExecutionException e) {
+            if (executor.isShutdown()) {
+                throw e;
+            }
+            metrics.rejectedByExecutor();
+            return rejectionPolicy.rejected(s, measuredTask, executor);
+        }
+    }
+
+    private void executeAdmitted(Socket s) throws IOException {
+        boolean executed = false;
+        try {
+            executed = execute(s, admissionControl.releaseAfter(tasks.getTask(s)));
+        } finally {
+            if (!executed) {
+                admissionControl.release();
+            }
+        }
+    }
+
+    private static void closeQuietly(Socket s) {
+        try {
+            s.close();
+        } catch (IOException ignore) {
+            /* nop */
+        }
+    }
+
+    /**
+     * Wraps a handling task to count it as active while it runs and to
+     * record its duration.
+     */
+    private final class MeasuredTask implements Runnable {
+        private final Runnable task;
+
+        MeasuredTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long start = metrics.taskStarted();
+            try {
+                task.run();
+            } finally {
+                metrics.taskFinished(start);
+            }
+        }
+    }
+
     /**
      * Terminates this thread by closing the given server socket.
      */
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.socketlistener;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import de.fhkn.in.uce.stun.attribute.ErrorCode.STUNErrorCode;
+
+/**
+ * Configuration of a bounded pool of worker threads which handle the
+ * connections accepted by a {@link SocketListener}. At most the given number
+ * of connections are handled at once, further connections wait in a queue of
+ * the given capacity. If the queue is full too, the {@link RejectionPolicy}
+ * decides what happens to the connection. So overload leads to growing
+ * latency or rejected connections instead of an unbounded number of threads.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class WorkerPool {
+    /**
+     * Name of the policy which closes rejected connections.
+     */
+    public static final String CLOSE_POLICY = "close"; //$NON-NLS-1$
+    /**
+     * Name of the policy which pauses accepting connections.
+     */
+    public static final String PAUSE_POLICY = "pause"; //$NON-NLS-1$
+    /**
+     * Name of the policy which responds with an error to rejected requests.
+     */
+    public static final String RESPOND_POLICY = "respond"; //$NON-NLS-1$
+    private static final long KEEP_ALIVE_IN_SECONDS = 60;
+    private static final long PAUSE_IN_MILLIS = 10;
+    private static final String SPEC_SEPARATOR = ","; //$NON-NLS-1$
+    private final int maxThreads;
+    private final int queueCapacity;
+    private final RejectionPolicy rejectionPolicy;
+
+    /**
+     * Creates a {@link WorkerPool}.
+     *
+     * @param maxThreads
+     *            the maximum number of worker threads
+     * @param queueCapacity
+     *            the number of connections which can wait for a worker, 0 if
+     *            connections are rejected as soon as all workers are busy
+     * @param rejectionPolicy
+     *            the policy for connections which are rejected
+     * @throws IllegalArgumentException
+     *             if the number of threads is not positive or the queue
+     *             capacity is negative
+     * @throws NullPointerException
+     *             if the rejection policy is null
+     */
+    public WorkerPool(final int maxThreads, final int queueCapacity, final RejectionPolicy rejectionPolicy) {
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("Maximum threads must be positive: " + maxThreads); //$NON-NLS-1$
+        }
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("Queue capacity must not be negative: " + queueCapacity); //$NON-NLS-1$
+        }
+        if (rejectionPolicy == null) {
+            throw new NullPointerException();
+        }
+        this.maxThreads = maxThreads;
+        this.queueCapacity = queueCapacity;
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    /**
+     * Creates a {@link WorkerPool} from a specification of the form
+     * {@code maxThreads,queueCapacity,policy}, e.g. {@code 200,1000,respond}.
+     * The policy is one of {@value #CLOSE_POLICY}, {@value #PAUSE_POLICY} or
+     * {@value #RESPOND_POLICY} and defaults to {@value #RESPOND_POLICY} which
+     * responds with an INSUFFICIENT-CAPACITY error.
+     *
+     * @param spec
+     *            the specification
+     * @return the worker pool for the given specification
+     * @throws IllegalArgumentException
+     *             if the specification is malformed
+     */
+    public static WorkerPool valueOf(final String spec) {
+        final String[] values = spec.split(SPEC_SEPARATOR);
+        if ((values.length < 2) || (values.length > 3)) {
+            throw new IllegalArgumentException("Illegal worker pool specification: " + spec); //$NON-NLS-1$
+        }
+        final int maxThreads;
+        final int queueCapacity;
+        try {
+            maxThreads = Integer.parseInt(values[0].trim());
+            queueCapacity = Integer.parseInt(values[1].trim());
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Illegal worker pool specification: " + spec); //$NON-NLS-1$
+        }
+        final String policy = (values.length > 2) ? values[2].trim() : RESPOND_POLICY;
+        return new WorkerPool(maxThreads, queueCapacity, createRejectionPolicy(policy));
+    }
+
+    private static RejectionPolicy createRejectionPolicy(final String policy) {
+        if (CLOSE_POLICY.equals(policy)) {
+            return RejectionPolicies.closeConnection();
+        } else if (PAUSE_POLICY.equals(policy)) {
+            return RejectionPolicies.pauseAccepting(PAUSE_IN_MILLIS);
+        } else if (RESPOND_POLICY.equals(policy)) {
+            return RejectionPolicies.respondWithError(STUNErrorCode.INSUFFICIENT_CAPACITY, "Insufficient Capacity"); //$NON-NLS-1$
+        }
+        throw new IllegalArgumentException("Unknown rejection policy: " + policy); //$NON-NLS-1$
+    }
+
+    /**
+     * Creates a new executor with the bounds of this pool. Idle threads
+     * terminate after a minute. The executor rejects tasks by throwing a
+     * {@link java.util.concurrent.RejectedExecutionException}, which the
+     * {@link SocketListener} hands over to the {@link RejectionPolicy}.
+     *
+     * @return the new executor
+     */
+    public ExecutorService newExecutor() {
+        final BlockingQueue<Runnable> queue;
+        if (this.queueCapacity == 0) {
+            queue = new SynchronousQueue<Runnable>();
+        } else {
+            queue = new ArrayBlockingQueue<Runnable>(this.queueCapacity);
+        }
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(this.maxThreads, this.maxThreads,
+                KEEP_ALIVE_IN_SECONDS, TimeUnit.SECONDS, queue);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Returns the policy for rejected connections.
+     *
+     * @return the rejection policy
+     */
+    public RejectionPolicy getRejectionPolicy() {
+        return this.rejectionPolicy;
+    }
+
+    /**
+     * Returns the maximum number of worker threads.
+     *
+     * @return the maximum number of threads
+     */
+    public int getMaxThreads() {
+        return this.maxThreads;
+    }
+
+    /**
+     * Returns the number of connections which can wait for a worker.
+     *
+     * @return the capacity of the queue
+     */
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ExecutionMode}.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public class ExecutionModeTest {
+
+    @After
+    public void tearDown() {
+        System.clearProperty(ExecutionMode.VIRTUAL_THREADS_PROPERTY);
+    }
+
+    @Test
+    public void testPlatformThreadsByDefault() {
+        assertFalse(ExecutionMode.isVirtualThreadsEnabled());
+        final ExecutorService executor = ExecutionMode.newCachedThreadPool();
+        assertTrue(executor instanceof ThreadPoolExecutor);
+        executor.shutdown();
+        assertTrue(ExecutionMode.newThreadFactory() instanceof ThreadGroupThreadFactory);
+    }
+
+    @Test
+    public void testVirtualThreadsIfSupported() throws Exception {
+        System.setProperty(ExecutionMode.VIRTUAL_THREADS_PROPERTY, "true"); //$NON-NLS-1$
+        assertEquals(ExecutionMode.isVirtualThreadsSupported(), ExecutionMode.isVirtualThreadsEnabled());
+        final ExecutorService executor = ExecutionMode.newCachedThreadPool();
+        final Future<Boolean> daemon = executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return Thread.currentThread().isDaemon();
+            }
+        });
+        // virtual threads are always daemon threads, the cached pool ones not
+        assertEquals(ExecutionMode.isVirtualThreadsSupported(), daemon.get());
+        executor.shutdown();
+        assertTrue(ExecutionMode.newThreadFactory().newThread(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).isDaemon());
+    }
+}
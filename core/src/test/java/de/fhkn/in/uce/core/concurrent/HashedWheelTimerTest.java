@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link HashedWheelTimer}.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public class HashedWheelTimerTest {
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        // runs the expired tasks in the timer thread
+        this.timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 8, new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        this.timer.stop();
+    }
+
+    @Test
+    public void testTimeoutExpires() throws InterruptedException {
+        final CountDownLatch expired = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        final Timeout timeout = this.timer.newTimeout(new CountDownTask(expired), 50, TimeUnit.MILLISECONDS);
+        assertTrue(expired.await(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void testFirstTimeoutOfInterruptedThread() throws InterruptedException {
+        // the first timeout starts the timer and waits for its start time
+        final CountDownLatch expired = new CountDownLatch(1);
+        Thread.currentThread().interrupt();
+        final Timeout timeout;
+        try {
+            timeout = this.timer.newTimeout(new CountDownTask(expired), 50, TimeUnit.MILLISECONDS);
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        assertTrue(expired.await(1, TimeUnit.SECONDS));
+        assertTrue(timeout.isExpired());
+    }
+
+    @Test
+    public void testTimeoutAfterSeveralRounds() throws InterruptedException {
+        // the wheel spans 80 milliseconds
+        final CountDownLatch expired = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        this.timer.newTimeout(new CountDownTask(expired), 200, TimeUnit.MILLISECONDS);
+        assertTrue(expired.await(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void testCancelledTimeoutDoesNotExpire() throws InterruptedException {
+        final CountDownLatch expired = new CountDownLatch(1);
+        final Timeout timeout = this.timer.newTimeout(new CountDownTask(expired), 50, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertFalse(expired.await(200, TimeUnit.MILLISECONDS));
+        assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    public void testPeriodicTimeout() throws InterruptedException {
+        final CountDownLatch expired = new CountDownLatch(3);
+        final Timeout timeout = this.timer.newPeriodicTimeout(new CountDownTask(expired), 0, 20,
+                TimeUnit.MILLISECONDS);
+        assertTrue(expired.await(1, TimeUnit.SECONDS));
+        timeout.cancel();
+        final AtomicInteger runs = new AtomicInteger();
+        final Timeout cancelled = this.timer.newPeriodicTimeout(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 50, 20, TimeUnit.MILLISECONDS);
+        cancelled.cancel();
+        Thread.sleep(150);
+        assertEquals(0, runs.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStoppedTimer() {
+        this.timer.newTimeout(new CountDownTask(new CountDownLatch(1)), 10, TimeUnit.MILLISECONDS);
+        this.timer.stop();
+        this.timer.newTimeout(new CountDownTask(new CountDownLatch(1)), 10, TimeUnit.MILLISECONDS);
+    }
+
+    private static final class CountDownTask implements Runnable {
+        private final CountDownLatch latch;
+
+        CountDownTask(final CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            this.latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.events;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link FlightEvents} without a {@link FlightEventProvider} on the
+ * class path.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public class FlightEventsTest {
+
+    @Test
+    public void testDisabledWithoutProvider() {
+        for (final FlightEventType type : FlightEventType.values()) {
+            final FlightEvent event = FlightEvents.begin(type);
+            assertSame(FlightEvents.disabled(), event);
+            assertFalse(event.isEnabled());
+            event.commit("subject", "outcome", 0); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+}
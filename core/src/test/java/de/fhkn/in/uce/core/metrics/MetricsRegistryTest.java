@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageReader;
+import de.fhkn.in.uce.stun.message.MessageStaticFactory;
+import de.fhkn.in.uce.stun.message.MessageTraffic;
+import de.fhkn.in.uce.stun.message.MessageTrafficListener;
+
+/**
+ * Tests the {@link MetricsRegistry} and its metrics.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public class MetricsRegistryTest {
+    private MetricsRegistry registry;
+
+    @Before
+    public void setUp() {
+        this.registry = new MetricsRegistry();
+    }
+
+    @Test
+    public void testCounterIsSharedByName() throws InterruptedException {
+        final Counter counter = this.registry.counter("test.count"); //$NON-NLS-1$
+        assertSame(counter, this.registry.counter("test.count")); //$NON-NLS-1$
+        final int threads = 4;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        counter.increment();
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(40000, this.registry.getCounters().get("test.count").sum()); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testGauges() {
+        this.registry.gauge("test.gauge", new Gauge() { //$NON-NLS-1$
+            @Override
+            public long getValue() {
+                return 42;
+            }
+        });
+        final Counter active = this.registry.upDownCounter("test.active"); //$NON-NLS-1$
+        active.increment();
+        active.increment();
+        active.decrement();
+        assertEquals(Long.valueOf(42), this.registry.getGaugeValues().get("test.gauge")); //$NON-NLS-1$
+        assertEquals(Long.valueOf(1), this.registry.getGaugeValues().get("test.active")); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testExecutorGauges() {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        this.registry.registerExecutor("test.pool", executor); //$NON-NLS-1$
+        assertEquals(Long.valueOf(0), this.registry.getGaugeValues().get("test.pool.queued")); //$NON-NLS-1$
+        assertEquals(4, this.registry.getGaugeValues().size());
+        executor.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalName() {
+        this.registry.counter("test count"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testHistogram() {
+        final Histogram histogram = this.registry.histogram("test.latency"); //$NON-NLS-1$
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-1);
+        assertEquals(101, histogram.getCount());
+        assertEquals(5050, histogram.getSum());
+        // 50 lies in the bucket (32, 64], 100 in (64, 128]
+        assertEquals(64, histogram.getPercentile(50));
+        assertEquals(128, histogram.getPercentile(100));
+        final long[] counts = histogram.getBucketCounts();
+        assertEquals(2, counts[0]);
+        assertEquals(1, counts[1]);
+        assertEquals(32, counts[6]);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testMessageMetrics() throws Exception {
+        final MessageReader reader = MessageReader.createMessageReader();
+        final Message request = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.BINDING);
+        final MessageTrafficListener previous = MessageTraffic.getListener();
+        MessageTraffic.setListener(new MessageMetrics(this.registry));
+        try {
+            reader.readSTUNMessage(request.toByteArray());
+            reader.readSTUNMessage(request.toByteArray());
+        } finally {
+            MessageTraffic.setListener(previous);
+        }
+        assertEquals(2, this.registry.getCounters().get("stun.read.binding.messages").sum()); //$NON-NLS-1$
+        assertEquals(40, this.registry.getCounters().get("stun.read.binding.bytes").sum()); //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.runtime;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhkn.in.uce.core.socketlistener.WorkerPool;
+
+/**
+ * Tests the {@link ServerContext}.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public class ServerContextTest {
+    private ServerContext context;
+
+    @Before
+    public void setUp() {
+        this.context = ServerContext.create(WorkerPool.valueOf("2,4,close")); //$NON-NLS-1$
+    }
+
+    @After
+    public void tearDown() {
+        this.context.shutdownNow();
+    }
+
+    @Test
+    public void testServerCannotShutDownSharedExecutors() throws InterruptedException {
+        final ExecutorService handler = this.context.getHandlerExecutor();
+        final ExecutorService blocking = this.context.getBlockingExecutor();
+        handler.shutdown();
+        blocking.shutdownNow();
+        assertFalse(handler.isShutdown());
+        final CountDownLatch executed = new CountDownLatch(2);
+        handler.execute(new CountDownTask(executed));
+        blocking.execute(new CountDownTask(executed));
+        assertTrue(executed.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdownTerminatesExecutors() throws InterruptedException {
+        final CountDownLatch executed = new CountDownLatch(1);
+        this.context.getBlockingExecutor().execute(new CountDownTask(executed));
+        this.context.shutdown();
+        assertTrue(this.context.awaitTermination(1, TimeUnit.SECONDS));
+        assertTrue(this.context.getHandlerExecutor().isTerminated());
+        assertTrue(this.context.getBlockingExecutor().isTerminated());
+        assertTrue(executed.await(0, TimeUnit.SECONDS));
+    }
+
+    private static final class CountDownTask implements Runnable {
+        private final CountDownLatch latch;
+
+        CountDownTask(final CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            this.latch.countDown();
+        }
+    }
+}
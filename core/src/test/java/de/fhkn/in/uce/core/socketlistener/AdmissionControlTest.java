@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.socketlistener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link AdmissionControl}.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public class AdmissionControlTest {
+    private InetAddress firstSource;
+    private InetAddress secondSource;
+
+    @Before
+    public void setUp() throws Exception {
+        this.firstSource = InetAddress.getByName("10.0.0.1"); //$NON-NLS-1$
+        this.secondSource = InetAddress.getByName("10.0.0.2"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testBurstPerSource() {
+        final AdmissionControl admissionControl = new AdmissionControl(0.001, 3, 0);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(admissionControl.tryAcquire(this.firstSource));
+        }
+        assertFalse(admissionControl.tryAcquire(this.firstSource));
+        assertTrue(admissionControl.tryAcquire(this.secondSource));
+        assertEquals(4, admissionControl.getActiveConnections());
+    }
+
+    @Test
+    public void testRefill() throws InterruptedException {
+        final AdmissionControl admissionControl = new AdmissionControl(20, 1, 0);
+        assertTrue(admissionControl.tryAcquire(this.firstSource));
+        assertFalse(admissionControl.tryAcquire(this.firstSource));
+        Thread.sleep(100);
+        assertTrue(admissionControl.tryAcquire(this.firstSource));
+    }
+
+    @Test
+    public void testMaxConnections() {
+        final AdmissionControl admissionControl = new AdmissionControl(0, 0, 2);
+        assertTrue(admissionControl.tryAcquire(this.firstSource));
+        assertTrue(admissionControl.tryAcquire(this.secondSource));
+        assertFalse(admissionControl.tryAcquire(this.firstSource));
+        admissionControl.release();
+        assertTrue(admissionControl.tryAcquire(this.firstSource));
+    }
+
+    @Test
+    public void testRejectedByBucketDoesNotCount() {
+        final AdmissionControl admissionControl = new AdmissionControl(0.001, 1, 10);
+        assertTrue(admissionControl.tryAcquire(this.firstSource));
+        assertFalse(admissionControl.tryAcquire(this.firstSource));
+        assertEquals(1, admissionControl.getActiveConnections());
+    }
+
+    @Test
+    public void testReleaseAfter() {
+        final AdmissionControl admissionControl = new AdmissionControl(0, 0, 1);
+        assertTrue(admissionControl.tryAcquire(this.firstSource));
+        try {
+            admissionControl.releaseAfter(new Runnable() {
+                @Override
+                public void run() {
+                    throw new IllegalStateException();
+                }
+            }).run();
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+        assertEquals(0, admissionControl.getActiveConnections());
+    }
+
+    @Test
+    public void testValueOf() {
+        final AdmissionControl admissionControl = AdmissionControl.valueOf("0.001, 2, 3"); //$NON-NLS-1$
+        assertTrue(admissionControl.tryAcquire(this.firstSource));
+        assertTrue(admissionControl.tryAcquire(this.firstSource));
+        assertFalse(admissionControl.tryAcquire(this.firstSource));
+        assertTrue(admissionControl.tryAcquire(this.secondSource));
+        assertFalse(admissionControl.tryAcquire(this.secondSource));
+    }
+
+    @Test
+    public void testValueOfRateOnly() {
+        final AdmissionControl admissionControl = AdmissionControl.valueOf("1"); //$NON-NLS-1$
+        assertTrue(admissionControl.tryAcquire(this.firstSource));
+        assertFalse(admissionControl.tryAcquire(this.firstSource));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValueOfMalformed() {
+        AdmissionControl.valueOf("a,b"); //$NON-NLS-1$
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeRate() {
+        new AdmissionControl(-1, 1, 0);
+    }
+}
@@ -74,6 +74,65 @@ public class SocketListenerTest {
         verify(task).run();
     }
 
+    /**
+     * Test method for {@link SocketListener#run()} with an
+     * {@link AdmissionControl} which admits a single connection.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void testRunWithAdmissionControl() throws IOException, InterruptedException {
+        ServerSocket server = new ServerSocket(0);
+        SocketTaskFactory tf = mock(SocketTaskFactory.class);
+        Runnable task = mock(Runnable.class);
+        when(tf.getTask(isA(Socket.class))).thenReturn(task);
+        AdmissionControl admissionControl = new AdmissionControl(0.001, 1, 0);
+        SocketListener lt = new SocketListener(server, Executors.newCachedThreadPool(), tf, admissionControl);
+        lt.start();
+
+        Socket admitted = new Socket();
+        admitted.connect(new InetSocketAddress("127.0.0.1", server.getLocalPort()));
+        Socket rejected = new Socket();
+        rejected.connect(new InetSocketAddress("127.0.0.1", server.getLocalPort()));
+        // the rejected connection is closed by the listener
+        Assert.assertEquals(-1, rejected.getInputStream().read());
+        Thread.sleep(200);
+        lt.interrupt();
+        lt.join();
+        verify(task).run();
+        Assert.assertEquals(0, admissionControl.getActiveConnections());
+        admitted.close();
+    }
+
+    /**
+     * Test method for {@link SocketListener#run()} with an executor which is
+     * shut down. The accepted connection is closed and the listener
+     * terminates.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    public void testRunWithShutDownExecutor() throws IOException, InterruptedException {
+        ServerSocket server = new ServerSocket(0);
+        SocketTaskFactory tf = mock(SocketTaskFactory.class);
+        Runnable task = mock(Runnable.class);
+        when(tf.getTask(isA(Socket.class))).thenReturn(task);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        executor.shutdown();
+        SocketListener lt = new SocketListener(server, executor, tf);
+        lt.start();
+
+        Socket s = new Socket();
+        s.connect(new InetSocketAddress("127.0.0.1", server.getLocalPort()));
+        Assert.assertEquals(-1, s.getInputStream().read());
+        lt.join(5000);
+        Assert.assertFalse(lt.isAlive());
+        s.close();
+        server.close();
+    }
+
     /**
      * Test method for {@link de.fhkn.in.net.SocketListener#interrupt()}.
      */
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.core.socketlistener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import de.fhkn.in.uce.stun.attribute.Software;
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageReader;
+import de.fhkn.in.uce.stun.message.MessageStaticFactory;
+
+/**
+ * Tests the {@link WorkerPool} and the {@link RejectionPolicies}.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public class WorkerPoolTest {
+
+    @Test
+    public void testValueOf() {
+        final WorkerPool workerPool = WorkerPool.valueOf("4, 16"); //$NON-NLS-1$
+        assertEquals(4, workerPool.getMaxThreads());
+        assertEquals(16, workerPool.getQueueCapacity());
+    }
+
+    @Test
+    public void testValueOfClosePolicy() {
+        final WorkerPool workerPool = WorkerPool.valueOf("1,0,close"); //$NON-NLS-1$
+        assertTrue(workerPool.getRejectionPolicy() == RejectionPolicies.closeConnection());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValueOfUnknownPolicy() {
+        WorkerPool.valueOf("1,0,drop"); //$NON-NLS-1$
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValueOfMissingQueue() {
+        WorkerPool.valueOf("1"); //$NON-NLS-1$
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoThreads() {
+        new WorkerPool(0, 1, RejectionPolicies.closeConnection());
+    }
+
+    @Test
+    public void testExecutorIsBounded() throws InterruptedException {
+        final ExecutorService executor = new WorkerPool(1, 1, RejectionPolicies.closeConnection()).newExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        executor.execute(blocking);
+        executor.execute(blocking);
+        try {
+            executor.execute(blocking);
+            fail("Task should be rejected"); //$NON-NLS-1$
+        } catch (final RejectedExecutionException e) {
+            // expected
+        }
+        release.countDown();
+        executor.shutdown();
+    }
+
+    /**
+     * A request which can not be handled because the only worker is busy is
+     * answered with an error response.
+     */
+    @Test
+    public void testRespondWithError() throws IOException, InterruptedException {
+        final Message request = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.BINDING);
+        this.assertRespondWithError(request);
+    }
+
+    /**
+     * The attributes of a rejected request are read and discarded before the
+     * error response is sent and the connection is closed.
+     */
+    @Test
+    public void testRespondWithErrorToRequestWithAttributes() throws IOException, InterruptedException {
+        final Message request = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.BINDING);
+        final StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 32; i++) {
+            description.append("rejected request"); //$NON-NLS-1$
+        }
+        request.addAttribute(new Software(description.toString()));
+        this.assertRespondWithError(request);
+    }
+
+    private void assertRespondWithError(final Message request) throws IOException, InterruptedException {
+        final WorkerPool workerPool = WorkerPool.valueOf("1,0,respond"); //$NON-NLS-1$
+        final CountDownLatch release = new CountDownLatch(1);
+        final ServerSocket server = new ServerSocket(0);
+        final SocketListener listener = new SocketListener(server, workerPool.newExecutor(), new SocketTaskFactory() {
+            @Override
+            public Runnable getTask(final Socket s) {
+                return new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            release.await();
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                };
+            }
+        }, null, workerPool.getRejectionPolicy());
+        listener.start();
+        final InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getLocalPort()); //$NON-NLS-1$
+        final Socket busy = new Socket();
+        busy.connect(address);
+        Thread.sleep(200);
+
+        final Socket rejected = new Socket();
+        rejected.connect(address);
+        rejected.setSoTimeout(5000);
+        request.writeTo(rejected.getOutputStream());
+        final Message response = MessageReader.createMessageReader().readSTUNMessage(rejected.getInputStream());
+        assertTrue(response.isFailureResponse());
+        assertTrue(response.isMethod(STUNMessageMethod.BINDING));
+        // a reset connection would throw instead of reaching the end
+        final byte[] rest = new byte[1024];
+        while (rejected.getInputStream().read(rest) >= 0) {
+            // skip the rest of the response
+        }
+
+        release.countDown();
+        listener.interrupt();
+        listener.join();
+        busy.close();
+        rejected.close();
+    }
+}
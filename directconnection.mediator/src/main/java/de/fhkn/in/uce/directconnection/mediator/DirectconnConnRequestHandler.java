@@ -55,6 +55,8 @@ import de.fhkn.in.uce.stun.message.MessageStaticFactory;
 @ThreadSafe
 public final class DirectconnConnRequestHandler implements HandleMessage {
     private static final Logger logger = LoggerFactory.getLogger(DirectconnConnRequestHandler.class);
+    private static final DirectconnectionAttribute DIRECTCONNECTION_ATTRIBUTE = new DirectconnectionAttribute();
+    private static final EndpointClass PUBLIC_ENDPOINT_CLASS = new EndpointClass(EndpointCategory.PUBLIC);
     private final ConnectionRequestList connectionRequests = ConnectionRequestList.INSTANCE;
     private final MediatorUtil mediatorUtil = MediatorUtil.INSTANCE;
     private final UserList userList = UserList.INSTANCE;
@@ -99,7 +101,7 @@ public final class DirectconnConnRequestHandler implements HandleMessage {
                 controlConnection.getPort());
         logger.debug("Sending connection request response with {} to source", targetEndpoint.toString()); //$NON-NLS-1$
         successResponse.addAttribute(new XorMappedAddress(targetEndpoint));
-        successResponse.addAttribute(new EndpointClass(EndpointCategory.PUBLIC));
+        successResponse.addAttribute(PUBLIC_ENDPOINT_CLASS);
         successResponse.writeTo(connReq.getControlConnection().getOutputStream());
     }
 
@@ -108,7 +110,7 @@ public final class DirectconnConnRequestHandler implements HandleMessage {
         final Socket toTarget = target.getSocketToUser();
         final Message connectionRequest = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
                 STUNMessageMethod.CONNECTION_REQUEST, connectionRequestFromSource.getHeader().getTransactionId());
-        connectionRequest.addAttribute(new DirectconnectionAttribute());
+        connectionRequest.addAttribute(DIRECTCONNECTION_ATTRIBUTE);
         logger.debug("Forwarding connection request to target"); //$NON-NLS-1$
         connectionRequest.writeTo(toTarget.getOutputStream());
     }
@@ -122,6 +124,6 @@ public final class DirectconnConnRequestHandler implements HandleMessage {
 
     @Override
     public NATTraversalTechniqueAttribute getAttributeForTraversalTechnique() {
-        return new DirectconnectionAttribute();
+        return DIRECTCONNECTION_ATTRIBUTE;
     }
 }
@@ -53,6 +53,7 @@ import de.fhkn.in.uce.stun.message.MessageStaticFactory;
  */
 public final class HolePunchingConnRequestHandler implements HandleMessage {
     private static final Logger logger = LoggerFactory.getLogger(HolePunchingConnRequestHandler.class);
+    private static final HolePunchingAttribute HOLE_PUNCHING_ATTRIBUTE = new HolePunchingAttribute();
     private final ConnectionRequestList connectionRequests = ConnectionRequestList.INSTANCE;
     private final MediatorUtil mediatorUtil = MediatorUtil.INSTANCE;
     private final UserList userList = UserList.INSTANCE;
@@ -103,7 +104,7 @@ public final class HolePunchingConnRequestHandler implements HandleMessage {
         final Socket toTarget = target.getSocketToUser();
         final Message connectionRequest = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
                 STUNMessageMethod.CONNECTION_REQUEST, connectionRequestFromSource.getHeader().getTransactionId());
-        connectionRequest.addAttribute(new HolePunchingAttribute());
+        connectionRequest.addAttribute(HOLE_PUNCHING_ATTRIBUTE);
         connectionRequest.addAttribute(connectionRequestFromSource.getAttribute(Token.class));
         // public endpoint
         connectionRequest.addAttribute(this.createXorMappedAddressFromSocket(controlConnectionToSource,
@@ -134,6 +135,6 @@ public final class HolePunchingConnRequestHandler implements HandleMessage {
 
     @Override
     public NATTraversalTechniqueAttribute getAttributeForTraversalTechnique() {
-        return new HolePunchingAttribute();
+        return HOLE_PUNCHING_ATTRIBUTE;
     }
 }
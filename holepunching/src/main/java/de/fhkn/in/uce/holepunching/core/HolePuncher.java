@@ -26,12 +26,11 @@ import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import de.fhkn.in.uce.core.concurrent.ThreadGroupThreadFactory;
+import de.fhkn.in.uce.core.concurrent.ExecutionMode;
 
 /**
  * Class to establish a hole punching connection to a given endpoint. Therefore
@@ -68,7 +67,7 @@ public final class HolePuncher {
         this.connectionListener = connectionListener;
         this.localBinding = localBinding;
         this.socketQueue = socketQueue;
-        this.executor = Executors.newCachedThreadPool(new ThreadGroupThreadFactory());
+        this.executor = ExecutionMode.newDaemonCachedThreadPool();
     }
 
     /**
@@ -25,11 +25,12 @@ import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import de.fhkn.in.uce.core.concurrent.ThreadGroupThreadFactory;
+import de.fhkn.in.uce.core.concurrent.ExecutionMode;
 import de.fhkn.in.uce.holepunching.core.HolePuncher;
 import de.fhkn.in.uce.stun.attribute.Token;
 import de.fhkn.in.uce.stun.attribute.Username;
@@ -56,7 +57,7 @@ public final class HolePunchingTarget {
     // private final SocketAddress mediatorSocketAddress;
     private final String targetId;
     private final BlockingQueue<Socket> socketQueue;
-    private final ThreadGroupThreadFactory threadFactory;
+    private final ThreadFactory threadFactory;
     private Socket socketToMediator;
     private boolean started;
     private MessageHandlerTask messageHandlerTask;
@@ -75,7 +76,7 @@ public final class HolePunchingTarget {
         this.socketToMediator = controlConnection;
         this.targetId = targetId;
         this.socketQueue = new LinkedBlockingQueue<Socket>();
-        this.threadFactory = new ThreadGroupThreadFactory();
+        this.threadFactory = ExecutionMode.newThreadFactory();
         this.started = false;
     }
 
@@ -23,10 +23,12 @@ import java.util.List;
 
 import org.slf4j.Logger;
 
+import de.fhkn.in.uce.master.server.metrics.MetricsExporter;
 import de.fhkn.in.uce.master.server.util.AbstractReader;
 import de.fhkn.in.uce.master.server.util.CmdReader;
 import de.fhkn.in.uce.master.server.util.FilePropertyReader;
 import de.fhkn.in.uce.master.server.util.SystemPropertyReader;
+import de.fhkn.in.uce.relaying.server.RelayPortPool;
 
 /**
  * Class to handle arguments from file, system properties and command line args.
@@ -164,9 +166,23 @@ public class ArgumentHandler {
                 + AbstractReader.getStunFirstIP() + ",\n"
                 + AbstractReader.getStunSecondIP() + ",\n"
                 + AbstractReader.getRelayPort() + "  (optional),\n"
+                + AbstractReader.getRelayPorts() + "  (optional, min-max, default "
+                + RelayPortPool.DEFAULT_MIN_PORT + "-" + RelayPortPool.DEFAULT_MAX_PORT + "),\n"
+                + AbstractReader.getRelayAddresses() + "  (optional, comma separated, default all addresses),\n"
                 + AbstractReader.getMediatorPort() + ",\n"
                 + AbstractReader.getMediatorIteration() + ",\n"
-                + AbstractReader.getMediatorLifeTime();
+                + AbstractReader.getMediatorLifeTime() + ",\n"
+                + AbstractReader.getAdmission() + "  (optional, connectionsPerSecond,burst,maxConnections),\n"
+                + AbstractReader.getStunWorkerPool() + ", "
+                + AbstractReader.getRelayWorkerPool() + ", "
+                + AbstractReader.getMediatorWorkerPool()
+                + "  (optional, maxThreads,queueCapacity,close|pause|respond),\n"
+                + AbstractReader.getWorkerPool()
+                + "  (optional, shared by all servers, maxThreads,queueCapacity,close|pause|respond),\n"
+                + AbstractReader.getVirtualThreads() + "  (optional, true|false, needs Java 21+),\n"
+                + AbstractReader.getMetrics() + "  (optional, true|false, default true),\n"
+                + AbstractReader.getMetricsEndpoint() + "  (optional, [host:]port, default "
+                + MetricsExporter.DEFAULT_ENDPOINT + ")";
         logError(msg);
     }
 }
@@ -18,13 +18,16 @@ package de.fhkn.in.uce.master.server;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+import de.fhkn.in.uce.core.runtime.ServerContext;
+import de.fhkn.in.uce.master.server.metrics.MetricsExporter;
+import de.fhkn.in.uce.master.server.runtime.ServerComponent;
+import de.fhkn.in.uce.master.server.runtime.ServerRuntime;
 import de.fhkn.in.uce.mediator.Mediator;
 import de.fhkn.in.uce.relaying.server.RelayServer;
 import de.fhkn.in.uce.stun.server.StunServer;
@@ -32,6 +35,12 @@ import de.fhkn.in.uce.stun.server.StunServer;
 
 /**
  * Class to start a main server which starts a stun, relay and mediator server.
+ * The servers run in a {@link ServerRuntime} and share its executors, so the
+ * threads of the whole process can be bounded by one worker pool. The servers
+ * are stopped gracefully when the VM shuts down.
+ * Unless disabled, it exports the metrics of the servers via a local HTTP
+ * endpoint in the Prometheus text format and as JMX MBean, see
+ * {@link MetricsExporter}.
  *
  * @author Robert Danczak
  */
@@ -39,17 +48,17 @@ public class MasterServer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MasterServer.class);
 
-    private final int executorThreads = 3;
-    private final int terminationTime = 100;
+    private final int startupTime = 10000;
+    private final int terminationTime = 5000;
 
-    private final ExecutorService executorService;
     private ArgumentHandler argHandler;
+    private MetricsExporter metricsExporter;
+    private ServerRuntime runtime;
 
     /**
      * Creates a master server.
      */
     public MasterServer() {
-        executorService = Executors.newFixedThreadPool(executorThreads);
         argHandler = new ArgumentHandler(LOGGER);
     }
 
@@ -60,9 +69,15 @@ public class MasterServer {
      *            command line arguments.
      */
     public static void main(final String[] args) {
-        MasterServer masterServer = new MasterServer();
+        final MasterServer masterServer = new MasterServer();
         try {
             masterServer.run(args);
+            Runtime.getRuntime().addShutdownHook(new Thread("MasterServer shutdown") {
+                @Override
+                public void run() {
+                    masterServer.stop();
+                }
+            });
         } catch (Exception e) {
             LOGGER.error("An error occured during startup of the master server.");
             LOGGER.error("Execption: ", e);
@@ -72,6 +87,8 @@ public class MasterServer {
 
     /**
      * Starts the master server and its children stun, relay and mediator.
+     * Returns as soon as the servers are started. If not all servers could be
+     * started, the servers which may have started are stopped again.
      *
      * @param args
      *            command line arguments.
@@ -83,31 +100,73 @@ public class MasterServer {
             return;
         }
 
-        stunServerTask();
-        relayServerTask();
-        mediatorServerTask();
-
-        //sleep one second before shuting down the executors
+        startMetricsExporter();
+        try {
+            runtime = new ServerRuntime(ServerContext.create(ServerRuntime.getWorkerPool()));
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid worker pool: " + e.getMessage());
+            stop();
+            return;
+        }
         try {
-            Thread.sleep(1000);
+            runtime.add(stunServer());
+            runtime.add(relayServer());
+            runtime.add(mediatorServer());
+        } catch (Exception e) {
+            LOGGER.error("Could not create the servers.", e);
+            stop();
+            return;
+        }
+        try {
+            if (runtime.start(startupTime, TimeUnit.MILLISECONDS)) {
+                logInfo("Master server is ready.");
+            } else {
+                logInfo("Not all servers could be started.");
+                stop();
+            }
         } catch (InterruptedException e) {
-            //do nothing
+            Thread.currentThread().interrupt();
+            stop();
         }
-        shutdownExecutor();
     }
 
-    private void shutdownExecutor() {
-        logInfo("Shutting down executor threads.");
+    /**
+     * @return true if all servers of the master server are started.
+     */
+    public boolean isReady() {
+        return (runtime != null) && runtime.isReady();
+    }
+
+    /**
+     * Stops the servers gracefully, the running tasks get a few seconds to
+     * finish. Stops the metrics endpoint as well.
+     */
+    public synchronized void stop() {
+        if (runtime != null) {
+            logInfo("Stopping the servers.");
+            runtime.stop(terminationTime, TimeUnit.MILLISECONDS);
+        }
+        if (metricsExporter != null) {
+            metricsExporter.stop();
+            metricsExporter = null;
+        }
+    }
+
+    private void startMetricsExporter() {
+        if (!MetricsExporter.isEnabled()) {
+            logInfo("Metrics endpoint is disabled.");
+            return;
+        }
         try {
-            executorService.shutdown();
-            logInfo("Trying to force shutting down worker threads in " + terminationTime + "ms.");
-            if (!executorService.awaitTermination(terminationTime, TimeUnit.MILLISECONDS)) {
-                logInfo("Force now to shutdown worker threads.");
-                executorService.shutdownNow();
-            }
-        } catch (Exception e) {
-            executorService.shutdown();
-            Thread.currentThread().interrupt();
+            metricsExporter = new MetricsExporter(MetricsRegistry.getShared(), MetricsExporter.getEndpoint());
+            metricsExporter.start();
+            logInfo("Serving metrics on " + metricsExporter.getAddress());
+        } catch (IOException e) {
+            LOGGER.error("Could not start the metrics endpoint, continuing without it.", e);
+            metricsExporter = null;
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid metrics endpoint, continuing without it.", e);
+            metricsExporter = null;
         }
     }
 
@@ -116,47 +175,69 @@ public class MasterServer {
         LOGGER.info(msg);
     }
 
-    private void relayServerTask() {
-        logInfo("Starting Relay Server");
-        executorService.submit(new Runnable() {
+    private ServerComponent stunServer() {
+        List<String> stunArgs = argHandler.getStunArgs();
+        final StunServer stunServer = StunServer.fromArguments(stunArgs.toArray(new String[stunArgs.size()]),
+                runtime.getContext());
+        return new ServerComponent() {
             @Override
-            public void run() {
-                try {
-                    List<String> relayArgs = argHandler.getRelayArgs();
-                    RelayServer.main(relayArgs.toArray(new String[relayArgs.size()]));
-                    logInfo("Successfully started Relay Server");
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+            public String getName() {
+                return "Stun Server";
+            }
+
+            @Override
+            public void start() throws Exception {
+                stunServer.startStunServer();
+            }
+
+            @Override
+            public void stop() {
+                stunServer.stop();
             }
-        });
+        };
     }
 
-    private void stunServerTask() {
-        logInfo("Starting Stun Server");
-        executorService.submit(new Runnable() {
+    private ServerComponent relayServer() throws IOException {
+        List<String> relayArgs = argHandler.getRelayArgs();
+        final RelayServer relayServer = RelayServer.fromArguments(relayArgs.toArray(new String[relayArgs.size()]),
+                runtime.getContext());
+        return new ServerComponent() {
+            @Override
+            public String getName() {
+                return "Relay Server";
+            }
+
+            @Override
+            public void start() throws IOException {
+                relayServer.start();
+            }
+
             @Override
-            public void run() {
-                List<String> stunArgs = argHandler.getStunArgs();
-                StunServer.main(stunArgs.toArray(new String[stunArgs.size()]));
-                logInfo("Successfully started Stun Server");
+            public void stop() {
+                relayServer.stop();
             }
-        });
+        };
     }
 
-    private void mediatorServerTask() {
-        logInfo("Starting Mediator Server");
-        executorService.submit(new Runnable() {
+    private ServerComponent mediatorServer() {
+        List<String> mediatorArgs = argHandler.getMediatorArgs();
+        final Mediator mediator = Mediator.fromArguments(mediatorArgs.toArray(new String[mediatorArgs.size()]),
+                runtime.getContext());
+        return new ServerComponent() {
             @Override
-            public void run() {
-                try {
-                    List<String> mediatorArgs = argHandler.getMediatorArgs();
-                    Mediator.main(mediatorArgs.toArray(new String[mediatorArgs.size()]));
-                    logInfo("Successfully started Mediator Server");
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+            public String getName() {
+                return "Mediator Server";
+            }
+
+            @Override
+            public void start() throws Exception {
+                mediator.startMediator();
+            }
+
+            @Override
+            public void stop() {
+                mediator.stop();
             }
-        });
+        };
     }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2013 Robert Danczak,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.master.server.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+import de.fhkn.in.uce.core.metrics.Counter;
+import de.fhkn.in.uce.core.metrics.Histogram;
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+
+/**
+ * Read-only JMX view of a {@link MetricsRegistry}. Each counter and gauge is
+ * an attribute of type long named like the metric, each histogram has the
+ * attributes "name.count", "name.sum", "name.p50" and "name.p99". The
+ * attributes are looked up on each access, so metrics which are registered
+ * later show up as well.
+ *
+ * @author Robert Danczak
+ */
+public final class MetricsDynamicMBean implements DynamicMBean {
+
+    private final MetricsRegistry registry;
+
+    /**
+     * Creates the view of the given registry.
+     *
+     * @param registry
+     *            the registry to expose.
+     */
+    public MetricsDynamicMBean(final MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    private SortedMap<String, Long> snapshot() {
+        SortedMap<String, Long> values = new TreeMap<String, Long>();
+        for (Map.Entry<String, Counter> counter : registry.getCounters().entrySet()) {
+            values.put(counter.getKey(), Long.valueOf(counter.getValue().sum()));
+        }
+        values.putAll(registry.getGaugeValues());
+        for (Map.Entry<String, Histogram> entry : registry.getHistograms().entrySet()) {
+            Histogram histogram = entry.getValue();
+            values.put(entry.getKey() + ".count", Long.valueOf(histogram.getCount()));
+            values.put(entry.getKey() + ".sum", Long.valueOf(histogram.getSum()));
+            values.put(entry.getKey() + ".p50", Long.valueOf(histogram.getPercentile(50)));
+            values.put(entry.getKey() + ".p99", Long.valueOf(histogram.getPercentile(99)));
+        }
+        return values;
+    }
+
+    @Override
+    public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+        Long value = snapshot().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(final String[] attributes) {
+        SortedMap<String, Long> values = snapshot();
+        AttributeList result = new AttributeList();
+        for (String attribute : attributes) {
+            Long value = values.get(attribute);
+            if (value != null) {
+                result.add(new Attribute(attribute, value));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(final AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(final String actionName, final Object[] params, final String[] signature)
+            throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> infos = new ArrayList<MBeanAttributeInfo>();
+        for (String name : snapshot().keySet()) {
+            infos.add(new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Metrics of the UCE servers",
+                infos.toArray(new MBeanAttributeInfo[infos.size()]), null, new MBeanOperationInfo[0], null);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2013 Robert Danczak,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.master.server.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+
+/**
+ * Exports the metrics of a {@link MetricsRegistry} via a small HTTP endpoint
+ * in the Prometheus text format ({@value #PATH}) and as JMX MBean
+ * ({@value #OBJECT_NAME}). The endpoint uses the HTTP server of the JDK and
+ * handles the requests in a single thread.
+ *
+ * <p>
+ * The master server configures the exporter by the system properties
+ * {@value #ENABLED_PROPERTY} and {@value #ENDPOINT_PROPERTY}.
+ * </p>
+ *
+ * @author Robert Danczak
+ */
+public final class MetricsExporter {
+
+    /**
+     * Name of the system property which disables the exporter if "false".
+     */
+    public static final String ENABLED_PROPERTY = "uce.metrics";
+
+    /**
+     * Name of the system property with the endpoint "[host:]port" of the
+     * HTTP server.
+     */
+    public static final String ENDPOINT_PROPERTY = "uce.metrics.endpoint";
+
+    /**
+     * Default endpoint, only reachable from the local host.
+     */
+    public static final String DEFAULT_ENDPOINT = "127.0.0.1:9150";
+
+    /**
+     * Path of the metrics resource.
+     */
+    public static final String PATH = "/metrics";
+
+    /**
+     * Object name of the MBean.
+     */
+    public static final String OBJECT_NAME = "de.fhkn.in.uce:type=Metrics";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsExporter.class);
+
+    private final MetricsRegistry registry;
+    private final InetSocketAddress endpoint;
+    private HttpServer httpServer;
+    private ObjectName objectName;
+
+    /**
+     * Creates an exporter.
+     *
+     * @param registry
+     *            the registry to export.
+     * @param endpoint
+     *            the address of the HTTP server, port 0 for an ephemeral
+     *            port.
+     */
+    public MetricsExporter(final MetricsRegistry registry, final InetSocketAddress endpoint) {
+        this.registry = registry;
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Returns whether the exporter is enabled by the system property
+     * {@value #ENABLED_PROPERTY}, which is the default.
+     *
+     * @return false if the property is "false", true otherwise.
+     */
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY));
+    }
+
+    /**
+     * Returns the endpoint given by the system property
+     * {@value #ENDPOINT_PROPERTY} or the {@link #DEFAULT_ENDPOINT}.
+     *
+     * @return the endpoint of the HTTP server.
+     * @throws IllegalArgumentException
+     *             if the property is not a valid endpoint.
+     */
+    public static InetSocketAddress getEndpoint() {
+        return parseEndpoint(System.getProperty(ENDPOINT_PROPERTY, DEFAULT_ENDPOINT));
+    }
+
+    /**
+     * Parses an endpoint "[host:]port", without host the HTTP server listens
+     * on all interfaces.
+     *
+     * @param endpoint
+     *            the endpoint to parse.
+     * @return the socket address of the endpoint.
+     * @throws IllegalArgumentException
+     *             if the endpoint is not valid.
+     */
+    public static InetSocketAddress parseEndpoint(final String endpoint) {
+        String value = endpoint.trim();
+        int colon = value.lastIndexOf(':');
+        try {
+            int port = Integer.parseInt(value.substring(colon + 1));
+            if (colon < 0) {
+                return new InetSocketAddress(port);
+            }
+            return new InetSocketAddress(value.substring(0, colon), port);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid metrics endpoint: " + endpoint, e);
+        }
+    }
+
+    /**
+     * Starts the HTTP server and registers the MBean. A failing MBean
+     * registration is only logged.
+     *
+     * @throws IOException
+     *             if the HTTP server could not be bound.
+     */
+    public synchronized void start() throws IOException {
+        httpServer = HttpServer.create(endpoint, 0);
+        httpServer.createContext(PATH, new MetricsHandler());
+        httpServer.start();
+        try {
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName(OBJECT_NAME);
+            if (!mbeanServer.isRegistered(objectName)) {
+                mbeanServer.registerMBean(new MetricsDynamicMBean(registry), objectName);
+            } else {
+                objectName = null;
+            }
+        } catch (JMException e) {
+            objectName = null;
+            LOGGER.error("Could not register metrics MBean", e);
+        }
+    }
+
+    /**
+     * Stops the HTTP server and unregisters the MBean.
+     */
+    public synchronized void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                LOGGER.error("Could not unregister metrics MBean", e);
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * Returns the address the HTTP server is bound to.
+     *
+     * @return the bound address, or null if the exporter is not started.
+     */
+    public synchronized InetSocketAddress getAddress() {
+        return (httpServer != null) ? httpServer.getAddress() : null;
+    }
+
+    private final class MetricsHandler implements HttpHandler {
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            try {
+                if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                byte[] body = PrometheusTextFormat.format(registry).getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", PrometheusTextFormat.CONTENT_TYPE);
+                if ("HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(200, -1);
+                    return;
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
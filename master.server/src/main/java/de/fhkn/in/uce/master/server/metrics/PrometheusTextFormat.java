@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2013 Robert Danczak,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.master.server.metrics;
+
+import java.util.Map;
+
+import de.fhkn.in.uce.core.metrics.Counter;
+import de.fhkn.in.uce.core.metrics.Histogram;
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+
+/**
+ * Formats the metrics of a {@link MetricsRegistry} in the Prometheus text
+ * exposition format. The names get the prefix "uce_" and dots are replaced by
+ * underscores, counters get the suffix "_total". Rates like requests or
+ * relayed bytes per second are computed by Prometheus from the counters.
+ *
+ * @author Robert Danczak
+ */
+public final class PrometheusTextFormat {
+
+    /**
+     * Content type of the text exposition format.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String PREFIX = "uce_";
+
+    private PrometheusTextFormat() {
+    }
+
+    /**
+     * Formats the current values of all metrics of the given registry.
+     *
+     * @param registry
+     *            the registry to format.
+     * @return the metrics in the Prometheus text format.
+     */
+    public static String format(final MetricsRegistry registry) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Counter> counter : registry.getCounters().entrySet()) {
+            String name = toName(counter.getKey()) + "_total";
+            appendType(sb, name, "counter");
+            appendSample(sb, name, "", counter.getValue().sum());
+        }
+        for (Map.Entry<String, Long> gauge : registry.getGaugeValues().entrySet()) {
+            String name = toName(gauge.getKey());
+            appendType(sb, name, "gauge");
+            appendSample(sb, name, "", gauge.getValue().longValue());
+        }
+        for (Map.Entry<String, Histogram> histogram : registry.getHistograms().entrySet()) {
+            appendHistogram(sb, toName(histogram.getKey()), histogram.getValue());
+        }
+        return sb.toString();
+    }
+
+    private static void appendHistogram(final StringBuilder sb, final String name, final Histogram histogram) {
+        appendType(sb, name, "histogram");
+        long[] counts = histogram.getBucketCounts();
+        long cumulative = 0;
+        for (int i = 0; i < counts.length - 1; i++) {
+            cumulative += counts[i];
+            appendSample(sb, name + "_bucket", "{le=\"" + Histogram.getUpperBound(i) + "\"}", cumulative);
+        }
+        cumulative += counts[counts.length - 1];
+        appendSample(sb, name + "_bucket", "{le=\"+Inf\"}", cumulative);
+        appendSample(sb, name + "_sum", "", histogram.getSum());
+        appendSample(sb, name + "_count", "", cumulative);
+    }
+
+    private static void appendType(final StringBuilder sb, final String name, final String type) {
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void appendSample(final StringBuilder sb, final String name, final String labels,
+            final long value) {
+        sb.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static String toName(final String metricName) {
+        return PREFIX + metricName.replace('.', '_');
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2013 Robert Danczak,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.master.server.runtime;
+
+/**
+ * A server which is started and stopped by a {@link ServerRuntime}.
+ *
+ * @author Robert Danczak
+ */
+public interface ServerComponent {
+
+    /**
+     * @return the name of the server used in log messages.
+     */
+    String getName();
+
+    /**
+     * Starts the server. Returns as soon as the server accepts connections,
+     * the server itself runs in other threads.
+     *
+     * @throws Exception
+     *             if the server could not be started.
+     */
+    void start() throws Exception;
+
+    /**
+     * Stops the server, so it does not accept new connections anymore.
+     */
+    void stop();
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2013 Robert Danczak,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.master.server.runtime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhkn.in.uce.core.metrics.Gauge;
+import de.fhkn.in.uce.core.runtime.ServerContext;
+import de.fhkn.in.uce.core.socketlistener.WorkerPool;
+
+/**
+ * Runs the servers of the master server in one process. All servers share the
+ * executors, timer and metrics registry of one {@link ServerContext}, so the
+ * threads of the whole process are bounded by one {@link WorkerPool} instead of
+ * one pool per server.
+ *
+ * <p>
+ * The servers are started in parallel and the runtime is ready as soon as all
+ * of them accept connections. The gauge "runtime.ready" is 1 while the
+ * runtime is ready, otherwise 0. On {@link #stop(long, TimeUnit)} the servers
+ * are stopped in reverse order, the running tasks get a grace period to
+ * finish and are interrupted afterwards. Every server whose start was
+ * submitted is stopped, even if it failed or did not start in time, as it
+ * may have started partially or may still start later. A server which is
+ * still starting is stopped as soon as its start returns.
+ * </p>
+ *
+ * <p>
+ * If {@link #start(long, TimeUnit)} returns false, the caller has to stop the
+ * runtime.
+ * </p>
+ *
+ * <p>
+ * The master server configures the shared worker pool by the system property
+ * {@value #WORKER_POOL_PROPERTY}.
+ * </p>
+ *
+ * @author Robert Danczak
+ */
+public final class ServerRuntime {
+
+    /**
+     * Name of the system property with the shared worker pool
+     * "maxThreads,queueCapacity,policy".
+     */
+    public static final String WORKER_POOL_PROPERTY = "uce.workerPool";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerRuntime.class);
+
+    private final ServerContext context;
+    private final List<ServerComponent> components = new ArrayList<ServerComponent>();
+    private final List<StartTask> submitted = new ArrayList<StartTask>();
+    private volatile boolean ready;
+    private boolean stopped;
+
+    /**
+     * Creates a runtime whose servers use the given context.
+     *
+     * @param context
+     *            the context shared by the servers.
+     */
+    public ServerRuntime(final ServerContext context) {
+        this.context = context;
+        context.getMetrics().gauge("runtime.ready", new Gauge() {
+            @Override
+            public long getValue() {
+                return ready ? 1 : 0;
+            }
+        });
+    }
+
+    /**
+     * Returns the shared worker pool configured by the system property
+     * {@value #WORKER_POOL_PROPERTY}.
+     *
+     * @return the worker pool, null if not configured.
+     * @throws IllegalArgumentException
+     *             if the property is not a valid worker pool.
+     */
+    public static WorkerPool getWorkerPool() {
+        String value = System.getProperty(WORKER_POOL_PROPERTY);
+        if ((value == null) || "".equals(value)) {
+            return null;
+        }
+        return WorkerPool.valueOf(value);
+    }
+
+    /**
+     * @return the context shared by the servers.
+     */
+    public ServerContext getContext() {
+        return context;
+    }
+
+    /**
+     * Adds a server which is started by {@link #start(long, TimeUnit)}.
+     *
+     * @param component
+     *            the server to add.
+     */
+    public synchronized void add(final ServerComponent component) {
+        if (component == null) {
+            throw new NullPointerException();
+        }
+        components.add(component);
+    }
+
+    /**
+     * Starts all servers in parallel and waits until they are started.
+     *
+     * @param timeout
+     *            the maximum time to wait for the servers.
+     * @param unit
+     *            the unit of the timeout.
+     * @return true if all servers are started, false if a server failed or
+     *         did not start in time.
+     * @throws InterruptedException
+     *             if interrupted while waiting.
+     */
+    public synchronized boolean start(final long timeout, final TimeUnit unit) throws InterruptedException {
+        if (stopped) {
+            throw new IllegalStateException("The runtime is stopped");
+        }
+        List<Future<ServerComponent>> futures = new ArrayList<Future<ServerComponent>>();
+        for (final ServerComponent component : components) {
+            LOGGER.info("Starting {}", component.getName());
+            StartTask task = new StartTask(component);
+            submitted.add(task);
+            futures.add(context.getBlockingExecutor().submit(task));
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean allStarted = true;
+        for (int i = 0; i < futures.size(); i++) {
+            String name = components.get(i).getName();
+            try {
+                futures.get(i).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                LOGGER.info("{} is ready", name);
+            } catch (ExecutionException e) {
+                LOGGER.error("Could not start " + name, e.getCause());
+                allStarted = false;
+            } catch (TimeoutException e) {
+                LOGGER.error("{} did not start within {} ms", name, unit.toMillis(timeout));
+                futures.get(i).cancel(true);
+                allStarted = false;
+            }
+        }
+        ready = allStarted;
+        if (allStarted) {
+            LOGGER.info("All {} servers are ready", components.size());
+        }
+        return allStarted;
+    }
+
+    /**
+     * @return true if all servers are started and the runtime is not stopped.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Stops the submitted servers in reverse order and shuts the shared
+     * executors down. Running tasks get the given grace period to finish,
+     * afterwards they are interrupted. Can be called more than once.
+     *
+     * @param gracePeriod
+     *            the time the running tasks get to finish.
+     * @param unit
+     *            the unit of the grace period.
+     * @return true if all tasks finished within the grace period.
+     */
+    public synchronized boolean stop(final long gracePeriod, final TimeUnit unit) {
+        if (stopped) {
+            return true;
+        }
+        stopped = true;
+        ready = false;
+        List<StartTask> reverse = new ArrayList<StartTask>(submitted);
+        Collections.reverse(reverse);
+        for (StartTask task : reverse) {
+            task.stop();
+        }
+        context.shutdown();
+        boolean terminated = false;
+        try {
+            terminated = context.awaitTermination(gracePeriod, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!terminated) {
+            LOGGER.info("Interrupting the tasks which are still running");
+            context.shutdownNow();
+        }
+        return terminated;
+    }
+
+    /**
+     * Starts a server and stops it when the runtime is stopped. If the
+     * runtime is stopped while the server is still starting, the server is
+     * stopped by the starting thread as soon as its start returns.
+     */
+    private static final class StartTask implements Callable<ServerComponent> {
+        private final ServerComponent component;
+        private boolean startReturned;
+        private boolean stopRequested;
+
+        StartTask(final ServerComponent component) {
+            this.component = component;
+        }
+
+        @Override
+        public ServerComponent call() throws Exception {
+            try {
+                component.start();
+            } finally {
+                synchronized (this) {
+                    startReturned = true;
+                    if (stopRequested) {
+                        stopComponent();
+                    }
+                }
+            }
+            return component;
+        }
+
+        synchronized void stop() {
+            stopRequested = true;
+            if (startReturned) {
+                stopComponent();
+            } else {
+                LOGGER.info("{} is stopped as soon as it is started", component.getName());
+            }
+        }
+
+        private void stopComponent() {
+            try {
+                component.stop();
+                LOGGER.info("Stopped {}", component.getName());
+            } catch (RuntimeException e) {
+                LOGGER.error("Could not stop " + component.getName(), e);
+            }
+        }
+    }
+}
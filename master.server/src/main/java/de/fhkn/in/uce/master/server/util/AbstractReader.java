@@ -21,6 +21,13 @@ import java.util.List;
 
 import org.slf4j.Logger;
 
+import de.fhkn.in.uce.core.concurrent.ExecutionMode;
+import de.fhkn.in.uce.core.socketlistener.AdmissionControl;
+import de.fhkn.in.uce.core.socketlistener.WorkerPool;
+import de.fhkn.in.uce.master.server.metrics.MetricsExporter;
+import de.fhkn.in.uce.master.server.runtime.ServerRuntime;
+import de.fhkn.in.uce.relaying.server.RelayPortPool;
+
 /**
  * Abstract Class which holds common functions needed by
  * {@link de.fhkn.in.uce.master.server.util.FilePropertyReader FilePropertyReader},
@@ -37,9 +44,26 @@ public abstract class AbstractReader {
     protected static final String STUN_FIRST_IP = "StunFirstIP";
     protected static final String STUN_SECOND_IP = "StunSecondIP";
     protected static final String RELAY_PORT = "RelayPort";
+    protected static final String RELAY_PORTS = "RelayPorts";
+    protected static final String RELAY_ADDRESSES = "RelayAddresses";
     protected static final String MEDIATOR_PORT = "MediatorPort";
     protected static final String MEDIATOR_ITERATION = "MediatorIteration";
     protected static final String MEDIATOR_LIFETIME = "MediatorLifeTime";
+    protected static final String ADMISSION = "Admission";
+    protected static final String STUN_WORKER_POOL = "StunWorkerPool";
+    protected static final String RELAY_WORKER_POOL = "RelayWorkerPool";
+    protected static final String MEDIATOR_WORKER_POOL = "MediatorWorkerPool";
+    protected static final String WORKER_POOL = "WorkerPool";
+    protected static final String VIRTUAL_THREADS = "VirtualThreads";
+    protected static final String METRICS = "Metrics";
+    protected static final String METRICS_ENDPOINT = "MetricsEndpoint";
+
+    // options of the servers for the admission control and the worker pool.
+    private static final String ADMISSION_OPTION = "--admission";
+    private static final String POOL_OPTION = "--pool";
+    // options of the relay server for the ports of allocations.
+    private static final String PORTS_OPTION = "--ports";
+    private static final String ADDRESSES_OPTION = "--addresses";
 
     /**
      * Creates an AbstractReader.
@@ -186,7 +210,7 @@ public abstract class AbstractReader {
 
     /**
      * Checks if the given argument {@code arg} is a valid port and writes it to
-     * {@code relayArgs}. If the argument is null or empty, no value will be written.
+     * {@code relayArgs}. If the argument is null or empty, the default port is used.
      *
      * @param relayArgs
      *            where to write the argument to.
@@ -197,7 +221,7 @@ public abstract class AbstractReader {
      */
     protected void processRelayPort(List<String> relayArgs, final String arg) throws IllegalArgumentException {
         if ((arg == null) || "".equals(arg)) {
-            relayArgs.clear();
+            relayArgs.set(0, "");
             return;
         }
         else if (!isPort(arg)) {
@@ -207,6 +231,216 @@ public abstract class AbstractReader {
         relayArgs.set(0, arg);
     }
 
+    /**
+     * Checks if the given argument {@code arg} is a valid port range
+     * {@code min-max} for the allocations of the relay server and writes it
+     * as option to {@code relayArgs}. If the argument is null or empty, no
+     * value will be written.
+     *
+     * @param relayArgs
+     *            where to write the argument to.
+     * @param arg
+     *            which argument to write.
+     * @throws IllegalArgumentException
+     *             If argument {@code arg} is not a valid port range.
+     */
+    protected void processRelayPorts(List<String> relayArgs, final String arg) throws IllegalArgumentException {
+        if ((arg == null) || "".equals(arg)) {
+            return;
+        }
+        try {
+            RelayPortPool.parsePortRange(arg);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(RELAY_PORTS);
+        }
+        logInfo("added port range \"" + arg + "\" to relay arguments");
+        setOption(relayArgs, PORTS_OPTION, arg);
+    }
+
+    /**
+     * Checks if the given argument {@code arg} is a valid comma separated list
+     * of addresses the relay server binds its allocations to and writes it as
+     * option to {@code relayArgs}. If the argument is null or empty, no value
+     * will be written.
+     *
+     * @param relayArgs
+     *            where to write the argument to.
+     * @param arg
+     *            which argument to write.
+     * @throws IllegalArgumentException
+     *             If an address of {@code arg} can not be resolved.
+     */
+    protected void processRelayAddresses(List<String> relayArgs, final String arg) throws IllegalArgumentException {
+        if ((arg == null) || "".equals(arg)) {
+            return;
+        }
+        try {
+            RelayPortPool.parseAddresses(arg);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(RELAY_ADDRESSES);
+        }
+        logInfo("added addresses \"" + arg + "\" to relay arguments");
+        setOption(relayArgs, ADDRESSES_OPTION, arg);
+    }
+
+    /**
+     * Checks if the given argument {@code arg} is a valid admission control
+     * specification {@code connectionsPerSecond,burst,maxConnections} and
+     * writes it as option to {@code stunArgs} and {@code mediatorArgs}. If the
+     * argument is null or empty, no value will be written.
+     *
+     * @param stunArgs
+     *            where to write the argument to.
+     * @param mediatorArgs
+     *            where to write the argument to.
+     * @param arg
+     *            which argument to write.
+     * @throws IllegalArgumentException
+     *             If argument {@code arg} is not a valid specification.
+     */
+    protected void processAdmission(List<String> stunArgs, List<String> mediatorArgs, final String arg)
+            throws IllegalArgumentException {
+        if ((arg == null) || "".equals(arg)) {
+            return;
+        }
+        try {
+            AdmissionControl.valueOf(arg);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(ADMISSION);
+        }
+        logInfo("added admission control \"" + arg + "\" to stun and mediator arguments");
+        setOption(stunArgs, ADMISSION_OPTION, arg);
+        setOption(mediatorArgs, ADMISSION_OPTION, arg);
+    }
+
+    /**
+     * Checks if the given argument {@code arg} is a valid worker pool
+     * specification {@code maxThreads,queueCapacity,policy} and writes it as
+     * option to {@code serverArgs}. If the argument is null or empty, no value
+     * will be written.
+     *
+     * @param serverArgs
+     *            where to write the argument to.
+     * @param key
+     *            the key of the argument, used as message of the exception.
+     * @param arg
+     *            which argument to write.
+     * @throws IllegalArgumentException
+     *             If argument {@code arg} is not a valid specification.
+     */
+    protected void processWorkerPool(List<String> serverArgs, final String key, final String arg)
+            throws IllegalArgumentException {
+        if ((arg == null) || "".equals(arg)) {
+            return;
+        }
+        try {
+            WorkerPool.valueOf(arg);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(key);
+        }
+        logInfo("added worker pool \"" + arg + "\" for " + key);
+        setOption(serverArgs, POOL_OPTION, arg);
+    }
+
+    /**
+     * Checks if the given argument {@code arg} is a valid worker pool and sets
+     * it as the pool shared by all servers started by the master server. This
+     * sets the system property read by {@link ServerRuntime}.
+     *
+     * @param arg
+     *            the worker pool "maxThreads,queueCapacity,policy", null or
+     *            empty for an unbounded pool.
+     * @throws IllegalArgumentException
+     *             If argument {@code arg} is not a valid worker pool.
+     */
+    protected void processSharedWorkerPool(final String arg) throws IllegalArgumentException {
+        if ((arg == null) || "".equals(arg)) {
+            return;
+        }
+        try {
+            WorkerPool.valueOf(arg);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(WORKER_POOL);
+        }
+        logInfo("added shared worker pool \"" + arg + "\"");
+        System.setProperty(ServerRuntime.WORKER_POOL_PROPERTY, arg);
+    }
+
+    /**
+     * Enables virtual threads for all servers started by the master server if
+     * the given argument {@code arg} is "true". As the servers run in the same
+     * VM, this sets the system property read by {@link ExecutionMode}.
+     *
+     * @param arg
+     *            "true" or "false", null or empty to keep the default.
+     * @throws IllegalArgumentException
+     *             If argument {@code arg} is neither "true" nor "false".
+     */
+    protected void processVirtualThreads(final String arg) throws IllegalArgumentException {
+        if ((arg == null) || "".equals(arg)) {
+            return;
+        }
+        if (!"true".equalsIgnoreCase(arg) && !"false".equalsIgnoreCase(arg)) {
+            throw new IllegalArgumentException(VIRTUAL_THREADS);
+        }
+        logInfo("virtual threads " + ("true".equalsIgnoreCase(arg) ? "enabled" : "disabled"));
+        System.setProperty(ExecutionMode.VIRTUAL_THREADS_PROPERTY, arg.toLowerCase());
+    }
+
+    /**
+     * Enables or disables the metrics endpoint of the master server if the
+     * given argument {@code arg} is "true" or "false". This sets the system
+     * property read by {@link MetricsExporter}.
+     *
+     * @param arg
+     *            "true" or "false", null or empty to keep the default.
+     * @throws IllegalArgumentException
+     *             If argument {@code arg} is neither "true" nor "false".
+     */
+    protected void processMetrics(final String arg) throws IllegalArgumentException {
+        if ((arg == null) || "".equals(arg)) {
+            return;
+        }
+        if (!"true".equalsIgnoreCase(arg) && !"false".equalsIgnoreCase(arg)) {
+            throw new IllegalArgumentException(METRICS);
+        }
+        logInfo("metrics endpoint " + ("true".equalsIgnoreCase(arg) ? "enabled" : "disabled"));
+        System.setProperty(MetricsExporter.ENABLED_PROPERTY, arg.toLowerCase());
+    }
+
+    /**
+     * Checks if the given argument {@code arg} is a valid endpoint
+     * {@code [host:]port} and sets it as endpoint of the metrics HTTP server.
+     * If the argument is null or empty, the default endpoint is used.
+     *
+     * @param arg
+     *            which argument to set.
+     * @throws IllegalArgumentException
+     *             If argument {@code arg} is not a valid endpoint.
+     */
+    protected void processMetricsEndpoint(final String arg) throws IllegalArgumentException {
+        if ((arg == null) || "".equals(arg)) {
+            return;
+        }
+        try {
+            MetricsExporter.parseEndpoint(arg);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(METRICS_ENDPOINT);
+        }
+        logInfo("added metrics endpoint \"" + arg + "\"");
+        System.setProperty(MetricsExporter.ENDPOINT_PROPERTY, arg.trim());
+    }
+
+    private static void setOption(List<String> args, final String option, final String value) {
+        int index = args.indexOf(option);
+        if (index < 0) {
+            args.add(option);
+            args.add(value);
+        } else {
+            args.set(index + 1, value);
+        }
+    }
+
     /**
      * Checks if the given argument {@code arg} is a valid IP and writes it to
      * {@code stunArgs} in index 0.
@@ -266,6 +500,20 @@ public abstract class AbstractReader {
         return RELAY_PORT;
     }
 
+    /**
+     * @return the string "RelayPorts"
+     */
+    public static String getRelayPorts() {
+        return RELAY_PORTS;
+    }
+
+    /**
+     * @return the string "RelayAddresses"
+     */
+    public static String getRelayAddresses() {
+        return RELAY_ADDRESSES;
+    }
+
     /**
      * @return the string "MediatorPort"
      */
@@ -286,4 +534,60 @@ public abstract class AbstractReader {
     public static String getMediatorLifeTime() {
         return MEDIATOR_LIFETIME;
     }
+
+    /**
+     * @return the string "Admission"
+     */
+    public static String getAdmission() {
+        return ADMISSION;
+    }
+
+    /**
+     * @return the string "StunWorkerPool"
+     */
+    public static String getStunWorkerPool() {
+        return STUN_WORKER_POOL;
+    }
+
+    /**
+     * @return the string "RelayWorkerPool"
+     */
+    public static String getRelayWorkerPool() {
+        return RELAY_WORKER_POOL;
+    }
+
+    /**
+     * @return the string "MediatorWorkerPool"
+     */
+    public static String getMediatorWorkerPool() {
+        return MEDIATOR_WORKER_POOL;
+    }
+
+    /**
+     * @return the string "WorkerPool"
+     */
+    public static String getWorkerPool() {
+        return WORKER_POOL;
+    }
+
+    /**
+     * @return the string "VirtualThreads"
+     */
+    public static String getVirtualThreads() {
+        return VIRTUAL_THREADS;
+    }
+
+    /**
+     * @return the string "Metrics"
+     */
+    public static String getMetrics() {
+        return METRICS;
+    }
+
+    /**
+     * @return the string "MetricsEndpoint"
+     */
+    public static String getMetricsEndpoint() {
+        return METRICS_ENDPOINT;
+    }
 }
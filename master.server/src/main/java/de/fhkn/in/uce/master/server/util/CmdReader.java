@@ -61,6 +61,12 @@ public class CmdReader extends AbstractReader {
                 else if (arg.startsWith(STUN_SECOND_IP) || arg.startsWith("-" + STUN_SECOND_IP)) {
                     processStunSecondIP(stunArgs, result);
                 }
+                else if (arg.startsWith(RELAY_PORTS) || arg.startsWith("-" + RELAY_PORTS)) {
+                    processRelayPorts(relayArgs, result);
+                }
+                else if (arg.startsWith(RELAY_ADDRESSES) || arg.startsWith("-" + RELAY_ADDRESSES)) {
+                    processRelayAddresses(relayArgs, result);
+                }
                 else if (arg.startsWith(RELAY_PORT) || arg.startsWith("-" + RELAY_PORT)) {
                     processRelayPort(relayArgs, result);
                 }
@@ -73,6 +79,30 @@ public class CmdReader extends AbstractReader {
                 else if (arg.startsWith(MEDIATOR_LIFETIME) || arg.startsWith("-" + MEDIATOR_LIFETIME)) {
                     processMediatorLifeTime(mediatorArgs, result);
                 }
+                else if (arg.startsWith(ADMISSION) || arg.startsWith("-" + ADMISSION)) {
+                    processAdmission(stunArgs, mediatorArgs, result);
+                }
+                else if (arg.startsWith(STUN_WORKER_POOL) || arg.startsWith("-" + STUN_WORKER_POOL)) {
+                    processWorkerPool(stunArgs, STUN_WORKER_POOL, result);
+                }
+                else if (arg.startsWith(RELAY_WORKER_POOL) || arg.startsWith("-" + RELAY_WORKER_POOL)) {
+                    processWorkerPool(relayArgs, RELAY_WORKER_POOL, result);
+                }
+                else if (arg.startsWith(MEDIATOR_WORKER_POOL) || arg.startsWith("-" + MEDIATOR_WORKER_POOL)) {
+                    processWorkerPool(mediatorArgs, MEDIATOR_WORKER_POOL, result);
+                }
+                else if (arg.startsWith(WORKER_POOL) || arg.startsWith("-" + WORKER_POOL)) {
+                    processSharedWorkerPool(result);
+                }
+                else if (arg.startsWith(VIRTUAL_THREADS) || arg.startsWith("-" + VIRTUAL_THREADS)) {
+                    processVirtualThreads(result);
+                }
+                else if (arg.startsWith(METRICS_ENDPOINT) || arg.startsWith("-" + METRICS_ENDPOINT)) {
+                    processMetricsEndpoint(result);
+                }
+                else if (arg.startsWith(METRICS) || arg.startsWith("-" + METRICS)) {
+                    processMetrics(result);
+                }
                 else {
                     logInfo("Argument \"" + arg + "\" not recognized");
                 }
@@ -73,6 +73,14 @@ public class SystemPropertyReader extends AbstractReader {
                     String value = props.getProperty(key);
                     processRelayPort(relayArgs, value);
                 }
+                else if (key.equals(RELAY_PORTS)) {
+                    String value = props.getProperty(key);
+                    processRelayPorts(relayArgs, value);
+                }
+                else if (key.equals(RELAY_ADDRESSES)) {
+                    String value = props.getProperty(key);
+                    processRelayAddresses(relayArgs, value);
+                }
                 else if (key.equals(MEDIATOR_PORT)) {
                     String value = props.getProperty(key);
                     processMediatorPort(mediatorArgs, value);
@@ -85,6 +93,38 @@ public class SystemPropertyReader extends AbstractReader {
                     String value = props.getProperty(key);
                     processMediatorLifeTime(mediatorArgs, value);
                 }
+                else if (key.equals(ADMISSION)) {
+                    String value = props.getProperty(key);
+                    processAdmission(stunArgs, mediatorArgs, value);
+                }
+                else if (key.equals(STUN_WORKER_POOL)) {
+                    String value = props.getProperty(key);
+                    processWorkerPool(stunArgs, STUN_WORKER_POOL, value);
+                }
+                else if (key.equals(RELAY_WORKER_POOL)) {
+                    String value = props.getProperty(key);
+                    processWorkerPool(relayArgs, RELAY_WORKER_POOL, value);
+                }
+                else if (key.equals(MEDIATOR_WORKER_POOL)) {
+                    String value = props.getProperty(key);
+                    processWorkerPool(mediatorArgs, MEDIATOR_WORKER_POOL, value);
+                }
+                else if (key.equals(WORKER_POOL)) {
+                    String value = props.getProperty(key);
+                    processSharedWorkerPool(value);
+                }
+                else if (key.equals(VIRTUAL_THREADS)) {
+                    String value = props.getProperty(key);
+                    processVirtualThreads(value);
+                }
+                else if (key.equals(METRICS)) {
+                    String value = props.getProperty(key);
+                    processMetrics(value);
+                }
+                else if (key.equals(METRICS_ENDPOINT)) {
+                    String value = props.getProperty(key);
+                    processMetricsEndpoint(value);
+                }
             } catch (IllegalArgumentException e) {
                 logError("Argument \"" + e.getMessage() + "\" is empty or invalid");
                 continue;
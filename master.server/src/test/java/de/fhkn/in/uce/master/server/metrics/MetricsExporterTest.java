@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2013 Robert Danczak,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.master.server.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+
+public class MetricsExporterTest {
+
+    private MetricsRegistry registry;
+    private MetricsExporter exporter;
+
+    @Before
+    public void setUp() throws Exception {
+        registry = new MetricsRegistry();
+        registry.counter("relay.relayed_bytes").add(1234);
+        registry.upDownCounter("relay.allocations.active").increment();
+        registry.histogram("test.latency").record(3);
+        exporter = new MetricsExporter(registry, new InetSocketAddress("127.0.0.1", 0));
+        exporter.start();
+    }
+
+    @After
+    public void tearDown() {
+        exporter.stop();
+    }
+
+    /**
+     * Test method for the Prometheus text served by the HTTP endpoint.
+     */
+    @Test
+    public final void testHttpEndpoint() throws Exception {
+        URL url = new URL("http://127.0.0.1:" + exporter.getAddress().getPort() + MetricsExporter.PATH);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(PrometheusTextFormat.CONTENT_TYPE, connection.getContentType());
+        InputStream in = connection.getInputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int len;
+        while ((len = in.read(buf)) > -1) {
+            out.write(buf, 0, len);
+        }
+        in.close();
+        String body = out.toString("UTF-8");
+        assertTrue(body.contains("# TYPE uce_relay_relayed_bytes_total counter\nuce_relay_relayed_bytes_total 1234\n"));
+        assertTrue(body.contains("# TYPE uce_relay_allocations_active gauge\nuce_relay_allocations_active 1\n"));
+        assertTrue(body.contains("uce_test_latency_bucket{le=\"2\"} 0\nuce_test_latency_bucket{le=\"4\"} 1\n"));
+        assertTrue(body.contains("uce_test_latency_bucket{le=\"+Inf\"} 1\n"));
+        assertTrue(body.contains("uce_test_latency_sum 3\nuce_test_latency_count 1\n"));
+    }
+
+    /**
+     * Test method for the attributes of the MBean.
+     */
+    @Test
+    public final void testMBean() throws Exception {
+        ObjectName name = new ObjectName(MetricsExporter.OBJECT_NAME);
+        assertEquals(Long.valueOf(1234),
+                ManagementFactory.getPlatformMBeanServer().getAttribute(name, "relay.relayed_bytes"));
+        assertEquals(Long.valueOf(4),
+                ManagementFactory.getPlatformMBeanServer().getAttribute(name, "test.latency.p99"));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2013 Robert Danczak,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.master.server.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhkn.in.uce.core.runtime.ServerContext;
+
+public class ServerRuntimeTest {
+
+    private ServerRuntime runtime;
+
+    @Before
+    public void setUp() {
+        runtime = new ServerRuntime(ServerContext.create(null));
+    }
+
+    /**
+     * Test method for {@link ServerRuntime#stop(long, TimeUnit)} after all
+     * servers are started.
+     */
+    @Test
+    public void testStopStartedServers() throws Exception {
+        TestComponent first = new TestComponent(null, false);
+        TestComponent second = new TestComponent(null, false);
+        runtime.add(first);
+        runtime.add(second);
+        assertTrue(runtime.start(5, TimeUnit.SECONDS));
+        assertTrue(runtime.isReady());
+        runtime.stop(1, TimeUnit.SECONDS);
+        assertFalse(runtime.isReady());
+        assertEquals(1, first.stopped.get());
+        assertEquals(1, second.stopped.get());
+    }
+
+    /**
+     * Test method for {@link ServerRuntime#stop(long, TimeUnit)} after a
+     * server failed to start, it may have started partially.
+     */
+    @Test
+    public void testStopFailedServer() throws Exception {
+        TestComponent started = new TestComponent(null, false);
+        TestComponent failed = new TestComponent(null, true);
+        runtime.add(started);
+        runtime.add(failed);
+        assertFalse(runtime.start(5, TimeUnit.SECONDS));
+        assertFalse(runtime.isReady());
+        runtime.stop(1, TimeUnit.SECONDS);
+        assertEquals(1, started.stopped.get());
+        assertEquals(1, failed.stopped.get());
+    }
+
+    /**
+     * Test method for {@link ServerRuntime#stop(long, TimeUnit)} after a
+     * server did not start in time, it is stopped as soon as its start
+     * returns.
+     */
+    @Test
+    public void testStopServerWhichStartsLate() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TestComponent late = new TestComponent(release, false);
+        runtime.add(late);
+        assertFalse(runtime.start(50, TimeUnit.MILLISECONDS));
+        runtime.stop(10, TimeUnit.MILLISECONDS);
+        assertEquals(0, late.stopped.get());
+        release.countDown();
+        assertTrue(late.stoppedLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, late.stopped.get());
+    }
+
+    private static final class TestComponent implements ServerComponent {
+        private final CountDownLatch release;
+        private final boolean fail;
+        private final AtomicInteger stopped = new AtomicInteger();
+        private final CountDownLatch stoppedLatch = new CountDownLatch(1);
+
+        TestComponent(CountDownLatch release, boolean fail) {
+            this.release = release;
+            this.fail = fail;
+        }
+
+        @Override
+        public String getName() {
+            return "test server";
+        }
+
+        @Override
+        public void start() throws Exception {
+            if (release != null) {
+                // ignores the interrupt of the timed out start
+                boolean released = false;
+                while (!released) {
+                    try {
+                        released = release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignore) {
+                    }
+                }
+            }
+            if (fail) {
+                throw new IllegalStateException("failing test server");
+            }
+        }
+
+        @Override
+        public void stop() {
+            stopped.incrementAndGet();
+            stoppedLatch.countDown();
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package de.fhkn.in.uce.master.server.util;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
@@ -24,6 +26,9 @@ import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 
+import de.fhkn.in.uce.core.concurrent.ExecutionMode;
+import de.fhkn.in.uce.master.server.metrics.MetricsExporter;
+import de.fhkn.in.uce.master.server.runtime.ServerRuntime;
 import de.fhkn.in.uce.master.server.util.AbstractReader;
 import de.fhkn.in.uce.master.server.util.CmdReader;
 
@@ -115,4 +120,133 @@ public class CmdReaderTest {
             fail("Should not be here!");
         }
     }
+
+    /**
+     * Test method for {@link CmdReader#readArguments(java.util.List, java.util.List, java.util.List)} with an
+     * admission control specification.
+     */
+    @Test
+    public final void testReadArgumentsAdmission() {
+        final String[] args = {AbstractReader.ADMISSION + "=5,10,1000",
+                               AbstractReader.STUN_FIRST_IP + "=127.0.0.2",
+                               AbstractReader.ADMISSION + "=20"};
+
+        new CmdReader(args).readArguments(stunArgs, relayArgs, mediatorArgs);
+        assertEquals(4, stunArgs.size());
+        assertEquals("--admission", stunArgs.get(2));
+        assertEquals("20", stunArgs.get(3));
+        assertEquals(5, mediatorArgs.size());
+        assertEquals("--admission", mediatorArgs.get(3));
+        assertEquals("20", mediatorArgs.get(4));
+    }
+
+    /**
+     * Test method for {@link CmdReader#readArguments(java.util.List, java.util.List, java.util.List)} with an
+     * invalid admission control specification.
+     */
+    @Test
+    public final void testReadArgumentsInvalidAdmission() {
+        final String[] args = {AbstractReader.ADMISSION + "=many"};
+
+        new CmdReader(args).readArguments(stunArgs, relayArgs, mediatorArgs);
+        assertEquals(2, stunArgs.size());
+        assertEquals(3, mediatorArgs.size());
+    }
+
+    /**
+     * Test method for {@link CmdReader#readArguments(java.util.List, java.util.List, java.util.List)} with
+     * worker pool specifications.
+     */
+    @Test
+    public final void testReadArgumentsWorkerPool() {
+        final String[] args = {AbstractReader.STUN_WORKER_POOL + "=200,1000,respond",
+                               AbstractReader.RELAY_WORKER_POOL + "=50,0",
+                               AbstractReader.MEDIATOR_WORKER_POOL + "=many"};
+
+        new CmdReader(args).readArguments(stunArgs, relayArgs, mediatorArgs);
+        assertEquals(4, stunArgs.size());
+        assertEquals("--pool", stunArgs.get(2));
+        assertEquals("200,1000,respond", stunArgs.get(3));
+        assertEquals(3, relayArgs.size());
+        assertEquals("--pool", relayArgs.get(1));
+        assertEquals("50,0", relayArgs.get(2));
+        assertEquals(3, mediatorArgs.size());
+    }
+
+    /**
+     * Test method for {@link CmdReader#readArguments(java.util.List, java.util.List, java.util.List)} with
+     * the port range and addresses of relay allocations, which are not mistaken for the relay port.
+     */
+    @Test
+    public final void testReadArgumentsRelayPorts() {
+        final String[] args = {AbstractReader.RELAY_PORTS + "=20000-20099",
+                               AbstractReader.RELAY_ADDRESSES + "=127.0.0.1",
+                               AbstractReader.RELAY_PORT + "=14100",
+                               AbstractReader.RELAY_PORTS + "=20099-20000"};
+
+        new CmdReader(args).readArguments(stunArgs, relayArgs, mediatorArgs);
+        assertEquals(5, relayArgs.size());
+        assertEquals("14100", relayArgs.get(0));
+        assertEquals("--ports", relayArgs.get(1));
+        assertEquals("20000-20099", relayArgs.get(2));
+        assertEquals("--addresses", relayArgs.get(3));
+        assertEquals("127.0.0.1", relayArgs.get(4));
+    }
+
+    /**
+     * Test method for {@link CmdReader#readArguments(java.util.List, java.util.List, java.util.List)} which
+     * enables virtual threads.
+     */
+    @Test
+    public final void testReadArgumentsVirtualThreads() {
+        final String[] args = {AbstractReader.VIRTUAL_THREADS + "=true"};
+
+        try {
+            new CmdReader(args).readArguments(stunArgs, relayArgs, mediatorArgs);
+            assertEquals("true", System.getProperty(ExecutionMode.VIRTUAL_THREADS_PROPERTY));
+            assertEquals(2, stunArgs.size());
+        } finally {
+            System.clearProperty(ExecutionMode.VIRTUAL_THREADS_PROPERTY);
+        }
+    }
+
+    /**
+     * Test method for {@link CmdReader#readArguments(java.util.List, java.util.List, java.util.List)} which
+     * disables the metrics endpoint and sets its address, an invalid endpoint is ignored.
+     */
+    @Test
+    public final void testReadArgumentsMetrics() {
+        final String[] args = {AbstractReader.METRICS_ENDPOINT + "=0.0.0.0:9200", AbstractReader.METRICS + "=false",
+                AbstractReader.METRICS_ENDPOINT + "=host:port"};
+
+        try {
+            new CmdReader(args).readArguments(stunArgs, relayArgs, mediatorArgs);
+            assertEquals("false", System.getProperty(MetricsExporter.ENABLED_PROPERTY));
+            assertEquals("0.0.0.0:9200", System.getProperty(MetricsExporter.ENDPOINT_PROPERTY));
+        } finally {
+            System.clearProperty(MetricsExporter.ENABLED_PROPERTY);
+            System.clearProperty(MetricsExporter.ENDPOINT_PROPERTY);
+        }
+    }
+
+    /**
+     * Test method for {@link CmdReader#readArguments(List, List, List)} which
+     * sets the worker pool shared by all servers and ignores an invalid one
+     * without touching the pools of the single servers.
+     */
+    @Test
+    public final void testReadArgumentsSharedWorkerPool() {
+        final String[] args = {AbstractReader.WORKER_POOL + "=16,64,pause", AbstractReader.WORKER_POOL + "=16"};
+
+        try {
+            new CmdReader(args).readArguments(stunArgs, relayArgs, mediatorArgs);
+            assertEquals("16,64,pause", System.getProperty(ServerRuntime.WORKER_POOL_PROPERTY));
+            assertEquals(16, ServerRuntime.getWorkerPool().getMaxThreads());
+            assertFalse(stunArgs.contains("--pool"));
+            assertFalse(relayArgs.contains("--pool"));
+            assertFalse(mediatorArgs.contains("--pool"));
+        } finally {
+            System.clearProperty(ServerRuntime.WORKER_POOL_PROPERTY);
+        }
+    }
 }
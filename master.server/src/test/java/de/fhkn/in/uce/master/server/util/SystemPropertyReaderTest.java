@@ -97,6 +97,7 @@ public class SystemPropertyReaderTest {
         props.setProperty(AbstractReader.MEDIATOR_PORT, "10401");
         props.setProperty(AbstractReader.MEDIATOR_ITERATION, "1");
         props.setProperty(AbstractReader.MEDIATOR_LIFETIME, "2");
+        Properties original = System.getProperties();
         System.setProperties(props);
         SystemPropertyReader sysPropReader = new SystemPropertyReader();
 
@@ -108,6 +109,8 @@ public class SystemPropertyReaderTest {
         System.clearProperty(AbstractReader.MEDIATOR_PORT);
         System.clearProperty(AbstractReader.MEDIATOR_ITERATION);
         System.clearProperty(AbstractReader.MEDIATOR_LIFETIME);
+        // restore the properties of the VM, e.g. needed for sockets in later tests
+        System.setProperties(original);
 
         assertEquals(relayReference, relayArgs);
     }
@@ -19,12 +19,21 @@ package de.fhkn.in.uce.mediator;
 import java.net.ServerSocket;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.fhkn.in.uce.core.concurrent.ExecutionMode;
+import de.fhkn.in.uce.core.concurrent.HashedWheelTimer;
+import de.fhkn.in.uce.core.concurrent.Timeout;
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+import de.fhkn.in.uce.core.runtime.ServerContext;
+import de.fhkn.in.uce.core.socketlistener.AdmissionControl;
+import de.fhkn.in.uce.core.socketlistener.RejectionPolicy;
 import de.fhkn.in.uce.core.socketlistener.SocketListener;
 import de.fhkn.in.uce.core.socketlistener.SocketTaskFactory;
+import de.fhkn.in.uce.core.socketlistener.WorkerPool;
 import de.fhkn.in.uce.mediator.connectionhandling.HandleMessageTaskFactory;
 import de.fhkn.in.uce.mediator.peerregistry.UserCleanerTask;
 
@@ -32,20 +41,35 @@ import de.fhkn.in.uce.mediator.peerregistry.UserCleanerTask;
  * The mediator is a public accessibly instance that mediate between a client
  * (source of the connection) and a server (target of a connection). Targets can
  * register at the mediator and sources can request connection information
- * (endpoints) of a target.
+ * (endpoints) of a target. Optionally new connections are subject to an
+ * {@link AdmissionControl}, connections which exceed its limits are closed
+ * right after accept. The threads which handle the connections can be bounded
+ * by a {@link WorkerPool}. Since a registered target keeps its connection, the
+ * pool also bounds the number of targets which are served at once. If the
+ * mediator runs together with other servers in one VM, it can use the
+ * executors of a {@link ServerContext} instead of creating its own ones.
  * 
  * @author Alexander Diener (aldiener@htwg-konstanz.de)
  * 
  */
 public final class Mediator {
+    private static final String ADMISSION_OPTION = "--admission"; //$NON-NLS-1$
+    private static final String POOL_OPTION = "--pool"; //$NON-NLS-1$
+    private static final String USAGE = "listenerPort iterationTimeInSeconds maxLifetimeInSeconds" //$NON-NLS-1$
+            + " [--admission connectionsPerSecond,burst,maxConnections]" //$NON-NLS-1$
+            + " [--pool maxThreads,queueCapacity,close|pause|respond]"; //$NON-NLS-1$
     private static final Logger logger = LoggerFactory.getLogger(Mediator.class);
     private final int listenerPort;
     private final int iterationTimeInSeconds;
     private final int maxLifetimeInSeconds;
     private final ExecutorService handlerExecutor;
-    private final ExecutorService cleanerExecutor;
     private final ExecutorService socketListenerExecutor;
     private final SocketTaskFactory handleMessageTaskFactory;
+    private final AdmissionControl admissionControl;
+    private final RejectionPolicy rejectionPolicy;
+    private final HashedWheelTimer timer;
+    private SocketListener socketListener;
+    private Timeout userCleanerTimeout;
 
     /**
      * Creates a mediator that handles messages.
@@ -60,13 +84,102 @@ public final class Mediator {
      *            regenerating the registration
      */
     public Mediator(final int listenerPort, final int iterationTimeInSeconds, final int maxLifetimeInSeconds) {
-        this.handlerExecutor = Executors.newCachedThreadPool();
-        this.cleanerExecutor = Executors.newSingleThreadExecutor();
-        this.socketListenerExecutor = Executors.newSingleThreadExecutor();
+        this(listenerPort, iterationTimeInSeconds, maxLifetimeInSeconds, null);
+    }
+
+    /**
+     * Creates a mediator that handles the messages of the connections admitted
+     * by the given {@link AdmissionControl}.
+     * 
+     * @param listenerPort
+     *            the port the mediator listens to
+     * @param iterationTimeInSeconds
+     *            the time interval in seconds the mediator checks for expired
+     *            registrations
+     * @param maxLifetimeInSeconds
+     *            the maximal time in seconds a target can be registered without
+     *            regenerating the registration
+     * @param admissionControl
+     *            decides which connections are handled, null to handle all
+     *            connections
+     */
+    public Mediator(final int listenerPort, final int iterationTimeInSeconds, final int maxLifetimeInSeconds,
+            final AdmissionControl admissionControl) {
+        this(listenerPort, iterationTimeInSeconds, maxLifetimeInSeconds, admissionControl, null);
+    }
+
+    /**
+     * Creates a mediator that handles the messages of the connections admitted
+     * by the given {@link AdmissionControl} with threads bounded by the given
+     * {@link WorkerPool}.
+     * 
+     * @param listenerPort
+     *            the port the mediator listens to
+     * @param iterationTimeInSeconds
+     *            the time interval in seconds the mediator checks for expired
+     *            registrations
+     * @param maxLifetimeInSeconds
+     *            the maximal time in seconds a target can be registered without
+     *            regenerating the registration
+     * @param admissionControl
+     *            decides which connections are handled, null to handle all
+     *            connections
+     * @param workerPool
+     *            the bounds of the threads which handle the connections, null
+     *            for a thread per connection
+     */
+    public Mediator(final int listenerPort, final int iterationTimeInSeconds, final int maxLifetimeInSeconds,
+            final AdmissionControl admissionControl, final WorkerPool workerPool) {
+        this(listenerPort, iterationTimeInSeconds, maxLifetimeInSeconds, admissionControl, workerPool, null);
+    }
+
+    /**
+     * Creates a mediator that handles the messages of the connections admitted
+     * by the given {@link AdmissionControl} with the executors of the given
+     * {@link ServerContext}.
+     * 
+     * @param listenerPort
+     *            the port the mediator listens to
+     * @param iterationTimeInSeconds
+     *            the time interval in seconds the mediator checks for expired
+     *            registrations
+     * @param maxLifetimeInSeconds
+     *            the maximal time in seconds a target can be registered without
+     *            regenerating the registration
+     * @param admissionControl
+     *            decides which connections are handled, null to handle all
+     *            connections
+     * @param workerPool
+     *            the bounds of the threads which handle the connections, null
+     *            for the handler executor of the context or a thread per
+     *            connection
+     * @param context
+     *            the context whose executors and timer are used, null to
+     *            create own executors
+     */
+    public Mediator(final int listenerPort, final int iterationTimeInSeconds, final int maxLifetimeInSeconds,
+            final AdmissionControl admissionControl, final WorkerPool workerPool, final ServerContext context) {
+        if (workerPool != null) {
+            this.handlerExecutor = workerPool.newExecutor();
+            this.rejectionPolicy = workerPool.getRejectionPolicy();
+        } else if (context != null) {
+            this.handlerExecutor = context.getHandlerExecutor();
+            this.rejectionPolicy = context.getRejectionPolicy();
+        } else {
+            this.handlerExecutor = ExecutionMode.newCachedThreadPool();
+            this.rejectionPolicy = null;
+        }
+        if ((workerPool != null) || (context == null)) {
+            MetricsRegistry.getShared().registerExecutor("mediator.handler", this.handlerExecutor); //$NON-NLS-1$
+        }
+        this.socketListenerExecutor = (context != null) ? context.getBlockingExecutor() : Executors
+                .newSingleThreadExecutor();
+        this.timer = (context != null) ? context.getTimer() : HashedWheelTimer.getShared();
         this.listenerPort = listenerPort;
         this.iterationTimeInSeconds = iterationTimeInSeconds;
         this.maxLifetimeInSeconds = maxLifetimeInSeconds;
         this.handleMessageTaskFactory = new HandleMessageTaskFactory();
+        this.admissionControl = admissionControl;
     }
 
     /**
@@ -75,31 +188,55 @@ public final class Mediator {
      * 
      * @throws Exception
      */
-    public void startMediator() throws Exception {
+    public synchronized void startMediator() throws Exception {
         this.startMessageHandler();
         this.startUserCleaner();
     }
 
+    /**
+     * Stops the mediator. The listener socket is closed, the check for expired
+     * registrations is cancelled and the executors are shut down.
+     */
+    public synchronized void stop() {
+        if (this.socketListener != null) {
+            this.socketListener.interrupt();
+            this.socketListener = null;
+        }
+        if (this.userCleanerTimeout != null) {
+            this.userCleanerTimeout.cancel();
+            this.userCleanerTimeout = null;
+        }
+        this.handlerExecutor.shutdown();
+        this.socketListenerExecutor.shutdown();
+        logger.info("Mediator on port {} stopped", this.listenerPort); //$NON-NLS-1$
+    }
+
     private void startMessageHandler() throws Exception {
         final ServerSocket listenerSocket = new ServerSocket(this.listenerPort);
-        final SocketListener socketListener = new SocketListener(listenerSocket, this.handlerExecutor,
-                this.handleMessageTaskFactory);
-        this.socketListenerExecutor.execute(socketListener);
+        this.socketListener = new SocketListener(listenerSocket, this.handlerExecutor, this.handleMessageTaskFactory,
+                this.admissionControl, this.rejectionPolicy);
+        this.socketListenerExecutor.execute(this.socketListener);
         logger.info("Message handling started, mediator is listening on port {}", this.listenerPort); //$NON-NLS-1$
     }
 
     private void startUserCleaner() {
+        // a restarted mediator must not leave the former check running on the
+        // timer, which may be shared with other servers
+        if (this.userCleanerTimeout != null) {
+            this.userCleanerTimeout.cancel();
+        }
         final UserCleanerTask userCleanerTask = new UserCleanerTask(this.iterationTimeInSeconds,
                 this.maxLifetimeInSeconds);
-        this.cleanerExecutor.execute(userCleanerTask);
+        // the first check runs at once as the former cleaner thread did
+        this.userCleanerTimeout = this.timer.newPeriodicTimeout(userCleanerTask, 0,
+                userCleanerTask.getIterationTimeInMillis(), TimeUnit.MILLISECONDS);
         logger.info(
                 "User cleaner started with iteration {} and max lifetime {}", this.iterationTimeInSeconds, this.maxLifetimeInSeconds); //$NON-NLS-1$
     }
 
     private static void checkArgumentsCount(final String[] args) {
-        if (args.length != 3) {
-            throw new IllegalArgumentException(
-                    "Illegal count of arguments, arguments: listenerPort iterationTimeInSeconds maxLifetimeInSeconds"); //$NON-NLS-1$
+        if ((args.length < 3) || ((args.length - 3) % 2 != 0)) {
+            throw new IllegalArgumentException("Illegal count of arguments, arguments: " + USAGE); //$NON-NLS-1$
         }
     }
 
@@ -116,15 +253,46 @@ public final class Mediator {
      * 
      * @param args
      *            args[0] listener port, args[1] iteration time in seconds,
-     *            args[2] maximal lifetime in seconds
+     *            args[2] maximal lifetime in seconds, optionally followed by
+     *            --admission rate,burst,max to limit the connections per
+     *            source address and in total and --pool threads,queue,policy
+     *            to bound the threads which handle the connections
      * @throws Exception
      */
     public static void main(final String[] args) throws Exception {
+        final Mediator allInOneMediator = fromArguments(args, null);
+        allInOneMediator.startMediator();
+    }
+
+    /**
+     * Creates a mediator with the given arguments, see {@link #main(String[])}.
+     * 
+     * @param args
+     *            the arguments of the mediator
+     * @param context
+     *            the context whose executors and timer are used, null to
+     *            create own executors
+     * @return the mediator which is not started yet
+     * @throws IllegalArgumentException
+     *             if the arguments are invalid
+     */
+    public static Mediator fromArguments(final String[] args, final ServerContext context) {
         checkArgumentsCount(args);
         final int listenerPort = parseNumber(args, 0);
         final int iterationTimeInSeconds = parseNumber(args, 1);
         final int maxLifetimeInSeconds = parseNumber(args, 2);
-        final Mediator allInOneMediator = new Mediator(listenerPort, iterationTimeInSeconds, maxLifetimeInSeconds);
-        allInOneMediator.startMediator();
+        AdmissionControl admissionControl = null;
+        WorkerPool workerPool = null;
+        for (int i = 3; i < args.length; i += 2) {
+            if (ADMISSION_OPTION.equals(args[i])) {
+                admissionControl = AdmissionControl.valueOf(args[i + 1]);
+            } else if (POOL_OPTION.equals(args[i])) {
+                workerPool = WorkerPool.valueOf(args[i + 1]);
+            } else {
+                throw new IllegalArgumentException("Illegal argument " + args[i] + ", arguments: " + USAGE); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        }
+        return new Mediator(listenerPort, iterationTimeInSeconds, maxLifetimeInSeconds, admissionControl,
+                workerPool, context);
     }
 }
@@ -16,6 +16,8 @@
  */
 package de.fhkn.in.uce.mediator.connectionhandling;
 
+import static de.fhkn.in.uce.mediator.util.MediatorConstants.TRAVERSAL_TECHNIQUE_ATTRIBUTE;
+
 import java.net.Socket;
 
 import org.slf4j.Logger;
@@ -90,6 +92,6 @@ public final class ConnectionRequestHandling implements HandleMessage {
 
     @Override
     public NATTraversalTechniqueAttribute getAttributeForTraversalTechnique() {
-        return new NATTraversalTechniqueAttribute(Integer.MAX_VALUE);
+        return TRAVERSAL_TECHNIQUE_ATTRIBUTE;
     }
 }
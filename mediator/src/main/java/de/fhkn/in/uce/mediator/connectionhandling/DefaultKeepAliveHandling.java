@@ -16,6 +16,8 @@
  */
 package de.fhkn.in.uce.mediator.connectionhandling;
 
+import static de.fhkn.in.uce.mediator.util.MediatorConstants.TRAVERSAL_TECHNIQUE_ATTRIBUTE;
+
 import java.net.Socket;
 
 import de.fhkn.in.uce.mediator.peerregistry.UserList;
@@ -56,6 +58,6 @@ public final class DefaultKeepAliveHandling implements HandleMessage {
 
     @Override
     public NATTraversalTechniqueAttribute getAttributeForTraversalTechnique() {
-        return new NATTraversalTechniqueAttribute(Integer.MAX_VALUE);
+        return TRAVERSAL_TECHNIQUE_ATTRIBUTE;
     }
 }
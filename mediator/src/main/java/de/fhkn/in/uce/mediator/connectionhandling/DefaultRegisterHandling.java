@@ -16,6 +16,8 @@
  */
 package de.fhkn.in.uce.mediator.connectionhandling;
 
+import static de.fhkn.in.uce.mediator.util.MediatorConstants.TRAVERSAL_TECHNIQUE_ATTRIBUTE;
+
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.ArrayList;
@@ -117,6 +119,6 @@ public final class DefaultRegisterHandling implements HandleMessage {
 
     @Override
     public NATTraversalTechniqueAttribute getAttributeForTraversalTechnique() {
-        return new NATTraversalTechniqueAttribute(Integer.MAX_VALUE);
+        return TRAVERSAL_TECHNIQUE_ATTRIBUTE;
     }
 }
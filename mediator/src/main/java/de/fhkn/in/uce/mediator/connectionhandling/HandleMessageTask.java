@@ -24,6 +24,9 @@ import java.net.SocketException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.fhkn.in.uce.core.events.FlightEvent;
+import de.fhkn.in.uce.core.events.FlightEventType;
+import de.fhkn.in.uce.core.events.FlightEvents;
 import de.fhkn.in.uce.plugininterface.mediator.HandleMessage;
 import de.fhkn.in.uce.plugininterface.message.NATAttributeTypeDecoder;
 import de.fhkn.in.uce.stun.attribute.ErrorCode.STUNErrorCode;
@@ -98,6 +101,8 @@ public final class HandleMessageTask implements Runnable {
     }
 
     private void handleMessage(final Message toHandle) throws Exception {
+        final FlightEvent event = FlightEvents.begin(FlightEventType.MEDIATOR_MESSAGE);
+        String outcome = "failed"; //$NON-NLS-1$
         try {
             if (toHandle.isMethod(STUNMessageMethod.REGISTER)) {
                 this.handleRegisterMessage(toHandle);
@@ -114,12 +119,17 @@ public final class HandleMessageTask implements Runnable {
             } else {
                 logger.error("Unknown message method {}", toHandle.getMessageMethod().encode()); //$NON-NLS-1$
             }
+            outcome = "handled"; //$NON-NLS-1$
         } catch (final Exception e) {
             final String errorMessage = "Exception while handling message"; //$NON-NLS-1$
             logger.error(errorMessage);
             // TODO examine cause of the error to send correct error code
             this.sendFailureResponse(toHandle, STUNErrorCode.SERVER_ERROR, e.getMessage());
             throw e;
+        } finally {
+            if (event.isEnabled()) {
+                event.commit(String.valueOf(toHandle.getMessageMethod()), outcome, 0);
+            }
         }
     }
 
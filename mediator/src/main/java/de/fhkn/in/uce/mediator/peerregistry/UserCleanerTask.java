@@ -20,12 +20,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Thread which cleans the list of registered users.
+ * Task which cleans the list of registered users. It is run periodically by
+ * the {@link de.fhkn.in.uce.core.concurrent.HashedWheelTimer shared timer}
+ * with the iteration time as delay.
  * 
  * @author thomas zink, stefan lohr, Alexander Diener
  *         (aldiener@htwg-konstanz.de)
  */
-public final class UserCleanerTask extends Thread {
+public final class UserCleanerTask implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(UserCleanerTask.class);
     private final long iterationTimeInMillis;
     private final long maxLifetimeInMillis;
@@ -44,21 +46,23 @@ public final class UserCleanerTask extends Thread {
         this.maxLifetimeInMillis = maxLifetimeInSeconds * 1000;
     }
 
+    /**
+     * Returns the time interval in milliseconds for checking the users.
+     * 
+     * @return the iteration time in milliseconds
+     */
+    public long getIterationTimeInMillis() {
+        return this.iterationTimeInMillis;
+    }
+
     /**
      * Checks for users where lifetime is expired. These users are removed from
      * the {@link UserList}.
      */
+    @Override
     public void run() {
-        logger.info("UserCleaner started [ iterationTime: {} / maxLifeTime {} ]", //$NON-NLS-1$
-                this.iterationTimeInMillis, this.maxLifetimeInMillis);
-        while (!isInterrupted()) {
-            long timestamp = System.currentTimeMillis() - this.maxLifetimeInMillis;
-            this.userList.removeUsersByTimestamp(timestamp);
-            try {
-                Thread.sleep(this.iterationTimeInMillis);
-            } catch (InterruptedException e) {
-                Thread.interrupted();
-            }
-        }
+        final long timestamp = System.currentTimeMillis() - this.maxLifetimeInMillis;
+        this.userList.removeUsersByTimestamp(timestamp);
+        logger.debug("Removed users not refreshed within {} ms", this.maxLifetimeInMillis); //$NON-NLS-1$
     }
 }
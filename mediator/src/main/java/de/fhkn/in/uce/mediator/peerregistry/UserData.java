@@ -21,8 +21,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
@@ -42,11 +40,10 @@ import de.fhkn.in.uce.stun.attribute.EndpointClass.EndpointCategory;
 public final class UserData {
     private final String userId;
     private final List<Endpoint> endpoints;
-    private final Lock timestampLock = new ReentrantLock();
-    @GuardedBy("timestampLock")
-    private long timestamp;
-    @GuardedBy("itself")
-    private NATBehavior userNat;
+    // plain volatile fields, the former monitors only guarded single reads
+    // and writes and would pin the carrier of a virtual thread
+    private volatile long timestamp;
+    private volatile NATBehavior userNat;
     private final Socket socketToUser;
     @GuardedBy("itself")
     private final List<NATTraversalTechniqueAttribute> supportedNatTraversalTechniques;
@@ -88,9 +85,7 @@ public final class UserData {
      * @return the current timestamp
      */
     public long getTimestamp() {
-        synchronized (this.timestampLock) {
-            return this.timestamp;
-        }
+        return this.timestamp;
     }
 
     /**
@@ -161,18 +156,14 @@ public final class UserData {
      * @return the {@link NATBehavior} of the user
      */
     public NATBehavior getUserNat() {
-        synchronized (this.userNat) {
-            return this.userNat;
-        }
+        return this.userNat;
     }
 
     /**
      * Refreshs the timestamp of the user.
      */
     public void refreshTimestamp() {
-        synchronized (this.timestampLock) {
-            this.timestamp = System.currentTimeMillis();
-        }
+        this.timestamp = System.currentTimeMillis();
     }
 
     /**
@@ -182,9 +173,7 @@ public final class UserData {
      *            the new {@link NATBehavior} of the user
      */
     public void changeUserNat(final NATBehavior newUserNat) {
-        synchronized (this.userNat) {
-            this.userNat = newUserNat;
-        }
+        this.userNat = newUserNat;
     }
 
     /**
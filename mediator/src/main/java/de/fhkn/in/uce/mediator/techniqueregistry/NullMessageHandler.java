@@ -16,6 +16,8 @@
  */
 package de.fhkn.in.uce.mediator.techniqueregistry;
 
+import static de.fhkn.in.uce.mediator.util.MediatorConstants.TRAVERSAL_TECHNIQUE_ATTRIBUTE;
+
 import java.net.Socket;
 
 import de.fhkn.in.uce.plugininterface.mediator.HandleMessage;
@@ -40,7 +42,7 @@ public final class NullMessageHandler implements HandleMessage {
     @Override
     public NATTraversalTechniqueAttribute getAttributeForTraversalTechnique() {
         // return attribute with non-existing encoding
-        return new NATTraversalTechniqueAttribute(Integer.MAX_VALUE);
+        return TRAVERSAL_TECHNIQUE_ATTRIBUTE;
     }
 
     private NullMessageHandler() {
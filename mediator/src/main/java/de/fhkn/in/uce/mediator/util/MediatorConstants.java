@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.mediator.util;
+
+import de.fhkn.in.uce.plugininterface.message.NATTraversalTechniqueAttribute;
+
+/**
+ * Constants which are shared by the message handlers of the mediator.
+ * 
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ * 
+ */
+public final class MediatorConstants {
+    /**
+     * The traversal technique attribute of the handlers which are not part of
+     * a traversal technique. The attribute is immutable, so it can be shared.
+     */
+    public static final NATTraversalTechniqueAttribute TRAVERSAL_TECHNIQUE_ATTRIBUTE =
+            new NATTraversalTechniqueAttribute(Integer.MAX_VALUE);
+
+    private MediatorConstants() {
+        throw new AssertionError();
+    }
+}
@@ -16,12 +16,11 @@
  */
 package de.fhkn.in.uce.plugininterface;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -32,6 +31,7 @@ import de.fhkn.in.uce.plugininterface.message.NATSTUNAttributeType;
 import de.fhkn.in.uce.stun.attribute.Attribute;
 import de.fhkn.in.uce.stun.attribute.AttributeHeader;
 import de.fhkn.in.uce.stun.attribute.AttributeType;
+import de.fhkn.in.uce.stun.util.ByteBufferUtil;
 import de.fhkn.in.uce.stun.util.MessageFormatException;
 
 /**
@@ -146,21 +146,39 @@ public final class NATBehavior implements Attribute {
      */
     public static NATBehavior fromBytes(final byte[] encoded, final AttributeHeader header) throws IOException,
             MessageFormatException {
+        return fromBytes(ByteBuffer.wrap(encoded), 0, header);
+    }
 
-        final ByteArrayInputStream bin = new ByteArrayInputStream(encoded);
-        final DataInputStream din = new DataInputStream(bin);
-
+    /**
+     * Creates a {@link NATBehavior} from the encoding which starts at the given
+     * absolute offset of the buffer.
+     * 
+     * @param encoded
+     *            the buffer which contains the encoded {@link NATBehavior}
+     * @param offset
+     *            the absolute offset of the attribute value in the buffer
+     * @param header
+     *            the header of the attribute
+     * @return the decoded {@link NATBehavior}
+     * @throws IOException
+     *             if the encoding could not be read
+     * @throws MessageFormatException
+     *             if the {@code encoded} is malformed
+     */
+    public static NATBehavior fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header)
+            throws IOException, MessageFormatException {
+        ByteBufferUtil.checkLength(header.getLength(), LENGTH);
         // mapping feature
-        final int mappingFeatureBits = din.readUnsignedByte();
+        final int mappingFeatureBits = encoded.get(offset) & 0xFF;
         final NATFeature mappingFeature = NATFeature.fromEncoded(mappingFeatureBits);
         // mapping feature realization
-        final int mappingRealizationBits = din.readUnsignedByte();
+        final int mappingRealizationBits = encoded.get(offset + 1) & 0xFF;
         final NATFeatureRealization mappingRealization = NATFeatureRealization.fromEncoded(mappingRealizationBits);
         // filtering feature
-        final int filteringFeatureBits = din.readUnsignedByte();
+        final int filteringFeatureBits = encoded.get(offset + 2) & 0xFF;
         final NATFeature filteringFeature = NATFeature.fromEncoded(filteringFeatureBits);
         // filtering realization
-        final int filteringRealizationBits = din.readUnsignedByte();
+        final int filteringRealizationBits = encoded.get(offset + 3) & 0xFF;
         final NATFeatureRealization filteringRealization = NATFeatureRealization.fromEncoded(filteringRealizationBits);
 
         if (null == mappingFeature || !mappingFeature.equals(NATFeature.MAPPING) || null == filteringFeature
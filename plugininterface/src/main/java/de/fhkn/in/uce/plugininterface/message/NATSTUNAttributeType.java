@@ -17,6 +17,7 @@
 package de.fhkn.in.uce.plugininterface.message;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -41,9 +42,9 @@ public enum NATSTUNAttributeType implements AttributeType {
     NAT_BEHAVIOR(0x1000) {
 
         @Override
-        public Attribute fromBytes(byte[] encoded, AttributeHeader header, MessageHeader messageHeader)
+        public Attribute fromBytes(ByteBuffer encoded, int offset, AttributeHeader header, MessageHeader messageHeader)
                 throws MessageFormatException, IOException {
-            return NATBehavior.fromBytes(encoded, header);
+            return NATBehavior.fromBytes(encoded, offset, header);
         }
 
     },
@@ -51,9 +52,9 @@ public enum NATSTUNAttributeType implements AttributeType {
     NAT_TRAVERSAL_TECHNIQUE(0x1002) {
 
         @Override
-        public Attribute fromBytes(byte[] encoded, AttributeHeader header, MessageHeader messageHeader)
+        public Attribute fromBytes(ByteBuffer encoded, int offset, AttributeHeader header, MessageHeader messageHeader)
                 throws MessageFormatException, IOException {
-            return NATTraversalTechniqueAttribute.fromBytes(encoded, header);
+            return NATTraversalTechniqueAttribute.fromBytes(encoded, offset, header);
         }
 
     };
@@ -83,6 +84,12 @@ public enum NATSTUNAttributeType implements AttributeType {
         return this.encoded;
     }
 
+    @Override
+    public Attribute fromBytes(byte[] encoded, AttributeHeader header, MessageHeader messageHeader)
+            throws MessageFormatException, IOException {
+        return this.fromBytes(ByteBuffer.wrap(encoded), 0, header, messageHeader);
+    }
+
     /**
      * Returns the {@link NATSTUNAttributeType} for the given encoding.
      * 
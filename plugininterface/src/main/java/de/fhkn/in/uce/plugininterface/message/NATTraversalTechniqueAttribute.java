@@ -16,19 +16,19 @@
  */
 package de.fhkn.in.uce.plugininterface.message;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
-import de.fhkn.in.uce.stun.attribute.Attribute;
 import de.fhkn.in.uce.stun.attribute.AttributeHeader;
 import de.fhkn.in.uce.stun.attribute.AttributeType;
+import de.fhkn.in.uce.stun.attribute.ImmutableAttribute;
+import de.fhkn.in.uce.stun.util.ByteBufferUtil;
 import de.fhkn.in.uce.stun.util.MessageFormatException;
 
-public class NATTraversalTechniqueAttribute implements Attribute {
+public class NATTraversalTechniqueAttribute extends ImmutableAttribute {
     private static final int LENGTH = 4;
     private final int encoded;
 
@@ -102,9 +102,30 @@ public class NATTraversalTechniqueAttribute implements Attribute {
      */
     public static NATTraversalTechniqueAttribute fromBytes(final byte[] encoded, final AttributeHeader header)
             throws IOException, MessageFormatException {
-        final ByteArrayInputStream bin = new ByteArrayInputStream(encoded);
-        final DataInputStream din = new DataInputStream(bin);
-        final int travTech = din.readInt();
+        return fromBytes(ByteBuffer.wrap(encoded), 0, header);
+    }
+
+    /**
+     * Creates a {@link NATTraversalTechniqueAttribute} from the encoding which
+     * starts at the given absolute offset of the buffer.
+     *
+     * @param encoded
+     *            the buffer which contains the encoded NAT traversal technique
+     * @param offset
+     *            the absolute offset of the attribute value in the buffer
+     * @param header
+     *            the attribute header
+     * @return the {@link NATTraversalTechniqueAttribute} for the corresponding
+     *         encoding
+     * @throws IOException
+     *             if the attribute can not be read
+     * @throws MessageFormatException
+     *             if the message is malformed
+     */
+    public static NATTraversalTechniqueAttribute fromBytes(final ByteBuffer encoded, final int offset,
+            final AttributeHeader header) throws IOException, MessageFormatException {
+        ByteBufferUtil.checkLength(header.getLength(), LENGTH);
+        final int travTech = encoded.getInt(offset);
         return new NATTraversalTechniqueAttribute(travTech);
     }
 }
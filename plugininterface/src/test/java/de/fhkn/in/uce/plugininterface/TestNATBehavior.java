@@ -22,6 +22,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.HashSet;
@@ -35,6 +36,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import de.fhkn.in.uce.plugininterface.message.NATSTUNAttributeType;
+import de.fhkn.in.uce.stun.attribute.AttributeHeader;
+import de.fhkn.in.uce.stun.attribute.AttributeType;
 
 public final class TestNATBehavior {
     private NATBehavior behavior;
@@ -115,7 +118,7 @@ public final class TestNATBehavior {
                 }
                 bos.flush();
                 byte[] asBytes = bos.toByteArray();
-                return NATBehavior.fromBytes(asBytes, null);
+                return NATBehavior.fromBytes(asBytes, header(asBytes.length));
             }
         };
     }
@@ -135,4 +138,24 @@ public final class TestNATBehavior {
             }
         };
     }
+
+    private static AttributeHeader header(final int length) {
+        return new AttributeHeader() {
+
+            @Override
+            public AttributeType getType() {
+                return NATSTUNAttributeType.NAT_BEHAVIOR;
+            }
+
+            @Override
+            public int getLength() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(final OutputStream out) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
 }
@@ -22,11 +22,17 @@ import static org.junit.Assert.assertTrue;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import de.fhkn.in.uce.stun.attribute.AttributeHeader;
+import de.fhkn.in.uce.stun.attribute.AttributeType;
+import de.fhkn.in.uce.stun.util.MessageFormatException;
+
 public final class TestNATTraversalTechniqueAttribute {
     private static final int ATTRIBUTE_LENGTH = 4;
     private static final int ENCODED = 0x0;
@@ -56,10 +62,28 @@ public final class TestNATTraversalTechniqueAttribute {
     public void testFromBytes() throws IOException {
         final byte[] encodedAsBytes = getEncodedAsBytes();
         final NATTraversalTechniqueAttribute actualResult = NATTraversalTechniqueAttribute.fromBytes(encodedAsBytes,
-                null);
+                header(ATTRIBUTE_LENGTH));
         assertEquals(this.attr, actualResult);
     }
 
+    @Test
+    public void testFromByteBuffer() throws IOException {
+        final byte[] encodedAsBytes = getEncodedAsBytes();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(encodedAsBytes.length + 3);
+        buffer.position(3);
+        buffer.put(encodedAsBytes);
+        final NATTraversalTechniqueAttribute actualResult = NATTraversalTechniqueAttribute.fromBytes(buffer, 3,
+                header(ATTRIBUTE_LENGTH));
+        assertEquals(this.attr, actualResult);
+    }
+
+    @Test(expected = MessageFormatException.class)
+    public void testFromShortByteBuffer() throws IOException {
+        // the following bytes do not belong to the attribute
+        final ByteBuffer buffer = ByteBuffer.wrap(new byte[] { 0, 0, 0, 0, 0, 0 });
+        NATTraversalTechniqueAttribute.fromBytes(buffer, 0, header(2));
+    }
+
     @Test
     public void testWriteTo() throws IOException {
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -74,4 +98,24 @@ public final class TestNATTraversalTechniqueAttribute {
         dos.flush();
         return baos.toByteArray();
     }
+
+    private static AttributeHeader header(final int length) {
+        return new AttributeHeader() {
+
+            @Override
+            public AttributeType getType() {
+                return NATSTUNAttributeType.NAT_TRAVERSAL_TECHNIQUE;
+            }
+
+            @Override
+            public int getLength() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(final OutputStream out) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
 }
@@ -48,6 +48,7 @@ import de.fhkn.in.uce.stun.message.MessageStaticFactory;
  */
 public final class RelayingConnRequestHandler implements HandleMessage {
     private static final Logger logger = LoggerFactory.getLogger(RelayingConnRequestHandler.class);
+    private static final RelayingAttribute RELAYING_ATTRIBUTE = new RelayingAttribute();
     private final ConnectionRequestList connectionRequests = ConnectionRequestList.INSTANCE;
     private final MediatorUtil mediatorUtil = MediatorUtil.INSTANCE;
     private final UserList userList = UserList.INSTANCE;
@@ -92,7 +93,7 @@ public final class RelayingConnRequestHandler implements HandleMessage {
         logger.debug("Calling target {}", toTarget.toString());
         final Message connectionRequest = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
                 STUNMessageMethod.CONNECTION_REQUEST, connectionRequestFromSource.getHeader().getTransactionId());
-        connectionRequest.addAttribute(new RelayingAttribute());
+        connectionRequest.addAttribute(RELAYING_ATTRIBUTE);
         connectionRequest.writeTo(toTarget.getOutputStream());
         // return this.waitForTarget(toTarget);
     }
@@ -106,6 +107,6 @@ public final class RelayingConnRequestHandler implements HandleMessage {
 
     @Override
     public NATTraversalTechniqueAttribute getAttributeForTraversalTechnique() {
-        return new RelayingAttribute();
+        return RELAYING_ATTRIBUTE;
     }
 }
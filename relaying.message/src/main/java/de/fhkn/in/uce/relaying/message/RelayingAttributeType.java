@@ -17,6 +17,7 @@
 package de.fhkn.in.uce.relaying.message;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -35,9 +36,9 @@ import de.fhkn.in.uce.stun.util.MessageFormatException;
 public enum RelayingAttributeType implements AttributeType {
     LIFETIME(0x33) {
 
-        public Attribute fromBytes(byte[] encoded, AttributeHeader header, MessageHeader msgHeader)
+        public Attribute fromBytes(ByteBuffer encoded, int offset, AttributeHeader header, MessageHeader msgHeader)
                 throws MessageFormatException, IOException {
-            return RelayingLifetime.fromBytes(encoded);
+            return RelayingLifetime.fromBytes(encoded, offset, header.getLength());
         }
     };
 
@@ -65,6 +66,11 @@ public enum RelayingAttributeType implements AttributeType {
         return encoded;
     }
 
+    public Attribute fromBytes(byte[] encoded, AttributeHeader header, MessageHeader messageHeader)
+            throws MessageFormatException, IOException {
+        return this.fromBytes(ByteBuffer.wrap(encoded), 0, header, messageHeader);
+    }
+
     /**
      * Decodes a given encoded attribute type.
      * 
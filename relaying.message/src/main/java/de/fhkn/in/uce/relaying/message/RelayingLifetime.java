@@ -16,14 +16,14 @@
  */
 package de.fhkn.in.uce.relaying.message;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import de.fhkn.in.uce.stun.attribute.Attribute;
 import de.fhkn.in.uce.stun.attribute.AttributeType;
+import de.fhkn.in.uce.stun.util.ByteBufferUtil;
 
 /**
  * Attribute for the lifetime of a binding. Is sent in refresh and allocation
@@ -81,9 +81,26 @@ public final class RelayingLifetime implements Attribute {
      *             if an I/O error occurs
      */
     static Attribute fromBytes(byte[] encoded) throws IOException {
-        ByteArrayInputStream bin = new ByteArrayInputStream(encoded);
-        DataInputStream din = new DataInputStream(bin);
-        int lifetime = din.readInt();
+        return fromBytes(ByteBuffer.wrap(encoded), 0, encoded.length);
+    }
+
+    /**
+     * Decodes a lifetime attribute which starts at the given absolute offset of
+     * the buffer.
+     * 
+     * @param encoded
+     *            the buffer which contains the encoded attribute
+     * @param offset
+     *            the absolute offset of the attribute value in the buffer
+     * @param length
+     *            the length of the attribute value
+     * @return the decoded lifetime attribute
+     * @throws IOException
+     *             if an I/O error occurs or the value is too short
+     */
+    static Attribute fromBytes(ByteBuffer encoded, int offset, int length) throws IOException {
+        ByteBufferUtil.checkLength(length, 4);
+        int lifetime = encoded.getInt(offset);
         return new RelayingLifetime(lifetime);
     }
 
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhkn.in.uce.core.concurrent.HashedWheelTimer;
+import de.fhkn.in.uce.core.concurrent.Timeout;
+import de.fhkn.in.uce.core.metrics.Counter;
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+import de.fhkn.in.uce.relaying.message.RelayingConstants;
+import de.fhkn.in.uce.relaying.message.RelayingLifetime;
+import de.fhkn.in.uce.relaying.server.eventloop.ControlConnection;
+import de.fhkn.in.uce.relaying.server.eventloop.RelayEventLoopGroup;
+import de.fhkn.in.uce.stun.attribute.ErrorCode.STUNErrorCode;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageWriter;
+
+/**
+ * An allocation of the {@link AllocationTable}. It answers the refresh
+ * requests of its control connection and expires if no refresh request
+ * arrives within its lifetime. The deadline is only moved by a refresh, the
+ * timeout checks it when it fires and is scheduled again if the deadline was
+ * moved in the meantime.
+ * 
+ * An expired allocation closes its listening socket, its control connection
+ * and the relayed connections of its peers. An allocation which is withdrawn
+ * by the client or whose control connection is lost keeps its relayed
+ * connections, like before.
+ * 
+ * @author Daniel Maier
+ * 
+ */
+public final class Allocation implements ControlConnection.Listener, RelayEventLoopGroup.SessionListener {
+    private static final Logger logger = LoggerFactory.getLogger(Allocation.class);
+    private static final Counter activeAllocations = MetricsRegistry.getShared().upDownCounter(
+            "relay.allocations.active");
+    private static final Counter expiredAllocations = MetricsRegistry.getShared().counter(
+            "relay.allocations.expired");
+    private final AllocationTable table;
+    private final InetSocketAddress endpoint;
+    private final TimeUnit lifetimeUnit;
+    private final HashedWheelTimer timer;
+    private final Set<Closeable> sessions = Collections.newSetFromMap(new ConcurrentHashMap<Closeable, Boolean>());
+    private volatile ControlConnection controlConnection;
+    private volatile long deadline;
+    private Closeable peerListener;
+    private Timeout expiry;
+    private boolean destroyed;
+    private boolean sessionsClosed;
+
+    Allocation(AllocationTable table, InetSocketAddress endpoint, int refreshInterval) {
+        this(table, endpoint, refreshInterval, TimeUnit.SECONDS, HashedWheelTimer.getShared());
+    }
+
+    /**
+     * Creates an allocation whose lifetimes are given in the given unit and
+     * which is expired by the given timer, e.g. to test it in short time.
+     */
+    Allocation(AllocationTable table, InetSocketAddress endpoint, int refreshInterval, TimeUnit lifetimeUnit,
+            HashedWheelTimer timer) {
+        this.table = table;
+        this.endpoint = endpoint;
+        this.lifetimeUnit = lifetimeUnit;
+        this.timer = timer;
+        refresh(refreshInterval);
+        activeAllocations.increment();
+    }
+
+    /**
+     * Returns the endpoint of this allocation.
+     * 
+     * @return the endpoint
+     */
+    public InetSocketAddress getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Returns the writer for messages to the client.
+     * 
+     * @return the writer of the control connection
+     */
+    public MessageWriter getControlConnectionWriter() {
+        return controlConnection.getWriter();
+    }
+
+    /**
+     * Sets the handle which withdraws the listening socket of this
+     * allocation. If the allocation is destroyed already, the handle is closed
+     * right away.
+     * 
+     * @param peerListener
+     *            the handle of the listening socket
+     */
+    public void setPeerListener(Closeable peerListener) {
+        synchronized (this) {
+            if (!destroyed) {
+                this.peerListener = peerListener;
+                return;
+            }
+        }
+        closeQuietly(peerListener);
+    }
+
+    void open(ControlConnection connection) {
+        synchronized (this) {
+            controlConnection = connection;
+            if (!destroyed) {
+                scheduleExpiry(deadline - System.nanoTime());
+                return;
+            }
+        }
+        connection.close();
+    }
+
+    /**
+     * Handles a refresh request. A lifetime greater than 0 moves the deadline
+     * of the allocation, otherwise the allocation is withdrawn.
+     */
+    @Override
+    public void messageReceived(ControlConnection connection, Message message) throws IOException {
+        if (!message.isMethod(STUNMessageMethod.KEEP_ALIVE) || !message.isRequest()
+                || !message.hasAttribute(RelayingLifetime.class)) {
+            logger.error("Received unexpected message: {}", message.getMessageMethod());
+            Message errorResponse = message.buildFailureResponse(STUNErrorCode.BAD_REQUEST,
+                    "Expected refresh request");
+            connection.getWriter().writeMessage(errorResponse);
+            return;
+        }
+        int lifetime = message.getAttribute(RelayingLifetime.class).getLifeTime();
+        logger.info("Received refresh request with lifetime {}", lifetime);
+        Message successResponse = message.buildSuccessResponse();
+        if (lifetime > 0) {
+            int refreshInterval = Math.min(lifetime, RelayingConstants.ALLOCATION_LIFETIME_MAX);
+            refresh(refreshInterval);
+            successResponse.addAttribute(new RelayingLifetime(refreshInterval));
+            connection.getWriter().writeMessage(successResponse);
+        } else {
+            // unallocate
+            successResponse.addAttribute(new RelayingLifetime(0));
+            connection.getWriter().writeMessage(successResponse);
+            destroy(false);
+        }
+    }
+
+    /**
+     * Destroys this allocation as its control connection is lost.
+     */
+    @Override
+    public void closed(ControlConnection connection) {
+        logger.error("Lost control connection. Destroy allocation on {}", endpoint);
+        destroy(false);
+    }
+
+    @Override
+    public void opened(Closeable session) {
+        sessions.add(session);
+        boolean close;
+        synchronized (this) {
+            close = sessionsClosed;
+        }
+        if (close) {
+            closeQuietly(session);
+        }
+    }
+
+    @Override
+    public void closed(Closeable session) {
+        sessions.remove(session);
+    }
+
+    /**
+     * Destroys this allocation. The listening socket and the control
+     * connection are closed and the allocation is removed from the table.
+     * 
+     * @param closeSessions
+     *            true if the relayed connections of the peers are closed too
+     */
+    void destroy(boolean closeSessions) {
+        boolean first;
+        Closeable listener;
+        Timeout timeout;
+        ControlConnection connection;
+        synchronized (this) {
+            if (closeSessions) {
+                sessionsClosed = true;
+            }
+            first = !destroyed;
+            destroyed = true;
+            listener = peerListener;
+            peerListener = null;
+            timeout = expiry;
+            connection = controlConnection;
+        }
+        if (closeSessions) {
+            List<Closeable> relayed = new ArrayList<Closeable>(sessions);
+            for (Closeable session : relayed) {
+                closeQuietly(session);
+            }
+        }
+        if (!first) {
+            return;
+        }
+        logger.info("Destroy allocation on {}", endpoint);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        table.remove(this);
+        activeAllocations.decrement();
+        if (listener != null) {
+            closeQuietly(listener);
+        }
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    private synchronized boolean isDestroyed() {
+        return destroyed;
+    }
+
+    void refresh(int refreshInterval) {
+        deadline = System.nanoTime() + lifetimeUnit.toNanos(refreshInterval);
+    }
+
+    private synchronized void scheduleExpiry(long delayNanos) {
+        if (!destroyed) {
+            expiry = timer.newTimeout(new ExpireAllocationTask(), delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    /**
+     * Destroys the allocation if its deadline passed, otherwise waits for the
+     * moved deadline.
+     */
+    private final class ExpireAllocationTask implements Runnable {
+
+        @Override
+        public void run() {
+            if (isDestroyed()) {
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0) {
+                scheduleExpiry(remaining);
+                return;
+            }
+            logger.info("No refresh request within specified timeout. Destroy allocation on {}", endpoint);
+            expiredAllocations.increment();
+            destroy(true);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import de.fhkn.in.uce.core.concurrent.HashedWheelTimer;
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+import de.fhkn.in.uce.relaying.message.RelayingAttributeTypeDecoder;
+import de.fhkn.in.uce.relaying.message.RelayingConstants;
+import de.fhkn.in.uce.relaying.server.eventloop.ControlConnectionLoop;
+import de.fhkn.in.uce.stun.message.MessageReader;
+
+/**
+ * Table of the allocations of a relay server. The control connections of all
+ * allocations are served by one {@link ControlConnectionLoop}, which handles
+ * their refresh requests, and the lifetimes are tracked by timeouts of the
+ * shared {@link HashedWheelTimer}. So an idle allocation costs an entry of
+ * the table and its sockets, but no thread.
+ * 
+ * The number of allocations is exported as counter "relay.allocations.active"
+ * of the shared {@link MetricsRegistry}, the allocations which expired
+ * without refresh as counter "relay.allocations.expired".
+ * 
+ * @author Daniel Maier
+ * 
+ */
+public final class AllocationTable {
+    private final ConcurrentMap<InetSocketAddress, Allocation> allocations =
+            new ConcurrentHashMap<InetSocketAddress, Allocation>();
+    private final ControlConnectionLoop controlConnections = new ControlConnectionLoop(
+            MessageReader.createMessageReaderWithCustomAttributeTypeDecoder(new RelayingAttributeTypeDecoder()));
+
+    /**
+     * Starts the loop which serves the control connections.
+     * 
+     * @throws IOException
+     *             if the loop could not be started
+     */
+    public void start() throws IOException {
+        controlConnections.start();
+    }
+
+    /**
+     * Stops the loop which serves the control connections and destroys all
+     * allocations.
+     */
+    public void shutdown() {
+        controlConnections.shutdown();
+        List<Allocation> remaining = new ArrayList<Allocation>(allocations.values());
+        for (Allocation allocation : remaining) {
+            allocation.destroy(true);
+        }
+    }
+
+    /**
+     * Adds an allocation whose control connection is served by the loop from
+     * now on.
+     * 
+     * @param controlConnection
+     *            the control connection to the client, has to be created by a
+     *            channel
+     * @param endpoint
+     *            the endpoint of the allocation
+     * @param lifetime
+     *            the lifetime of the allocation without refresh requests in
+     *            seconds. If lifetime is 0,
+     *            {@link RelayingConstants#DEFAULT_ALLOCATION_REFRESH_INTERVAL}
+     *            is used. If lifetime is greater than
+     *            {@link RelayingConstants#ALLOCATION_LIFETIME_MAX},
+     *            {@link RelayingConstants#ALLOCATION_LIFETIME_MAX} is used.
+     * @return the allocation
+     * @throws IOException
+     *             if the control connection could not be handed over to the
+     *             loop
+     */
+    public Allocation add(Socket controlConnection, InetSocketAddress endpoint, int lifetime) throws IOException {
+        int refreshInterval = (lifetime == 0) ? RelayingConstants.DEFAULT_ALLOCATION_REFRESH_INTERVAL : Math.min(
+                lifetime, RelayingConstants.ALLOCATION_LIFETIME_MAX);
+        Allocation allocation = new Allocation(this, endpoint, refreshInterval);
+        allocations.put(endpoint, allocation);
+        try {
+            allocation.open(controlConnections.register(controlConnection, allocation));
+        } catch (IOException e) {
+            allocation.destroy(false);
+            throw e;
+        }
+        return allocation;
+    }
+
+    /**
+     * Returns the number of allocations.
+     * 
+     * @return the number of allocations
+     */
+    public int size() {
+        return allocations.size();
+    }
+
+    void remove(Allocation allocation) {
+        allocations.remove(allocation.getEndpoint(), allocation);
+    }
+}
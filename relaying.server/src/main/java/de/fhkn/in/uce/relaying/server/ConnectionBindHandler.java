@@ -18,9 +18,7 @@ package de.fhkn.in.uce.relaying.server;
 
 import java.io.IOException;
 import java.net.Socket;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,7 +38,7 @@ final class ConnectionBindHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(ConnectionBindHandler.class);
     private final Socket s;
-    private final Map<UUID, BlockingQueue<Socket>> connIDToQueue;
+    private final PendingConnectionBinds pendingBinds;
     private final Message connBindMessage;
 
     /**
@@ -50,12 +48,12 @@ final class ConnectionBindHandler {
      *            the data connection to the client
      * @param connBindMessage
      *            the connection bind message
-     * @param connIDToQueue
-     *            map to match relay connection between client and peers
+     * @param pendingBinds
+     *            table to match relay connection between client and peers
      */
-    ConnectionBindHandler(Socket s, Message connBindMessage, Map<UUID, BlockingQueue<Socket>> connIDToQueue) {
+    ConnectionBindHandler(Socket s, Message connBindMessage, PendingConnectionBinds pendingBinds) {
         this.s = s;
-        this.connIDToQueue = connIDToQueue;
+        this.pendingBinds = pendingBinds;
         this.connBindMessage = connBindMessage;
     }
 
@@ -68,16 +66,8 @@ final class ConnectionBindHandler {
     void handle() {
         if (connBindMessage.hasAttribute(Token.class)) {
             UUID connectionId = connBindMessage.getAttribute(Token.class).getToken();
-            BlockingQueue<Socket> queue = connIDToQueue.remove(connectionId);
-            if (queue != null) {
-                try {
-                    // TODO reply in case of success?
-                    queue.put(s);
-                } catch (InterruptedException e) {
-                    logger.error("InterruptedException while inserting socket to queue: {}", e);
-                    Thread.currentThread().interrupt();
-                }
-            } else {
+            // TODO reply in case of success?
+            if (!pendingBinds.complete(connectionId, s)) {
                 logger.error("Connection id (" + connectionId + ") does not refer to an existing pending connection.");
                 try {
                     Message errorResponse = connBindMessage.buildFailureResponse(STUNErrorCode.BAD_REQUEST,
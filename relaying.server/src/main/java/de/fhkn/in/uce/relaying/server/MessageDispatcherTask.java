@@ -20,10 +20,6 @@ import java.io.IOException;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +27,8 @@ import org.slf4j.LoggerFactory;
 import de.fhkn.in.uce.relaying.message.RelayingAttributeTypeDecoder;
 import de.fhkn.in.uce.relaying.message.RelayingMethod;
 import de.fhkn.in.uce.relaying.message.RelayingMethodDecoder;
+import de.fhkn.in.uce.relaying.server.eventloop.AllocationAcceptor;
+import de.fhkn.in.uce.relaying.server.eventloop.RelayEventLoopGroup;
 import de.fhkn.in.uce.stun.attribute.AttributeTypeDecoder;
 import de.fhkn.in.uce.stun.attribute.ErrorCode.STUNErrorCode;
 import de.fhkn.in.uce.stun.header.MessageMethodDecoder;
@@ -50,37 +48,43 @@ public class MessageDispatcherTask implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(MessageDispatcherTask.class);
     private final Socket s;
     private final MessageWriter controlConnectionWriter;
-    private final Map<UUID, BlockingQueue<Socket>> connIDToQueue;
-    // has to be unbounded
-    private final Executor controlConnectionHandlerExecutor;
-    // has to be unbounded
-    private final Executor relayExecutor;
+    private final PendingConnectionBinds pendingBinds;
+    private final RelayEventLoopGroup relayEventLoops;
+    private final AllocationAcceptor allocationAcceptor;
+    private final RelayPortPool portPool;
+    private final AllocationTable allocationTable;
 
     /**
      * Creates a new {@link MessageDispatcherTask}.
      * 
      * @param s
      *            the socket to the client
-     * @param connIDToQueue
-     *            map to match relay connection between client and peers
-     * @param controlConnectionHandlerExecutor
-     *            the executor that gets used to execute the
-     *            {@link RefreshMessageHandlerTask} for the given control
-     *            connection
-     * @param relayExecutor
-     *            the executor that gets used to execute task for the real relay
-     *            stuff
+     * @param pendingBinds
+     *            table to match relay connection between client and peers
+     * @param relayEventLoops
+     *            the event loops which relay the data between clients and
+     *            peers
+     * @param allocationAcceptor
+     *            the acceptor which accepts the peer connections of all
+     *            allocations
+     * @param portPool
+     *            the pool of the ports for allocations
+     * @param allocationTable
+     *            the table which tracks the lifetimes of the allocations
      * @throws IOException
      *             if an I/O error occurs while getting the output stream of the
      *             socket to the client
      */
-    public MessageDispatcherTask(Socket s, Map<UUID, BlockingQueue<Socket>> connIDToQueue,
-            Executor controlConnectionHandlerExecutor, Executor relayExecutor) throws IOException {
+    public MessageDispatcherTask(Socket s, PendingConnectionBinds pendingBinds,
+            RelayEventLoopGroup relayEventLoops, AllocationAcceptor allocationAcceptor, RelayPortPool portPool,
+            AllocationTable allocationTable) throws IOException {
         this.s = s;
         this.controlConnectionWriter = new MessageWriter(s.getOutputStream());
-        this.connIDToQueue = connIDToQueue;
-        this.controlConnectionHandlerExecutor = controlConnectionHandlerExecutor;
-        this.relayExecutor = relayExecutor;
+        this.pendingBinds = pendingBinds;
+        this.relayEventLoops = relayEventLoops;
+        this.allocationAcceptor = allocationAcceptor;
+        this.portPool = portPool;
+        this.allocationTable = allocationTable;
     }
 
     /**
@@ -104,11 +108,11 @@ public class MessageDispatcherTask implements Runnable {
         }
         if (message.isMethod(RelayingMethod.ALLOCATION) && message.isRequest()) {
             logger.info("Received allocation request");
-            new RelayAllocationHandler(s, controlConnectionWriter, connIDToQueue, message,
-                    controlConnectionHandlerExecutor, relayExecutor).handle();
+            new RelayAllocationHandler(s, controlConnectionWriter, pendingBinds, message, relayEventLoops,
+                    allocationAcceptor, portPool, allocationTable).handle();
         } else if (message.isMethod(RelayingMethod.CONNECTION_BIND) && message.isRequest()) {
             logger.info("Received connection bind");
-            new ConnectionBindHandler(s, message, connIDToQueue).handle();
+            new ConnectionBindHandler(s, message, pendingBinds).handle();
         } else {
             // unknown message
             logger.error("Received wrong message tye {}", message.getMessageMethod());
@@ -18,12 +18,10 @@ package de.fhkn.in.uce.relaying.server;
 
 import java.io.IOException;
 import java.net.Socket;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Executor;
 
 import de.fhkn.in.uce.core.socketlistener.SocketTaskFactory;
+import de.fhkn.in.uce.relaying.server.eventloop.AllocationAcceptor;
+import de.fhkn.in.uce.relaying.server.eventloop.RelayEventLoopGroup;
 
 /**
  * Factory to create {@link MessageDispatcherTask} instances.
@@ -33,35 +31,43 @@ import de.fhkn.in.uce.core.socketlistener.SocketTaskFactory;
  */
 public class MessageDispatcherTaskFactory implements SocketTaskFactory {
 
-    private final Map<UUID, BlockingQueue<Socket>> connIDToQueue;
-    // has to be unbounded
-    private final Executor controlConnectionHandlerExecutor;
-    // has to be unbounded
-    private final Executor relayExecutor;
+    private final PendingConnectionBinds pendingBinds;
+    private final RelayEventLoopGroup relayEventLoops;
+    private final AllocationAcceptor allocationAcceptor;
+    private final RelayPortPool portPool;
+    private final AllocationTable allocationTable;
 
     /**
      * Creates a new MessageDispatcherTaskFactory instance.
      * 
-     * @param connIDToQueue
-     *            map to match relay connection between client and peers
-     * @param controlConnectionHandlerExecutor
-     *            executor that is used to handle messages of control
-     *            connections
-     * @param relayExecutor
-     *            executor that is used for task for data relay stuff
+     * @param pendingBinds
+     *            table to match relay connection between client and peers
+     * @param relayEventLoops
+     *            the event loops which relay the data between clients and
+     *            peers
+     * @param allocationAcceptor
+     *            the acceptor which accepts the peer connections of all
+     *            allocations
+     * @param portPool
+     *            the pool of the ports for allocations
+     * @param allocationTable
+     *            the table which tracks the lifetimes of the allocations
      */
-    public MessageDispatcherTaskFactory(Map<UUID, BlockingQueue<Socket>> connIDToQueue,
-            Executor controlConnectionHandlerExecutor, Executor relayExecutor) {
-        this.connIDToQueue = connIDToQueue;
-        this.controlConnectionHandlerExecutor = controlConnectionHandlerExecutor;
-        this.relayExecutor = relayExecutor;
+    public MessageDispatcherTaskFactory(PendingConnectionBinds pendingBinds, RelayEventLoopGroup relayEventLoops,
+            AllocationAcceptor allocationAcceptor, RelayPortPool portPool, AllocationTable allocationTable) {
+        this.pendingBinds = pendingBinds;
+        this.relayEventLoops = relayEventLoops;
+        this.allocationAcceptor = allocationAcceptor;
+        this.portPool = portPool;
+        this.allocationTable = allocationTable;
     }
 
     /**
      * Returns a new {@link MessageDispatcherTask}.
      */
     public Runnable getTask(Socket s) throws IOException {
-        return new MessageDispatcherTask(s, connIDToQueue, controlConnectionHandlerExecutor, relayExecutor);
+        return new MessageDispatcherTask(s, pendingBinds, relayEventLoops, allocationAcceptor, portPool,
+                allocationTable);
     }
 
 }
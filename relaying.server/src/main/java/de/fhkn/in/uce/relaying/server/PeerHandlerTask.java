@@ -18,17 +18,16 @@ package de.fhkn.in.uce.relaying.server;
 
 import java.io.IOException;
 import java.net.Socket;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.fhkn.in.uce.relaying.message.RelayingMethod;
+import de.fhkn.in.uce.relaying.server.PendingConnectionBinds.BindCallback;
+import de.fhkn.in.uce.relaying.server.eventloop.RelayEventLoopGroup;
+import de.fhkn.in.uce.relaying.server.eventloop.RelayEventLoopGroup.SessionListener;
 import de.fhkn.in.uce.stun.attribute.Token;
 import de.fhkn.in.uce.stun.header.STUNMessageClass;
 import de.fhkn.in.uce.stun.message.Message;
@@ -36,7 +35,10 @@ import de.fhkn.in.uce.stun.message.MessageStaticFactory;
 import de.fhkn.in.uce.stun.message.MessageWriter;
 
 /**
- * Task that handles new connections from peers.
+ * Task that handles new connections from peers. The peer connection is added
+ * to the {@link PendingConnectionBinds} and the task returns after the
+ * connection attempt is sent, the connection bind of the client or its
+ * deadline completes the peer connection later.
  *
  * @author thomas zink, daniel maier, Alexander Diener
  *         (aldiener@htwg-konstanz.de)
@@ -47,44 +49,45 @@ public class PeerHandlerTask implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(PeerHandlerTask.class);
     private static final long CONNECTION_BIND_TIMEOUT = 5000;
     private final Socket socketToPeer;
-    private final Map<UUID, BlockingQueue<Socket>> connIDToQueue;
+    private final PendingConnectionBinds pendingBinds;
     private final MessageWriter controlConnection;
-    // has to be unbounded
-    private final Executor relayExecutor;
+    private final RelayEventLoopGroup relayEventLoops;
+    private final SessionListener sessionListener;
 
     /**
      * Creates a new {@link PeerHandlerTask}.
      *
      * @param socketToPeer
      *            socket to the peer
-     * @param connIDToQueue
-     *            map to match relay connection between client and peers
+     * @param pendingBinds
+     *            table to match relay connection between client and peers
      * @param controlConnection
      *            a {@link MessageWriter} to the control connection to the
      *            client
-     * @param relayExecutor
-     *            the executor that gets used to execute task for the real relay
-     *            stuff
+     * @param relayEventLoops
+     *            the event loops which relay the data between clients and
+     *            peers
+     * @param sessionListener
+     *            the listener of the relayed sessions, may be null
      */
-    public PeerHandlerTask(Socket socketToPeer, Map<UUID, BlockingQueue<Socket>> connIDToQueue,
-            MessageWriter controlConnection, Executor relayExecutor) {
+    public PeerHandlerTask(Socket socketToPeer, PendingConnectionBinds pendingBinds,
+            MessageWriter controlConnection, RelayEventLoopGroup relayEventLoops, SessionListener sessionListener) {
         this.socketToPeer = socketToPeer;
-        this.connIDToQueue = connIDToQueue;
+        this.pendingBinds = pendingBinds;
         this.controlConnection = controlConnection;
-        this.relayExecutor = relayExecutor;
+        this.relayEventLoops = relayEventLoops;
+        this.sessionListener = sessionListener;
     }
 
     /**
      * Notifies the client that there is a new peer connection and sends a
-     * connection attempt message to the client. Waits for a new data connection
-     * from the client and than relays data between client and peer.
+     * connection attempt message to the client. The data connection of the
+     * client is relayed to the peer once it is bound.
      */
     @Override
     public void run() {
         logger.debug("Accepted peer connection from: {}", socketToPeer);
-        UUID connectionId = UUID.randomUUID();
-        BlockingQueue<Socket> connectionBindQueue = new ArrayBlockingQueue<Socket>(1);
-        connIDToQueue.put(connectionId, connectionBindQueue);
+        UUID connectionId = pendingBinds.add(new PeerBindCallback(), CONNECTION_BIND_TIMEOUT, TimeUnit.MILLISECONDS);
         try {
             Message connectionAttemptMessage = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.INDICATION,
                     RelayingMethod.CONNECTION_ATTEMPT);
@@ -92,48 +95,11 @@ public class PeerHandlerTask implements Runnable {
             controlConnection.writeMessage(connectionAttemptMessage);
         } catch (IOException ex) {
             logger.error("IOException while sending Connection Attempt: {}", ex);
-            connIDToQueue.remove(connectionId);
-            try {
-                socketToPeer.close();
-            } catch (IOException ignore) {
+            // the connection is relayed already if the bind overtook the error
+            if (pendingBinds.remove(connectionId)) {
+                closePeer();
             }
-            return;
         }
-        Socket clientSocket;
-        try {
-            clientSocket = connectionBindQueue.poll(CONNECTION_BIND_TIMEOUT, TimeUnit.MILLISECONDS);
-            if (clientSocket == null) {
-                // timeout expired
-                connIDToQueue.remove(connectionId);
-                // last chance
-                clientSocket = connectionBindQueue.poll();
-                if (clientSocket == null) {
-                    logger.debug("Timeout expired for Connection ID: {}", connectionId);
-                    try {
-                        socketToPeer.close();
-                    } catch (IOException ignore) {
-                    }
-                    return;
-                }
-            }
-        } catch (InterruptedException e) {
-            logger.debug("Got interrupted");
-            connIDToQueue.remove(connectionId);
-            try {
-                socketToPeer.close();
-            } catch (IOException ignore) {
-            }
-            clientSocket = connectionBindQueue.poll();
-            if (clientSocket != null) {
-                try {
-                    clientSocket.close();
-                } catch (IOException ignore) {
-                }
-            }
-            Thread.currentThread().interrupt();
-            return;
-        }
-        relayData(socketToPeer, clientSocket);
     }
 
     /**
@@ -145,11 +111,32 @@ public class PeerHandlerTask implements Runnable {
      *            socket to the client
      */
     private void relayData(Socket peerSocket, Socket clientSocket) {
-        RelayTask peerToClientRelay = new RelayTask(peerSocket, clientSocket);
-        RelayTask clientToPeerRelay = new RelayTask(clientSocket, peerSocket);
+        relayEventLoops.relay(peerSocket, clientSocket, sessionListener);
+    }
+
+    private void closePeer() {
+        try {
+            socketToPeer.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    /**
+     * Relays the peer connection to the bound data connection of the client or
+     * closes it when the deadline expired.
+     */
+    private final class PeerBindCallback implements BindCallback {
+
+        @Override
+        public void bound(Socket clientSocket) {
+            relayData(socketToPeer, clientSocket);
+        }
 
-        relayExecutor.execute(peerToClientRelay);
-        relayExecutor.execute(clientToPeerRelay);
+        @Override
+        public void expired() {
+            logger.debug("Timeout expired for connection bind of {}", socketToPeer);
+            closePeer();
+        }
     }
 
 }
@@ -17,12 +17,10 @@
 package de.fhkn.in.uce.relaying.server;
 
 import java.net.Socket;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Executor;
 
 import de.fhkn.in.uce.core.socketlistener.SocketTaskFactory;
+import de.fhkn.in.uce.relaying.server.eventloop.RelayEventLoopGroup;
+import de.fhkn.in.uce.relaying.server.eventloop.RelayEventLoopGroup.SessionListener;
 import de.fhkn.in.uce.stun.message.MessageWriter;
 
 /**
@@ -33,28 +31,31 @@ import de.fhkn.in.uce.stun.message.MessageWriter;
  */
 public class PeerHandlerTaskFactory implements SocketTaskFactory {
 
-    private final Map<UUID, BlockingQueue<Socket>> connIDToQueue;
+    private final PendingConnectionBinds pendingBinds;
     private final MessageWriter controlConnection;
-    // has to be unbounded
-    private final Executor relayExecutor;
+    private final RelayEventLoopGroup relayEventLoops;
+    private final SessionListener sessionListener;
 
     /**
      * Creates a new {@link PeerHandlerTask}.
      *
-     * @param connIDToQueue
-     *            map to match relay connection between client and peers
+     * @param pendingBinds
+     *            table to match relay connection between client and peers
      * @param controlConnection
      *            a {@link MessageWriter} to the control connection to the
      *            client
-     * @param relayExecutor
-     *            the executor that gets used to execute task for the real relay
-     *            stuff.
+     * @param relayEventLoops
+     *            the event loops which relay the data between clients and
+     *            peers
+     * @param sessionListener
+     *            the listener of the relayed sessions, may be null
      */
-    public PeerHandlerTaskFactory(Map<UUID, BlockingQueue<Socket>> connIDToQueue, MessageWriter controlConnection,
-            Executor relayExecutor) {
-        this.connIDToQueue = connIDToQueue;
+    public PeerHandlerTaskFactory(PendingConnectionBinds pendingBinds, MessageWriter controlConnection,
+            RelayEventLoopGroup relayEventLoops, SessionListener sessionListener) {
+        this.pendingBinds = pendingBinds;
         this.controlConnection = controlConnection;
-        this.relayExecutor = relayExecutor;
+        this.relayEventLoops = relayEventLoops;
+        this.sessionListener = sessionListener;
     }
 
     /**
@@ -62,7 +63,7 @@ public class PeerHandlerTaskFactory implements SocketTaskFactory {
      */
     @Override
     public Runnable getTask(Socket s) {
-        return new PeerHandlerTask(s, connIDToQueue, controlConnection, relayExecutor);
+        return new PeerHandlerTask(s, pendingBinds, controlConnection, relayEventLoops, sessionListener);
     }
 
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server;
+
+import java.net.Socket;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import de.fhkn.in.uce.core.concurrent.HashedWheelTimer;
+import de.fhkn.in.uce.core.concurrent.Timeout;
+import de.fhkn.in.uce.core.metrics.Counter;
+import de.fhkn.in.uce.core.metrics.Gauge;
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+
+/**
+ * Table of the peer connections which wait for the connection bind of the
+ * client. Each pending connection is a callback under its connection id.
+ * The callback is completed exactly once, either by the connection bind or by
+ * a timeout of the shared {@link HashedWheelTimer}, and its entry is removed
+ * at the same moment, so no thread waits for a pending connection and no
+ * entry outlives its deadline.
+ * 
+ * The number of pending connections is exported as gauge
+ * "relay.binds.pending" of the shared {@link MetricsRegistry}, completed and
+ * expired connection binds as counters "relay.binds.completed" and
+ * "relay.binds.expired".
+ * 
+ * @author Daniel Maier
+ * 
+ */
+public final class PendingConnectionBinds {
+    private static final MetricsRegistry metrics = MetricsRegistry.getShared();
+    private static final Counter completed = metrics.counter("relay.binds.completed");
+    private static final Counter expired = metrics.counter("relay.binds.expired");
+    private final Map<UUID, PendingBind> pending = new ConcurrentHashMap<UUID, PendingBind>();
+
+    /**
+     * Callback of a pending connection.
+     */
+    public interface BindCallback {
+
+        /**
+         * Called when the client bound its data connection to the pending
+         * connection.
+         * 
+         * @param clientSocket
+         *            the data connection to the client
+         */
+        void bound(Socket clientSocket);
+
+        /**
+         * Called when the deadline of the pending connection expired or the
+         * table was cleared.
+         */
+        void expired();
+    }
+
+    /**
+     * Creates a {@link PendingConnectionBinds} table.
+     */
+    public PendingConnectionBinds() {
+        metrics.gauge("relay.binds.pending", new Gauge() {
+            @Override
+            public long getValue() {
+                return pending.size();
+            }
+        });
+    }
+
+    /**
+     * Adds a pending connection under a new connection id.
+     * 
+     * @param callback
+     *            the callback which is completed by the connection bind or
+     *            the deadline
+     * @param timeout
+     *            the time the client has to bind its connection
+     * @param unit
+     *            the unit of the timeout
+     * @return the connection id
+     */
+    public UUID add(BindCallback callback, long timeout, TimeUnit unit) {
+        final UUID connectionId = UUID.randomUUID();
+        final PendingBind pendingBind = new PendingBind(callback);
+        pending.put(connectionId, pendingBind);
+        pendingBind.timeout = HashedWheelTimer.getShared().newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                if (pending.remove(connectionId) != null) {
+                    expired.increment();
+                    pendingBind.callback.expired();
+                }
+            }
+        }, timeout, unit);
+        return connectionId;
+    }
+
+    /**
+     * Completes the pending connection with the given id by the data
+     * connection of the client.
+     * 
+     * @param connectionId
+     *            the connection id of the connection bind
+     * @param clientSocket
+     *            the data connection to the client
+     * @return true if the connection was pending, false if the id is unknown
+     *         or expired
+     */
+    public boolean complete(UUID connectionId, Socket clientSocket) {
+        PendingBind pendingBind = pending.remove(connectionId);
+        if (pendingBind == null) {
+            return false;
+        }
+        pendingBind.cancelTimeout();
+        completed.increment();
+        pendingBind.callback.bound(clientSocket);
+        return true;
+    }
+
+    /**
+     * Removes the pending connection with the given id without completing
+     * its callback.
+     * 
+     * @param connectionId
+     *            the connection id
+     * @return true if the connection was pending, false if it is already
+     *         completed
+     */
+    public boolean remove(UUID connectionId) {
+        PendingBind pendingBind = pending.remove(connectionId);
+        if (pendingBind == null) {
+            return false;
+        }
+        pendingBind.cancelTimeout();
+        return true;
+    }
+
+    /**
+     * Expires all pending connections, e.g. when the relay server is stopped.
+     */
+    public void expireAll() {
+        for (UUID connectionId : pending.keySet()) {
+            PendingBind pendingBind = pending.remove(connectionId);
+            if (pendingBind != null) {
+                pendingBind.cancelTimeout();
+                expired.increment();
+                pendingBind.callback.expired();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of pending connections.
+     * 
+     * @return the number of pending connections
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * A pending connection and the timeout of its deadline.
+     */
+    private static final class PendingBind {
+        private final BindCallback callback;
+        private volatile Timeout timeout;
+
+        PendingBind(BindCallback callback) {
+            this.callback = callback;
+        }
+
+        void cancelTimeout() {
+            // the timeout is not yet set if the connection bind overtook add
+            Timeout t = timeout;
+            if (t != null) {
+                t.cancel();
+            }
+        }
+    }
+}
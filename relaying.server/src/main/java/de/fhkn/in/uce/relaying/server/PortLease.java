@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * A slot of a {@link RelayPortPool} which is bound for an allocation. Closing
+ * the lease closes the channel and returns the slot to the pool.
+ * 
+ * @author Daniel Maier
+ * 
+ */
+public final class PortLease implements Closeable {
+    private final RelayPortPool pool;
+    private final int slot;
+    private final ServerSocketChannel channel;
+    private final InetSocketAddress endpoint;
+    private boolean released;
+
+    PortLease(RelayPortPool pool, int slot, ServerSocketChannel channel, InetSocketAddress endpoint) {
+        this.pool = pool;
+        this.slot = slot;
+        this.channel = channel;
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Returns the bound channel.
+     * 
+     * @return the channel
+     */
+    public ServerSocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Returns the endpoint which is reported to the client, the wildcard
+     * address is reported as IPv4 wildcard address.
+     * 
+     * @return the endpoint of the allocation
+     */
+    public InetSocketAddress getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Closes the channel and returns the slot to the pool. Can be called more
+     * than once.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            released = true;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+        }
+        pool.release(slot);
+    }
+}
@@ -16,22 +16,21 @@
  */
 package de.fhkn.in.uce.relaying.server;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.net.BindException;
-import java.net.InetSocketAddress;
-import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import de.fhkn.in.uce.core.socketlistener.SocketListener;
+import de.fhkn.in.uce.core.events.FlightEvent;
+import de.fhkn.in.uce.core.events.FlightEventType;
+import de.fhkn.in.uce.core.events.FlightEvents;
+import de.fhkn.in.uce.core.metrics.Counter;
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
 import de.fhkn.in.uce.relaying.message.RelayingLifetime;
+import de.fhkn.in.uce.relaying.server.eventloop.AllocationAcceptor;
+import de.fhkn.in.uce.relaying.server.eventloop.RelayEventLoopGroup;
 import de.fhkn.in.uce.stun.attribute.EndpointClass;
 import de.fhkn.in.uce.stun.attribute.EndpointClass.EndpointCategory;
 import de.fhkn.in.uce.stun.attribute.ErrorCode.STUNErrorCode;
@@ -48,17 +47,19 @@ import de.fhkn.in.uce.stun.message.MessageWriter;
  */
 final class RelayAllocationHandler {
     private static final Logger logger = LoggerFactory.getLogger(RelayAllocationHandler.class);
-    public static final int MIN_PORT = 10150;
-    public static final int MAX_PORT = 10160;
+    private static final EndpointClass RELAY_ENDPOINT_CLASS = new EndpointClass(EndpointCategory.RELAY);
+    private static final Counter allocations = MetricsRegistry.getShared().counter("relay.allocations");
+    private static final Counter insufficientCapacity = MetricsRegistry.getShared().counter(
+            "relay.allocations.insufficient_capacity");
 
     private final Socket controlConnection;
     private final MessageWriter controlConnectionWriter;
-    private final Map<UUID, BlockingQueue<Socket>> connIDToQueue;
+    private final PendingConnectionBinds pendingBinds;
     private final Message relayAllocationMessage;
-    // has to be unbounded
-    private final Executor controlConnectionHandlerExecutor;
-    // has to be unbounded
-    private final Executor relayExecutor;
+    private final RelayEventLoopGroup relayEventLoops;
+    private final AllocationAcceptor allocationAcceptor;
+    private final RelayPortPool portPool;
+    private final AllocationTable allocationTable;
 
     /**
      * Creates a new {@link RelayAllocationHandler}.
@@ -67,63 +68,73 @@ final class RelayAllocationHandler {
      *            the socket of the control connection to the client
      * @param controlConnectionWriter
      *            a {@link MessageWriter} to the control connection
-     * @param connIDToQueue
-     *            map to match relay connection between client and peers
+     * @param pendingBinds
+     *            table to match relay connection between client and peers
      * @param relayAllocationMessage
      *            the allocation request message
-     * @param controlConnectionHandlerExecutor
-     *            the executor that gets used to execute the
-     *            {@link RefreshMessageHandlerTask} for the given control
-     *            connection
-     * @param relayExecutor
-     *            the executor that gets used to execute task for the real relay
-     *            stuff
+     * @param relayEventLoops
+     *            the event loops which relay the data between clients and
+     *            peers
+     * @param allocationAcceptor
+     *            the acceptor which accepts the peer connections of all
+     *            allocations
+     * @param portPool
+     *            the pool of the ports for allocations
+     * @param allocationTable
+     *            the table which tracks the lifetimes of the allocations
      */
     public RelayAllocationHandler(Socket controlConnection, MessageWriter controlConnectionWriter,
-            Map<UUID, BlockingQueue<Socket>> connIDToQueue, Message relayAllocationMessage,
-            Executor controlConnectionHandlerExecutor, Executor relayExecutor) {
+            PendingConnectionBinds pendingBinds, Message relayAllocationMessage, RelayEventLoopGroup relayEventLoops,
+            AllocationAcceptor allocationAcceptor, RelayPortPool portPool, AllocationTable allocationTable) {
         this.controlConnection = controlConnection;
         this.controlConnectionWriter = controlConnectionWriter;
-        this.connIDToQueue = connIDToQueue;
+        this.pendingBinds = pendingBinds;
         this.relayAllocationMessage = relayAllocationMessage;
-        this.controlConnectionHandlerExecutor = controlConnectionHandlerExecutor;
-        this.relayExecutor = relayExecutor;
+        this.relayEventLoops = relayEventLoops;
+        this.allocationAcceptor = allocationAcceptor;
+        this.portPool = portPool;
+        this.allocationTable = allocationTable;
     }
 
     /**
-     * Handles the allocation request message. Creates a new ServerSocket and
-     * listener thread to handle connection requests from peers. If there is no
-     * free port available in the specified port range, an
+     * Handles the allocation request message. Binds a server socket channel
+     * to a port of the pool and registers it at the allocation acceptor to
+     * handle connection requests from peers. The allocation is added to the
+     * allocation table, which handles the refresh requests. If there is no
+     * free port available in the pool, an
      * "Insufficient Capacity" error is returned to the client.
      */
     public void handle() {
+        FlightEvent event = FlightEvents.begin(FlightEventType.RELAY_ALLOCATION);
         try {
             // get Lifetime
             int lifetime = 0;
             if (relayAllocationMessage.hasAttribute(RelayingLifetime.class)) {
                 lifetime = relayAllocationMessage.getAttribute(RelayingLifetime.class).getLifeTime();
             }
-            // Create ServerSocket for peers
-            ServerSocket peerSS = createServerSocketWithinPortRange();
-            if (peerSS == null) {
+            // Lease a port for peers
+            PortLease lease = portPool.bind();
+            if (lease == null) {
                 logger.info("Insufficient Capacity");
+                insufficientCapacity.increment();
                 Message errorResponse = relayAllocationMessage.buildFailureResponse(
                         STUNErrorCode.INSUFFICIENT_CAPACITY, "Insufficient Capacity");
                 controlConnectionWriter.writeMessage(errorResponse);
+                if (event.isEnabled()) {
+                    event.commit("", "insufficient_capacity", lifetime);
+                }
             } else {
-                // TODO listener tasks in threadpool, listener also in pool?
-                logger.info("Created allocation on {}", peerSS.getLocalSocketAddress());
-                SocketListener peerSocketListener = new SocketListener(peerSS, Executors.newCachedThreadPool(),
-                        new PeerHandlerTaskFactory(connIDToQueue, controlConnectionWriter, relayExecutor));
-                controlConnectionHandlerExecutor.execute(new RefreshMessageHandlerTask(controlConnection,
-                        controlConnectionWriter, lifetime, peerSocketListener));
-                peerSocketListener.start();
+                logger.info("Created allocation on {}", lease.getEndpoint());
+                allocations.increment();
+                MessageWriter responseWriter = addToAllocationTable(lease, lifetime);
                 Message successResponse = relayAllocationMessage.buildSuccessResponse();
-                successResponse.addAttribute(new XorMappedAddress(new InetSocketAddress(peerSS.getInetAddress(), peerSS
-                        .getLocalPort())));
-                successResponse.addAttribute(new EndpointClass(EndpointCategory.RELAY));
+                successResponse.addAttribute(new XorMappedAddress(lease.getEndpoint()));
+                successResponse.addAttribute(RELAY_ENDPOINT_CLASS);
                 successResponse.addAttribute(new RelayingLifetime(lifetime));
-                controlConnectionWriter.writeMessage(successResponse);
+                responseWriter.writeMessage(successResponse);
+                if (event.isEnabled()) {
+                    event.commit(String.valueOf(lease.getEndpoint()), "allocated", lifetime);
+                }
             }
         } catch (IOException e) {
             logger.error("IOException while handling allocation request: {}", e);
@@ -131,23 +142,70 @@ final class RelayAllocationHandler {
     }
 
     /**
-     * Tries to to create and bind a new ServerSocket in the specified port
-     * range.
-     *
-     * @return a new and bound ServerSocket, or null if no ServerSocket could be
-     *         bounded in the specified port range.
-     * @throws IOException
-     *             if an I/O error occurs when opening the socket.
+     * Hands the control connection over to the allocation table, which handles
+     * its refresh requests without a thread of its own, and registers the
+     * listening channel at the allocation acceptor.
+     * 
+     * @return the writer of the control connection
+     */
+    private MessageWriter addToAllocationTable(PortLease lease, int lifetime) throws IOException {
+        Allocation allocation;
+        try {
+            allocation = allocationTable.add(controlConnection, lease.getEndpoint(), lifetime);
+        } catch (IOException e) {
+            lease.close();
+            throw e;
+        }
+        Closeable registration;
+        try {
+            registration = allocationAcceptor.register(lease.getChannel(), new PeerHandlerTaskFactory(pendingBinds,
+                    allocation.getControlConnectionWriter(), relayEventLoops, allocation), new TableOwner(allocation));
+        } catch (IOException e) {
+            lease.close();
+            allocation.destroy(false);
+            throw e;
+        }
+        allocation.setPeerListener(new AllocationListener(registration, lease));
+        return allocation.getControlConnectionWriter();
+    }
+
+    /**
+     * Destroys an allocation of the table whose listening channel is withdrawn
+     * by the acceptor.
      */
-    private ServerSocket createServerSocketWithinPortRange() throws IOException {
-        int port = MIN_PORT;
-        do {
+    private static final class TableOwner implements Closeable {
+        private final Allocation allocation;
+
+        TableOwner(Allocation allocation) {
+            this.allocation = allocation;
+        }
+
+        @Override
+        public void close() {
+            allocation.destroy(false);
+        }
+    }
+
+    /**
+     * Withdraws an allocation by deregistering its channel from the acceptor
+     * and returning its port to the pool.
+     */
+    private static final class AllocationListener implements Closeable {
+        private final Closeable registration;
+        private final PortLease lease;
+
+        AllocationListener(Closeable registration, PortLease lease) {
+            this.registration = registration;
+            this.lease = lease;
+        }
+
+        @Override
+        public void close() throws IOException {
             try {
-                return new ServerSocket(port);
-            } catch (BindException be) {
-                port++;
+                registration.close();
+            } finally {
+                lease.close();
             }
-        } while (port <= MAX_PORT);
-        return null;
+        }
     }
 }
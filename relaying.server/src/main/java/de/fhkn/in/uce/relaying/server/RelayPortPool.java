@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import de.fhkn.in.uce.core.metrics.Counter;
+import de.fhkn.in.uce.core.metrics.Gauge;
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+
+/**
+ * Pool of the ports the relay server binds for allocations. The pool owns a
+ * range of ports on one or more listen addresses, each combination of address
+ * and port is a slot. Free slots are tracked in a bitmap with a second level
+ * bitmap of the words which still contain a free slot, so allocating and
+ * releasing a slot does not depend on the number of allocations.
+ * 
+ * Slots are handed out round robin, so a released slot is the last one to be
+ * reused. Besides, a released slot is quarantined for a while before it is
+ * handed out again, so a late peer of a withdrawn allocation does not end up
+ * at a new allocation. A port which could not be bound, e.g. because another
+ * process uses it, is not tried again by the same call of {@link #bind()}, it
+ * is returned to the pool afterwards and quarantined as well.
+ * 
+ * The number of slots, free slots and quarantined slots are exported as gauges
+ * "relay.ports.capacity", "relay.ports.free" and "relay.ports.quarantined" of
+ * the shared {@link MetricsRegistry}.
+ * 
+ * @author Daniel Maier
+ * 
+ */
+public final class RelayPortPool {
+    /**
+     * The first port of the default range.
+     */
+    public static final int DEFAULT_MIN_PORT = 10150;
+    /**
+     * The last port of the default range.
+     */
+    public static final int DEFAULT_MAX_PORT = 10160;
+    /**
+     * The default time in milliseconds a released port is quarantined.
+     */
+    public static final long DEFAULT_QUARANTINE_MILLIS = 10000;
+    private static final int MAX_BIND_ATTEMPTS = 16;
+    private static final Counter bindFailures = MetricsRegistry.getShared().counter("relay.ports.bind_failures");
+    private final InetAddress[] addresses;
+    private final int minPort;
+    private final int capacity;
+    private final long quarantineNanos;
+    // bit set if the slot is free
+    private final long[] free;
+    // bit set if the word of free contains a free slot
+    private final long[] summary;
+    private final Deque<QuarantinedSlot> quarantine = new ArrayDeque<QuarantinedSlot>();
+    private int freeCount;
+    // the slot where the search for a free slot starts
+    private int cursor;
+
+    /**
+     * Creates a {@link RelayPortPool} with the default range on the wildcard
+     * address.
+     */
+    public RelayPortPool() {
+        this(Collections.<InetAddress> emptyList(), DEFAULT_MIN_PORT, DEFAULT_MAX_PORT, DEFAULT_QUARANTINE_MILLIS);
+    }
+
+    /**
+     * Creates a {@link RelayPortPool}.
+     * 
+     * @param addresses
+     *            the listen addresses, empty for the wildcard address
+     * @param minPort
+     *            the first port of the range
+     * @param maxPort
+     *            the last port of the range
+     * @param quarantineMillis
+     *            the time in milliseconds a released port is not handed out
+     *            again
+     * @throws IllegalArgumentException
+     *             if the range is invalid or the quarantine is negative
+     */
+    public RelayPortPool(List<InetAddress> addresses, int minPort, int maxPort, long quarantineMillis) {
+        if ((minPort < 1) || (maxPort > 65535) || (minPort > maxPort)) {
+            throw new IllegalArgumentException("Invalid port range " + minPort + "-" + maxPort);
+        }
+        if (quarantineMillis < 0) {
+            throw new IllegalArgumentException("Quarantine must not be negative: " + quarantineMillis);
+        }
+        this.addresses = addresses.isEmpty() ? new InetAddress[] { null } : addresses
+                .toArray(new InetAddress[addresses.size()]);
+        this.minPort = minPort;
+        this.capacity = (maxPort - minPort + 1) * this.addresses.length;
+        this.quarantineNanos = quarantineMillis * 1000000L;
+        free = new long[(capacity + 63) >>> 6];
+        summary = new long[(free.length + 63) >>> 6];
+        for (int slot = 0; slot < capacity; slot++) {
+            setFree(slot);
+        }
+        freeCount = capacity;
+        registerGauges();
+    }
+
+    /**
+     * Parses a port range "min-max" or a single port.
+     * 
+     * @param range
+     *            the range
+     * @return the first and the last port of the range
+     * @throws IllegalArgumentException
+     *             if the range is invalid
+     */
+    public static int[] parsePortRange(String range) {
+        String[] bounds = range.trim().split("-", 2);
+        try {
+            int min = Integer.parseInt(bounds[0].trim());
+            int max = (bounds.length > 1) ? Integer.parseInt(bounds[1].trim()) : min;
+            if ((min < 1) || (max > 65535) || (min > max)) {
+                throw new IllegalArgumentException("Invalid port range " + range);
+            }
+            return new int[] { min, max };
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid port range " + range, e);
+        }
+    }
+
+    /**
+     * Parses a comma separated list of listen addresses.
+     * 
+     * @param list
+     *            the addresses
+     * @return the addresses
+     * @throws IllegalArgumentException
+     *             if an address can not be resolved
+     */
+    public static List<InetAddress> parseAddresses(String list) {
+        List<InetAddress> result = new ArrayList<InetAddress>();
+        for (String address : list.split(",")) {
+            if (address.trim().length() == 0) {
+                continue;
+            }
+            try {
+                result.add(InetAddress.getByName(address.trim()));
+            } catch (UnknownHostException e) {
+                throw new IllegalArgumentException("Unknown address " + address, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Binds a server socket channel to a free slot.
+     * 
+     * @return the lease of the bound slot, or null if no slot is free or no
+     *         port could be bound
+     * @throws IOException
+     *             if an I/O error other than a bind failure occurs
+     */
+    public PortLease bind() throws IOException {
+        // slots which could not be bound are held out until the last attempt
+        List<Integer> failed = new ArrayList<Integer>();
+        try {
+            for (int attempt = 0; attempt < MAX_BIND_ATTEMPTS; attempt++) {
+                int slot = allocate();
+                if (slot < 0) {
+                    return null;
+                }
+                InetAddress address = addresses[slot % addresses.length];
+                int port = minPort + slot / addresses.length;
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                try {
+                    channel.socket().bind(new InetSocketAddress(address, port));
+                    // the wildcard address of a channel is IPv6 on dual stack
+                    // hosts
+                    InetSocketAddress endpoint = (address == null) ? new InetSocketAddress(port)
+                            : new InetSocketAddress(address, port);
+                    return new PortLease(this, slot, channel, endpoint);
+                } catch (BindException e) {
+                    channel.close();
+                    bindFailures.increment();
+                    failed.add(slot);
+                } catch (IOException e) {
+                    channel.close();
+                    release(slot);
+                    throw e;
+                }
+            }
+            return null;
+        } finally {
+            for (int slot : failed) {
+                release(slot);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of slots of this pool.
+     * 
+     * @return the number of slots
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of slots which can be handed out right now.
+     * 
+     * @return the number of free slots
+     */
+    public synchronized int getFree() {
+        releaseQuarantined(System.nanoTime());
+        return freeCount;
+    }
+
+    /**
+     * Returns the number of released slots which are still quarantined.
+     * 
+     * @return the number of quarantined slots
+     */
+    public synchronized int getQuarantined() {
+        releaseQuarantined(System.nanoTime());
+        return quarantine.size();
+    }
+
+    synchronized int allocate() {
+        releaseQuarantined(System.nanoTime());
+        if (freeCount == 0) {
+            return -1;
+        }
+        int slot = findFreeSlot();
+        clearFree(slot);
+        freeCount--;
+        cursor = (slot + 1 < capacity) ? slot + 1 : 0;
+        return slot;
+    }
+
+    synchronized void release(int slot) {
+        if (quarantineNanos == 0) {
+            setFree(slot);
+            freeCount++;
+        } else {
+            quarantine.addLast(new QuarantinedSlot(slot, System.nanoTime() + quarantineNanos));
+        }
+    }
+
+    private void releaseQuarantined(long now) {
+        QuarantinedSlot quarantined;
+        while (((quarantined = quarantine.peekFirst()) != null) && (quarantined.until - now <= 0)) {
+            quarantine.removeFirst();
+            setFree(quarantined.slot);
+            freeCount++;
+        }
+    }
+
+    /**
+     * Returns the first free slot at or after the cursor, wrapping around. The
+     * rest of the word of the cursor is checked first, then the summary is
+     * searched for the next word with a free slot.
+     */
+    private int findFreeSlot() {
+        int word = cursor >>> 6;
+        long slots = free[word] & (-1L << (cursor & 63));
+        if (slots != 0) {
+            return (word << 6) + Long.numberOfTrailingZeros(slots);
+        }
+        int next = findWordWithFreeSlot(word + 1, free.length);
+        if (next < 0) {
+            // wrap around, the word of the cursor may have free slots below it
+            next = findWordWithFreeSlot(0, word + 1);
+        }
+        if (next < 0) {
+            throw new IllegalStateException("No free slot although " + freeCount + " are counted");
+        }
+        return (next << 6) + Long.numberOfTrailingZeros(free[next]);
+    }
+
+    /**
+     * Returns the first word in [from, to) which contains a free slot, or -1.
+     */
+    private int findWordWithFreeSlot(int from, int to) {
+        for (int index = from >>> 6; (index << 6) < to; index++) {
+            long words = summary[index];
+            if (index == from >>> 6) {
+                words &= -1L << (from & 63);
+            }
+            if (words != 0) {
+                int word = (index << 6) + Long.numberOfTrailingZeros(words);
+                return (word < to) ? word : -1;
+            }
+        }
+        return -1;
+    }
+
+    private void setFree(int slot) {
+        int word = slot >>> 6;
+        free[word] |= 1L << (slot & 63);
+        summary[word >>> 6] |= 1L << (word & 63);
+    }
+
+    private void clearFree(int slot) {
+        int word = slot >>> 6;
+        free[word] &= ~(1L << (slot & 63));
+        if (free[word] == 0) {
+            summary[word >>> 6] &= ~(1L << (word & 63));
+        }
+    }
+
+    private void registerGauges() {
+        MetricsRegistry metrics = MetricsRegistry.getShared();
+        metrics.gauge("relay.ports.capacity", new Gauge() {
+            @Override
+            public long getValue() {
+                return getCapacity();
+            }
+        });
+        metrics.gauge("relay.ports.free", new Gauge() {
+            @Override
+            public long getValue() {
+                return getFree();
+            }
+        });
+        metrics.gauge("relay.ports.quarantined", new Gauge() {
+            @Override
+            public long getValue() {
+                return getQuarantined();
+            }
+        });
+    }
+
+    /**
+     * A released slot and the time it is free again.
+     */
+    private static final class QuarantinedSlot {
+        private final int slot;
+        private final long until;
+
+        QuarantinedSlot(int slot, long until) {
+            this.slot = slot;
+            this.until = until;
+        }
+    }
+}
@@ -19,20 +19,25 @@ package de.fhkn.in.uce.relaying.server;
 import static de.fhkn.in.uce.relaying.message.RelayingConstants.RELAYSERVER_DEFAULT_PORT;
 
 import java.io.IOException;
-import java.net.Socket;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-
-import javax.net.ServerSocketFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.fhkn.in.uce.core.concurrent.ExecutionMode;
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+import de.fhkn.in.uce.core.runtime.ServerContext;
+import de.fhkn.in.uce.core.socketlistener.RejectionPolicy;
 import de.fhkn.in.uce.core.socketlistener.SocketListener;
+import de.fhkn.in.uce.core.socketlistener.WorkerPool;
+import de.fhkn.in.uce.relaying.server.eventloop.AllocationAcceptor;
+import de.fhkn.in.uce.relaying.server.eventloop.RelayEventLoopGroup;
 
 /**
  * A Server that implements TURN-like behavior, to relay TCP data. But it is NOT
@@ -47,12 +52,36 @@ import de.fhkn.in.uce.core.socketlistener.SocketListener;
  * endpoints and for sending refresh messages. Data Connections are responsible
  * for sending connection bind requests and for the real relaying stuff.
  * 
+ * The ports of allocations are taken from a {@link RelayPortPool}. A peer
+ * connection waits for the connection bind of the client in the
+ * {@link PendingConnectionBinds} without occupying a thread.
+ * 
+ * The threads which read the first message of new connections and the threads
+ * which handle new peer connections can be bounded by a {@link WorkerPool}.
+ * The peer connections of all allocations are accepted by one
+ * {@link AllocationAcceptor}. The control connections of all allocations are
+ * served by the non-blocking loop of the {@link AllocationTable}, which also
+ * tracks their lifetimes, so an idle allocation does not occupy a thread.
+ * Inside the master server the threads come from the executors of a
+ * {@link ServerContext}. The relayed data is pumped by a fixed number of event
+ * loops, see {@link RelayEventLoopGroup}, so a relayed connection does not
+ * occupy any thread either.
+ * 
  * @author Daniel Maier
  * 
  */
 public final class RelayServer {
+    private static final String POOL_OPTION = "--pool";
+    private static final String PORTS_OPTION = "--ports";
+    private static final String ADDRESSES_OPTION = "--addresses";
     private static final Logger logger = LoggerFactory.getLogger(RelayServer.class);
     private final Thread socketListener;
+    private final ExecutorService dispatcherExecutor;
+    private final ExecutorService peerHandlerExecutor;
+    private final RelayEventLoopGroup relayEventLoops;
+    private final AllocationAcceptor allocationAcceptor;
+    private final PendingConnectionBinds pendingBinds;
+    private final AllocationTable allocationTable;
 
     /**
      * Creates a {@link RelayServer}. Has to be started via
@@ -66,59 +95,243 @@ public final class RelayServer {
      *             if an I/O error occurs
      */
     public RelayServer(int port) throws IOException {
-        Map<UUID, BlockingQueue<Socket>> connIDToQueue = new ConcurrentHashMap<UUID, BlockingQueue<Socket>>();
-        // has to be unbounded
-        Executor controlConnectionHandlerExecutor = Executors.newCachedThreadPool();
-        // has to be unbounded
-        Executor relayExecutor = Executors.newCachedThreadPool();
-        socketListener = new SocketListener(port, ServerSocketFactory.getDefault(), Executors.newCachedThreadPool(),
-                new MessageDispatcherTaskFactory(connIDToQueue, controlConnectionHandlerExecutor, relayExecutor));
+        this(new Builder(port));
+    }
+
+    private RelayServer(Builder builder) throws IOException {
+        WorkerPool workerPool = builder.workerPool;
+        ServerContext context = builder.context;
+        RelayPortPool portPool = builder.portPool;
+        pendingBinds = new PendingConnectionBinds();
+        allocationTable = new AllocationTable();
+        MetricsRegistry metrics = MetricsRegistry.getShared();
+        RejectionPolicy rejectionPolicy;
+        if (workerPool != null) {
+            dispatcherExecutor = workerPool.newExecutor();
+            rejectionPolicy = workerPool.getRejectionPolicy();
+            metrics.registerExecutor("relay.dispatcher", dispatcherExecutor);
+        } else if (context != null) {
+            dispatcherExecutor = context.getHandlerExecutor();
+            rejectionPolicy = context.getRejectionPolicy();
+        } else {
+            dispatcherExecutor = ExecutionMode.newCachedThreadPool();
+            rejectionPolicy = null;
+            metrics.registerExecutor("relay.dispatcher", dispatcherExecutor);
+        }
+        // peer handlers write to control connections, a storm of peers must
+        // not delay the dispatch of the connection binds
+        if (workerPool != null) {
+            peerHandlerExecutor = workerPool.newExecutor();
+            metrics.registerExecutor("relay.peer_handler", peerHandlerExecutor);
+        } else if (context != null) {
+            peerHandlerExecutor = context.getBlockingExecutor();
+        } else {
+            peerHandlerExecutor = ExecutionMode.newCachedThreadPool();
+            metrics.registerExecutor("relay.peer_handler", peerHandlerExecutor);
+        }
+        relayEventLoops = new RelayEventLoopGroup();
+        allocationAcceptor = new AllocationAcceptor(peerHandlerExecutor);
+        socketListener = new SocketListener(bindServerSocket(builder.port), dispatcherExecutor,
+                new MessageDispatcherTaskFactory(pendingBinds, relayEventLoops, allocationAcceptor,
+                        (portPool != null) ? portPool : new RelayPortPool(), allocationTable),
+                null, rejectionPolicy);
+    }
+
+    /**
+     * Binds the socket of a new server socket channel, so the control
+     * connections can be served by the allocation table and the data
+     * connections of the clients can be relayed by the event loops.
+     */
+    private static ServerSocket bindServerSocket(int port) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.socket().bind(new InetSocketAddress(port));
+            return channel.socket();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
     }
 
     /**
      * Starts this {@link RelayServer}. Can be started only once.
+     * 
+     * @throws IOException
+     *             if the event loops, the allocation acceptor or the loop of
+     *             the control connections could not be started
      */
-    public void start() {
+    public void start() throws IOException {
+        relayEventLoops.start();
+        allocationAcceptor.start();
+        allocationTable.start();
         socketListener.start();
     }
 
     /**
-     * Stops this {@link RelayServer}.
+     * Stops this {@link RelayServer}. The listener socket and the sockets of
+     * all allocations are closed, the peer connections waiting for a
+     * connection bind and the relayed connections are closed and the
+     * executors are shut down, so no new connections are handled.
      */
     public void stop() {
         socketListener.interrupt();
+        allocationAcceptor.shutdown();
+        pendingBinds.expireAll();
+        allocationTable.shutdown();
+        relayEventLoops.shutdown();
+        dispatcherExecutor.shutdown();
+        peerHandlerExecutor.shutdown();
     }
 
     /**
      * Creates and starts a new {@link RelayServer} instance.
      * 
      * @param args
-     *            arguments for the {@link RelayServer}. An array with length of
-     *            one is expected. It should contain the following value:
-     *            args[0] the port on which the {@link RelayServer} listens for
-     *            incoming control connections from clients via TCP. If nothing
-     *            is defined, port 10300 is chosen as default.
+     *            arguments for the {@link RelayServer}. It may contain the
+     *            port on which the {@link RelayServer} listens for incoming
+     *            control connections from clients via TCP. If nothing (or an
+     *            empty string) is defined, port 10300 is chosen as default.
+     *            Optionally --pool threads,queue,policy bounds the threads
+     *            which dispatch new connections and those which handle new
+     *            peer connections. Optionally --ports min-max sets the range
+     *            of the ports for allocations and --addresses a,b the
+     *            addresses on which they are bound.
      * @throws IOException
      *             if an I/O error occurs
      * @throws IllegalArgumentException
-     *             if args[0] is set and it is not an integer value
+     *             if the port is set and it is not an integer value
      */
     public static void main(String[] args) throws IOException {
+        RelayServer relayServer = fromArguments(args, null);
+        relayServer.start();
+    }
+
+    /**
+     * Creates a new {@link RelayServer} instance with the given arguments, see
+     * {@link #main(String[])}.
+     * 
+     * @param args
+     *            arguments for the {@link RelayServer}
+     * @param context
+     *            the context whose executors are used, null to create own
+     *            executors
+     * @return the {@link RelayServer} which is not started yet
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws IllegalArgumentException
+     *             if the port is set and it is not an integer value or the
+     *             port range or addresses are invalid
+     */
+    public static RelayServer fromArguments(String[] args, ServerContext context) throws IOException {
         int port = RELAYSERVER_DEFAULT_PORT;
+        WorkerPool workerPool = null;
+        int[] ports = null;
+        List<InetAddress> addresses = null;
 
-        if (args.length > 0) {
-            try {
-                port = Integer.valueOf(args[0]);
-            } catch (NumberFormatException e) {
-                // wrong port format
-                throw new IllegalArgumentException("Unrecognized argument " + args[0]
-                        + "; you can optionally specify a port number.", e);
+        for (int i = 0; i < args.length; i++) {
+            if (POOL_OPTION.equals(args[i]) && (i + 1 < args.length)) {
+                workerPool = WorkerPool.valueOf(args[++i]);
+            } else if (PORTS_OPTION.equals(args[i]) && (i + 1 < args.length)) {
+                ports = RelayPortPool.parsePortRange(args[++i]);
+            } else if (ADDRESSES_OPTION.equals(args[i]) && (i + 1 < args.length)) {
+                addresses = RelayPortPool.parseAddresses(args[++i]);
+            } else if (args[i].length() > 0) {
+                try {
+                    port = Integer.valueOf(args[i]);
+                } catch (NumberFormatException e) {
+                    // wrong port format
+                    throw new IllegalArgumentException("Unrecognized argument " + args[i]
+                            + "; you can optionally specify a port number.", e);
+                }
             }
-
         }
 
-        RelayServer relayServer = new RelayServer(port);
+        RelayPortPool portPool = null;
+        if ((ports != null) || (addresses != null)) {
+            portPool = new RelayPortPool((addresses != null) ? addresses : Collections.<InetAddress> emptyList(),
+                    (ports != null) ? ports[0] : RelayPortPool.DEFAULT_MIN_PORT,
+                    (ports != null) ? ports[1] : RelayPortPool.DEFAULT_MAX_PORT,
+                    RelayPortPool.DEFAULT_QUARANTINE_MILLIS);
+        }
+        RelayServer relayServer = new Builder(port).workerPool(workerPool).context(context).portPool(portPool)
+                .build();
         logger.info("Relay-Server is running on port " + port);
-        relayServer.start();
+        return relayServer;
+    }
+
+    /**
+     * Collects the options of a {@link RelayServer}. Options which are not set
+     * keep their defaults: a thread per connection, own executors and the
+     * default port range for allocations.
+     */
+    public static final class Builder {
+        private final int port;
+        private WorkerPool workerPool;
+        private ServerContext context;
+        private RelayPortPool portPool;
+
+        /**
+         * Creates a builder for a {@link RelayServer} which listens on the
+         * given port.
+         * 
+         * @param port
+         *            the port on which the {@link RelayServer} listens for
+         *            incoming control connections from clients
+         */
+        public Builder(int port) {
+            this.port = port;
+        }
+
+        /**
+         * @param workerPool
+         *            the bounds of the threads which dispatch new connections
+         *            and of the threads which handle new peer connections,
+         *            null for the executors of the context or a thread per
+         *            connection
+         * @return this builder
+         */
+        public Builder workerPool(WorkerPool workerPool) {
+            this.workerPool = workerPool;
+            return this;
+        }
+
+        /**
+         * New peer connections are handled in the blocking executor of the
+         * context, new connections are dispatched by its handler executor
+         * unless a {@link WorkerPool} is given.
+         * 
+         * @param context
+         *            the context whose executors are used, null to create own
+         *            executors
+         * @return this builder
+         */
+        public Builder context(ServerContext context) {
+            this.context = context;
+            return this;
+        }
+
+        /**
+         * @param portPool
+         *            the pool of the ports for allocations, null for the
+         *            default range
+         * @return this builder
+         */
+        public Builder portPool(RelayPortPool portPool) {
+            this.portPool = portPool;
+            return this;
+        }
+
+        /**
+         * Creates the {@link RelayServer}. It has to be started via
+         * {@link RelayServer#start() start()} in order that it is able to
+         * handle incoming connections.
+         * 
+         * @return the {@link RelayServer} which is not started yet
+         * @throws IOException
+         *             if an I/O error occurs
+         */
+        public RelayServer build() throws IOException {
+            return new RelayServer(this);
+        }
     }
 }
@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server.eventloop;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhkn.in.uce.core.concurrent.ThreadGroupThreadFactory;
+import de.fhkn.in.uce.core.metrics.Counter;
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+import de.fhkn.in.uce.core.socketlistener.SocketTaskFactory;
+
+/**
+ * Accepts the peer connections of all allocations of a relay server with one
+ * selector in a single thread. The server socket channel of an allocation is
+ * registered via
+ * {@link #register(ServerSocketChannel, SocketTaskFactory, Closeable)}, the
+ * task for an accepted connection is created by the factory of the allocation
+ * and runs in the common handler executor. So an allocation costs its
+ * listening socket but no thread.
+ * 
+ * Connections which are rejected by the handler executor are closed. If
+ * accepting fails, e.g. because there are too many open files, the channel is
+ * not selected for a short time and accepting is retried afterwards. Only if
+ * the channel itself is closed, the allocation is withdrawn and its owner is
+ * notified.
+ * 
+ * @author Daniel Maier
+ * 
+ */
+public final class AllocationAcceptor implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(AllocationAcceptor.class);
+    private static final Counter acceptedConnections = MetricsRegistry.getShared().counter(
+            "relay.acceptor.accepted");
+    private static final Counter rejectedConnections = MetricsRegistry.getShared().counter(
+            "relay.acceptor.rejected_executor");
+    private static final Counter failedAccepts = MetricsRegistry.getShared().counter(
+            "relay.acceptor.failed");
+    private static final long ACCEPT_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private final ExecutorService handlerExecutor;
+    private final Queue<Registration> newRegistrations = new ConcurrentLinkedQueue<Registration>();
+    private final List<SelectionKey> pausedKeys = new ArrayList<SelectionKey>();
+    private long resumeTime;
+    private volatile Selector selector;
+    private volatile boolean running;
+
+    /**
+     * Creates an {@link AllocationAcceptor}.
+     * 
+     * @param handlerExecutor
+     *            the executor for the tasks which handle the accepted peer
+     *            connections
+     */
+    public AllocationAcceptor(ExecutorService handlerExecutor) {
+        this.handlerExecutor = handlerExecutor;
+    }
+
+    /**
+     * Opens the selector and starts the acceptor thread.
+     * 
+     * @throws IOException
+     *             if the selector could not be opened
+     * @throws IllegalStateException
+     *             if the acceptor is already started
+     */
+    public synchronized void start() throws IOException {
+        if (selector != null) {
+            throw new IllegalStateException("Acceptor is already started");
+        }
+        selector = Selector.open();
+        running = true;
+        new ThreadGroupThreadFactory().newThread(this).start();
+    }
+
+    /**
+     * Registers the listening channel of an allocation. The channel is closed
+     * when the returned handle is closed or the acceptor is shut down. If the
+     * acceptor has to withdraw the channel, because it could not be
+     * registered or was closed by someone else, the given owner is closed.
+     * 
+     * @param channel
+     *            the bound server socket channel of the allocation
+     * @param taskFactory
+     *            creates the tasks for the accepted peer connections
+     * @param owner
+     *            is closed if the channel is withdrawn by the acceptor, may be
+     *            null
+     * @return the handle to withdraw the allocation
+     * @throws IOException
+     *             if the acceptor is not running, the channel is closed then
+     */
+    public Closeable register(ServerSocketChannel channel, SocketTaskFactory taskFactory, Closeable owner)
+            throws IOException {
+        Registration registration = new Registration(channel, taskFactory, owner);
+        Selector currentSelector = selector;
+        if (!running || (currentSelector == null)) {
+            registration.close();
+            throw new IOException("Allocation acceptor is not running");
+        }
+        newRegistrations.add(registration);
+        currentSelector.wakeup();
+        if (!running) {
+            closeNewRegistrations();
+        }
+        return registration;
+    }
+
+    /**
+     * Stops the acceptor thread and closes the channels of all allocations.
+     */
+    public synchronized void shutdown() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Accepts peer connections until the acceptor is shut down.
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                select();
+                registerNewChannels();
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("IOException in allocation acceptor: {}", e);
+        } finally {
+            // allocations which are registered afterwards are closed by
+            // register()
+            running = false;
+            close();
+        }
+    }
+
+    private void select() throws IOException {
+        if (pausedKeys.isEmpty()) {
+            selector.select();
+            return;
+        }
+        long waitNanos = resumeTime - System.nanoTime();
+        if (waitNanos > 0) {
+            selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+        }
+        if (System.nanoTime() - resumeTime >= 0) {
+            for (SelectionKey key : pausedKeys) {
+                if (key.isValid()) {
+                    key.interestOps(SelectionKey.OP_ACCEPT);
+                }
+            }
+            pausedKeys.clear();
+        }
+    }
+
+    private void registerNewChannels() {
+        Registration registration;
+        while ((registration = newRegistrations.poll()) != null) {
+            if (!registration.channel.isOpen()) {
+                // withdrawn before it was registered
+                continue;
+            }
+            try {
+                registration.channel.configureBlocking(false);
+                registration.channel.register(selector, SelectionKey.OP_ACCEPT, registration);
+            } catch (IOException e) {
+                logger.error("Could not register allocation: {}", e.getMessage());
+                registration.withdraw();
+            }
+        }
+    }
+
+    private void accept(SelectionKey key) {
+        Registration registration = (Registration) key.attachment();
+        SocketChannel accepted;
+        try {
+            while ((accepted = registration.channel.accept()) != null) {
+                acceptedConnections.increment();
+                Socket socket = accepted.socket();
+                logger.info("New peer connection from: {}", socket);
+                execute(socket, registration.taskFactory);
+            }
+        } catch (ClosedChannelException e) {
+            logger.error("Listening channel of allocation is closed");
+            registration.withdraw();
+        } catch (IOException e) {
+            // e.g. too many open files, the allocation is kept and accepting
+            // is retried after a while
+            logger.error("IOException while accepting peer connection: {}", e.getMessage());
+            failedAccepts.increment();
+            pause(key);
+        }
+    }
+
+    private void pause(SelectionKey key) {
+        if (!key.isValid()) {
+            ((Registration) key.attachment()).withdraw();
+            return;
+        }
+        key.interestOps(0);
+        if (pausedKeys.isEmpty()) {
+            resumeTime = System.nanoTime() + ACCEPT_BACKOFF_NANOS;
+        }
+        pausedKeys.add(key);
+    }
+
+    private void execute(Socket socket, SocketTaskFactory taskFactory) {
+        try {
+            handlerExecutor.execute(taskFactory.getTask(socket));
+        } catch (RejectedExecutionException e) {
+            logger.debug("Rejected peer connection from: {}", socket);
+            rejectedConnections.increment();
+            closeQuietly(socket);
+        } catch (IOException e) {
+            logger.error("IOException while creating peer handler: {}", e.getMessage());
+            closeQuietly(socket);
+        } catch (RuntimeException e) {
+            logger.error("Could not create peer handler: {}", e);
+            closeQuietly(socket);
+        }
+    }
+
+    private void close() {
+        for (SelectionKey key : selector.keys()) {
+            ((Registration) key.attachment()).close();
+        }
+        closeNewRegistrations();
+        try {
+            selector.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    private void closeNewRegistrations() {
+        Registration registration;
+        while ((registration = newRegistrations.poll()) != null) {
+            registration.close();
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    /**
+     * The listening channel of one allocation.
+     */
+    private final class Registration implements Closeable {
+        private final ServerSocketChannel channel;
+        private final SocketTaskFactory taskFactory;
+        private final Closeable owner;
+
+        Registration(ServerSocketChannel channel, SocketTaskFactory taskFactory, Closeable owner) {
+            this.channel = channel;
+            this.taskFactory = taskFactory;
+            this.owner = owner;
+        }
+
+        /**
+         * Closes the channel and notifies the owner, as the acceptor can not
+         * accept connections for it anymore.
+         */
+        void withdraw() {
+            close();
+            if (owner != null) {
+                try {
+                    owner.close();
+                } catch (IOException e) {
+                    logger.error("IOException while withdrawing allocation: {}", e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Deregisters and closes the channel. The selector is woken up, so the
+         * port is released right away.
+         */
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+            }
+            Selector currentSelector = selector;
+            if (currentSelector != null) {
+                currentSelector.wakeup();
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server.eventloop;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Pool of direct {@link ByteBuffer}s of a fixed size. A buffer is only taken
+ * out of the pool while relayed bytes wait for the destination to accept them,
+ * so idle sessions do not hold any buffer. At most a fixed number of released
+ * buffers are kept, further ones are left to the garbage collector.
+ * 
+ * The pool is not thread-safe, each {@link RelayWorker} has its own one.
+ * 
+ * @author Daniel Maier
+ * 
+ */
+final class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Deque<ByteBuffer> buffers = new ArrayDeque<ByteBuffer>();
+
+    /**
+     * Creates a {@link BufferPool}.
+     * 
+     * @param bufferSize
+     *            the capacity of the buffers
+     * @param maxPooled
+     *            the maximum number of released buffers which are kept
+     */
+    BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Returns a cleared buffer, either a pooled or a newly allocated one.
+     * 
+     * @return the buffer
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.pollFirst();
+        return (buffer != null) ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     * 
+     * @param buffer
+     *            the buffer which is not used anymore
+     */
+    void release(ByteBuffer buffer) {
+        if (buffers.size() < maxPooled) {
+            buffer.clear();
+            buffers.addFirst(buffer);
+        }
+    }
+}
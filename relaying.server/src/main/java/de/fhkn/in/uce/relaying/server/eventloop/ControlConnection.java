@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server.eventloop;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import de.fhkn.in.uce.stun.header.MessageHeader;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageReader;
+import de.fhkn.in.uce.stun.message.MessageWriter;
+
+/**
+ * A control connection which is served by a {@link ControlConnectionLoop}.
+ * Incoming bytes are collected until a whole STUN message arrived, which is
+ * then handed to the {@link Listener} of the connection. Messages written by
+ * the {@link MessageWriter} of the connection are written right away as far
+ * as the channel accepts them, the rest is queued and written by the loop.
+ * 
+ * @author Daniel Maier
+ * 
+ */
+public final class ControlConnection implements Closeable {
+    private static final int INITIAL_READ_BUFFER_SIZE = 512;
+    // a client which does not read its control connection is disconnected
+    private static final int MAX_PENDING_BYTES = 64 * 1024;
+    private final ControlConnectionLoop loop;
+    private final SelectableChannel channel;
+    // the same channel as the selectable one
+    private final ByteChannel byteChannel;
+    private final Listener listener;
+    private final MessageWriter writer;
+    private final Deque<ByteBuffer> outbound = new ArrayDeque<ByteBuffer>();
+    private int pendingBytes;
+    private boolean closed;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+    private SelectionKey key;
+
+    /**
+     * Listener of a control connection. It is called by the thread of the
+     * loop, so it must not block.
+     */
+    public interface Listener {
+
+        /**
+         * Called for each message which is received on the connection.
+         * 
+         * @param connection
+         *            the connection
+         * @param message
+         *            the received message
+         * @throws IOException
+         *             if an I/O error occurs, the connection is closed then
+         */
+        void messageReceived(ControlConnection connection, Message message) throws IOException;
+
+        /**
+         * Called when the connection was closed by the client, an error
+         * occurred or the loop was shut down. It is not called if the
+         * connection is closed via {@link ControlConnection#close()}.
+         * 
+         * @param connection
+         *            the connection
+         */
+        void closed(ControlConnection connection);
+    }
+
+    <C extends SelectableChannel & ByteChannel> ControlConnection(ControlConnectionLoop loop, C channel,
+            Listener listener) throws IOException {
+        this.loop = loop;
+        this.channel = channel;
+        byteChannel = channel;
+        this.listener = listener;
+        channel.configureBlocking(false);
+        writer = new MessageWriter(new OutboundStream());
+    }
+
+    /**
+     * Returns the writer for messages to the client.
+     * 
+     * @return the writer
+     */
+    public MessageWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Closes the connection. Bytes which the client did not accept yet are
+     * written as far as possible without waiting.
+     */
+    @Override
+    public void close() {
+        synchronized (outbound) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                writeOutbound();
+            } catch (IOException ignore) {
+            }
+            outbound.clear();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+        }
+        loop.wakeup();
+    }
+
+    SelectableChannel getChannel() {
+        return channel;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Reads the available bytes and hands all complete messages to the
+     * listener.
+     * 
+     * @param reader
+     *            the reader which decodes the messages
+     * @return false if the client closed the connection, otherwise true
+     * @throws IOException
+     *             if an I/O error occurs or a message is malformed
+     */
+    boolean read(MessageReader reader) throws IOException {
+        if (byteChannel.read(readBuffer) < 0) {
+            return false;
+        }
+        readBuffer.flip();
+        while (readBuffer.remaining() >= MessageHeader.HEADER_LENGTH) {
+            int messageLength = MessageHeader.HEADER_LENGTH
+                    + (readBuffer.getShort(readBuffer.position() + 2) & 0xFFFF);
+            if (readBuffer.remaining() < messageLength) {
+                if (messageLength > readBuffer.capacity()) {
+                    ByteBuffer larger = ByteBuffer.allocate(messageLength);
+                    larger.put(readBuffer);
+                    readBuffer = larger;
+                    return true;
+                }
+                break;
+            }
+            Message message = reader.readSTUNMessage(readBuffer);
+            listener.messageReceived(this, message);
+            if (isClosed()) {
+                return true;
+            }
+        }
+        readBuffer.compact();
+        return true;
+    }
+
+    /**
+     * Writes the queued bytes and updates the interest of the key.
+     * 
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    void flush() throws IOException {
+        synchronized (outbound) {
+            writeOutbound();
+            updateInterest();
+        }
+    }
+
+    /**
+     * Watches the channel for writability if bytes are queued.
+     */
+    void updateInterest() {
+        synchronized (outbound) {
+            if ((key != null) && key.isValid()) {
+                key.interestOps(outbound.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ
+                        | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    /**
+     * Closes the connection because of an error or the end of the stream and
+     * notifies the listener.
+     */
+    void fail() {
+        if (isClosed()) {
+            return;
+        }
+        close();
+        listener.closed(this);
+    }
+
+    private boolean isClosed() {
+        synchronized (outbound) {
+            return closed;
+        }
+    }
+
+    private void writeOutbound() throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = outbound.peek()) != null) {
+            pendingBytes -= byteChannel.write(buffer);
+            if (buffer.hasRemaining()) {
+                return;
+            }
+            outbound.poll();
+        }
+    }
+
+    private void send(ByteBuffer data) throws IOException {
+        boolean overflow = false;
+        boolean firstQueued = false;
+        synchronized (outbound) {
+            if (closed) {
+                throw new IOException("Control connection is closed");
+            }
+            if (outbound.isEmpty()) {
+                byteChannel.write(data);
+            }
+            if (!data.hasRemaining()) {
+                return;
+            }
+            if (pendingBytes + data.remaining() > MAX_PENDING_BYTES) {
+                overflow = true;
+            } else {
+                firstQueued = outbound.isEmpty();
+                outbound.add(data);
+                pendingBytes += data.remaining();
+            }
+        }
+        if (overflow) {
+            close();
+            throw new IOException("Client does not read its control connection");
+        }
+        if (firstQueued) {
+            loop.requestFlush(this);
+        }
+    }
+
+    /**
+     * The stream the {@link MessageWriter} of the connection writes to. It
+     * copies the bytes, as the writer reuses its buffer.
+     */
+    private final class OutboundStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            send(ByteBuffer.wrap(new byte[] { (byte) b }));
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            send(ByteBuffer.wrap(Arrays.copyOfRange(b, off, off + len)));
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server.eventloop;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhkn.in.uce.core.concurrent.ThreadGroupThreadFactory;
+import de.fhkn.in.uce.stun.message.MessageReader;
+
+/**
+ * Serves the control connections of all allocations of a relay server with
+ * one selector in a single thread. Incoming messages are decoded by one
+ * {@link MessageReader} and handed to the {@link ControlConnection.Listener}
+ * of their connection. So a control connection which only carries refresh
+ * requests now and then does not occupy a thread.
+ * 
+ * @author Daniel Maier
+ * 
+ */
+public final class ControlConnectionLoop implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(ControlConnectionLoop.class);
+    private final MessageReader messageReader;
+    private final Queue<ControlConnection> newConnections = new ConcurrentLinkedQueue<ControlConnection>();
+    private final Queue<ControlConnection> flushRequests = new ConcurrentLinkedQueue<ControlConnection>();
+    private volatile Selector selector;
+    private volatile boolean running;
+
+    /**
+     * Creates a {@link ControlConnectionLoop}.
+     * 
+     * @param messageReader
+     *            the reader which decodes the messages of all connections, it
+     *            is only used by the thread of the loop
+     */
+    public ControlConnectionLoop(MessageReader messageReader) {
+        this.messageReader = messageReader;
+    }
+
+    /**
+     * Opens the selector and starts the loop thread.
+     * 
+     * @throws IOException
+     *             if the selector could not be opened
+     * @throws IllegalStateException
+     *             if the loop is already started
+     */
+    public synchronized void start() throws IOException {
+        if (selector != null) {
+            throw new IllegalStateException("Control connection loop is already started");
+        }
+        selector = Selector.open();
+        running = true;
+        new ThreadGroupThreadFactory().newThread(this).start();
+    }
+
+    /**
+     * Hands over a connected socket to the loop. The socket has to be created
+     * by a channel and no other thread may read from it anymore, its streams
+     * must not be used afterwards.
+     * 
+     * @param socket
+     *            the socket of the control connection
+     * @param listener
+     *            the listener for the messages of the connection
+     * @return the control connection
+     * @throws IOException
+     *             if the loop is not running or the channel could not be
+     *             switched to non-blocking mode
+     * @throws IllegalArgumentException
+     *             if the socket has no channel
+     */
+    public ControlConnection register(Socket socket, ControlConnection.Listener listener) throws IOException {
+        SocketChannel channel = socket.getChannel();
+        if (channel == null) {
+            throw new IllegalArgumentException("Socket has no channel: " + socket);
+        }
+        Selector currentSelector = selector;
+        if (!running || (currentSelector == null)) {
+            throw new IOException("Control connection loop is not running");
+        }
+        ControlConnection connection = new ControlConnection(this, channel, listener);
+        newConnections.add(connection);
+        currentSelector.wakeup();
+        if (!running) {
+            closeNewConnections();
+        }
+        return connection;
+    }
+
+    /**
+     * Stops the loop thread and closes all control connections.
+     */
+    public synchronized void shutdown() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Serves the control connections until the loop is shut down.
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                registerNewConnections();
+                flushRequestedConnections();
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    handleReadyOps(key);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("IOException in control connection loop: {}", e);
+        } finally {
+            // connections which are handed over afterwards are closed by
+            // register()
+            running = false;
+            close();
+        }
+    }
+
+    void requestFlush(ControlConnection connection) {
+        flushRequests.add(connection);
+        wakeup();
+    }
+
+    void wakeup() {
+        Selector currentSelector = selector;
+        if (currentSelector != null) {
+            currentSelector.wakeup();
+        }
+    }
+
+    private void handleReadyOps(SelectionKey key) {
+        ControlConnection connection = (ControlConnection) key.attachment();
+        if (!key.isValid()) {
+            return;
+        }
+        try {
+            if (key.isWritable()) {
+                connection.flush();
+            }
+            if (key.isValid() && key.isReadable() && !connection.read(messageReader)) {
+                logger.debug("Control connection closed by client");
+                connection.fail();
+            }
+        } catch (IOException e) {
+            logger.debug("IOException on control connection: {}", e.getMessage());
+            connection.fail();
+        } catch (CancelledKeyException e) {
+            connection.fail();
+        } catch (RuntimeException e) {
+            logger.error("Could not handle message of control connection: {}", e);
+            connection.fail();
+        }
+    }
+
+    private void registerNewConnections() {
+        ControlConnection connection;
+        while ((connection = newConnections.poll()) != null) {
+            if (!connection.getChannel().isOpen()) {
+                // closed before it was registered
+                continue;
+            }
+            try {
+                connection.setKey(connection.getChannel().register(selector, SelectionKey.OP_READ, connection));
+                connection.updateInterest();
+            } catch (IOException e) {
+                logger.error("Could not register control connection: {}", e.getMessage());
+                connection.fail();
+            }
+        }
+    }
+
+    private void flushRequestedConnections() {
+        ControlConnection connection;
+        while ((connection = flushRequests.poll()) != null) {
+            connection.updateInterest();
+        }
+    }
+
+    private void close() {
+        for (SelectionKey key : selector.keys()) {
+            ((ControlConnection) key.attachment()).fail();
+        }
+        closeNewConnections();
+        flushRequests.clear();
+        try {
+            selector.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    private void closeNewConnections() {
+        ControlConnection connection;
+        while ((connection = newConnections.poll()) != null) {
+            connection.fail();
+        }
+    }
+}
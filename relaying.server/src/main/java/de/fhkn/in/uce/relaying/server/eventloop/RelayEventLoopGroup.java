@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server.eventloop;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhkn.in.uce.core.concurrent.ThreadGroupThreadFactory;
+
+/**
+ * Non-blocking data plane of the relay server. A fixed number of
+ * {@link RelayWorker}s, by default one per available processor, pump the bytes
+ * between peers and clients, each serving its sessions with its own selector.
+ * So the number of threads does not depend on the number of relayed
+ * connections, an idle session only costs its two sockets. Bytes which the
+ * destination does not accept right away are kept in pooled direct buffers.
+ * 
+ * Sessions are spread round-robin among the workers. The sockets have to be
+ * created by channels, e.g. accepted by the socket of a
+ * {@link java.nio.channels.ServerSocketChannel}, and the group has to be
+ * started before the first session is handed over.
+ * 
+ * The owner of the relayed connections can follow the sessions via a
+ * {@link SessionListener}, e.g. to close them when an allocation expires.
+ * 
+ * @author Daniel Maier
+ * 
+ */
+public final class RelayEventLoopGroup {
+    private static final Logger logger = LoggerFactory.getLogger(RelayEventLoopGroup.class);
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private final int workerCount;
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private volatile RelayWorker[] workers = new RelayWorker[0];
+    private ExecutorService eventLoopExecutor;
+
+    /**
+     * Creates a {@link RelayEventLoopGroup} with one worker per available
+     * processor.
+     */
+    public RelayEventLoopGroup() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a {@link RelayEventLoopGroup}.
+     * 
+     * @param workerCount
+     *            the number of worker threads
+     * @throws IllegalArgumentException
+     *             if the worker count is not positive
+     */
+    public RelayEventLoopGroup(int workerCount) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("Worker count must be positive: " + workerCount);
+        }
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Starts the worker threads.
+     * 
+     * @throws IOException
+     *             if a selector could not be opened
+     * @throws IllegalStateException
+     *             if the group is already started
+     */
+    public synchronized void start() throws IOException {
+        if (eventLoopExecutor != null) {
+            throw new IllegalStateException("Event loops are already started");
+        }
+        RelayWorker[] newWorkers = new RelayWorker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            newWorkers[i] = new RelayWorker(new BufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS));
+        }
+        eventLoopExecutor = Executors.newFixedThreadPool(workerCount, new ThreadGroupThreadFactory());
+        for (RelayWorker worker : newWorkers) {
+            eventLoopExecutor.execute(worker);
+        }
+        workers = newWorkers;
+        logger.info("Relaying with {} event loops", workerCount);
+    }
+
+    /**
+     * Relays data between the given peer and client in both directions. The
+     * sockets are closed when both directions reached the end of their streams
+     * or an error occurred.
+     * 
+     * @param peerSocket
+     *            socket to the peer
+     * @param clientSocket
+     *            socket to the client
+     * @throws IllegalArgumentException
+     *             if a socket has no channel
+     * @throws IllegalStateException
+     *             if the group is not started
+     */
+    public void relay(Socket peerSocket, Socket clientSocket) {
+        relay(peerSocket, clientSocket, null);
+    }
+
+    /**
+     * Relays data between the given peer and client in both directions like
+     * {@link #relay(Socket, Socket)} and reports the session to the given
+     * listener.
+     * 
+     * @param peerSocket
+     *            socket to the peer
+     * @param clientSocket
+     *            socket to the client
+     * @param listener
+     *            the listener of the session, may be null
+     * @throws IllegalArgumentException
+     *             if a socket has no channel
+     * @throws IllegalStateException
+     *             if the group is not started
+     */
+    public void relay(Socket peerSocket, Socket clientSocket, final SessionListener listener) {
+        SocketChannel peer = peerSocket.getChannel();
+        SocketChannel client = clientSocket.getChannel();
+        if ((peer == null) || (client == null)) {
+            throw new IllegalArgumentException("Socket has no channel: " + ((peer == null) ? peerSocket
+                    : clientSocket));
+        }
+        RelayWorker[] currentWorkers = workers;
+        if (currentWorkers.length == 0) {
+            throw new IllegalStateException("Event loops are not started");
+        }
+        int index = (nextWorker.getAndIncrement() & Integer.MAX_VALUE) % currentWorkers.length;
+        final RelayWorker worker = currentWorkers[index];
+        final RelaySession session = new RelaySession(worker.getBufferPool(), peer, client);
+        if (listener != null) {
+            final Closeable handle = new Closeable() {
+                @Override
+                public void close() {
+                    worker.closeSession(session);
+                }
+            };
+            session.setCloseListener(new Runnable() {
+                @Override
+                public void run() {
+                    listener.closed(handle);
+                }
+            });
+            listener.opened(handle);
+        }
+        worker.register(session);
+    }
+
+    /**
+     * Stops the worker threads and closes all relayed connections.
+     */
+    public synchronized void shutdown() {
+        for (RelayWorker worker : workers) {
+            worker.shutdown();
+        }
+        if (eventLoopExecutor != null) {
+            eventLoopExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Listener of a relayed session. A session is reported as a handle which
+     * closes both of its connections.
+     */
+    public interface SessionListener {
+
+        /**
+         * Called when the session is handed over for relaying.
+         * 
+         * @param session
+         *            the handle of the session
+         */
+        void opened(Closeable session);
+
+        /**
+         * Called when both connections of the session are closed.
+         * 
+         * @param session
+         *            the handle of the session
+         */
+        void closed(Closeable session);
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server.eventloop;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import de.fhkn.in.uce.core.events.FlightEvent;
+import de.fhkn.in.uce.core.events.FlightEventType;
+import de.fhkn.in.uce.core.events.FlightEvents;
+import de.fhkn.in.uce.core.metrics.Counter;
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+
+/**
+ * Relays data between one peer and one client in both directions, served by a
+ * single {@link RelayWorker}. Each direction is a {@link Pipe} which reads
+ * from one channel and writes the bytes to the other one right away. If the
+ * destination does not accept all bytes, the rest stays in a pooled buffer,
+ * the source is not read anymore and the destination is watched for
+ * writability until the buffer is drained (backpressure).
+ * 
+ * The end of the stream of one direction shuts down the input of its source and the
+ * output of its destination, the other direction keeps relaying. The channels
+ * are closed as soon as both directions reached their end or an I/O error
+ * occurred.
+ * 
+ * A session is only accessed by the thread of its worker.
+ * 
+ * @author Daniel Maier
+ * 
+ */
+final class RelaySession {
+    private static final Counter relayedBytes = MetricsRegistry.getShared().counter("relay.relayed_bytes");
+    private static final Counter activeSessions = MetricsRegistry.getShared().upDownCounter("relay.sessions.active");
+    private final BufferPool bufferPool;
+    private final SocketChannel peer;
+    private final SocketChannel client;
+    private final Pipe peerToClient;
+    private final Pipe clientToPeer;
+    private SelectionKey peerKey;
+    private SelectionKey clientKey;
+    private Runnable closeListener;
+    private boolean closed;
+
+    /**
+     * Creates a {@link RelaySession}.
+     * 
+     * @param bufferPool
+     *            the pool of the worker the session is registered with
+     * @param peer
+     *            the connected channel to the peer
+     * @param client
+     *            the connected channel to the client
+     */
+    RelaySession(BufferPool bufferPool, SocketChannel peer, SocketChannel client) {
+        this.bufferPool = bufferPool;
+        this.peer = peer;
+        this.client = client;
+        peerToClient = new Pipe(peer, client);
+        clientToPeer = new Pipe(client, peer);
+        activeSessions.increment();
+    }
+
+    /**
+     * Sets the listener which is run once the session is closed. Has to be set
+     * before the session is handed over to its worker.
+     * 
+     * @param closeListener
+     *            the listener
+     */
+    void setCloseListener(Runnable closeListener) {
+        this.closeListener = closeListener;
+    }
+
+    /**
+     * Switches the channels to non-blocking mode and registers them for
+     * reading.
+     * 
+     * @param selector
+     *            the selector of the worker
+     * @throws IOException
+     *             if a channel could not be registered
+     */
+    void register(Selector selector) throws IOException {
+        peer.configureBlocking(false);
+        client.configureBlocking(false);
+        peerKey = peer.register(selector, SelectionKey.OP_READ, this);
+        clientKey = client.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * Reads from and writes to the channel of the given key as far as it is
+     * ready, then updates the interest in both channels.
+     * 
+     * @param key
+     *            the selected key of one of the channels
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    void handleReadyOps(SelectionKey key) throws IOException {
+        boolean fromPeer = key == peerKey;
+        Pipe outbound = fromPeer ? peerToClient : clientToPeer;
+        Pipe inbound = fromPeer ? clientToPeer : peerToClient;
+        int readyOps = key.readyOps();
+        if ((readyOps & SelectionKey.OP_WRITE) != 0) {
+            inbound.flush();
+        }
+        if ((readyOps & SelectionKey.OP_READ) != 0) {
+            outbound.read();
+        }
+        if (peerToClient.isDone() && clientToPeer.isDone()) {
+            close("closed");
+        } else {
+            peerKey.interestOps(interestOps(peerToClient, clientToPeer));
+            clientKey.interestOps(interestOps(clientToPeer, peerToClient));
+        }
+    }
+
+    private static int interestOps(Pipe outbound, Pipe inbound) {
+        int ops = 0;
+        if (outbound.wantsRead()) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (inbound.hasPendingBytes()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        return ops;
+    }
+
+    /**
+     * Closes both channels and returns the pending buffers to the pool.
+     * 
+     * @param outcome
+     *            the outcome of the directions which did not reach their end
+     */
+    void close(String outcome) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        activeSessions.decrement();
+        peerToClient.close(outcome);
+        clientToPeer.close(outcome);
+        closeQuietly(peer);
+        closeQuietly(client);
+        if (closeListener != null) {
+            closeListener.run();
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    /**
+     * One direction of a session.
+     */
+    private final class Pipe {
+        private final SocketChannel source;
+        private final SocketChannel destination;
+        private final FlightEvent event;
+        private final String subject;
+        private ByteBuffer pending;
+        private boolean done;
+        private long total;
+
+        Pipe(SocketChannel source, SocketChannel destination) {
+            this.source = source;
+            this.destination = destination;
+            event = FlightEvents.begin(FlightEventType.RELAY_TRANSFER);
+            subject = event.isEnabled() ? source.socket().getRemoteSocketAddress() + " -> "
+                    + destination.socket().getRemoteSocketAddress() : null;
+        }
+
+        boolean wantsRead() {
+            return !done && (pending == null);
+        }
+
+        boolean hasPendingBytes() {
+            return pending != null;
+        }
+
+        boolean isDone() {
+            return done;
+        }
+
+        void read() throws IOException {
+            if (!wantsRead()) {
+                return;
+            }
+            ByteBuffer buffer = bufferPool.acquire();
+            int len;
+            try {
+                len = source.read(buffer);
+            } catch (IOException e) {
+                bufferPool.release(buffer);
+                throw e;
+            }
+            if (len < 0) {
+                bufferPool.release(buffer);
+                source.socket().shutdownInput();
+                destination.socket().shutdownOutput();
+                done = true;
+                commit("closed");
+                return;
+            }
+            relayedBytes.add(len);
+            total += len;
+            buffer.flip();
+            pending = buffer;
+            flush();
+        }
+
+        void flush() throws IOException {
+            if (pending == null) {
+                return;
+            }
+            destination.write(pending);
+            if (!pending.hasRemaining()) {
+                bufferPool.release(pending);
+                pending = null;
+            }
+        }
+
+        void close(String outcome) {
+            if (pending != null) {
+                bufferPool.release(pending);
+                pending = null;
+            }
+            if (!done) {
+                done = true;
+                commit(outcome);
+            }
+        }
+
+        private void commit(String outcome) {
+            if (event.isEnabled()) {
+                event.commit(subject, outcome, total);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server.eventloop;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link RelayWorker} serves the {@link RelaySession}s which are handed over
+ * by the {@link RelayEventLoopGroup} with its own selector in a single thread.
+ * 
+ * @author Daniel Maier
+ * 
+ */
+final class RelayWorker implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(RelayWorker.class);
+    private final Selector selector;
+    private final BufferPool bufferPool;
+    private final Queue<RelaySession> newSessions = new ConcurrentLinkedQueue<RelaySession>();
+    private final Queue<RelaySession> closedSessions = new ConcurrentLinkedQueue<RelaySession>();
+    private volatile boolean running = true;
+
+    /**
+     * Creates a {@link RelayWorker}.
+     * 
+     * @param bufferPool
+     *            the pool of the buffers for pending bytes, only used by this
+     *            worker
+     * @throws IOException
+     *             if the selector could not be opened
+     */
+    RelayWorker(BufferPool bufferPool) throws IOException {
+        selector = Selector.open();
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Returns the buffer pool of this worker.
+     * 
+     * @return the buffer pool
+     */
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Hands over a session to this worker. The channels of the session are
+     * registered by the thread of the worker.
+     * 
+     * @param session
+     *            the new session
+     */
+    void register(RelaySession session) {
+        newSessions.add(session);
+        selector.wakeup();
+        if (!running) {
+            closeNewSessions();
+        }
+    }
+
+    /**
+     * Closes a session of this worker. The session is closed by the thread of
+     * the worker.
+     * 
+     * @param session
+     *            the session to close
+     */
+    void closeSession(RelaySession session) {
+        closedSessions.add(session);
+        selector.wakeup();
+    }
+
+    /**
+     * Stops the worker and closes all its sessions.
+     */
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                registerNewSessions();
+                closeClosedSessions();
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    handleReadyOps(key);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("IOException in relay worker: {}", e);
+        } finally {
+            // sessions which are handed over afterwards are closed by
+            // register()
+            running = false;
+            close();
+        }
+    }
+
+    private void handleReadyOps(SelectionKey key) {
+        RelaySession session = (RelaySession) key.attachment();
+        if (!key.isValid()) {
+            // closed while handling the other channel of the session
+            return;
+        }
+        try {
+            session.handleReadyOps(key);
+        } catch (IOException e) {
+            logger.debug("IOException while relaying: {}", e.getMessage());
+            session.close("failed");
+        } catch (CancelledKeyException e) {
+            session.close("failed");
+        } catch (RuntimeException e) {
+            logger.error("Could not relay session: {}", e);
+            session.close("failed");
+        }
+    }
+
+    private void registerNewSessions() {
+        RelaySession session;
+        while ((session = newSessions.poll()) != null) {
+            try {
+                session.register(selector);
+            } catch (IOException e) {
+                logger.error("Could not register relay session: {}", e.getMessage());
+                session.close("failed");
+            }
+        }
+    }
+
+    private void closeClosedSessions() {
+        RelaySession session;
+        while ((session = closedSessions.poll()) != null) {
+            session.close("closed");
+        }
+    }
+
+    private void closeNewSessions() {
+        RelaySession session;
+        while ((session = newSessions.poll()) != null) {
+            session.close("closed");
+        }
+    }
+
+    private void close() {
+        for (SelectionKey key : selector.keys()) {
+            ((RelaySession) key.attachment()).close("closed");
+        }
+        closeNewSessions();
+        closedSessions.clear();
+        try {
+            selector.close();
+        } catch (IOException ignore) {
+        }
+    }
+}
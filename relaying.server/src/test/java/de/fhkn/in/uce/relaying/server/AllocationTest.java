@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhkn.in.uce.core.concurrent.ExecutionMode;
+import de.fhkn.in.uce.core.concurrent.HashedWheelTimer;
+
+/**
+ * Tests the lifetime of an {@link Allocation} with lifetimes in milliseconds
+ * and a timer of its own. The allocation has no control connection and its
+ * lease an unbound channel, so no socket is connected.
+ */
+public class AllocationTest {
+    private static final int PORT = 20200;
+    private HashedWheelTimer timer;
+    private RelayPortPool pool;
+    private PortLease lease;
+    private AllocationTable table;
+
+    @Before
+    public void setUp() throws IOException {
+        timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 64, ExecutionMode.newDaemonCachedThreadPool());
+        pool = new RelayPortPool(Collections.<InetAddress> emptyList(), PORT, PORT, 10000);
+        lease = new PortLease(pool, pool.allocate(), ServerSocketChannel.open(), new InetSocketAddress(PORT));
+        table = new AllocationTable();
+    }
+
+    @After
+    public void tearDown() {
+        lease.close();
+        timer.stop();
+    }
+
+    @Test
+    public void testRefreshMovesDeadline() throws InterruptedException {
+        Allocation allocation = newAllocation(200);
+        long lastRefresh = System.nanoTime();
+        // refreshed for more than twice its lifetime
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(50);
+            allocation.refresh(200);
+            lastRefresh = System.nanoTime();
+            assertTrue(lease.getChannel().isOpen());
+        }
+        awaitReleased();
+        long lifetimeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastRefresh);
+        assertTrue("Expired after " + lifetimeMillis + " ms", lifetimeMillis >= 200);
+    }
+
+    @Test
+    public void testExpiryReleasesLease() throws InterruptedException {
+        Allocation allocation = newAllocation(50);
+        CountingSession session = new CountingSession();
+        allocation.opened(session);
+        awaitReleased();
+        assertFalse(lease.getChannel().isOpen());
+        assertEquals(1, pool.getQuarantined());
+        assertEquals(0, pool.getFree());
+        // an expired allocation closes the relayed connections of its peers
+        assertEquals(1, session.closed.get());
+    }
+
+    @Test
+    public void testDestroyedAllocationDoesNotExpire() throws InterruptedException {
+        Allocation allocation = newAllocation(50);
+        CountingSession session = new CountingSession();
+        allocation.opened(session);
+        allocation.destroy(false);
+        assertFalse(lease.getChannel().isOpen());
+        assertEquals(1, pool.getQuarantined());
+        Thread.sleep(200);
+        // a withdrawn allocation keeps the relayed connections
+        assertEquals(0, session.closed.get());
+    }
+
+    @Test
+    public void testLeaseOfDestroyedAllocationIsReleased() {
+        Allocation allocation = new Allocation(table, lease.getEndpoint(), 50, TimeUnit.MILLISECONDS, timer);
+        allocation.destroy(false);
+        allocation.setPeerListener(lease);
+        assertFalse(lease.getChannel().isOpen());
+        assertEquals(1, pool.getQuarantined());
+    }
+
+    private Allocation newAllocation(int lifetimeMillis) {
+        Allocation allocation = new Allocation(table, lease.getEndpoint(), lifetimeMillis, TimeUnit.MILLISECONDS,
+                timer);
+        allocation.setPeerListener(lease);
+        allocation.open(null);
+        return allocation;
+    }
+
+    private void awaitReleased() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getQuarantined() == 0) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Lease was not released");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static final class CountingSession implements Closeable {
+        private final AtomicInteger closed = new AtomicInteger();
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Socket;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.fhkn.in.uce.relaying.server.PendingConnectionBinds.BindCallback;
+
+public class PendingConnectionBindsTest {
+    private final PendingConnectionBinds binds = new PendingConnectionBinds();
+
+    @Test
+    public void testCompleteCallsBound() throws InterruptedException {
+        CountingCallback callback = new CountingCallback(1);
+        UUID connectionId = binds.add(callback, 10, TimeUnit.SECONDS);
+        assertEquals(1, binds.size());
+        Socket clientSocket = new Socket();
+        assertTrue(binds.complete(connectionId, clientSocket));
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, callback.bound.get());
+        assertEquals(0, callback.expired.get());
+        assertEquals(0, binds.size());
+    }
+
+    @Test
+    public void testDoubleCompleteCallsBoundOnce() {
+        CountingCallback callback = new CountingCallback(1);
+        UUID connectionId = binds.add(callback, 10, TimeUnit.SECONDS);
+        assertTrue(binds.complete(connectionId, new Socket()));
+        assertFalse(binds.complete(connectionId, new Socket()));
+        assertEquals(1, callback.bound.get());
+        assertEquals(0, callback.expired.get());
+    }
+
+    @Test
+    public void testExpiryCallsExpiredOnce() throws InterruptedException {
+        CountingCallback callback = new CountingCallback(1);
+        UUID connectionId = binds.add(callback, 50, TimeUnit.MILLISECONDS);
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        // a late connection bind does not complete the expired connection
+        assertFalse(binds.complete(connectionId, new Socket()));
+        assertEquals(0, callback.bound.get());
+        assertEquals(1, callback.expired.get());
+        assertEquals(0, binds.size());
+    }
+
+    @Test
+    public void testRemoveCompletesNothing() throws InterruptedException {
+        CountingCallback callback = new CountingCallback(1);
+        UUID connectionId = binds.add(callback, 50, TimeUnit.MILLISECONDS);
+        assertTrue(binds.remove(connectionId));
+        assertFalse(binds.remove(connectionId));
+        assertFalse(binds.complete(connectionId, new Socket()));
+        assertFalse(callback.done.await(300, TimeUnit.MILLISECONDS));
+        assertEquals(0, binds.size());
+    }
+
+    @Test
+    public void testExpireAll() {
+        CountingCallback first = new CountingCallback(1);
+        CountingCallback second = new CountingCallback(1);
+        binds.add(first, 10, TimeUnit.SECONDS);
+        binds.add(second, 10, TimeUnit.SECONDS);
+        binds.expireAll();
+        binds.expireAll();
+        assertEquals(1, first.expired.get());
+        assertEquals(1, second.expired.get());
+        assertEquals(0, binds.size());
+    }
+
+    @Test
+    public void testExpiryRacesComplete() throws InterruptedException {
+        // the connection binds arrive around the deadline, each callback has
+        // to be completed exactly once, either by the bind or by the expiry
+        final int count = 200;
+        final CountingCallback callback = new CountingCallback(count);
+        final UUID[] connectionIds = new UUID[count];
+        for (int i = 0; i < count; i++) {
+            connectionIds[i] = binds.add(callback, 100, TimeUnit.MILLISECONDS);
+        }
+        final AtomicInteger completedBinds = new AtomicInteger();
+        Thread[] completers = new Thread[4];
+        for (int t = 0; t < completers.length; t++) {
+            final int first = t;
+            completers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(80);
+                        for (int i = first; i < count; i += 4) {
+                            if (binds.complete(connectionIds[i], new Socket())) {
+                                completedBinds.incrementAndGet();
+                            }
+                            Thread.sleep(1);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            completers[t].start();
+        }
+        for (Thread completer : completers) {
+            completer.join();
+        }
+        assertTrue(callback.done.await(5, TimeUnit.SECONDS));
+        // give superfluous callbacks a chance to show up
+        Thread.sleep(300);
+        assertEquals(completedBinds.get(), callback.bound.get());
+        assertEquals(count, callback.bound.get() + callback.expired.get());
+        assertEquals(0, binds.size());
+    }
+
+    private static final class CountingCallback implements BindCallback {
+        private final AtomicInteger bound = new AtomicInteger();
+        private final AtomicInteger expired = new AtomicInteger();
+        private final CountDownLatch done;
+
+        CountingCallback(int count) {
+            done = new CountDownLatch(count);
+        }
+
+        @Override
+        public void bound(Socket clientSocket) {
+            bound.incrementAndGet();
+            done.countDown();
+        }
+
+        @Override
+        public void expired() {
+            expired.incrementAndGet();
+            done.countDown();
+        }
+    }
+}
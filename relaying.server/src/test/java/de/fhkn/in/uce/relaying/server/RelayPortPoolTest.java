@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class RelayPortPoolTest {
+    private static final int MIN_PORT = 20000;
+
+    @Test
+    public void testAllocateAndRelease() {
+        RelayPortPool pool = newPool(200, 0);
+        Set<Integer> slots = new HashSet<Integer>();
+        for (int i = 0; i < 200; i++) {
+            assertTrue(slots.add(pool.allocate()));
+        }
+        assertEquals(0, pool.getFree());
+        pool.release(130);
+        assertEquals(1, pool.getFree());
+        assertEquals(130, pool.allocate());
+        assertEquals(0, pool.getFree());
+    }
+
+    @Test
+    public void testSlotsAreHandedOutRoundRobin() {
+        RelayPortPool pool = newPool(100, 0);
+        assertEquals(0, pool.allocate());
+        assertEquals(1, pool.allocate());
+        pool.release(0);
+        // the released slot is the last one to be reused
+        assertEquals(2, pool.allocate());
+        pool.release(1);
+        pool.release(2);
+        assertEquals(3, pool.allocate());
+    }
+
+    @Test
+    public void testAllocateWrapsAround() {
+        RelayPortPool pool = newPool(130, 0);
+        for (int i = 0; i < 130; i++) {
+            assertEquals(i, pool.allocate());
+        }
+        pool.release(70);
+        pool.release(5);
+        assertEquals(5, pool.allocate());
+        assertEquals(70, pool.allocate());
+        pool.release(129);
+        pool.release(64);
+        assertEquals(129, pool.allocate());
+        assertEquals(64, pool.allocate());
+    }
+
+    @Test
+    public void testExhaustion() throws IOException {
+        RelayPortPool pool = newPool(3, 0);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(pool.allocate() >= 0);
+        }
+        assertEquals(-1, pool.allocate());
+        assertNull(pool.bind());
+        pool.release(1);
+        assertEquals(1, pool.allocate());
+    }
+
+    @Test
+    public void testQuarantineExpires() throws InterruptedException {
+        RelayPortPool pool = newPool(2, 100);
+        assertEquals(0, pool.allocate());
+        assertEquals(1, pool.allocate());
+        pool.release(0);
+        assertEquals(1, pool.getQuarantined());
+        assertEquals(0, pool.getFree());
+        assertEquals(-1, pool.allocate());
+        Thread.sleep(150);
+        assertEquals(0, pool.getQuarantined());
+        assertEquals(1, pool.getFree());
+        assertEquals(0, pool.allocate());
+    }
+
+    @Test
+    public void testBindSkipsPortInUse() throws IOException {
+        // both slots share the port, the one on the first address is taken
+        ServerSocket occupied = new ServerSocket();
+        occupied.bind(new InetSocketAddress("127.0.0.1", 0));
+        try {
+            int port = occupied.getLocalPort();
+            RelayPortPool pool = new RelayPortPool(Arrays.asList(InetAddress.getByName("127.0.0.1"),
+                    InetAddress.getByName("127.0.0.2")), port, port, 0);
+            PortLease lease = pool.bind();
+            assertNotNull(lease);
+            try {
+                assertEquals(new InetSocketAddress("127.0.0.2", port), lease.getEndpoint());
+                // the slot which could not be bound is free again
+                assertEquals(1, pool.getFree());
+            } finally {
+                lease.close();
+            }
+            assertEquals(2, pool.getFree());
+        } finally {
+            occupied.close();
+        }
+    }
+
+    @Test
+    public void testBindFailsIfNoPortCanBeBound() throws IOException {
+        ServerSocket occupied = new ServerSocket();
+        occupied.bind(new InetSocketAddress("127.0.0.1", 0));
+        try {
+            int port = occupied.getLocalPort();
+            RelayPortPool pool = new RelayPortPool(Collections.singletonList(InetAddress.getByName("127.0.0.1")),
+                    port, port, 0);
+            assertNull(pool.bind());
+            assertEquals(1, pool.getFree());
+        } finally {
+            occupied.close();
+        }
+    }
+
+    @Test
+    public void testClosedLeaseIsQuarantined() throws IOException {
+        RelayPortPool pool = new RelayPortPool(Collections.singletonList(InetAddress.getByName("127.0.0.1")),
+                MIN_PORT, MIN_PORT + 9, 10000);
+        PortLease lease = pool.bind();
+        assertNotNull(lease);
+        lease.close();
+        lease.close();
+        assertEquals(1, pool.getQuarantined());
+        assertEquals(9, pool.getFree());
+    }
+
+    private static RelayPortPool newPool(int capacity, long quarantineMillis) {
+        return new RelayPortPool(Collections.<InetAddress> emptyList(), MIN_PORT, MIN_PORT + capacity - 1,
+                quarantineMillis);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server.eventloop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhkn.in.uce.core.socketlistener.SocketTaskFactory;
+
+public class AllocationAcceptorTest {
+    private ExecutorService handlerExecutor;
+    private AllocationAcceptor acceptor;
+    private ServerSocketChannel channel;
+    private CountingOwner owner;
+
+    @Before
+    public void setUp() throws IOException {
+        handlerExecutor = Executors.newCachedThreadPool();
+        acceptor = new AllocationAcceptor(handlerExecutor);
+        acceptor.start();
+        channel = ServerSocketChannel.open();
+        channel.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+        owner = new CountingOwner();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        acceptor.shutdown();
+        handlerExecutor.shutdownNow();
+        channel.close();
+    }
+
+    @Test
+    public void testAcceptedConnectionIsHandled() throws Exception {
+        final CountDownLatch handled = new CountDownLatch(1);
+        acceptor.register(channel, new SocketTaskFactory() {
+
+            @Override
+            public Runnable getTask(final Socket s) {
+                return new Runnable() {
+
+                    @Override
+                    public void run() {
+                        handled.countDown();
+                        closeQuietly(s);
+                    }
+                };
+            }
+        }, owner);
+        Socket peer = connect();
+        try {
+            assertTrue(handled.await(5, TimeUnit.SECONDS));
+        } finally {
+            peer.close();
+        }
+        assertTrue(channel.isOpen());
+        assertEquals(0, owner.closed.get());
+    }
+
+    @Test
+    public void testClosedRegistrationReleasesPort() throws Exception {
+        int port = channel.socket().getLocalPort();
+        Closeable registration = acceptor.register(channel, new ClosingTaskFactory(), owner);
+        registration.close();
+        assertFalse(channel.isOpen());
+        // the port can be bound again as soon as the channel is deregistered
+        ServerSocketChannel rebound = ServerSocketChannel.open();
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (true) {
+                try {
+                    rebound.socket().bind(new InetSocketAddress("127.0.0.1", port));
+                    break;
+                } catch (IOException e) {
+                    if (System.currentTimeMillis() > deadline) {
+                        throw e;
+                    }
+                    Thread.sleep(10);
+                }
+            }
+        } finally {
+            rebound.close();
+        }
+        // withdrawn by the owner itself, so it is not notified
+        assertEquals(0, owner.closed.get());
+    }
+
+    @Test
+    public void testClosedChannelNotifiesOwnerOnce() throws Exception {
+        // the channel is closed between two accepts on the acceptor thread
+        acceptor.register(channel, new SocketTaskFactory() {
+
+            @Override
+            public Runnable getTask(Socket s) throws IOException {
+                channel.close();
+                closeQuietly(s);
+                return new Runnable() {
+
+                    @Override
+                    public void run() {
+                    }
+                };
+            }
+        }, owner);
+        Socket peer = connect();
+        try {
+            assertTrue(owner.latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            peer.close();
+        }
+        Thread.sleep(100);
+        assertEquals(1, owner.closed.get());
+    }
+
+    @Test
+    public void testRejectedConnectionIsClosed() throws Exception {
+        handlerExecutor.shutdown();
+        acceptor.register(channel, new ClosingTaskFactory(), owner);
+        Socket peer = connect();
+        try {
+            peer.setSoTimeout(5000);
+            assertEquals(-1, peer.getInputStream().read());
+        } finally {
+            peer.close();
+        }
+        // a rejected connection does not withdraw the allocation
+        assertTrue(channel.isOpen());
+        assertEquals(0, owner.closed.get());
+    }
+
+    @Test
+    public void testFailingTaskFactoryKeepsAcceptorRunning() throws Exception {
+        final AtomicInteger created = new AtomicInteger();
+        acceptor.register(channel, new SocketTaskFactory() {
+
+            @Override
+            public Runnable getTask(Socket s) {
+                if (created.getAndIncrement() == 0) {
+                    throw new IllegalStateException("failing factory");
+                }
+                return new ClosingTaskFactory().getTask(s);
+            }
+        }, owner);
+        for (int i = 0; i < 2; i++) {
+            Socket peer = connect();
+            try {
+                peer.setSoTimeout(5000);
+                assertEquals(-1, peer.getInputStream().read());
+            } finally {
+                peer.close();
+            }
+        }
+        assertEquals(2, created.get());
+        assertTrue(channel.isOpen());
+        assertEquals(0, owner.closed.get());
+    }
+
+    @Test
+    public void testRegisterAfterShutdown() throws Exception {
+        acceptor.shutdown();
+        try {
+            acceptor.register(channel, new ClosingTaskFactory(), owner);
+            fail("IOException expected");
+        } catch (IOException expected) {
+        }
+        assertFalse(channel.isOpen());
+    }
+
+    private Socket connect() throws IOException {
+        return new Socket("127.0.0.1", channel.socket().getLocalPort());
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    private static final class ClosingTaskFactory implements SocketTaskFactory {
+
+        @Override
+        public Runnable getTask(final Socket s) {
+            return new Runnable() {
+
+                @Override
+                public void run() {
+                    closeQuietly(s);
+                }
+            };
+        }
+    }
+
+    private static final class CountingOwner implements Closeable {
+        private final AtomicInteger closed = new AtomicInteger();
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+            latch.countDown();
+        }
+    }
+}
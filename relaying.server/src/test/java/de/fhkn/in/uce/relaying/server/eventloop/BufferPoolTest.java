@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server.eventloop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testAcquireAllocatesDirectBuffer() {
+        BufferPool pool = new BufferPool(512, 2);
+        ByteBuffer buffer = pool.acquire();
+        assertTrue(buffer.isDirect());
+        assertEquals(512, buffer.capacity());
+        assertEquals(0, buffer.position());
+        assertEquals(512, buffer.limit());
+    }
+
+    @Test
+    public void testReleasedBufferIsReusedCleared() {
+        BufferPool pool = new BufferPool(512, 2);
+        ByteBuffer buffer = pool.acquire();
+        buffer.put(new byte[100]);
+        buffer.flip();
+        pool.release(buffer);
+        ByteBuffer reused = pool.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(512, reused.limit());
+    }
+
+    @Test
+    public void testLastReleasedBufferIsReusedFirst() {
+        BufferPool pool = new BufferPool(512, 2);
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+        pool.release(first);
+        pool.release(second);
+        assertSame(second, pool.acquire());
+        assertSame(first, pool.acquire());
+    }
+
+    @Test
+    public void testAtMostMaxPooledBuffersAreKept() {
+        BufferPool pool = new BufferPool(512, 2);
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+        ByteBuffer third = pool.acquire();
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        assertSame(second, pool.acquire());
+        assertSame(first, pool.acquire());
+        ByteBuffer allocated = pool.acquire();
+        assertNotSame(third, allocated);
+        assertNotSame(first, allocated);
+        assertNotSame(second, allocated);
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server.eventloop;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.spi.AbstractSelectableChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhkn.in.uce.stun.attribute.Software;
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageReader;
+import de.fhkn.in.uce.stun.message.MessageStaticFactory;
+
+/**
+ * Tests the framing of a {@link ControlConnection} with a channel which
+ * delivers the bytes in the given pieces, so no socket is involved.
+ */
+public class ControlConnectionTest {
+    private final MessageReader reader = MessageReader.createMessageReader();
+    private ScriptedChannel channel;
+    private RecordingListener listener;
+    private ControlConnection connection;
+
+    @Before
+    public void setUp() throws IOException {
+        channel = new ScriptedChannel();
+        listener = new RecordingListener();
+        connection = new ControlConnection(new ControlConnectionLoop(reader), channel, listener);
+    }
+
+    @Test
+    public void testMessageSplitIntoSingleBytes() throws IOException {
+        byte[] encoded = newMessage("single bytes").toByteArray();
+        for (int i = 0; i < encoded.length; i++) {
+            channel.receive(Arrays.copyOfRange(encoded, i, i + 1));
+            assertTrue(connection.read(reader));
+            assertEquals((i == encoded.length - 1) ? 1 : 0, listener.received.size());
+        }
+        assertArrayEquals(encoded, listener.received.get(0).toByteArray());
+    }
+
+    @Test
+    public void testSeveralMessagesInOneRead() throws IOException {
+        byte[] first = newMessage("first").toByteArray();
+        byte[] second = newMessage("second").toByteArray();
+        byte[] third = newMessage("third").toByteArray();
+        // the third message is cut within its header
+        channel.receive(concat(first, second, Arrays.copyOfRange(third, 0, 7)));
+        assertTrue(connection.read(reader));
+        assertEquals(2, listener.received.size());
+        channel.receive(Arrays.copyOfRange(third, 7, third.length));
+        assertTrue(connection.read(reader));
+        assertEquals(3, listener.received.size());
+        assertArrayEquals(first, listener.received.get(0).toByteArray());
+        assertArrayEquals(second, listener.received.get(1).toByteArray());
+        assertArrayEquals(third, listener.received.get(2).toByteArray());
+    }
+
+    @Test
+    public void testMessageLargerThanReadBuffer() throws IOException {
+        char[] description = new char[700];
+        Arrays.fill(description, 'x');
+        Message message = newMessage(new String(description));
+        message.addAttribute(new Software(new String(description)));
+        byte[] encoded = message.toByteArray();
+        assertTrue(encoded.length > 1024);
+        for (int offset = 0; offset < encoded.length; offset += 100) {
+            channel.receive(Arrays.copyOfRange(encoded, offset, Math.min(offset + 100, encoded.length)));
+        }
+        while (listener.received.isEmpty()) {
+            if (!channel.hasInput()) {
+                fail("Message was not received");
+            }
+            assertTrue(connection.read(reader));
+        }
+        assertEquals(1, listener.received.size());
+        assertArrayEquals(encoded, listener.received.get(0).toByteArray());
+    }
+
+    @Test
+    public void testEndOfStream() throws IOException {
+        byte[] encoded = newMessage("last").toByteArray();
+        channel.receive(encoded);
+        assertTrue(connection.read(reader));
+        channel.endOfStream = true;
+        assertFalse(connection.read(reader));
+        assertEquals(1, listener.received.size());
+    }
+
+    @Test
+    public void testPartialWritesAreQueued() throws IOException {
+        Message message = newMessage("response");
+        byte[] encoded = message.toByteArray();
+        channel.writeLimit = 10;
+        connection.getWriter().writeMessage(message);
+        assertTrue(channel.sent.size() < encoded.length);
+        while (channel.sent.size() < encoded.length) {
+            int sent = channel.sent.size();
+            connection.flush();
+            assertTrue(channel.sent.size() > sent);
+        }
+        assertArrayEquals(encoded, channel.sent.toByteArray());
+    }
+
+    @Test
+    public void testWriteAfterCloseFails() {
+        connection.close();
+        assertFalse(channel.isOpen());
+        try {
+            connection.getWriter().writeMessage(newMessage("closed"));
+            fail("IOException expected");
+        } catch (IOException expected) {
+        }
+        // closed by the server itself, the listener is not notified
+        assertEquals(0, listener.closed);
+    }
+
+    @Test
+    public void testFailNotifiesListenerOnce() {
+        connection.fail();
+        connection.fail();
+        assertFalse(channel.isOpen());
+        assertEquals(1, listener.closed);
+    }
+
+    private static Message newMessage(String software) throws IOException {
+        Message message = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.KEEP_ALIVE);
+        // the encoding of a software attribute which needs padding is not
+        // symmetric, so the descriptions are filled up to full words
+        StringBuilder description = new StringBuilder(software);
+        while (description.length() % 4 != 0) {
+            description.append(' ');
+        }
+        message.addAttribute(new Software(description.toString()));
+        return message;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class RecordingListener implements ControlConnection.Listener {
+        private final List<Message> received = new ArrayList<Message>();
+        private int closed;
+
+        @Override
+        public void messageReceived(ControlConnection connection, Message message) {
+            received.add(message);
+        }
+
+        @Override
+        public void closed(ControlConnection connection) {
+            closed++;
+        }
+    }
+
+    /**
+     * A channel which hands out each received piece by a separate read and
+     * accepts at most a given number of bytes per write.
+     */
+    private static final class ScriptedChannel extends AbstractSelectableChannel implements ByteChannel {
+        private final Deque<ByteBuffer> input = new ArrayDeque<ByteBuffer>();
+        private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        private boolean endOfStream;
+        private int writeLimit = Integer.MAX_VALUE;
+
+        ScriptedChannel() {
+            super(SelectorProvider.provider());
+        }
+
+        void receive(byte[] piece) {
+            input.add(ByteBuffer.wrap(piece));
+        }
+
+        boolean hasInput() {
+            return !input.isEmpty();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            ByteBuffer piece = input.peek();
+            if (piece == null) {
+                return endOfStream ? -1 : 0;
+            }
+            int len = Math.min(piece.remaining(), dst.remaining());
+            for (int i = 0; i < len; i++) {
+                dst.put(piece.get());
+            }
+            if (!piece.hasRemaining()) {
+                input.poll();
+            }
+            return len;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int len = Math.min(src.remaining(), writeLimit);
+            for (int i = 0; i < len; i++) {
+                sent.write(src.get());
+            }
+            return len;
+        }
+
+        @Override
+        public int validOps() {
+            return SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        }
+
+        @Override
+        protected void implCloseSelectableChannel() {
+        }
+
+        @Override
+        protected void implConfigureBlocking(boolean block) {
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.relaying.server.eventloop;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Drives a {@link RelaySession} with a selector of the test thread, as its
+ * worker would do, between two pairs of connected loopback channels.
+ */
+public class RelaySessionTest {
+    private static final int BUFFER_SIZE = 1024;
+    private static final long TIMEOUT_MILLIS = 5000;
+    private ServerSocketChannel server;
+    private Selector selector;
+    private SocketChannel peer;
+    private SocketChannel peerSide;
+    private SocketChannel client;
+    private SocketChannel clientSide;
+    private RelaySession session;
+    private int closeCount;
+
+    @Before
+    public void setUp() throws IOException {
+        server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+        selector = Selector.open();
+        peer = SocketChannel.open(server.socket().getLocalSocketAddress());
+        peerSide = server.accept();
+        client = SocketChannel.open(server.socket().getLocalSocketAddress());
+        clientSide = server.accept();
+        peer.configureBlocking(false);
+        client.configureBlocking(false);
+        session = new RelaySession(new BufferPool(BUFFER_SIZE, 4), peerSide, clientSide);
+        session.setCloseListener(new Runnable() {
+
+            @Override
+            public void run() {
+                closeCount++;
+            }
+        });
+        session.register(selector);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        session.close("test");
+        peer.close();
+        client.close();
+        selector.close();
+        server.close();
+    }
+
+    @Test
+    public void testRelaysBothDirections() throws IOException {
+        write(peer, "hello client");
+        assertEquals("hello client", read(client, 12));
+        write(client, "hello peer");
+        assertEquals("hello peer", read(peer, 10));
+        assertEquals(0, closeCount);
+    }
+
+    @Test
+    public void testHalfCloseKeepsOtherDirection() throws IOException {
+        write(peer, "bye");
+        peer.socket().shutdownOutput();
+        assertEquals("bye", read(client, 3));
+        assertEndOfStream(client);
+        // the client can still answer
+        write(client, "answer");
+        assertEquals("answer", read(peer, 6));
+        assertEquals(0, closeCount);
+        client.socket().shutdownOutput();
+        assertEndOfStream(peer);
+        pumpUntilClosed();
+        assertEquals(1, closeCount);
+        assertFalse(peerSide.isOpen());
+        assertFalse(clientSide.isOpen());
+    }
+
+    @Test
+    public void testBackpressureStopsReadingSource() throws IOException {
+        client.socket().setReceiveBufferSize(4096);
+        clientSide.socket().setSendBufferSize(4096);
+        byte[] data = new byte[256 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        ByteBuffer toSend = ByteBuffer.wrap(data);
+        // the client does not read, so the session has to stop reading the
+        // peer once the client side is full
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        SelectionKey peerKey = peerSide.keyFor(selector);
+        SelectionKey clientKey = clientSide.keyFor(selector);
+        while ((peerKey.interestOps() & SelectionKey.OP_READ) != 0) {
+            peer.write(toSend);
+            pump();
+            if (System.currentTimeMillis() > deadline) {
+                fail("Session did not stop reading the peer");
+            }
+        }
+        assertTrue((clientKey.interestOps() & SelectionKey.OP_WRITE) != 0);
+        // draining the client resumes reading the peer until all data arrived
+        ByteBuffer received = ByteBuffer.allocate(data.length);
+        deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (received.hasRemaining()) {
+            peer.write(toSend);
+            pump();
+            client.read(received);
+            if (System.currentTimeMillis() > deadline) {
+                fail("Relayed only " + received.position() + " bytes");
+            }
+        }
+        assertArrayEquals(data, received.array());
+        assertTrue((peerKey.interestOps() & SelectionKey.OP_READ) != 0);
+        assertEquals(0, clientKey.interestOps() & SelectionKey.OP_WRITE);
+    }
+
+    @Test
+    public void testCloseRunsListenerOnce() {
+        session.close("test");
+        session.close("test");
+        assertEquals(1, closeCount);
+        assertFalse(peerSide.isOpen());
+        assertFalse(clientSide.isOpen());
+    }
+
+    private void pump() throws IOException {
+        selector.select(10);
+        Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+        while (selectedKeys.hasNext()) {
+            SelectionKey key = selectedKeys.next();
+            selectedKeys.remove();
+            if (key.isValid()) {
+                session.handleReadyOps(key);
+            }
+        }
+    }
+
+    private void pumpUntilClosed() throws IOException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (closeCount == 0) {
+            pump();
+            if (System.currentTimeMillis() > deadline) {
+                fail("Session was not closed");
+            }
+        }
+    }
+
+    private void write(SocketChannel channel, String message) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(message.getBytes("UTF-8"));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+            pump();
+        }
+    }
+
+    private String read(SocketChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (buffer.hasRemaining()) {
+            pump();
+            if (channel.read(buffer) < 0) {
+                fail("Unexpected end of stream");
+            }
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timeout while reading");
+            }
+        }
+        return new String(buffer.array(), "UTF-8");
+    }
+
+    private void assertEndOfStream(SocketChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        int len;
+        while ((len = channel.read(buffer)) == 0) {
+            pump();
+            if (System.currentTimeMillis() > deadline) {
+                fail("End of stream expected");
+            }
+        }
+        assertEquals(-1, len);
+    }
+}
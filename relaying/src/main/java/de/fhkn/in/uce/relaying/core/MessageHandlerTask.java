@@ -24,12 +24,13 @@ import java.net.SocketException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.fhkn.in.uce.core.concurrent.HashedWheelTimer;
+import de.fhkn.in.uce.core.concurrent.Timeout;
 import de.fhkn.in.uce.relaying.message.RelayingAttributeTypeDecoder;
 import de.fhkn.in.uce.relaying.message.RelayingConstants;
 import de.fhkn.in.uce.relaying.message.RelayingLifetime;
@@ -61,7 +62,8 @@ final class MessageHandlerTask implements Runnable {
     private final MessageWriter controlConnectionWriter;
     private final BlockingQueue<Socket> socketQueue;
     private final InetSocketAddress relayServerEndpoint;
-    private final ScheduledExecutorService refreshExecutor;
+    private final HashedWheelTimer refreshTimer;
+    private volatile Timeout refreshTimeout;
     private volatile boolean cancelled;
 
     /**
@@ -77,18 +79,17 @@ final class MessageHandlerTask implements Runnable {
      * @param socketQueue
      *            queue to put new established data connections to the relay
      *            server
-     * @param refreshExecutor
-     *            executor that gets used to execute the periodic refresh
-     *            request task
+     * @param refreshTimer
+     *            timer that gets used to schedule the refresh request task
      */
     MessageHandlerTask(Socket controlConnection, MessageWriter controlConnectionWriter,
             InetSocketAddress relayServerEndpoint, BlockingQueue<Socket> socketQueue,
-            ScheduledExecutorService refreshExecutor) {
+            HashedWheelTimer refreshTimer) {
         this.controlConnection = controlConnection;
         this.controlConnectionWriter = controlConnectionWriter;
         this.socketQueue = socketQueue;
         this.relayServerEndpoint = relayServerEndpoint;
-        this.refreshExecutor = refreshExecutor;
+        this.refreshTimer = refreshTimer;
     }
 
     /**
@@ -122,9 +123,7 @@ final class MessageHandlerTask implements Runnable {
                 } else if (message.isMethod(STUNMessageMethod.KEEP_ALIVE) && message.isSuccessResponse()) {
                     int lifetime = message.getAttribute(RelayingLifetime.class).getLifeTime();
                     logger.debug("Received lifetime response {}", lifetime);
-                    refreshExecutor.schedule(new RefreshAllocationTask(controlConnectionWriter, lifetime), Math.max(
-                            lifetime - RelayingConstants.ALLOCATION_LIFETIME_ADVANCE,
-                            RelayingConstants.ALLOCATION_LIFETIME_MIN), TimeUnit.SECONDS);
+                    scheduleRefresh(lifetime);
                 } else {
                     logger.error("Received unexpected message {}", message.getMessageMethod());
                     socketQueue.add(new Socket());
@@ -142,13 +141,32 @@ final class MessageHandlerTask implements Runnable {
         }
     }
 
+    /**
+     * Schedules the next refresh request shortly before the given lifetime of
+     * the allocation expires.
+     *
+     * @param lifetime
+     *            the lifetime of the allocation in seconds
+     */
+    void scheduleRefresh(int lifetime) {
+        refreshTimeout = refreshTimer.newTimeout(new RefreshAllocationTask(controlConnectionWriter, lifetime),
+                Math.max(lifetime - RelayingConstants.ALLOCATION_LIFETIME_ADVANCE,
+                        RelayingConstants.ALLOCATION_LIFETIME_MIN), TimeUnit.SECONDS);
+        if (cancelled) {
+            refreshTimeout.cancel();
+        }
+    }
+
     /**
      * Cancels this task by closing the control connection to the relay server.
      */
     void cancel() {
         logger.debug("Cancel MessageHandlerTask");
         cancelled = true;
-        refreshExecutor.shutdownNow();
+        Timeout timeout = refreshTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
         try {
             controlConnection.close();
         } catch (IOException ignore) {
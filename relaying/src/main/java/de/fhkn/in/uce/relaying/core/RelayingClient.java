@@ -17,8 +17,6 @@
 package de.fhkn.in.uce.relaying.core;
 
 import static de.fhkn.in.uce.relaying.message.RelayingConstants.ALLOCATION_LIFETIME;
-import static de.fhkn.in.uce.relaying.message.RelayingConstants.ALLOCATION_LIFETIME_ADVANCE;
-import static de.fhkn.in.uce.relaying.message.RelayingConstants.ALLOCATION_LIFETIME_MIN;
 
 import java.io.IOException;
 import java.net.InetAddress;
@@ -27,15 +25,13 @@ import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.fhkn.in.uce.core.concurrent.HashedWheelTimer;
 import de.fhkn.in.uce.core.concurrent.ThreadGroupThreadFactory;
 import de.fhkn.in.uce.relaying.message.RelayingAttributeTypeDecoder;
 import de.fhkn.in.uce.relaying.message.RelayingLifetime;
@@ -192,12 +188,9 @@ public final class RelayingClient {
 
     private synchronized void startMessageHandler(final int lifetime) {
         final ThreadFactory specialThreadsFactory = new ThreadGroupThreadFactory();
-        final ScheduledExecutorService refreshExecutor = Executors
-                .newSingleThreadScheduledExecutor(specialThreadsFactory);
-        refreshExecutor.schedule(new RefreshAllocationTask(this.controlConnectionWriter, lifetime),
-                Math.max(lifetime - ALLOCATION_LIFETIME_ADVANCE, ALLOCATION_LIFETIME_MIN), TimeUnit.SECONDS);
         this.messageHandlerTask = new MessageHandlerTask(this.controlConnection, this.controlConnectionWriter,
-                this.relayServerSocketAddress, this.socketQueue, refreshExecutor);
+                this.relayServerSocketAddress, this.socketQueue, HashedWheelTimer.getShared());
+        this.messageHandlerTask.scheduleRefresh(lifetime);
         specialThreadsFactory.newThread(this.messageHandlerTask).start();
     }
 
@@ -56,6 +56,8 @@ import de.fhkn.in.uce.stun.message.MessageStaticFactory;
  */
 public final class ReversalConnRequestHandler implements HandleMessage {
     private static final Logger logger = LoggerFactory.getLogger(ReversalConnRequestHandler.class);
+    private static final ReversalAttribute REVERSAL_ATTRIBUTE = new ReversalAttribute();
+    private static final EndpointClass PUBLIC_ENDPOINT_CLASS = new EndpointClass(EndpointCategory.PUBLIC);
     private final ConnectionRequestList connectionRequests = ConnectionRequestList.INSTANCE;
     private final MediatorUtil mediatorUtil = MediatorUtil.INSTANCE;
     private final UserList userList = UserList.INSTANCE;
@@ -105,8 +107,8 @@ public final class ReversalConnRequestHandler implements HandleMessage {
             clientAddress = new XorMappedAddress(new InetSocketAddress(toSource.getInetAddress(), toSource.getPort()));
         }
         connectionRequest.addAttribute(clientAddress);
-        connectionRequest.addAttribute(new EndpointClass(EndpointCategory.PUBLIC));
-        connectionRequest.addAttribute(new ReversalAttribute());
+        connectionRequest.addAttribute(PUBLIC_ENDPOINT_CLASS);
+        connectionRequest.addAttribute(REVERSAL_ATTRIBUTE);
         final Socket toTarget = user.getSocketToUser();
         connectionRequest.writeTo(toTarget.getOutputStream());
     }
@@ -120,6 +122,6 @@ public final class ReversalConnRequestHandler implements HandleMessage {
 
     @Override
     public NATTraversalTechniqueAttribute getAttributeForTraversalTechnique() {
-        return new ReversalAttribute();
+        return REVERSAL_ATTRIBUTE;
     }
 }
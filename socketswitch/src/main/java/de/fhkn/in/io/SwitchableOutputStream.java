@@ -18,13 +18,20 @@ package de.fhkn.in.io;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * Output stream whose underlying stream can be switched. All operations are
+ * serialized by a {@link ReentrantLock} instead of the intrinsic lock, so a
+ * virtual thread which blocks in a write does not pin its carrier thread.
+ * 
  * @author Steven Böckle
  * 
  */
 public class SwitchableOutputStream extends OutputStream {
 
+	private final Lock lock = new ReentrantLock();
 	private OutputStream outputStream;
 	private volatile int numberOfBytesSent;
 	
@@ -38,16 +45,26 @@ public class SwitchableOutputStream extends OutputStream {
 	 * @return the of bytes totally sent by this OutputStream
 	 * @throws IOException
 	 */
-	public synchronized int switchOutputStream(OutputStream newStream) throws IOException {
-		this.outputStream.flush();
-		this.outputStream = newStream;
-		int number = numberOfBytesSent;
-		numberOfBytesSent = 0;
-		return number;
+	public int switchOutputStream(OutputStream newStream) throws IOException {
+		lock.lock();
+		try {
+			this.outputStream.flush();
+			this.outputStream = newStream;
+			int number = numberOfBytesSent;
+			numberOfBytesSent = 0;
+			return number;
+		} finally {
+			lock.unlock();
+		}
 	}
 
-	public synchronized OutputStream getOutputStream() {
-		return outputStream;
+	public OutputStream getOutputStream() {
+		lock.lock();
+		try {
+			return outputStream;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	// delegate work to internal output stream
@@ -58,8 +75,13 @@ public class SwitchableOutputStream extends OutputStream {
 	 * @see java.io.OutputStream#close()
 	 */
 	@Override
-	public synchronized void close() throws IOException {
-		outputStream.close();
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			outputStream.close();
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/*
@@ -68,8 +90,13 @@ public class SwitchableOutputStream extends OutputStream {
 	 * @see java.io.OutputStream#flush()
 	 */
 	@Override
-	public synchronized void flush() throws IOException {
-		outputStream.flush();
+	public void flush() throws IOException {
+		lock.lock();
+		try {
+			outputStream.flush();
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/*
@@ -78,9 +105,14 @@ public class SwitchableOutputStream extends OutputStream {
 	 * @see java.io.OutputStream#write(byte[], int, int)
 	 */
 	@Override
-	public synchronized void write(byte[] b, int off, int len) throws IOException {
-		numberOfBytesSent = numberOfBytesSent + len;
-		outputStream.write(b, off, len);
+	public void write(byte[] b, int off, int len) throws IOException {
+		lock.lock();
+		try {
+			numberOfBytesSent = numberOfBytesSent + len;
+			outputStream.write(b, off, len);
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/*
@@ -89,9 +121,14 @@ public class SwitchableOutputStream extends OutputStream {
 	 * @see java.io.OutputStream#write(byte[])
 	 */
 	@Override
-	public synchronized void write(byte[] b) throws IOException {
-		numberOfBytesSent = numberOfBytesSent + b.length;
-		outputStream.write(b);
+	public void write(byte[] b) throws IOException {
+		lock.lock();
+		try {
+			numberOfBytesSent = numberOfBytesSent + b.length;
+			outputStream.write(b);
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/*
@@ -100,9 +137,14 @@ public class SwitchableOutputStream extends OutputStream {
 	 * @see java.io.OutputStream#write(int)
 	 */
 	@Override
-	public synchronized void write(int b) throws IOException {
-		numberOfBytesSent++;
-		outputStream.write(b);
+	public void write(int b) throws IOException {
+		lock.lock();
+		try {
+			numberOfBytesSent++;
+			outputStream.write(b);
+		} finally {
+			lock.unlock();
+		}
 	}
 
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fhkn.in.uce.stun.attribute.Attribute;
+import de.fhkn.in.uce.stun.attribute.AttributeHeader;
+import de.fhkn.in.uce.stun.attribute.AttributeType;
+import de.fhkn.in.uce.stun.attribute.Username;
+import de.fhkn.in.uce.stun.attribute.XorMappedAddress;
+import de.fhkn.in.uce.stun.header.MessageHeader;
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.message.MessageStaticFactory;
+import de.fhkn.in.uce.stun.util.MessageFormatException;
+
+/**
+ * Benchmarks for the encoding and decoding of single attribute values, the
+ * XOR-MAPPED-ADDRESS for IPv4 and IPv6 endpoints and the USERNAME.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AttributeCodecBenchmark {
+    private MessageHeader messageHeader;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+
+    private XorMappedAddress xorMappedAddressIPv4;
+    private ByteBuffer encodedXorMappedAddressIPv4;
+    private AttributeHeader xorMappedAddressIPv4Header;
+
+    private XorMappedAddress xorMappedAddressIPv6;
+    private ByteBuffer encodedXorMappedAddressIPv6;
+    private AttributeHeader xorMappedAddressIPv6Header;
+
+    private Username username;
+    private ByteBuffer encodedUsername;
+    private AttributeHeader usernameHeader;
+
+    /**
+     * Creates the attributes and their encodings.
+     *
+     * @throws IOException
+     *             if an attribute could not be created
+     */
+    @Setup
+    public void setUp() throws IOException {
+        this.messageHeader = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.BINDING).getHeader();
+        this.xorMappedAddressIPv4 = new XorMappedAddress(new InetSocketAddress("93.184.216.34", 52044)); //$NON-NLS-1$
+        this.encodedXorMappedAddressIPv4 = encodeValue(this.xorMappedAddressIPv4);
+        this.xorMappedAddressIPv4Header = new BenchmarkAttributeHeader(this.xorMappedAddressIPv4);
+        final InetSocketAddress ipv6Endpoint = new InetSocketAddress("2001:db8::ff00:42:8329", 52044); //$NON-NLS-1$
+        this.xorMappedAddressIPv6 = new XorMappedAddress(ipv6Endpoint,
+                ByteBuffer.wrap(this.messageHeader.getTransactionId()).getInt());
+        this.encodedXorMappedAddressIPv6 = encodeValue(this.xorMappedAddressIPv6);
+        this.xorMappedAddressIPv6Header = new BenchmarkAttributeHeader(this.xorMappedAddressIPv6);
+        this.username = new Username("uce-target-4711"); //$NON-NLS-1$
+        this.encodedUsername = encodeValue(this.username);
+        this.usernameHeader = new BenchmarkAttributeHeader(this.username);
+    }
+
+    private static ByteBuffer encodeValue(final Attribute attribute) throws IOException {
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        attribute.writeTo(bout);
+        return ByteBuffer.wrap(bout.toByteArray());
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream encodeXorMappedAddressIPv4() throws IOException {
+        this.out.reset();
+        this.xorMappedAddressIPv4.writeTo(this.out);
+        return this.out;
+    }
+
+    @Benchmark
+    public XorMappedAddress decodeXorMappedAddressIPv4() throws IOException, MessageFormatException {
+        return XorMappedAddress.fromBytes(this.encodedXorMappedAddressIPv4, 0, this.xorMappedAddressIPv4Header,
+                this.messageHeader);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream encodeXorMappedAddressIPv6() throws IOException {
+        this.out.reset();
+        this.xorMappedAddressIPv6.writeTo(this.out);
+        return this.out;
+    }
+
+    @Benchmark
+    public XorMappedAddress decodeXorMappedAddressIPv6() throws IOException, MessageFormatException {
+        return XorMappedAddress.fromBytes(this.encodedXorMappedAddressIPv6, 0, this.xorMappedAddressIPv6Header,
+                this.messageHeader);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream encodeUsername() throws IOException {
+        this.out.reset();
+        this.username.writeTo(this.out);
+        return this.out;
+    }
+
+    @Benchmark
+    public Username decodeUsername() throws IOException {
+        return Username.fromBytes(this.encodedUsername, 0, this.usernameHeader);
+    }
+
+    /**
+     * The header of an encoded attribute value, the header decoder of the
+     * stun module is not accessible.
+     */
+    private static final class BenchmarkAttributeHeader implements AttributeHeader {
+        private final AttributeType type;
+        private final int length;
+
+        BenchmarkAttributeHeader(final Attribute attribute) {
+            this.type = attribute.getType();
+            this.length = attribute.getLength();
+        }
+
+        @Override
+        public AttributeType getType() {
+            return this.type;
+        }
+
+        @Override
+        public int getLength() {
+            return this.length;
+        }
+
+        @Override
+        public void writeTo(final OutputStream out) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fhkn.in.uce.plugininterface.NATBehavior;
+import de.fhkn.in.uce.plugininterface.NATFeatureRealization;
+import de.fhkn.in.uce.plugininterface.message.NATAttributeTypeDecoder;
+import de.fhkn.in.uce.plugininterface.message.NATTraversalTechniqueAttribute;
+import de.fhkn.in.uce.stun.attribute.Attribute;
+import de.fhkn.in.uce.stun.attribute.Token;
+import de.fhkn.in.uce.stun.attribute.Username;
+import de.fhkn.in.uce.stun.attribute.XorMappedAddress;
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageReader;
+import de.fhkn.in.uce.stun.message.MessageStaticFactory;
+
+/**
+ * Benchmarks for the encoding and decoding of the messages a mediator
+ * exchanges with its targets and sources. The messages are decoded by a
+ * {@link MessageReader} which knows the NAT traversal attributes, as the
+ * mediator does.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MediatorMessageBenchmark {
+    /**
+     * The shape of the benchmarked message.
+     */
+    public enum Shape {
+        /**
+         * A register message with the NAT behavior and four supported NAT
+         * traversal techniques of the target.
+         */
+        REGISTER,
+        /**
+         * A keep-alive message of a registered target.
+         */
+        KEEP_ALIVE,
+        /**
+         * A connection request which is forwarded to the target with the
+         * public and private endpoint of the source and a token.
+         */
+        CONNECTION_REQUEST
+    }
+
+    @Param
+    public Shape shape;
+
+    private Message message;
+    private byte[] encoded;
+    private MessageReader messageReader;
+
+    /**
+     * Creates the message of the current shape and its encoding.
+     *
+     * @throws IOException
+     *             if the message could not be created
+     */
+    @Setup
+    public void setUp() throws IOException {
+        switch (this.shape) {
+        case REGISTER:
+            this.message = createRegisterMessage();
+            break;
+        case KEEP_ALIVE:
+            this.message = createKeepAliveMessage();
+            break;
+        case CONNECTION_REQUEST:
+            this.message = createConnectionRequestMessage();
+            break;
+        default:
+            throw new IllegalStateException("Unknown shape " + this.shape); //$NON-NLS-1$
+        }
+        this.encoded = this.message.toByteArray();
+        this.messageReader = MessageReader
+                .createMessageReaderWithCustomAttributeTypeDecoder(new NATAttributeTypeDecoder());
+    }
+
+    private static Message createRegisterMessage() throws IOException {
+        final Message result = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.REGISTER);
+        result.addAttribute(new Username("uce-target-4711")); //$NON-NLS-1$
+        result.addAttribute(new NATBehavior(NATFeatureRealization.ENDPOINT_INDEPENDENT,
+                NATFeatureRealization.ADDRESS_AND_PORT_DEPENDENT));
+        for (int technique = 1; technique <= 4; technique++) {
+            result.addAttribute(new NATTraversalTechniqueAttribute(technique));
+        }
+        return result;
+    }
+
+    private static Message createKeepAliveMessage() throws IOException {
+        final Message result = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.KEEP_ALIVE);
+        result.addAttribute(new Username("uce-target-4711")); //$NON-NLS-1$
+        return result;
+    }
+
+    private static Message createConnectionRequestMessage() throws IOException {
+        final Message result = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.CONNECTION_REQUEST);
+        result.addAttribute(new NATTraversalTechniqueAttribute(2));
+        result.addAttribute(new Token(UUID.randomUUID()));
+        result.addAttribute(new XorMappedAddress(new InetSocketAddress("93.184.216.34", 52044))); //$NON-NLS-1$
+        result.addAttribute(new XorMappedAddress(new InetSocketAddress("192.168.178.21", 40123))); //$NON-NLS-1$
+        return result;
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return this.message.toByteArray();
+    }
+
+    @Benchmark
+    public List<Attribute> decode() throws IOException {
+        return this.messageReader.readSTUNMessage(this.encoded).getAttributes();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fhkn.in.uce.stun.attribute.Attribute;
+import de.fhkn.in.uce.stun.attribute.OtherAddress;
+import de.fhkn.in.uce.stun.attribute.XorMappedAddress;
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageEncoder;
+import de.fhkn.in.uce.stun.message.MessageReader;
+import de.fhkn.in.uce.stun.message.MessageStaticFactory;
+
+/**
+ * Benchmarks for the encoding and decoding of a complete STUN message, the
+ * binding response the stun server sends for every binding request.
+ * Messages are read lazily, so decoding is measured both for reading the
+ * message only and for reading the message and decoding all its attributes.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MessageCodecBenchmark {
+    private Message message;
+    private byte[] encoded;
+    private ByteBuffer buffer;
+    private MessageReader messageReader;
+
+    /**
+     * Creates the binding response and its encoding.
+     *
+     * @throws IOException
+     *             if the message could not be created
+     */
+    @Setup
+    public void setUp() throws IOException {
+        final Message request = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.BINDING);
+        this.message = request.buildSuccessResponse();
+        this.message.addAttribute(new OtherAddress(new InetSocketAddress("141.37.121.124", 3479))); //$NON-NLS-1$
+        this.message.addAttribute(new XorMappedAddress(new InetSocketAddress("93.184.216.34", 52044))); //$NON-NLS-1$
+        this.encoded = this.message.toByteArray();
+        this.buffer = ByteBuffer.allocate(MessageEncoder.DEFAULT_BUFFER_CAPACITY);
+        this.messageReader = MessageReader.createMessageReader();
+    }
+
+    @Benchmark
+    public byte[] toByteArray() {
+        return this.message.toByteArray();
+    }
+
+    @Benchmark
+    public ByteBuffer encodeIntoBuffer() throws IOException {
+        this.buffer.clear();
+        return MessageEncoder.encode(this.message, this.buffer);
+    }
+
+    @Benchmark
+    public Message readFromByteArray() throws IOException {
+        return this.messageReader.readSTUNMessage(this.encoded);
+    }
+
+    @Benchmark
+    public Message readFromBuffer() throws IOException {
+        return this.messageReader.readSTUNMessage(ByteBuffer.wrap(this.encoded));
+    }
+
+    @Benchmark
+    public Message readFromStream() throws IOException {
+        return this.messageReader.readSTUNMessage(new ByteArrayInputStream(this.encoded));
+    }
+
+    @Benchmark
+    public XorMappedAddress readAndGetSingleAttribute() throws IOException {
+        return this.messageReader.readSTUNMessage(this.encoded).getAttribute(XorMappedAddress.class);
+    }
+
+    @Benchmark
+    public List<Attribute> readAndDecodeAllAttributes() throws IOException {
+        return this.messageReader.readSTUNMessage(this.encoded).getAttributes();
+    }
+}
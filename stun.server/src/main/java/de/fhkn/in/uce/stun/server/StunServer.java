@@ -18,19 +18,31 @@ package de.fhkn.in.uce.stun.server;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
+import java.nio.channels.DatagramChannel;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.fhkn.in.uce.core.concurrent.ExecutionMode;
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+import de.fhkn.in.uce.core.runtime.ServerContext;
+import de.fhkn.in.uce.core.socketlistener.AdmissionControl;
+import de.fhkn.in.uce.core.socketlistener.RejectionPolicy;
 import de.fhkn.in.uce.core.socketlistener.SocketListener;
 import de.fhkn.in.uce.core.socketlistener.SocketTaskFactory;
+import de.fhkn.in.uce.core.socketlistener.WorkerPool;
+import de.fhkn.in.uce.stun.attribute.OtherAddress;
+import de.fhkn.in.uce.stun.server.connectionhandling.HandleDatagramTask;
 import de.fhkn.in.uce.stun.server.connectionhandling.HandleMessageTask;
 import de.fhkn.in.uce.stun.server.connectionhandling.HandleMessageTaskFactory;
+import de.fhkn.in.uce.stun.server.connectionhandling.ListenerChannels;
+import de.fhkn.in.uce.stun.server.eventloop.EventLoopStunServer;
 
 /**
  * Class to configure and start the modified UCE STUN server. With the given
@@ -45,17 +57,59 @@ import de.fhkn.in.uce.stun.server.connectionhandling.HandleMessageTaskFactory;
  * the STUN port 3478 is used. The secondary port is 3479. With these
  * information 4 endpoints can be creates to which the server listens.
  * 
+ * Optionally the server also answers binding requests via UDP on the same 4
+ * endpoints (see {@link HandleDatagramTask}). Over UDP the server behaves
+ * according to RFC 5389 and 5780, requests with a CHANGE-REQUEST attribute are
+ * answered from the endpoint with the changed IP address and/or port.
+ * 
+ * By default every TCP connection is handled by its own thread. Optionally the
+ * TCP connections are served by a fixed number of event loops instead (see
+ * {@link EventLoopStunServer}), one per available processor.
+ * 
+ * To spread accept-heavy bursts over several cores each endpoint can be
+ * listened to by several sockets which are bound with SO_REUSEPORT, each
+ * served by its own accept loop. The kernel distributes the incoming
+ * connections among them. SO_REUSEPORT requires Java 9 or later and a
+ * platform which supports it, otherwise a single socket per endpoint is used.
+ * 
+ * Optionally new TCP connections are subject to an {@link AdmissionControl}
+ * which limits the rate of connections per source address and the number of
+ * concurrent connections. Excess connections are closed right after accept.
+ * 
+ * The threads which handle the TCP connections can be bounded by a
+ * {@link WorkerPool}, connections which find neither a free thread nor room in
+ * its queue are handled by the {@link RejectionPolicy} of the pool.
+ * 
+ * If the server runs together with other servers in one VM, it can use the
+ * executors of a {@link ServerContext} instead of creating its own ones.
+ * 
  * @author Alexander Diener (aldiener@htwg-konstanz.de)
  * 
  */
 public final class StunServer {
     private static final int STUN_SERVER_PORT = 3478;
+    private static final String UDP_OPTION = "--udp"; //$NON-NLS-1$
+    private static final String EVENT_LOOP_OPTION = "--eventloop"; //$NON-NLS-1$
+    private static final String SHARDS_OPTION = "--shards"; //$NON-NLS-1$
+    private static final String ADMISSION_OPTION = "--admission"; //$NON-NLS-1$
+    private static final String POOL_OPTION = "--pool"; //$NON-NLS-1$
+    private static final String USAGE = "Arguments: primaryIP secondaryIP [--udp] [--eventloop] [--shards n]"
+            + " [--admission connectionsPerSecond,burst,maxConnections]" //$NON-NLS-1$
+            + " [--pool maxThreads,queueCapacity,close|pause|respond]"; //$NON-NLS-1$
     private static final Logger logger = LoggerFactory.getLogger(StunServer.class);
     private final InetSocketAddress primaryAddress;
     private final InetSocketAddress secondaryAddress;
     private final SocketTaskFactory handleMessageTaskFactory;
     private final ExecutorService handleExecutor;
     private final ExecutorService socketListenerExecutor;
+    private final boolean udpEnabled;
+    private final boolean eventLoopEnabled;
+    private final int listenerShards;
+    private final AdmissionControl admissionControl;
+    private final RejectionPolicy rejectionPolicy;
+    private final List<SocketListener> socketListeners = new ArrayList<SocketListener>();
+    private final List<DatagramChannel> datagramChannels = new ArrayList<DatagramChannel>();
+    private EventLoopStunServer eventLoopStunServer;
 
     /**
      * Creates a modified UCE STUN server with the given public reachable
@@ -67,11 +121,34 @@ public final class StunServer {
      *            the public secondary/alternate (local) address
      */
     public StunServer(final InetSocketAddress primaryAddress, final InetSocketAddress secondaryAddress) {
-        this.primaryAddress = primaryAddress;
-        this.secondaryAddress = secondaryAddress;
+        this(new Builder(primaryAddress, secondaryAddress));
+    }
+
+    private StunServer(final Builder builder) {
+        final WorkerPool workerPool = builder.workerPool;
+        final ServerContext context = builder.context;
+        this.primaryAddress = builder.primaryAddress;
+        this.secondaryAddress = builder.secondaryAddress;
         this.handleMessageTaskFactory = new HandleMessageTaskFactory(this.primaryAddress, this.secondaryAddress);
-        this.handleExecutor = Executors.newCachedThreadPool();
-        this.socketListenerExecutor = Executors.newCachedThreadPool();
+        if (workerPool != null) {
+            this.handleExecutor = workerPool.newExecutor();
+            this.rejectionPolicy = workerPool.getRejectionPolicy();
+        } else if (context != null) {
+            this.handleExecutor = context.getHandlerExecutor();
+            this.rejectionPolicy = context.getRejectionPolicy();
+        } else {
+            this.handleExecutor = ExecutionMode.newCachedThreadPool();
+            this.rejectionPolicy = null;
+        }
+        if ((workerPool != null) || (context == null)) {
+            MetricsRegistry.getShared().registerExecutor("stun.handler", this.handleExecutor); //$NON-NLS-1$
+        }
+        this.socketListenerExecutor = (context != null) ? context.getBlockingExecutor() : Executors
+                .newCachedThreadPool();
+        this.udpEnabled = builder.udpEnabled;
+        this.eventLoopEnabled = builder.eventLoopEnabled;
+        this.listenerShards = builder.listenerShards;
+        this.admissionControl = builder.admissionControl;
     }
 
     /**
@@ -80,28 +157,101 @@ public final class StunServer {
      * 
      * @throws Exception
      */
-    public void startStunServer() throws Exception {
-        for (SocketListener socketListener : this.getListWithSocketListeners()) {
-            this.socketListenerExecutor.execute(socketListener);
+    public synchronized void startStunServer() throws Exception {
+        final int shards = this.getSupportedListenerShards();
+        if (this.eventLoopEnabled) {
+            this.eventLoopStunServer = new EventLoopStunServer(this.primaryAddress, this.secondaryAddress,
+                    this.getListenerAddresses(), Runtime.getRuntime().availableProcessors(), shards,
+                    this.admissionControl);
+            this.eventLoopStunServer.start();
+        } else {
+            this.socketListeners.addAll(this.getListWithSocketListeners(shards));
+            for (SocketListener socketListener : this.socketListeners) {
+                this.socketListenerExecutor.execute(socketListener);
+            }
+        }
+        if (this.udpEnabled) {
+            for (final Runnable datagramTask : this.getListWithDatagramTasks()) {
+                this.socketListenerExecutor.execute(datagramTask);
+            }
+        }
+    }
+
+    /**
+     * Stops the server. The sockets it listens to are closed and its
+     * executors are shut down, connections which are already served are
+     * completed.
+     */
+    public synchronized void stop() {
+        if (this.eventLoopStunServer != null) {
+            this.eventLoopStunServer.shutdown();
+            this.eventLoopStunServer = null;
+        }
+        for (final SocketListener socketListener : this.socketListeners) {
+            socketListener.interrupt();
         }
+        this.socketListeners.clear();
+        for (final DatagramChannel channel : this.datagramChannels) {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                logger.debug("Could not close datagram channel: {}", e.getMessage()); //$NON-NLS-1$
+            }
+        }
+        this.datagramChannels.clear();
+        this.handleExecutor.shutdown();
+        this.socketListenerExecutor.shutdown();
     }
 
-    private List<SocketListener> getListWithSocketListeners() throws IOException {
+    private List<InetSocketAddress> getListenerAddresses() {
+        final List<InetSocketAddress> result = new ArrayList<InetSocketAddress>();
+        result.add(this.primaryAddress);
+        result.add(new InetSocketAddress(this.primaryAddress.getAddress(), this.secondaryAddress.getPort()));
+        result.add(new InetSocketAddress(this.secondaryAddress.getAddress(), this.primaryAddress.getPort()));
+        result.add(this.secondaryAddress);
+        return result;
+    }
+
+    private int getSupportedListenerShards() {
+        if ((this.listenerShards > 1) && !ListenerChannels.isReusePortSupported()) {
+            logger.warn("SO_REUSEPORT is not supported, listening with a single socket per endpoint"); //$NON-NLS-1$
+            return 1;
+        }
+        return this.listenerShards;
+    }
+
+    private List<SocketListener> getListWithSocketListeners(final int shards) throws IOException {
         final List<SocketListener> result = new ArrayList<SocketListener>();
-        result.add(this.createSocketListener(this.primaryAddress));
-        result.add(this.createSocketListener(new InetSocketAddress(this.primaryAddress.getAddress(),
-                this.secondaryAddress.getPort())));
-        result.add(this.createSocketListener(new InetSocketAddress(this.secondaryAddress.getAddress(),
-                this.primaryAddress.getPort())));
-        result.add(this.createSocketListener(this.secondaryAddress));
+        for (final InetSocketAddress listenerAddress : this.getListenerAddresses()) {
+            for (int i = 0; i < shards; i++) {
+                result.add(this.createSocketListener(listenerAddress, shards > 1));
+            }
+        }
         return result;
     }
 
-    private SocketListener createSocketListener(final InetSocketAddress listenerAddress) throws IOException {
-        final ServerSocket serverSocket = new ServerSocket();
-        serverSocket.setReuseAddress(true);
-        serverSocket.bind(listenerAddress);
-        return new SocketListener(serverSocket, this.handleExecutor, this.handleMessageTaskFactory);
+    private List<Runnable> getListWithDatagramTasks() throws IOException {
+        final Map<InetSocketAddress, DatagramChannel> channels = new HashMap<InetSocketAddress, DatagramChannel>();
+        for (final InetSocketAddress listenerAddress : this.getListenerAddresses()) {
+            final DatagramChannel channel = DatagramChannel.open();
+            channel.socket().setReuseAddress(true);
+            channel.socket().bind(listenerAddress);
+            channels.put(listenerAddress, channel);
+            this.datagramChannels.add(channel);
+        }
+        final OtherAddress otherAddress = new OtherAddress(this.secondaryAddress);
+        final List<Runnable> result = new ArrayList<Runnable>();
+        for (final DatagramChannel channel : channels.values()) {
+            result.add(new HandleDatagramTask(channel, this.primaryAddress, this.secondaryAddress, channels,
+                    otherAddress));
+        }
+        return result;
+    }
+
+    private SocketListener createSocketListener(final InetSocketAddress listenerAddress, final boolean reusePort)
+            throws IOException {
+        return new SocketListener(ListenerChannels.open(listenerAddress, 0, reusePort).socket(), this.handleExecutor,
+                this.handleMessageTaskFactory, this.admissionControl, this.rejectionPolicy);
     }
 
     /**
@@ -110,11 +260,60 @@ public final class StunServer {
      * 
      * @param args
      *            args[0]: primary IP address, args[1]: secondary/alternate IP
-     *            address
+     *            address, optional options: --udp to answer binding requests
+     *            via UDP too, --eventloop to serve TCP connections by event
+     *            loops, --shards n to listen to each TCP endpoint with n
+     *            sockets, --admission rate,burst,max to limit the TCP
+     *            connections per source address and in total, --pool
+     *            threads,queue,policy to bound the threads which serve the TCP
+     *            connections
      */
     public static void main(final String[] args) {
-        if (args.length != 2) {
-            throw new IllegalArgumentException("Arguments: primaryIP secondaryIP"); //$NON-NLS-1$
+        final StunServer stunServer = fromArguments(args, null);
+        try {
+            stunServer.startStunServer();
+        } catch (final Exception e) {
+            logger.error(e.getMessage(), e);
+            throw new RuntimeException("Exception occured while running server", e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Creates a {@link StunServer} with the given arguments, see
+     * {@link #main(String[])}.
+     * 
+     * @param args
+     *            the arguments of the server
+     * @param context
+     *            the context whose executors are used, null to create own
+     *            executors
+     * @return the server which is not started yet
+     * @throws IllegalArgumentException
+     *             if the arguments are invalid
+     */
+    public static StunServer fromArguments(final String[] args, final ServerContext context) {
+        if (args.length < 2) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        boolean udpEnabled = false;
+        boolean eventLoopEnabled = false;
+        int listenerShards = 1;
+        AdmissionControl admissionControl = null;
+        WorkerPool workerPool = null;
+        for (int i = 2; i < args.length; i++) {
+            if (UDP_OPTION.equals(args[i])) {
+                udpEnabled = true;
+            } else if (EVENT_LOOP_OPTION.equals(args[i])) {
+                eventLoopEnabled = true;
+            } else if (SHARDS_OPTION.equals(args[i]) && (i + 1 < args.length)) {
+                listenerShards = Integer.parseInt(args[++i]);
+            } else if (ADMISSION_OPTION.equals(args[i]) && (i + 1 < args.length)) {
+                admissionControl = AdmissionControl.valueOf(args[++i]);
+            } else if (POOL_OPTION.equals(args[i]) && (i + 1 < args.length)) {
+                workerPool = WorkerPool.valueOf(args[++i]);
+            } else {
+                throw new IllegalArgumentException(USAGE);
+            }
         }
         final String primaryIp = args[0];
         final String secondaryIp = args[1];
@@ -122,12 +321,119 @@ public final class StunServer {
         final int secondaryPort = STUN_SERVER_PORT + 1;
         final InetSocketAddress primaryAddress = new InetSocketAddress(primaryIp, primaryPort);
         final InetSocketAddress secondaryAddress = new InetSocketAddress(secondaryIp, secondaryPort);
-        final StunServer stunServer = new StunServer(primaryAddress, secondaryAddress);
-        try {
-            stunServer.startStunServer();
-        } catch (final Exception e) {
-            logger.error(e.getMessage(), e);
-            throw new RuntimeException("Exception occured while running server", e); //$NON-NLS-1$
+        return new Builder(primaryAddress, secondaryAddress).udpEnabled(udpEnabled)
+                .eventLoopEnabled(eventLoopEnabled).listenerShards(listenerShards).admissionControl(admissionControl)
+                .workerPool(workerPool).context(context).build();
+    }
+
+    /**
+     * Collects the options of a {@link StunServer}. Options which are not set
+     * keep their defaults: TCP only, a thread per connection, one socket per
+     * endpoint, no admission control and own executors.
+     */
+    public static final class Builder {
+        private final InetSocketAddress primaryAddress;
+        private final InetSocketAddress secondaryAddress;
+        private boolean udpEnabled;
+        private boolean eventLoopEnabled;
+        private int listenerShards = 1;
+        private AdmissionControl admissionControl;
+        private WorkerPool workerPool;
+        private ServerContext context;
+
+        /**
+         * Creates a builder for a server with the given public reachable
+         * addresses.
+         * 
+         * @param primaryAddress
+         *            the public primary (local) address
+         * @param secondaryAddress
+         *            the public secondary/alternate (local) address
+         */
+        public Builder(final InetSocketAddress primaryAddress, final InetSocketAddress secondaryAddress) {
+            this.primaryAddress = primaryAddress;
+            this.secondaryAddress = secondaryAddress;
+        }
+
+        /**
+         * @param udpEnabled
+         *            true if binding requests via UDP should be answered
+         * @return this builder
+         */
+        public Builder udpEnabled(final boolean udpEnabled) {
+            this.udpEnabled = udpEnabled;
+            return this;
+        }
+
+        /**
+         * @param eventLoopEnabled
+         *            true if TCP connections should be served by event loops
+         *            instead of a thread per connection
+         * @return this builder
+         */
+        public Builder eventLoopEnabled(final boolean eventLoopEnabled) {
+            this.eventLoopEnabled = eventLoopEnabled;
+            return this;
+        }
+
+        /**
+         * @param listenerShards
+         *            the number of sockets which listen to each TCP endpoint,
+         *            each with its own accept loop
+         * @return this builder
+         * @throws IllegalArgumentException
+         *             if the number of listener shards is not positive
+         */
+        public Builder listenerShards(final int listenerShards) {
+            if (listenerShards <= 0) {
+                throw new IllegalArgumentException("Listener shards must be positive: " + listenerShards); //$NON-NLS-1$
+            }
+            this.listenerShards = listenerShards;
+            return this;
+        }
+
+        /**
+         * @param admissionControl
+         *            decides which TCP connections are served, null to serve
+         *            all connections
+         * @return this builder
+         */
+        public Builder admissionControl(final AdmissionControl admissionControl) {
+            this.admissionControl = admissionControl;
+            return this;
+        }
+
+        /**
+         * @param workerPool
+         *            the bounds of the threads which serve the TCP connections
+         *            if event loops are not enabled, null for the handler
+         *            executor of the context or a thread per connection
+         * @return this builder
+         */
+        public Builder workerPool(final WorkerPool workerPool) {
+            this.workerPool = workerPool;
+            return this;
+        }
+
+        /**
+         * @param context
+         *            the context whose executors are used, null to create own
+         *            executors
+         * @return this builder
+         */
+        public Builder context(final ServerContext context) {
+            this.context = context;
+            return this;
+        }
+
+        /**
+         * Creates the server. It has to be started via
+         * {@link StunServer#startStunServer()}.
+         * 
+         * @return the server which is not started yet
+         */
+        public StunServer build() {
+            return new StunServer(this);
         }
     }
 }
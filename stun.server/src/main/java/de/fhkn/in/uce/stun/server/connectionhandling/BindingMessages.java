@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.server.connectionhandling;
+
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import de.fhkn.in.uce.stun.attribute.OtherAddress;
+import de.fhkn.in.uce.stun.attribute.XorMappedAddress;
+import de.fhkn.in.uce.stun.message.Message;
+
+/**
+ * Creates the messages the stun server sends in reply to binding requests,
+ * independent of the transport the request was received by.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class BindingMessages {
+
+    private BindingMessages() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Creates the success response to the given binding request.
+     *
+     * @param request
+     *            the binding request
+     * @param otherAddress
+     *            the attribute which contains the secondary address of the
+     *            stun server
+     * @param publicClientAddress
+     *            the endpoint the request was received from
+     * @return the success response which contains the OTHER-ADDRESS and the
+     *         XOR-MAPPED-ADDRESS attribute
+     */
+    public static Message createBindingResponse(final Message request, final OtherAddress otherAddress,
+            final InetSocketAddress publicClientAddress) {
+        final Message response = request.buildSuccessResponse();
+        response.addAttribute(otherAddress);
+        response.addAttribute(createXorMappedAddress(request, publicClientAddress));
+        return response;
+    }
+
+    /**
+     * Creates the XOR-MAPPED-ADDRESS attribute for the given endpoint. IPv6
+     * addresses are xored with the transaction id of the given message.
+     *
+     * @param message
+     *            the message the attribute is created for
+     * @param publicClientAddress
+     *            the endpoint the request was received from
+     * @return the XOR-MAPPED-ADDRESS attribute
+     */
+    public static XorMappedAddress createXorMappedAddress(final Message message,
+            final InetSocketAddress publicClientAddress) {
+        XorMappedAddress clientAddress;
+        if (publicClientAddress.getAddress() instanceof Inet4Address) {
+            clientAddress = new XorMappedAddress(publicClientAddress);
+        } else {
+            clientAddress = new XorMappedAddress(publicClientAddress, ByteBuffer.wrap(
+                    message.getHeader().getTransactionId()).getInt());
+        }
+        return clientAddress;
+    }
+}
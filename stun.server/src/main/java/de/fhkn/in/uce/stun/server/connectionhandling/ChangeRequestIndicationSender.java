@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.server.connectionhandling;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhkn.in.uce.core.concurrent.ThreadGroupThreadFactory;
+import de.fhkn.in.uce.stun.attribute.ChangeRequest;
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageEncoder;
+import de.fhkn.in.uce.stun.message.MessageStaticFactory;
+
+/**
+ * Sends the indications which are requested by a CHANGE-REQUEST attribute
+ * over TCP. It is forbidden to send a response via a new connection, so the
+ * public endpoint of the client is sent in an indication via a new connection
+ * from the endpoint with the changed IP address and/or port. Changed ports are
+ * bound to a third port (secondary port + 1) because the secondary port is
+ * already used by a listening socket.
+ *
+ * <p>
+ * Behind a filtering NAT the connections to the client time out, so the
+ * indications are not sent by the thread which handles the request. The
+ * connections are established and written by a single connector thread with a
+ * selector, which is started on demand and terminates when no indications are
+ * pending. The number of pending indications is bounded, further indications
+ * are rejected immediately.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class ChangeRequestIndicationSender {
+    /**
+     * The default maximum number of indications which are sent at the same
+     * time.
+     */
+    public static final int DEFAULT_MAX_PENDING_INDICATIONS = 256;
+    /**
+     * The default timeout for the connection to the client in milliseconds.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT_IN_MILLIS = 10 * 1000;
+    private static final Logger logger = LoggerFactory.getLogger(ChangeRequestIndicationSender.class);
+    private final InetSocketAddress primaryAddress;
+    private final InetSocketAddress secondaryAddress;
+    private final int thirdPort;
+    private final int connectTimeoutInMillis;
+    private final int maxPendingIndications;
+    private final Semaphore pendingIndications;
+    private final Queue<PendingIndication> newIndications;
+    private final ThreadFactory connectorThreadFactory = new ThreadGroupThreadFactory(
+            "ChangeRequestIndicationSender", true); //$NON-NLS-1$
+    private final Object connectorLock = new Object();
+    // guarded by connectorLock
+    private boolean connectorRunning;
+    // the selector of the running connector, a stopping connector must not
+    // clear the selector of its successor
+    private final AtomicReference<Selector> connectorSelector = new AtomicReference<Selector>();
+
+    /**
+     * Creates a {@link ChangeRequestIndicationSender} with the default limits.
+     *
+     * @param primaryAddress
+     *            the primary (local) address of the stun server
+     * @param secondaryAddress
+     *            the secondary/alternate (local) address of the stun server
+     */
+    public ChangeRequestIndicationSender(final InetSocketAddress primaryAddress,
+            final InetSocketAddress secondaryAddress) {
+        this(primaryAddress, secondaryAddress, DEFAULT_MAX_PENDING_INDICATIONS, DEFAULT_CONNECT_TIMEOUT_IN_MILLIS);
+    }
+
+    /**
+     * Creates a {@link ChangeRequestIndicationSender}.
+     *
+     * @param primaryAddress
+     *            the primary (local) address of the stun server
+     * @param secondaryAddress
+     *            the secondary/alternate (local) address of the stun server
+     * @param maxPendingIndications
+     *            the maximum number of indications which are sent at the same
+     *            time
+     * @param connectTimeoutInMillis
+     *            the timeout for the connection to the client
+     * @throws IllegalArgumentException
+     *             if one of the limits is not positive
+     */
+    public ChangeRequestIndicationSender(final InetSocketAddress primaryAddress,
+            final InetSocketAddress secondaryAddress, final int maxPendingIndications,
+            final int connectTimeoutInMillis) {
+        if ((maxPendingIndications <= 0) || (connectTimeoutInMillis <= 0)) {
+            throw new IllegalArgumentException("Limits must be positive"); //$NON-NLS-1$
+        }
+        this.primaryAddress = primaryAddress;
+        this.secondaryAddress = secondaryAddress;
+        this.thirdPort = secondaryAddress.getPort() + 1;
+        this.connectTimeoutInMillis = connectTimeoutInMillis;
+        this.maxPendingIndications = maxPendingIndications;
+        this.pendingIndications = new Semaphore(maxPendingIndications);
+        this.newIndications = new ConcurrentLinkedQueue<PendingIndication>();
+    }
+
+    /**
+     * Returns the local endpoint the indication for the given change request
+     * flag is sent from.
+     *
+     * @param changeRequestFlag
+     *            the flag of the CHANGE-REQUEST attribute
+     * @return the local endpoint, or null if no indication is sent
+     */
+    public InetSocketAddress getBindAddress(final int changeRequestFlag) {
+        switch (changeRequestFlag) {
+        case ChangeRequest.CHANGE_IP_AND_PORT:
+            return new InetSocketAddress(this.secondaryAddress.getAddress(), this.thirdPort);
+        case ChangeRequest.CHANGE_PORT:
+            return new InetSocketAddress(this.primaryAddress.getAddress(), this.thirdPort);
+        case ChangeRequest.CHANGE_IP:
+            return new InetSocketAddress(this.secondaryAddress.getAddress(), this.primaryAddress.getPort());
+        case ChangeRequest.FLAGS_NOT_SET:
+            // for checking connection dependent filtering, not part of RFC 5780
+            // the server should try to establish a connection from the primary
+            // address but this does not work under linux
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of indications which are currently sent.
+     *
+     * @return the number of pending indications
+     */
+    public int getPendingIndications() {
+        return this.maxPendingIndications - this.pendingIndications.availablePermits();
+    }
+
+    /**
+     * Sends the indication which is requested by the CHANGE-REQUEST attribute
+     * of the given message to the client. The method does not block, the
+     * indication is sent by the connector thread.
+     *
+     * @param message
+     *            the message which contains the CHANGE-REQUEST attribute
+     * @param remoteAddress
+     *            the public endpoint of the client
+     * @return false if the indication is rejected because too many
+     *         indications are pending or could not be encoded, otherwise true
+     */
+    public boolean sendIndication(final Message message, final InetSocketAddress remoteAddress) {
+        final ChangeRequest changeRequest = message.getAttribute(ChangeRequest.class);
+        logger.debug("Getting indication with change request flag = {}", changeRequest.getFlag()); //$NON-NLS-1$
+        final InetSocketAddress bindAddress = this.getBindAddress(changeRequest.getFlag());
+        if (bindAddress == null) {
+            return true;
+        }
+        if (!this.pendingIndications.tryAcquire()) {
+            logger.warn("Too many pending indications, indication to {} rejected", remoteAddress); //$NON-NLS-1$
+            return false;
+        }
+        final ByteBuffer encoded;
+        try {
+            final Message indication = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.INDICATION,
+                    STUNMessageMethod.BINDING);
+            indication.addAttribute(BindingMessages.createXorMappedAddress(message, remoteAddress));
+            encoded = ByteBuffer.wrap(MessageEncoder.toByteArray(indication));
+        } catch (final IOException e) {
+            this.pendingIndications.release();
+            logger.error("Indication could not be encoded: {}", e.getMessage()); //$NON-NLS-1$
+            return false;
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.connectTimeoutInMillis);
+        this.newIndications.add(new PendingIndication(bindAddress, remoteAddress, encoded, deadline));
+        this.ensureConnectorRunning();
+        return true;
+    }
+
+    private void ensureConnectorRunning() {
+        synchronized (this.connectorLock) {
+            if (!this.connectorRunning) {
+                this.connectorRunning = true;
+                this.connectorThreadFactory.newThread(new Connector()).start();
+                return;
+            }
+        }
+        final Selector selector = this.connectorSelector.get();
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Returns true and marks the connector as stopped if no new indications
+     * are queued.
+     */
+    private boolean stopConnectorIfIdle() {
+        synchronized (this.connectorLock) {
+            if (this.newIndications.isEmpty()) {
+                this.connectorRunning = false;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * An indication which is sent via a new connection.
+     */
+    private static final class PendingIndication {
+        private final InetSocketAddress bindAddress;
+        private final InetSocketAddress remoteAddress;
+        private final ByteBuffer encoded;
+        private final long deadline;
+        private SocketChannel channel;
+
+        PendingIndication(final InetSocketAddress bindAddress, final InetSocketAddress remoteAddress,
+                final ByteBuffer encoded, final long deadline) {
+            this.bindAddress = bindAddress;
+            this.remoteAddress = remoteAddress;
+            this.encoded = encoded;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Connects to the clients and writes the indications until no indication
+     * is pending.
+     */
+    private final class Connector implements Runnable {
+
+        @Override
+        public void run() {
+            Selector selector = null;
+            try {
+                selector = Selector.open();
+                connectorSelector.set(selector);
+                do {
+                    this.registerNewIndications(selector);
+                    while (!selector.keys().isEmpty()) {
+                        selector.select(this.getSelectTimeout(selector));
+                        this.handleSelectedKeys(selector);
+                        this.expireIndications(selector);
+                        this.registerNewIndications(selector);
+                    }
+                } while (!stopConnectorIfIdle());
+            } catch (final IOException e) {
+                logger.error("Connector for indications failed: {}", e.getMessage()); //$NON-NLS-1$
+                this.abort(selector);
+            } finally {
+                connectorSelector.compareAndSet(selector, null);
+                closeSelector(selector);
+            }
+        }
+
+        private void registerNewIndications(final Selector selector) {
+            PendingIndication indication;
+            while ((indication = newIndications.poll()) != null) {
+                try {
+                    indication.channel = SocketChannel.open();
+                    indication.channel.configureBlocking(false);
+                    indication.channel.socket().setReuseAddress(true);
+                    logger.debug("Binding new socket to {}", indication.bindAddress); //$NON-NLS-1$
+                    indication.channel.socket().bind(indication.bindAddress);
+                    logger.debug("Connecting to {}", indication.remoteAddress); //$NON-NLS-1$
+                    if (indication.channel.connect(indication.remoteAddress)) {
+                        indication.channel.register(selector, SelectionKey.OP_WRITE, indication);
+                    } else {
+                        indication.channel.register(selector, SelectionKey.OP_CONNECT, indication);
+                    }
+                } catch (final IOException e) {
+                    this.failed(indication, e.getMessage());
+                }
+            }
+        }
+
+        private void handleSelectedKeys(final Selector selector) {
+            final Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+            while (selectedKeys.hasNext()) {
+                final SelectionKey key = selectedKeys.next();
+                selectedKeys.remove();
+                final PendingIndication indication = (PendingIndication) key.attachment();
+                try {
+                    if (key.isConnectable() && indication.channel.finishConnect()) {
+                        key.interestOps(SelectionKey.OP_WRITE);
+                    }
+                    if (key.isValid() && (key.interestOps() == SelectionKey.OP_WRITE)) {
+                        indication.channel.write(indication.encoded);
+                        if (!indication.encoded.hasRemaining()) {
+                            logger.debug("Indication sent to {}", indication.remoteAddress); //$NON-NLS-1$
+                            this.completed(indication);
+                        }
+                    }
+                } catch (final IOException e) {
+                    this.failed(indication, e.getMessage());
+                }
+            }
+        }
+
+        private long getSelectTimeout(final Selector selector) {
+            long earliestDeadline = Long.MAX_VALUE;
+            for (final SelectionKey key : selector.keys()) {
+                earliestDeadline = Math.min(earliestDeadline, ((PendingIndication) key.attachment()).deadline);
+            }
+            // at least one millisecond, zero would block without timeout
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(earliestDeadline - System.nanoTime()) + 1);
+        }
+
+        private void expireIndications(final Selector selector) {
+            final long now = System.nanoTime();
+            for (final SelectionKey key : selector.keys()) {
+                final PendingIndication indication = (PendingIndication) key.attachment();
+                if (key.isValid() && (now - indication.deadline >= 0)) {
+                    this.failed(indication, "connect timed out"); //$NON-NLS-1$
+                }
+            }
+        }
+
+        private void abort(final Selector selector) {
+            if (selector != null) {
+                for (final SelectionKey key : selector.keys()) {
+                    this.failed((PendingIndication) key.attachment(), "connector failed"); //$NON-NLS-1$
+                }
+            }
+            synchronized (connectorLock) {
+                PendingIndication indication;
+                while ((indication = newIndications.poll()) != null) {
+                    this.failed(indication, "connector failed"); //$NON-NLS-1$
+                }
+                connectorRunning = false;
+            }
+        }
+
+        private void completed(final PendingIndication indication) {
+            closeQuietly(indication.channel);
+            pendingIndications.release();
+        }
+
+        private void failed(final PendingIndication indication, final String reason) {
+            logger.error("Connection to client not successfully established: {}", reason); //$NON-NLS-1$
+            this.completed(indication);
+        }
+    }
+
+    private static void closeQuietly(final Channel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (final IOException ignore) {
+                // nothing to do
+            }
+        }
+    }
+
+    private static void closeSelector(final Selector selector) {
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (final IOException ignore) {
+                // nothing to do
+            }
+        }
+    }
+}
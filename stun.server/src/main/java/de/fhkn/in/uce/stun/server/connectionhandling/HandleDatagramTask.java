@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.server.connectionhandling;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhkn.in.uce.stun.attribute.ChangeRequest;
+import de.fhkn.in.uce.stun.attribute.OtherAddress;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageEncoder;
+import de.fhkn.in.uce.stun.message.MessageReader;
+import de.fhkn.in.uce.stun.util.MessageFormatException;
+
+/**
+ * The {@link HandleDatagramTask} answers STUN binding requests which are
+ * received via UDP on one of the four endpoints of the stun server. The
+ * handling is stateless, every request is answered by a single response which
+ * contains the public endpoint of the client and the OTHER-ADDRESS of the
+ * server. According to RFC 5780 a request with a CHANGE-REQUEST attribute is
+ * answered from the endpoint with the changed IP address and/or port, so the
+ * filtering behavior of a NAT can be examined without the indications and new
+ * connections the TCP handling needs.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class HandleDatagramTask implements Runnable {
+    /**
+     * The maximum size of a received datagram, larger requests are truncated
+     * and therefore dropped as malformed.
+     */
+    public static final int MAX_DATAGRAM_SIZE = 1500;
+
+    private static final Logger logger = LoggerFactory.getLogger(HandleDatagramTask.class);
+    private final DatagramChannel channel;
+    private final InetSocketAddress localAddress;
+    private final InetSocketAddress primaryAddress;
+    private final InetSocketAddress secondaryAddress;
+    private final Map<InetSocketAddress, DatagramChannel> channels;
+    private final OtherAddress otherAddress;
+    private final MessageReader messageReader;
+    private final ByteBuffer receiveBuffer;
+    private final ByteBuffer sendBuffer;
+
+    /**
+     * Creates a {@link HandleDatagramTask} to handle STUN binding requests
+     * which are received by the given channel.
+     *
+     * @param channel
+     *            the bound channel to receive requests from
+     * @param primaryAddress
+     *            the primary (local) address of the stun server
+     * @param secondaryAddress
+     *            the secondary/alternate (local) address of the stun server
+     * @param channels
+     *            the bound channels of all four endpoints of the stun server
+     *            by their local address, used to answer change requests
+     * @param otherAddress
+     *            the attribute which contains the secondary address
+     */
+    public HandleDatagramTask(final DatagramChannel channel, final InetSocketAddress primaryAddress,
+            final InetSocketAddress secondaryAddress, final Map<InetSocketAddress, DatagramChannel> channels,
+            final OtherAddress otherAddress) {
+        this.channel = channel;
+        this.localAddress = (InetSocketAddress) channel.socket().getLocalSocketAddress();
+        this.primaryAddress = primaryAddress;
+        this.secondaryAddress = secondaryAddress;
+        this.channels = channels;
+        this.otherAddress = otherAddress;
+        this.messageReader = MessageReader.createMessageReader();
+        this.receiveBuffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        this.sendBuffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+    }
+
+    @Override
+    public void run() {
+        while (this.channel.isOpen()) {
+            try {
+                this.receiveBuffer.clear();
+                final InetSocketAddress source = (InetSocketAddress) this.channel.receive(this.receiveBuffer);
+                this.receiveBuffer.flip();
+                this.handleDatagram(source);
+            } catch (final ClosedChannelException e) {
+                logger.debug("Channel {} closed", this.localAddress); //$NON-NLS-1$
+                return;
+            } catch (final IOException e) {
+                // e.g. a malformed datagram or an unreachable client, which
+                // must not stop the endpoint
+                logger.debug("Could not handle datagram on {}: {}", this.localAddress, e.getMessage()); //$NON-NLS-1$
+            } catch (final RuntimeException e) {
+                if (e.getCause() instanceof MessageFormatException) {
+                    // malformed attribute which is decoded lazily
+                    logger.debug("Dropping malformed datagram on {}: {}", this.localAddress, //$NON-NLS-1$
+                            e.getCause().getMessage());
+                } else {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void handleDatagram(final InetSocketAddress source) throws IOException {
+        final Message request;
+        try {
+            request = this.messageReader.readSTUNMessage(this.receiveBuffer);
+        } catch (final MessageFormatException e) {
+            logger.debug("Dropping malformed datagram from {}: {}", source, e.getMessage()); //$NON-NLS-1$
+            return;
+        }
+        if (!request.isRequest() || !request.isMethod(STUNMessageMethod.BINDING)) {
+            logger.debug("Can not handle message with method {}", request.getMessageMethod()); //$NON-NLS-1$
+            return;
+        }
+        final Message response = BindingMessages.createBindingResponse(request, this.otherAddress, source);
+        final DatagramChannel responseChannel = this.getResponseChannel(request);
+        if (responseChannel == null) {
+            return;
+        }
+        this.sendBuffer.clear();
+        MessageEncoder.encode(response, this.sendBuffer);
+        this.sendBuffer.flip();
+        responseChannel.send(this.sendBuffer, source);
+    }
+
+    private DatagramChannel getResponseChannel(final Message request) {
+        if (!request.hasAttribute(ChangeRequest.class)) {
+            return this.channel;
+        }
+        final ChangeRequest changeRequest = request.getAttribute(ChangeRequest.class);
+        InetAddress address = this.localAddress.getAddress();
+        int port = this.localAddress.getPort();
+        if (changeRequest.isChangeIp()) {
+            address = address.equals(this.primaryAddress.getAddress()) ? this.secondaryAddress.getAddress()
+                    : this.primaryAddress.getAddress();
+        }
+        if (changeRequest.isChangePort()) {
+            port = (port == this.primaryAddress.getPort()) ? this.secondaryAddress.getPort() : this.primaryAddress
+                    .getPort();
+        }
+        final DatagramChannel result = this.channels.get(new InetSocketAddress(address, port));
+        if (result == null) {
+            // answering from this endpoint would fake an open filter
+            logger.debug("No endpoint for change request flag = {}", changeRequest.getFlag()); //$NON-NLS-1$
+        }
+        return result;
+    }
+}
@@ -21,6 +21,7 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 
 import de.fhkn.in.uce.core.socketlistener.SocketTaskFactory;
+import de.fhkn.in.uce.stun.attribute.OtherAddress;
 
 /**
  * Implementation of {@link SocketTaskFactory} which returns a
@@ -32,6 +33,9 @@ import de.fhkn.in.uce.core.socketlistener.SocketTaskFactory;
 public final class HandleMessageTaskFactory implements SocketTaskFactory {
     private final InetSocketAddress primaryAddress;
     private final InetSocketAddress secondaryAddress;
+    // shared by all tasks, so its encoding is cached only once
+    private final OtherAddress otherAddress;
+    private final ChangeRequestIndicationSender indicationSender;
 
     /**
      * Creates a {@link HandleMessageTaskFactory} which returns a
@@ -45,10 +49,13 @@ public final class HandleMessageTaskFactory implements SocketTaskFactory {
     public HandleMessageTaskFactory(final InetSocketAddress primaryAddress, final InetSocketAddress secondaryAddress) {
         this.primaryAddress = primaryAddress;
         this.secondaryAddress = secondaryAddress;
+        this.otherAddress = new OtherAddress(secondaryAddress);
+        this.indicationSender = new ChangeRequestIndicationSender(primaryAddress, secondaryAddress);
     }
 
     @Override
     public Runnable getTask(final Socket s) throws IOException {
-        return new HandleMessageTask(s, this.primaryAddress, this.secondaryAddress);
+        return new HandleMessageTask(s, this.primaryAddress, this.secondaryAddress, this.otherAddress,
+                this.indicationSender);
     }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.server.connectionhandling;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Set;
+
+/**
+ * Opens the listening channels of the stun server. To spread the connections
+ * to an endpoint over several accept loops, several channels can be bound to
+ * the same endpoint with SO_REUSEPORT, the kernel then distributes the
+ * incoming connections among them.
+ *
+ * <p>
+ * SO_REUSEPORT is only available via the socket options of Java 9 and later
+ * and only on platforms which support it, so the option is set by reflection.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class ListenerChannels {
+    private static final Object REUSE_PORT_OPTION = getReusePortOption();
+    private static final boolean REUSE_PORT_SUPPORTED = isReusePortSupported(REUSE_PORT_OPTION);
+
+    private ListenerChannels() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Returns whether several channels can be bound to the same endpoint with
+     * SO_REUSEPORT.
+     *
+     * @return true if SO_REUSEPORT is supported by the runtime and the
+     *         platform
+     */
+    public static boolean isReusePortSupported() {
+        return REUSE_PORT_SUPPORTED;
+    }
+
+    /**
+     * Opens a blocking server socket channel which is bound to the given
+     * endpoint.
+     *
+     * @param listenerAddress
+     *            the endpoint to listen to
+     * @param backlog
+     *            the maximum number of pending connections, 0 for the default
+     * @param reusePort
+     *            true if further channels should be able to bind to the same
+     *            endpoint
+     * @return the bound channel
+     * @throws IOException
+     *             if the channel could not be bound or SO_REUSEPORT is
+     *             requested but not supported
+     */
+    public static ServerSocketChannel open(final InetSocketAddress listenerAddress, final int backlog,
+            final boolean reusePort) throws IOException {
+        if (reusePort && !REUSE_PORT_SUPPORTED) {
+            throw new IOException("SO_REUSEPORT is not supported"); //$NON-NLS-1$
+        }
+        final ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.socket().setReuseAddress(true);
+            if (reusePort) {
+                setOption(channel, REUSE_PORT_OPTION, Boolean.TRUE);
+            }
+            channel.socket().bind(listenerAddress, backlog);
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    private static Object getReusePortOption() {
+        try {
+            return Class.forName("java.net.StandardSocketOptions").getField("SO_REUSEPORT").get(null); //$NON-NLS-1$
+        } catch (final Exception e) {
+            // runtime older than Java 9
+            return null;
+        }
+    }
+
+    private static boolean isReusePortSupported(final Object reusePortOption) {
+        if (reusePortOption == null) {
+            return false;
+        }
+        try {
+            final ServerSocketChannel channel = ServerSocketChannel.open();
+            try {
+                final Method supportedOptions = ServerSocketChannel.class.getMethod("supportedOptions"); //$NON-NLS-1$
+                return ((Set<?>) supportedOptions.invoke(channel)).contains(reusePortOption);
+            } finally {
+                channel.close();
+            }
+        } catch (final Exception e) {
+            return false;
+        }
+    }
+
+    private static void setOption(final ServerSocketChannel channel, final Object option, final Object value)
+            throws IOException {
+        try {
+            final Method setOption = ServerSocketChannel.class.getMethod("setOption", //$NON-NLS-1$
+                    Class.forName("java.net.SocketOption"), Object.class); //$NON-NLS-1$
+            setOption.invoke(channel, option, value);
+        } catch (final InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not set " + option, e.getCause()); //$NON-NLS-1$
+        } catch (final Exception e) {
+            throw new IOException("Could not set " + option, e); //$NON-NLS-1$
+        }
+    }
+}
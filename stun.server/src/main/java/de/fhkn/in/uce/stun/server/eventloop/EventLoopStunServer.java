@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.server.eventloop;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhkn.in.uce.core.concurrent.ThreadGroupThreadFactory;
+import de.fhkn.in.uce.core.socketlistener.AdmissionControl;
+import de.fhkn.in.uce.stun.attribute.OtherAddress;
+import de.fhkn.in.uce.stun.server.connectionhandling.ChangeRequestIndicationSender;
+
+/**
+ * Non-blocking variant of the TCP handling of the stun server. A single
+ * {@link StunAcceptor} accepts the connections to all endpoints and hands them
+ * over to a fixed number of {@link StunWorker}s, each serving its connections
+ * with its own selector. So the number of threads does not depend on the
+ * number of connections, an idle connection only costs its socket and a few
+ * bytes of buffer.
+ *
+ * <p>
+ * If a single accepting thread becomes the bottleneck, e.g. during bursts of
+ * NAT investigations, the endpoints can be shared by several acceptors. Each
+ * of them binds its own channels to all endpoints with SO_REUSEPORT and the
+ * kernel spreads the incoming connections among them.
+ * </p>
+ *
+ * <p>
+ * An optional {@link AdmissionControl} is consulted by the acceptors, rejected
+ * connections are closed before they are handed over to a worker.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class EventLoopStunServer {
+    private static final Logger logger = LoggerFactory.getLogger(EventLoopStunServer.class);
+    private final InetSocketAddress primaryAddress;
+    private final InetSocketAddress secondaryAddress;
+    private final List<InetSocketAddress> listenerAddresses;
+    private final int workerCount;
+    private final int acceptorCount;
+    private final AdmissionControl admissionControl;
+    private final ExecutorService eventLoopExecutor;
+    private final List<StunWorker> workers;
+    private final List<StunAcceptor> acceptors;
+
+    /**
+     * Creates an {@link EventLoopStunServer}.
+     *
+     * @param primaryAddress
+     *            the primary (local) address of the stun server
+     * @param secondaryAddress
+     *            the secondary/alternate (local) address of the stun server
+     * @param listenerAddresses
+     *            the endpoints the server listens to
+     * @param workerCount
+     *            the number of worker threads which serve the connections,
+     *            e.g. the number of available processors
+     * @param acceptorCount
+     *            the number of acceptor threads, if greater than 1 the
+     *            endpoints are bound with SO_REUSEPORT
+     * @param admissionControl
+     *            decides which connections are served, null to serve all
+     *            connections
+     * @throws IllegalArgumentException
+     *             if the worker or acceptor count is not positive
+     */
+    public EventLoopStunServer(final InetSocketAddress primaryAddress, final InetSocketAddress secondaryAddress,
+            final List<InetSocketAddress> listenerAddresses, final int workerCount, final int acceptorCount,
+            final AdmissionControl admissionControl) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("Worker count must be positive: " + workerCount); //$NON-NLS-1$
+        }
+        if (acceptorCount <= 0) {
+            throw new IllegalArgumentException("Acceptor count must be positive: " + acceptorCount); //$NON-NLS-1$
+        }
+        this.primaryAddress = primaryAddress;
+        this.secondaryAddress = secondaryAddress;
+        this.listenerAddresses = new ArrayList<InetSocketAddress>(listenerAddresses);
+        this.workerCount = workerCount;
+        this.acceptorCount = acceptorCount;
+        this.admissionControl = admissionControl;
+        this.eventLoopExecutor = Executors.newFixedThreadPool(workerCount + acceptorCount,
+                new ThreadGroupThreadFactory("stun-eventloop", false)); //$NON-NLS-1$
+        this.workers = new ArrayList<StunWorker>();
+        this.acceptors = new ArrayList<StunAcceptor>();
+    }
+
+    /**
+     * Binds the endpoints of the server and starts the acceptor and worker
+     * threads.
+     *
+     * @throws IOException
+     *             if an endpoint could not be bound or several acceptors are
+     *             requested but SO_REUSEPORT is not supported
+     * @throws IllegalStateException
+     *             if the server is already started
+     */
+    public synchronized void start() throws IOException {
+        if (!this.acceptors.isEmpty()) {
+            throw new IllegalStateException("Server is already started"); //$NON-NLS-1$
+        }
+        final OtherAddress otherAddress = new OtherAddress(this.secondaryAddress);
+        final ChangeRequestIndicationSender indicationSender = new ChangeRequestIndicationSender(this.primaryAddress,
+                this.secondaryAddress);
+        try {
+            for (int i = 0; i < this.workerCount; i++) {
+                this.workers.add(new StunWorker(this.primaryAddress, otherAddress, indicationSender,
+                        this.admissionControl));
+            }
+            final StunWorker[] workerArray = this.workers.toArray(new StunWorker[0]);
+            final boolean reusePort = this.acceptorCount > 1;
+            for (int i = 0; i < this.acceptorCount; i++) {
+                this.acceptors.add(new StunAcceptor(this.listenerAddresses, workerArray, i, reusePort,
+                        this.admissionControl));
+            }
+        } catch (final IOException e) {
+            for (final StunAcceptor acceptor : this.acceptors) {
+                acceptor.close();
+            }
+            this.acceptors.clear();
+            for (final StunWorker worker : this.workers) {
+                worker.close();
+            }
+            this.workers.clear();
+            this.shutdown();
+            throw e;
+        }
+        for (final StunWorker worker : this.workers) {
+            this.eventLoopExecutor.execute(worker);
+        }
+        for (final StunAcceptor acceptor : this.acceptors) {
+            this.eventLoopExecutor.execute(acceptor);
+        }
+        logger.info("Listening to {} with {} acceptors and {} workers", //$NON-NLS-1$
+                new Object[] { this.listenerAddresses, this.acceptorCount, this.workerCount });
+    }
+
+    /**
+     * Stops accepting connections and closes all connections.
+     */
+    public synchronized void shutdown() {
+        for (final StunAcceptor acceptor : this.acceptors) {
+            acceptor.shutdown();
+        }
+        for (final StunWorker worker : this.workers) {
+            worker.shutdown();
+        }
+        this.eventLoopExecutor.shutdown();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.server.eventloop;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhkn.in.uce.core.socketlistener.AdmissionControl;
+import de.fhkn.in.uce.core.socketlistener.ListenerMetrics;
+import de.fhkn.in.uce.stun.server.connectionhandling.ListenerChannels;
+
+/**
+ * The {@link StunAcceptor} accepts the connections to all endpoints of the
+ * stun server with a single selector and hands them over to the
+ * {@link StunWorker}s in turn. Several acceptors can listen to the same
+ * endpoints if their channels are bound with SO_REUSEPORT. Connections which
+ * are not admitted by the optional {@link AdmissionControl} are closed right
+ * away. The connections are counted in the {@link ListenerMetrics} of their
+ * port, like the ones of a socket listener.
+ *
+ * <p>
+ * If accepting fails, e.g. because there are too many open files, the
+ * channel is not selected for a short while. Otherwise the pending connection
+ * would select the channel again right away and the acceptor would spin.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+final class StunAcceptor implements Runnable {
+    // NAT investigations open several connections at once
+    private static final int BACKLOG = 256;
+    private static final long ACCEPT_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final Logger logger = LoggerFactory.getLogger(StunAcceptor.class);
+    private final Selector selector;
+    private final List<ServerSocketChannel> serverChannels;
+    private final StunWorker[] workers;
+    private final AdmissionControl admissionControl;
+    private final List<SelectionKey> pausedKeys;
+    private long resumeTime;
+    private int nextWorker;
+    private volatile boolean running;
+
+    /**
+     * Creates a {@link StunAcceptor} and binds the listening channels to the
+     * given endpoints.
+     *
+     * @param listenerAddresses
+     *            the endpoints to listen to
+     * @param workers
+     *            the workers which serve the accepted connections
+     * @param firstWorker
+     *            the index of the worker which gets the first connection
+     * @param reusePort
+     *            true if the channels are bound with SO_REUSEPORT
+     * @param admissionControl
+     *            decides which connections are served, may be null
+     * @throws IOException
+     *             if a channel could not be bound
+     */
+    StunAcceptor(final List<InetSocketAddress> listenerAddresses, final StunWorker[] workers, final int firstWorker,
+            final boolean reusePort, final AdmissionControl admissionControl) throws IOException {
+        this.selector = Selector.open();
+        this.serverChannels = new ArrayList<ServerSocketChannel>();
+        this.workers = workers.clone();
+        this.nextWorker = firstWorker % workers.length;
+        this.admissionControl = admissionControl;
+        this.pausedKeys = new ArrayList<SelectionKey>();
+        this.running = true;
+        try {
+            for (final InetSocketAddress listenerAddress : listenerAddresses) {
+                final ServerSocketChannel serverChannel = ListenerChannels.open(listenerAddress, BACKLOG, reusePort);
+                this.serverChannels.add(serverChannel);
+                serverChannel.configureBlocking(false);
+                serverChannel.register(this.selector, SelectionKey.OP_ACCEPT, new ListenerMetrics(serverChannel
+                        .socket().getLocalPort()));
+            }
+        } catch (final IOException e) {
+            this.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the listening channels.
+     */
+    void shutdown() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (this.running) {
+                this.select();
+                final Iterator<SelectionKey> selectedKeys = this.selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    final SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    this.acceptConnections(key);
+                }
+            }
+        } catch (final IOException e) {
+            logger.error(e.getMessage(), e);
+        } finally {
+            this.close();
+        }
+    }
+
+    private void select() throws IOException {
+        if (this.pausedKeys.isEmpty()) {
+            this.selector.select();
+            return;
+        }
+        final long waitNanos = this.resumeTime - System.nanoTime();
+        if (waitNanos > 0) {
+            this.selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+        }
+        if (System.nanoTime() - this.resumeTime >= 0) {
+            for (final SelectionKey key : this.pausedKeys) {
+                if (key.isValid()) {
+                    key.interestOps(SelectionKey.OP_ACCEPT);
+                }
+            }
+            this.pausedKeys.clear();
+        }
+    }
+
+    private void acceptConnections(final SelectionKey key) {
+        final ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
+        final ListenerMetrics metrics = (ListenerMetrics) key.attachment();
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                metrics.accepted();
+                if ((this.admissionControl != null)
+                        && !this.admissionControl.tryAcquire(channel.socket().getInetAddress())) {
+                    logger.debug("Rejected connection from: {}", //$NON-NLS-1$
+                            channel.socket().getRemoteSocketAddress());
+                    metrics.rejectedByAdmission();
+                    closeQuietly(channel);
+                    continue;
+                }
+                logger.debug("New connection from: {}", channel.socket().getRemoteSocketAddress()); //$NON-NLS-1$
+                this.workers[this.nextWorker].register(channel, metrics);
+                this.nextWorker = (this.nextWorker + 1) % this.workers.length;
+            }
+        } catch (final IOException e) {
+            // e.g. too many open files, the other connections are served anyway
+            logger.error("IOException while accepting connection: {}", e.getMessage()); //$NON-NLS-1$
+            this.pause(key);
+        }
+    }
+
+    private void pause(final SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        key.interestOps(0);
+        if (this.pausedKeys.isEmpty()) {
+            this.resumeTime = System.nanoTime() + ACCEPT_BACKOFF_NANOS;
+        }
+        this.pausedKeys.add(key);
+    }
+
+    private static void closeQuietly(final SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (final IOException ignore) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * Closes the listening channels and the selector of an acceptor which is
+     * not running.
+     */
+    void close() {
+        for (final ServerSocketChannel serverChannel : this.serverChannels) {
+            try {
+                serverChannel.close();
+            } catch (final IOException ignore) {
+                // nothing to do
+            }
+        }
+        try {
+            this.selector.close();
+        } catch (final IOException ignore) {
+            // nothing to do
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.server.eventloop;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import de.fhkn.in.uce.core.socketlistener.ListenerMetrics;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageEncoder;
+import de.fhkn.in.uce.stun.message.StunFrameDecoder;
+
+/**
+ * The state of a single TCP connection which is served by a
+ * {@link StunWorker}. Received bytes are collected by a
+ * {@link StunFrameDecoder} until a message is complete, responses are encoded
+ * into an output buffer which is written as far as the socket accepts it. As
+ * long as responses are pending the connection is not read, so a client which
+ * does not read its responses can not make the server buffer more of them.
+ *
+ * <p>
+ * A connection is only accessed by the thread of its worker.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+final class StunConnection {
+    // bounds the time a single connection can keep its worker busy
+    private static final int MAX_MESSAGES_PER_READ = 16;
+    private final StunWorker worker;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final StunFrameDecoder frameDecoder;
+    private final InetSocketAddress localAddress;
+    private final InetSocketAddress remoteAddress;
+    private final ListenerMetrics metrics;
+    private final long startNanos;
+    private ByteBuffer output;
+
+    /**
+     * Creates a {@link StunConnection} for the given registered channel.
+     *
+     * @param worker
+     *            the worker which handles the received messages
+     * @param channel
+     *            the connected non-blocking channel
+     * @param key
+     *            the key of the channel at the selector of the worker
+     * @param frameDecoder
+     *            the decoder for the received bytes
+     * @param metrics
+     *            the metrics of the port the connection was accepted at, the
+     *            connection counts as active task until it is closed
+     */
+    StunConnection(final StunWorker worker, final SocketChannel channel, final SelectionKey key,
+            final StunFrameDecoder frameDecoder, final ListenerMetrics metrics) {
+        this.worker = worker;
+        this.channel = channel;
+        this.key = key;
+        this.frameDecoder = frameDecoder;
+        this.localAddress = (InetSocketAddress) channel.socket().getLocalSocketAddress();
+        this.remoteAddress = (InetSocketAddress) channel.socket().getRemoteSocketAddress();
+        this.metrics = metrics;
+        this.startNanos = metrics.taskStarted();
+    }
+
+    /**
+     * Records the end of the connection in the metrics of its port. Has to be
+     * called once, when the channel is closed.
+     */
+    void closed() {
+        this.metrics.taskFinished(this.startNanos);
+    }
+
+    /**
+     * Returns the channel of the connection.
+     *
+     * @return the channel
+     */
+    SocketChannel getChannel() {
+        return this.channel;
+    }
+
+    /**
+     * Returns the local endpoint of the connection.
+     *
+     * @return the local endpoint
+     */
+    InetSocketAddress getLocalAddress() {
+        return this.localAddress;
+    }
+
+    /**
+     * Returns the (public) endpoint of the client.
+     *
+     * @return the remote endpoint
+     */
+    InetSocketAddress getRemoteAddress() {
+        return this.remoteAddress;
+    }
+
+    /**
+     * Handles the ready operations of the channel: pending responses are
+     * written and received messages are handed over to the worker.
+     *
+     * @throws IOException
+     *             if an I/O error occurs, the client closed the connection or
+     *             sent a malformed message
+     */
+    void handleReadyOps() throws IOException {
+        if (this.key.isWritable()) {
+            this.flush();
+        }
+        if (this.key.isValid() && this.key.isReadable()) {
+            this.read();
+        }
+    }
+
+    private void read() throws IOException {
+        for (int i = 0; i < MAX_MESSAGES_PER_READ; i++) {
+            final Message message = this.frameDecoder.read(this.channel);
+            if (message == null) {
+                return;
+            }
+            this.worker.handleMessage(this, message);
+            if (this.hasPendingOutput()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Encodes the given message and writes it as far as the socket accepts
+     * it. The remaining bytes are written when the channel becomes writable.
+     *
+     * @param message
+     *            the message to send
+     * @throws IOException
+     *             if the message could not be encoded or written
+     */
+    void send(final Message message) throws IOException {
+        if (this.output == null) {
+            this.output = ByteBuffer.allocate(MessageEncoder.DEFAULT_BUFFER_CAPACITY);
+        }
+        try {
+            MessageEncoder.encode(message, this.output);
+        } catch (final BufferOverflowException e) {
+            final int required = this.output.position() + MessageEncoder.getEncodedLength(message);
+            final ByteBuffer larger = ByteBuffer.allocate(Math.max(required, 2 * this.output.capacity()));
+            this.output.flip();
+            larger.put(this.output);
+            this.output = larger;
+            MessageEncoder.encode(message, this.output);
+        }
+        this.flush();
+    }
+
+    private void flush() throws IOException {
+        if (this.output != null) {
+            this.output.flip();
+            this.channel.write(this.output);
+            this.output.compact();
+        }
+        this.key.interestOps(this.hasPendingOutput() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private boolean hasPendingOutput() {
+        return (this.output != null) && (this.output.position() > 0);
+    }
+
+}
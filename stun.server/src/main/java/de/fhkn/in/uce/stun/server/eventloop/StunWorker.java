@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.server.eventloop;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhkn.in.uce.core.socketlistener.AdmissionControl;
+import de.fhkn.in.uce.core.socketlistener.ListenerMetrics;
+import de.fhkn.in.uce.stun.attribute.ChangeRequest;
+import de.fhkn.in.uce.stun.attribute.OtherAddress;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageReader;
+import de.fhkn.in.uce.stun.message.StunFrameDecoder;
+import de.fhkn.in.uce.stun.server.connectionhandling.BindingMessages;
+import de.fhkn.in.uce.stun.server.connectionhandling.ChangeRequestIndicationSender;
+import de.fhkn.in.uce.stun.server.connectionhandling.HandleMessageTask;
+
+/**
+ * A {@link StunWorker} serves the connections which are handed over by the
+ * {@link StunAcceptor} with its own selector in a single thread. Messages are
+ * handled like by the {@link HandleMessageTask}: binding requests are answered
+ * with the public endpoint of the client, indications with a CHANGE-REQUEST
+ * attribute which are received at the primary endpoint are handed over to the
+ * non-blocking {@link ChangeRequestIndicationSender}. Closed connections are
+ * released at the optional {@link AdmissionControl}. A connection counts as an
+ * active task in the {@link ListenerMetrics} of its port until it is closed.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+final class StunWorker implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(StunWorker.class);
+    private final Selector selector;
+    private final Queue<AcceptedChannel> acceptedChannels;
+    private final InetSocketAddress primaryAddress;
+    private final OtherAddress otherAddress;
+    private final ChangeRequestIndicationSender indicationSender;
+    private final MessageReader messageReader;
+    private final AdmissionControl admissionControl;
+    private volatile boolean running;
+
+    /**
+     * Creates a {@link StunWorker}.
+     *
+     * @param primaryAddress
+     *            the primary (local) address of the stun server
+     * @param otherAddress
+     *            the attribute which contains the secondary address
+     * @param indicationSender
+     *            the sender for indications requested by a CHANGE-REQUEST
+     * @param admissionControl
+     *            the admission control which admitted the connections, may be
+     *            null
+     * @throws IOException
+     *             if the selector could not be opened
+     */
+    StunWorker(final InetSocketAddress primaryAddress, final OtherAddress otherAddress,
+            final ChangeRequestIndicationSender indicationSender, final AdmissionControl admissionControl)
+            throws IOException {
+        this.selector = Selector.open();
+        this.acceptedChannels = new ConcurrentLinkedQueue<AcceptedChannel>();
+        this.primaryAddress = primaryAddress;
+        this.otherAddress = otherAddress;
+        this.indicationSender = indicationSender;
+        this.messageReader = MessageReader.createMessageReader();
+        this.admissionControl = admissionControl;
+        this.running = true;
+    }
+
+    /**
+     * Hands over an accepted channel to this worker. The channel is registered
+     * by the thread of the worker.
+     *
+     * @param channel
+     *            the accepted channel
+     * @param metrics
+     *            the metrics of the port the channel was accepted at
+     */
+    void register(final SocketChannel channel, final ListenerMetrics metrics) {
+        this.acceptedChannels.add(new AcceptedChannel(channel, metrics));
+        this.selector.wakeup();
+    }
+
+    /**
+     * Stops the worker and closes all its connections.
+     */
+    void shutdown() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (this.running) {
+                this.selector.select();
+                this.registerAcceptedChannels();
+                final Iterator<SelectionKey> selectedKeys = this.selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    final SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    this.handleReadyOps((StunConnection) key.attachment());
+                }
+            }
+        } catch (final IOException e) {
+            logger.error(e.getMessage(), e);
+        } finally {
+            this.close();
+        }
+    }
+
+    private void handleReadyOps(final StunConnection connection) {
+        try {
+            connection.handleReadyOps();
+        } catch (final EOFException e) {
+            logger.debug("Connection closed by {}", connection.getRemoteAddress()); //$NON-NLS-1$
+            this.closeConnection(connection);
+        } catch (final Exception e) {
+            logger.debug("Closing connection to {}: {}", connection.getRemoteAddress(), //$NON-NLS-1$
+                    e.getMessage());
+            this.closeConnection(connection);
+        }
+    }
+
+    private void registerAcceptedChannels() {
+        AcceptedChannel accepted;
+        while ((accepted = this.acceptedChannels.poll()) != null) {
+            final SocketChannel channel = accepted.channel;
+            try {
+                channel.configureBlocking(false);
+                final SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ);
+                key.attach(new StunConnection(this, channel, key, new StunFrameDecoder(this.messageReader),
+                        accepted.metrics));
+            } catch (final IOException e) {
+                logger.error("Could not register connection: {}", e.getMessage()); //$NON-NLS-1$
+                this.closeConnection(channel);
+            }
+        }
+    }
+
+    /**
+     * Handles a message which was received by the given connection.
+     *
+     * @param connection
+     *            the connection the message was received by
+     * @param message
+     *            the received message
+     * @throws IOException
+     *             if the response could not be sent
+     */
+    void handleMessage(final StunConnection connection, final Message message) throws IOException {
+        if (!message.isMethod(STUNMessageMethod.BINDING)) {
+            logger.debug("Can not handle message with method {}", message.getMessageMethod()); //$NON-NLS-1$
+        } else if (message.isRequest()) {
+            connection.send(BindingMessages.createBindingResponse(message, this.otherAddress,
+                    connection.getRemoteAddress()));
+        } else if (this.primaryAddress.equals(connection.getLocalAddress())
+                && message.hasAttribute(ChangeRequest.class)) {
+            this.indicationSender.sendIndication(message, connection.getRemoteAddress());
+        }
+    }
+
+    /**
+     * Closes all connections and the selector of a worker which is not
+     * running.
+     */
+    void close() {
+        for (final SelectionKey key : this.selector.keys()) {
+            if (key.attachment() != null) {
+                this.closeConnection((StunConnection) key.attachment());
+            } else {
+                this.closeConnection(key.channel());
+            }
+        }
+        AcceptedChannel accepted;
+        while ((accepted = this.acceptedChannels.poll()) != null) {
+            this.closeConnection(accepted.channel);
+        }
+        try {
+            this.selector.close();
+        } catch (final IOException ignore) {
+            // nothing to do
+        }
+    }
+
+    private void closeConnection(final StunConnection connection) {
+        if (connection.getChannel().isOpen()) {
+            this.closeConnection(connection.getChannel());
+            connection.closed();
+        }
+    }
+
+    private void closeConnection(final Channel channel) {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (final IOException ignore) {
+            // nothing to do
+        }
+        if (this.admissionControl != null) {
+            this.admissionControl.release();
+        }
+    }
+
+    /**
+     * A channel which is handed over by the acceptor together with the
+     * metrics of its port.
+     */
+    private static final class AcceptedChannel {
+        private final SocketChannel channel;
+        private final ListenerMetrics metrics;
+
+        AcceptedChannel(final SocketChannel channel, final ListenerMetrics metrics) {
+            this.channel = channel;
+            this.metrics = metrics;
+        }
+    }
+}
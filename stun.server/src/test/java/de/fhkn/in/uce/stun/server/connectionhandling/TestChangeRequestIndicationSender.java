@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.server.connectionhandling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhkn.in.uce.stun.attribute.ChangeRequest;
+import de.fhkn.in.uce.stun.attribute.XorMappedAddress;
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageReader;
+import de.fhkn.in.uce.stun.message.MessageStaticFactory;
+
+public final class TestChangeRequestIndicationSender {
+    private static final int TIMEOUT_IN_MILLIS = 5000;
+    private ServerSocket client;
+    private InetSocketAddress clientAddress;
+    private ChangeRequestIndicationSender sender;
+
+    @Before
+    public void setUp() throws IOException {
+        this.client = new ServerSocket(0);
+        this.client.setSoTimeout(TIMEOUT_IN_MILLIS);
+        this.clientAddress = new InetSocketAddress("127.0.0.1", this.client.getLocalPort()); //$NON-NLS-1$
+        final InetSocketAddress secondaryAddress = new InetSocketAddress("127.0.0.1", getFreePortPair()); //$NON-NLS-1$
+        final InetSocketAddress primaryAddress = new InetSocketAddress("127.0.0.1", //$NON-NLS-1$
+                secondaryAddress.getPort() - 1);
+        this.sender = new ChangeRequestIndicationSender(primaryAddress, secondaryAddress, 1, TIMEOUT_IN_MILLIS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.client.close();
+    }
+
+    @Test
+    public void testIndicationIsSentFromChangedPort() throws Exception {
+        assertTrue(this.sender.sendIndication(this.newIndication(ChangeRequest.CHANGE_PORT), this.clientAddress));
+        this.assertIndicationReceived(this.sender.getBindAddress(ChangeRequest.CHANGE_PORT));
+    }
+
+    @Test
+    public void testConnectorIsRestarted() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            // the connector terminates once the previous indication is sent
+            this.waitUntilNoIndicationIsPending();
+            assertTrue(this.sender.sendIndication(this.newIndication(ChangeRequest.CHANGE_PORT), this.clientAddress));
+            this.assertIndicationReceived(this.sender.getBindAddress(ChangeRequest.CHANGE_PORT));
+        }
+    }
+
+    @Test
+    public void testFlagsNotSetSendNothing() throws Exception {
+        assertNull(this.sender.getBindAddress(ChangeRequest.FLAGS_NOT_SET));
+        assertTrue(this.sender.sendIndication(this.newIndication(ChangeRequest.FLAGS_NOT_SET), this.clientAddress));
+        assertEquals(0, this.sender.getPendingIndications());
+    }
+
+    private void assertIndicationReceived(final InetSocketAddress expectedSource) throws IOException {
+        final Socket socket = this.client.accept();
+        try {
+            socket.setSoTimeout(TIMEOUT_IN_MILLIS);
+            final Message indication = MessageReader.createMessageReader().readSTUNMessage(socket.getInputStream());
+            assertTrue(indication.isIndication());
+            assertEquals(expectedSource, socket.getRemoteSocketAddress());
+            assertEquals(this.clientAddress, indication.getAttribute(XorMappedAddress.class).getEndpoint());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private void waitUntilNoIndicationIsPending() throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_IN_MILLIS;
+        while ((this.sender.getPendingIndications() != 0) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, this.sender.getPendingIndications());
+    }
+
+    private Message newIndication(final int changeRequestFlag) {
+        final Message message = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.INDICATION,
+                STUNMessageMethod.BINDING);
+        message.addAttribute(new ChangeRequest(changeRequestFlag));
+        return message;
+    }
+
+    /**
+     * Returns a free port whose successor is free too, as the sender binds
+     * changed ports to the secondary port + 1.
+     */
+    private static int getFreePortPair() throws IOException {
+        while (true) {
+            final ServerSocket first = new ServerSocket(0);
+            try {
+                final ServerSocket second = new ServerSocket(first.getLocalPort() + 1);
+                second.close();
+                return first.getLocalPort();
+            } catch (final IOException e) {
+                // the successor is in use, try another port
+            } finally {
+                first.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.server.eventloop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhkn.in.uce.core.metrics.Counter;
+import de.fhkn.in.uce.core.metrics.MetricsRegistry;
+import de.fhkn.in.uce.stun.attribute.OtherAddress;
+import de.fhkn.in.uce.stun.attribute.XorMappedAddress;
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.message.Message;
+import de.fhkn.in.uce.stun.message.MessageReader;
+import de.fhkn.in.uce.stun.message.MessageStaticFactory;
+import de.fhkn.in.uce.stun.server.connectionhandling.ListenerChannels;
+
+public final class TestEventLoopStunServer {
+    private static final int TIMEOUT_IN_MILLIS = 5000;
+    private InetSocketAddress primaryAddress;
+    private InetSocketAddress secondaryAddress;
+    private EventLoopStunServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        this.primaryAddress = new InetSocketAddress("127.0.0.1", getFreePort()); //$NON-NLS-1$
+        this.secondaryAddress = new InetSocketAddress("127.0.0.1", getFreePort()); //$NON-NLS-1$
+        this.server = new EventLoopStunServer(this.primaryAddress, this.secondaryAddress,
+                Collections.singletonList(this.primaryAddress), 2, 1, null);
+        this.server.start();
+    }
+
+    @After
+    public void tearDown() {
+        this.server.shutdown();
+    }
+
+    @Test
+    public void testBindingRequest() throws IOException {
+        final Socket socket = this.connect();
+        try {
+            this.newBindingRequest().writeTo(socket.getOutputStream());
+            final Message response = MessageReader.createMessageReader().readSTUNMessage(socket.getInputStream());
+            assertTrue(response.isSuccessResponse());
+            assertTrue(response.isMethod(STUNMessageMethod.BINDING));
+            assertEquals(socket.getLocalSocketAddress(), response.getAttribute(XorMappedAddress.class).getEndpoint());
+            assertEquals(this.secondaryAddress, response.getAttribute(OtherAddress.class).getEndpoint());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testRequestsInOneSegment() throws IOException {
+        final ByteArrayOutputStream requests = new ByteArrayOutputStream();
+        for (int i = 0; i < 3; i++) {
+            this.newBindingRequest().writeTo(requests);
+        }
+        final Socket socket = this.connect();
+        try {
+            socket.getOutputStream().write(requests.toByteArray());
+            final InputStream in = socket.getInputStream();
+            final MessageReader reader = MessageReader.createMessageReader();
+            for (int i = 0; i < 3; i++) {
+                assertTrue(reader.readSTUNMessage(in).isSuccessResponse());
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testConnectionsAreCounted() throws Exception {
+        final String prefix = "socketlistener." + this.primaryAddress.getPort() + "."; //$NON-NLS-1$ //$NON-NLS-2$
+        final Counter accepted = MetricsRegistry.getShared().counter(prefix + "accepted"); //$NON-NLS-1$
+        final Counter activeTasks = MetricsRegistry.getShared().upDownCounter(prefix + "active_tasks"); //$NON-NLS-1$
+        final long acceptedBefore = accepted.sum();
+        final Socket socket = this.connect();
+        this.newBindingRequest().writeTo(socket.getOutputStream());
+        MessageReader.createMessageReader().readSTUNMessage(socket.getInputStream());
+        assertEquals(acceptedBefore + 1, accepted.sum());
+        assertEquals(1, activeTasks.sum());
+        socket.close();
+        final long deadline = System.currentTimeMillis() + TIMEOUT_IN_MILLIS;
+        while ((activeTasks.sum() != 0) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, activeTasks.sum());
+    }
+
+    @Test
+    public void testShardedAcceptors() throws IOException {
+        Assume.assumeTrue(ListenerChannels.isReusePortSupported());
+        final InetSocketAddress listenerAddress = new InetSocketAddress("127.0.0.1", getFreePort()); //$NON-NLS-1$
+        final EventLoopStunServer shardedServer = new EventLoopStunServer(listenerAddress, this.secondaryAddress,
+                Collections.singletonList(listenerAddress), 2, 2, null);
+        shardedServer.start();
+        try {
+            for (int i = 0; i < 8; i++) {
+                final Socket socket = new Socket(listenerAddress.getAddress(), listenerAddress.getPort());
+                try {
+                    socket.setSoTimeout(TIMEOUT_IN_MILLIS);
+                    this.newBindingRequest().writeTo(socket.getOutputStream());
+                    final Message response = MessageReader.createMessageReader().readSTUNMessage(
+                            socket.getInputStream());
+                    assertTrue(response.isSuccessResponse());
+                } finally {
+                    socket.close();
+                }
+            }
+        } finally {
+            shardedServer.shutdown();
+        }
+    }
+
+    private Socket connect() throws IOException {
+        final Socket socket = new Socket(this.primaryAddress.getAddress(), this.primaryAddress.getPort());
+        socket.setSoTimeout(TIMEOUT_IN_MILLIS);
+        return socket;
+    }
+
+    private Message newBindingRequest() {
+        return MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST, STUNMessageMethod.BINDING);
+    }
+
+    static int getFreePort() throws IOException {
+        final ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
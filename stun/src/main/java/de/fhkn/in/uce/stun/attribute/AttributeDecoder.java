@@ -16,9 +16,9 @@
  */
 package de.fhkn.in.uce.stun.attribute;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Vector;
 
@@ -33,6 +33,7 @@ import de.fhkn.in.uce.stun.util.MessageFormatException;
  * 
  */
 public final class AttributeDecoder {
+    private static final int INITIAL_INDEX_SIZE = 8;
 
     private final AttributeHeaderDecoder headerDecoder;
 
@@ -75,18 +76,98 @@ public final class AttributeDecoder {
      */
     public List<Attribute> decodeSTUNAttributes(final byte[] attributesBytes, final MessageHeader messageHeader)
             throws IOException, MessageFormatException {
-        final ByteArrayInputStream bin = new ByteArrayInputStream(attributesBytes);
-        final DataInputStream din = new DataInputStream(bin);
+        return this.decodeSTUNAttributes(ByteBuffer.wrap(attributesBytes), 0, attributesBytes.length, messageHeader);
+    }
+
+    /**
+     * Decodes and returns the STUN attributes which are byte encoded in the
+     * given region of the buffer. The attributes are read by absolute offsets,
+     * the position of the buffer is not changed.
+     * 
+     * @param attributesBuffer
+     *            the buffer which contains the attributes (header and value)
+     * @param offset
+     *            the absolute offset of the first attribute in the buffer
+     * @param length
+     *            the length of all attributes in bytes
+     * @param messageHeader
+     *            the header of the message the attributes belong to
+     * @return a list of the decoded STUN attributes
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws MessageFormatException
+     *             if one of the attributes is malformed
+     */
+    public List<Attribute> decodeSTUNAttributes(final ByteBuffer attributesBuffer, final int offset,
+            final int length, final MessageHeader messageHeader) throws IOException, MessageFormatException {
+        final int end = offset + length;
+        if (end > attributesBuffer.limit()) {
+            throw new MessageFormatException("Attributes exceed the buffer: " + length); //$NON-NLS-1$
+        }
         final List<Attribute> attributes = new Vector<Attribute>();
-        while (bin.available() > 0) {
-            final byte[] headerBits = new byte[AttributeHeader.HEADER_LENGTH];
-            din.readFully(headerBits);
-            final AttributeHeader header = this.headerDecoder.decodeSTUNAttributeHeader(headerBits);
-            final byte[] value = new byte[header.getLength()];
-            din.readFully(value);
-            final Attribute attribute = header.getType().fromBytes(value, header, messageHeader);
+        int attributeOffset = offset;
+        while (attributeOffset < end) {
+            final AttributeHeader header = this.headerDecoder.decodeSTUNAttributeHeader(attributesBuffer,
+                    attributeOffset);
+            final int valueOffset = attributeOffset + AttributeHeader.HEADER_LENGTH;
+            if (valueOffset + header.getLength() > end) {
+                throw new MessageFormatException("Attribute exceeds the message: " + header.getLength()); //$NON-NLS-1$
+            }
+            final Attribute attribute = header.getType().fromBytes(attributesBuffer, valueOffset, header,
+                    messageHeader);
             attributes.add(attribute);
+            attributeOffset = valueOffset + header.getLength();
         }
         return attributes;
     }
+
+    /**
+     * Indexes the STUN attributes which are byte encoded in the given region
+     * of the buffer without decoding their values. The headers of all
+     * attributes are decoded and checked against the given length, the values
+     * get decoded on demand by the returned {@link EncodedAttributes}. The
+     * buffer is kept by the returned object and must not be changed
+     * afterwards.
+     * 
+     * @param attributesBuffer
+     *            the buffer which contains the attributes (header and value)
+     * @param offset
+     *            the absolute offset of the first attribute in the buffer
+     * @param length
+     *            the length of all attributes in bytes
+     * @param messageHeader
+     *            the header of the message the attributes belong to
+     * @return the indexed attributes
+     * @throws MessageFormatException
+     *             if the attribute headers are malformed
+     */
+    public EncodedAttributes indexSTUNAttributes(final ByteBuffer attributesBuffer, final int offset,
+            final int length, final MessageHeader messageHeader) throws MessageFormatException {
+        final int end = offset + length;
+        if (end > attributesBuffer.limit()) {
+            throw new MessageFormatException("Attributes exceed the buffer: " + length); //$NON-NLS-1$
+        }
+        AttributeHeader[] headers = new AttributeHeader[INITIAL_INDEX_SIZE];
+        int[] valueOffsets = new int[INITIAL_INDEX_SIZE];
+        int size = 0;
+        int attributeOffset = offset;
+        while (attributeOffset < end) {
+            final AttributeHeader header = this.headerDecoder.decodeSTUNAttributeHeader(attributesBuffer,
+                    attributeOffset);
+            final int valueOffset = attributeOffset + AttributeHeader.HEADER_LENGTH;
+            if (valueOffset + header.getLength() > end) {
+                throw new MessageFormatException("Attribute exceeds the message: " + header.getLength()); //$NON-NLS-1$
+            }
+            if (size == headers.length) {
+                headers = Arrays.copyOf(headers, 2 * size);
+                valueOffsets = Arrays.copyOf(valueOffsets, 2 * size);
+            }
+            headers[size] = header;
+            valueOffsets[size] = valueOffset;
+            size++;
+            attributeOffset = valueOffset + header.getLength();
+        }
+        return new EncodedAttributes(attributesBuffer, messageHeader, Arrays.copyOf(headers, size), valueOffsets,
+                length);
+    }
 }
@@ -22,6 +22,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -34,8 +35,7 @@ import de.fhkn.in.uce.stun.util.MessageFormatException;
  *
  */
 public final class AttributeHeaderDecoder {
-    private final AttributeTypeDecoder commonAttributeTypeDecoder;
-    private final List<AttributeTypeDecoder> customAttributeTypeDecoders;
+    private final AttributeTypeTable attributeTypeTable;
 
     /**
      * Creates a new {@link AttributeHeaderDecoder}.
@@ -46,7 +46,10 @@ public final class AttributeHeaderDecoder {
 
     /**
      * Creates a new {@link AttributeHeaderDecoder} with the specified
-     * {@link AttributeTypeDecoder} to decode custom attribute types.
+     * {@link AttributeTypeDecoder} to decode custom attribute types. The
+     * {@link STUNAttributeTypeDecoder} and the custom decoders are compiled
+     * into a {@link AttributeTypeTable} at construction time, so later changes
+     * of the given list have no effect.
      *
      * @param customAttributeTypeDecoder
      *            a list of {@link AttributeTypeDecoder} to decode custom
@@ -58,8 +61,10 @@ public final class AttributeHeaderDecoder {
         if (customAttributeTypeDecoders == null) {
             throw new NullPointerException();
         }
-        this.commonAttributeTypeDecoder = new STUNAttributeTypeDecoder();
-        this.customAttributeTypeDecoders = customAttributeTypeDecoders;
+        final List<AttributeTypeDecoder> decoders = new ArrayList<AttributeTypeDecoder>();
+        decoders.add(new STUNAttributeTypeDecoder());
+        decoders.addAll(customAttributeTypeDecoders);
+        this.attributeTypeTable = AttributeTypeTable.forDecoders(decoders);
     }
 
     /**
@@ -85,6 +90,32 @@ public final class AttributeHeaderDecoder {
         return new AttributeHeaderImpl(type, length);
     }
 
+    /**
+     * Decodes the attribute header which starts at the given absolute offset
+     * of the buffer to a {@link AttributeHeader} instance. The position of the
+     * buffer is not changed.
+     *
+     * @param encoded
+     *            the buffer which contains the byte encoded attribute header
+     * @param offset
+     *            the absolute offset of the attribute header in the buffer
+     * @return the decoded attribute header
+     * @throws MessageFormatException
+     *             if the buffer does not contain a complete attribute header
+     * @throws NullPointerException
+     *             if the specified buffer is null
+     */
+    public AttributeHeader decodeSTUNAttributeHeader(final ByteBuffer encoded, final int offset)
+            throws MessageFormatException {
+        if (encoded.limit() - offset < AttributeHeader.HEADER_LENGTH) {
+            throw new MessageFormatException("Header has not the expected length"); //$NON-NLS-1$
+        }
+        final int typeBits = encoded.getShort(offset) & 0xFFFF;
+        final AttributeType type = this.decodeAttributeType(typeBits);
+        final int length = encoded.getShort(offset + 2) & 0xFFFF;
+        return new AttributeHeaderImpl(type, length);
+    }
+
     private void checkHeaderLength(final byte[] encodedHeader) throws MessageFormatException {
         if (encodedHeader == null) {
             throw new NullPointerException();
@@ -93,35 +124,8 @@ public final class AttributeHeaderDecoder {
         }
     }
 
-    private AttributeType decodeAttributeType(final int attributeTypeBits) throws MessageFormatException {
-        AttributeType result = this.decodeAttributeTypeWithCommonDecoder(attributeTypeBits);
-        if (result == null) {
-            result = this.decodeAttributeTypeWithCustomDecoders(attributeTypeBits);
-            if (result == null) {
-                // TODO this could be a comprehension-optional attribute, check
-                // it and do something useful, if comprehension-required throw
-                // exception
-                result = STUNAttributeType.UNKNOWN_ATTRIBUTES;
-            }
-        }
-        return result;
-    }
-
-    private AttributeType decodeAttributeTypeWithCommonDecoder(final int attributeTypeBits) {
-        AttributeType result = null;
-        result = this.commonAttributeTypeDecoder.decode(attributeTypeBits);
-        return result;
-    }
-
-    private AttributeType decodeAttributeTypeWithCustomDecoders(final int attributeTypeBits) {
-        AttributeType result = null;
-        for (final AttributeTypeDecoder customDecoder : this.customAttributeTypeDecoders) {
-            result = customDecoder.decode(attributeTypeBits);
-            if (result != null) {
-                break;
-            }
-        }
-        return result;
+    private AttributeType decodeAttributeType(final int attributeTypeBits) {
+        return this.attributeTypeTable.lookup(attributeTypeBits);
     }
 
     @SuppressWarnings("unused")
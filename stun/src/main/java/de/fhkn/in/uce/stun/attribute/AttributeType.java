@@ -17,6 +17,7 @@
 package de.fhkn.in.uce.stun.attribute;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import de.fhkn.in.uce.stun.header.MessageHeader;
 import de.fhkn.in.uce.stun.util.MessageFormatException;
@@ -54,4 +55,27 @@ public interface AttributeType {
     // But some attributes (xor-mapped-address) need header information
     Attribute fromBytes(byte[] encoded, AttributeHeader header, MessageHeader messageHeader)
             throws MessageFormatException, IOException;
+
+    /**
+     * Decodes a STUN Attribute directly from the given buffer. The value of
+     * the attribute starts at the absolute {@code offset} and is
+     * {@code header.getLength()} bytes long. The position of the buffer is not
+     * changed.
+     * 
+     * @param encoded
+     *            the buffer which contains the value of the attribute
+     * @param offset
+     *            the absolute offset of the attribute value in the buffer
+     * @param header
+     *            the header of the attribute.
+     * @param messageHeader
+     *            the header of the message the attribute belongs to
+     * @return the decoded {@link Attribute}.
+     * @throws MessageFormatException
+     *             if the message isn't formed properly
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    Attribute fromBytes(ByteBuffer encoded, int offset, AttributeHeader header, MessageHeader messageHeader)
+            throws MessageFormatException, IOException;
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.attribute;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A dense lookup table which maps every 16 bit attribute type encoding to its
+ * {@link AttributeType}. The table is compiled once from a chain of
+ * {@link AttributeTypeDecoder}s, so decoding an attribute type afterwards is a
+ * single array access instead of asking each decoder in turn. Encodings which
+ * are unknown to all decoders are mapped to
+ * {@link STUNAttributeType#UNKNOWN_ATTRIBUTES}.
+ *
+ * <p>
+ * Compiled tables are shared between all decoders which are created with the
+ * same classes of {@link AttributeTypeDecoder}s in the same order, so
+ * {@link AttributeTypeDecoder} implementations have to be stateless.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+final class AttributeTypeTable {
+    private static final int TABLE_SIZE = 0x10000;
+    private static final ConcurrentMap<List<Class<?>>, AttributeTypeTable> COMPILED_TABLES =
+            new ConcurrentHashMap<List<Class<?>>, AttributeTypeTable>();
+
+    private final AttributeType[] types;
+
+    private AttributeTypeTable(final List<AttributeTypeDecoder> decoders) {
+        this.types = new AttributeType[TABLE_SIZE];
+        for (int encoded = 0; encoded < TABLE_SIZE; encoded++) {
+            this.types[encoded] = decodeWithChain(decoders, encoded);
+        }
+    }
+
+    /**
+     * Returns the compiled table for the given chain of decoders.
+     *
+     * @param decoders
+     *            the decoders in the order they should be asked
+     * @return the table for the given decoders
+     */
+    static AttributeTypeTable forDecoders(final List<AttributeTypeDecoder> decoders) {
+        final List<Class<?>> key = new ArrayList<Class<?>>(decoders.size());
+        for (final AttributeTypeDecoder decoder : decoders) {
+            key.add(decoder.getClass());
+        }
+        AttributeTypeTable result = COMPILED_TABLES.get(key);
+        if (result == null) {
+            result = new AttributeTypeTable(new ArrayList<AttributeTypeDecoder>(decoders));
+            final AttributeTypeTable previous = COMPILED_TABLES.putIfAbsent(key, result);
+            if (previous != null) {
+                result = previous;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the {@link AttributeType} of the given encoding.
+     *
+     * @param encoded
+     *            the 16 bit encoding of the attribute type
+     * @return the decoded {@link AttributeType}, or
+     *         {@link STUNAttributeType#UNKNOWN_ATTRIBUTES} if the type is
+     *         unknown
+     */
+    AttributeType lookup(final int encoded) {
+        return this.types[encoded & 0xFFFF];
+    }
+
+    private static AttributeType decodeWithChain(final List<AttributeTypeDecoder> decoders, final int encoded) {
+        for (final AttributeTypeDecoder decoder : decoders) {
+            final AttributeType result = decoder.decode(encoded);
+            if (result != null) {
+                return result;
+            }
+        }
+        // TODO this could be a comprehension-optional attribute, check
+        // it and do something useful, if comprehension-required throw
+        // exception
+        return STUNAttributeType.UNKNOWN_ATTRIBUTES;
+    }
+}
@@ -16,13 +16,13 @@
  */
 package de.fhkn.in.uce.stun.attribute;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
+import de.fhkn.in.uce.stun.util.ByteBufferUtil;
 import de.fhkn.in.uce.stun.util.MessageFormatException;
 
 /**
@@ -132,10 +132,30 @@ public final class ChangeRequest implements Attribute {
      */
     public static ChangeRequest fromBytes(final byte[] encoded, final AttributeHeader header) throws IOException,
             MessageFormatException {
-        final ByteArrayInputStream bin = new ByteArrayInputStream(encoded);
-        final DataInputStream din = new DataInputStream(bin);
+        return fromBytes(ByteBuffer.wrap(encoded), 0, header);
+    }
 
-        final int flagBits = din.readInt();
+    /**
+     * Creates a {@link ChangeRequest} from the encoded attribute value which
+     * starts at the given absolute offset of the buffer.
+     * 
+     * @param encoded
+     *            the buffer which contains the encoded {@link ChangeRequest}
+     *            attribute
+     * @param offset
+     *            the absolute offset of the attribute value in the buffer
+     * @param header
+     *            the attribute header
+     * @return the {@link ChangeRequest} of the given encoding
+     * @throws IOException
+     *             if an I/O exception occurs
+     * @throws MessageFormatException
+     *             if the encoded {@link ChangeRequest} is malformed
+     */
+    public static ChangeRequest fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header)
+            throws IOException, MessageFormatException {
+        ByteBufferUtil.checkLength(header.getLength(), 4);
+        final int flagBits = encoded.getInt(offset);
         checkFlagValidity(flagBits);
 
         return new ChangeRequest(flagBits);
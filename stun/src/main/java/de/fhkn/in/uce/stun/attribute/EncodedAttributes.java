@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.attribute;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import de.fhkn.in.uce.stun.header.MessageHeader;
+import de.fhkn.in.uce.stun.util.MessageFormatException;
+
+/**
+ * The byte encoded attributes of a received message together with an index of
+ * their headers. The values of the attributes are only decoded to
+ * {@link Attribute} instances the first time they are requested, so handlers
+ * which only look at a single attribute of a message do not pay for decoding
+ * all others.
+ *
+ * <p>
+ * To skip attributes of other classes without decoding them, the class of the
+ * attributes each {@link AttributeType} decodes to is learned when an
+ * attribute of this type is decoded for the first time. An
+ * {@link AttributeType} is therefore expected to always decode to instances of
+ * the same class.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class EncodedAttributes {
+    private static final ConcurrentMap<AttributeType, Class<?>> ATTRIBUTE_CLASSES =
+            new ConcurrentHashMap<AttributeType, Class<?>>();
+
+    private final ByteBuffer encoded;
+    private final MessageHeader messageHeader;
+    private final AttributeHeader[] headers;
+    private final int[] valueOffsets;
+    private final Attribute[] attributes;
+    private final int length;
+
+    /**
+     * Creates new {@link EncodedAttributes}.
+     *
+     * @param encoded
+     *            the buffer which contains the encoded attributes, it must not
+     *            be changed afterwards
+     * @param messageHeader
+     *            the header of the message the attributes belong to
+     * @param headers
+     *            the decoded headers of the attributes
+     * @param valueOffsets
+     *            the absolute offsets of the attribute values in the buffer
+     * @param length
+     *            the length of all attributes (header and value) in bytes
+     */
+    EncodedAttributes(final ByteBuffer encoded, final MessageHeader messageHeader, final AttributeHeader[] headers,
+            final int[] valueOffsets, final int length) {
+        this.encoded = encoded;
+        this.messageHeader = messageHeader;
+        this.headers = headers;
+        this.valueOffsets = valueOffsets;
+        this.attributes = new Attribute[headers.length];
+        this.length = length;
+    }
+
+    /**
+     * Returns the number of attributes.
+     *
+     * @return the number of attributes
+     */
+    public int size() {
+        return this.headers.length;
+    }
+
+    /**
+     * Returns the length of all attributes (header and value) in bytes.
+     *
+     * @return the length of all attributes
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Returns the type of the attribute at the given index without decoding
+     * its value.
+     *
+     * @param index
+     *            the index of the attribute
+     * @return the type of the attribute
+     */
+    public AttributeType getType(final int index) {
+        return this.headers[index].getType();
+    }
+
+    /**
+     * Returns the attribute at the given index. The value of the attribute
+     * gets decoded on the first call.
+     *
+     * @param index
+     *            the index of the attribute
+     * @return the decoded attribute
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws MessageFormatException
+     *             if the value of the attribute is malformed
+     */
+    public Attribute get(final int index) throws IOException, MessageFormatException {
+        Attribute result = this.attributes[index];
+        if (result == null) {
+            final AttributeHeader header = this.headers[index];
+            result = header.getType().fromBytes(this.encoded, this.valueOffsets[index], header, this.messageHeader);
+            ATTRIBUTE_CLASSES.putIfAbsent(header.getType(), result.getClass());
+            this.attributes[index] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the first attribute of the given class, starting
+     * the search at the given index. Only attributes of types whose class is
+     * not known yet are decoded during the search.
+     *
+     * @param attributeClass
+     *            the class of the desired attribute
+     * @param fromIndex
+     *            the index to start the search from
+     * @return the index of the first attribute of the given class or -1 if
+     *         there is none
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws MessageFormatException
+     *             if the value of a decoded attribute is malformed
+     */
+    public int indexOf(final Class<? extends Attribute> attributeClass, final int fromIndex) throws IOException,
+            MessageFormatException {
+        for (int i = fromIndex; i < this.headers.length; i++) {
+            final Class<?> knownClass = ATTRIBUTE_CLASSES.get(this.headers[i].getType());
+            if (knownClass == attributeClass) {
+                return i;
+            } else if ((knownClass == null) && (this.get(i).getClass() == attributeClass)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
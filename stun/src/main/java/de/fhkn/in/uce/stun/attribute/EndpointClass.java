@@ -16,15 +16,15 @@
  */
 package de.fhkn.in.uce.stun.attribute;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
+import de.fhkn.in.uce.stun.util.ByteBufferUtil;
 import de.fhkn.in.uce.stun.util.MessageFormatException;
 
 /**
@@ -35,7 +35,7 @@ import de.fhkn.in.uce.stun.util.MessageFormatException;
  * @author Alexander Diener (aldiener@htwg-konstanz.de)
  *
  */
-public final class EndpointClass implements Attribute {
+public final class EndpointClass extends ImmutableAttribute {
     private final int length;
     private final EndpointCategory endpointCategory;
 
@@ -96,10 +96,30 @@ public final class EndpointClass implements Attribute {
      */
     public static EndpointClass fromBytes(final byte[] encoded, final AttributeHeader header) throws IOException,
             MessageFormatException {
-        final ByteArrayInputStream bin = new ByteArrayInputStream(encoded);
-        final DataInputStream din = new DataInputStream(bin);
+        return fromBytes(ByteBuffer.wrap(encoded), 0, header);
+    }
 
-        final int endpointCategoryBits = din.readInt();
+    /**
+     * Creates a {@link EndpointClass} from the encoded attribute value which
+     * starts at the given absolute offset of the buffer.
+     * 
+     * @param encoded
+     *            the buffer which contains the encoded {@link EndpointClass}
+     *            attribute
+     * @param offset
+     *            the absolute offset of the attribute value in the buffer
+     * @param header
+     *            the attribute header
+     * @return the {@link EndpointClass} of the given encoding
+     * @throws IOException
+     *             if an I/O exception occurs
+     * @throws MessageFormatException
+     *             if the encoded {@link EndpointClass} is malformed
+     */
+    public static EndpointClass fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header)
+            throws IOException, MessageFormatException {
+        ByteBufferUtil.checkLength(header.getLength(), 4);
+        final int endpointCategoryBits = encoded.getInt(offset);
         final EndpointCategory endpointCategory = EndpointCategory.fromEncoded(endpointCategoryBits);
 
         return new EndpointClass(endpointCategory);
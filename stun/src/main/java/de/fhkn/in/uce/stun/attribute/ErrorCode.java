@@ -16,16 +16,16 @@
  */
 package de.fhkn.in.uce.stun.attribute;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
+import de.fhkn.in.uce.stun.util.ByteBufferUtil;
 import de.fhkn.in.uce.stun.util.MessageFormatException;
 
 /**
@@ -178,10 +178,30 @@ public final class ErrorCode implements Attribute {
      */
     public static ErrorCode fromBytes(final byte[] encoded, final AttributeHeader header) throws IOException,
             MessageFormatException {
-        final ByteArrayInputStream bin = new ByteArrayInputStream(encoded);
-        final DataInputStream din = new DataInputStream(bin);
+        return fromBytes(ByteBuffer.wrap(encoded), 0, header);
+    }
 
-        final int leading32Bits = din.readInt();
+    /**
+     * Creates a {@link ErrorCode} from the encoded attribute value which starts
+     * at the given absolute offset of the buffer.
+     * 
+     * @param encoded
+     *            the buffer which contains the encoded {@link ErrorCode}
+     *            attribute
+     * @param offset
+     *            the absolute offset of the attribute value in the buffer
+     * @param header
+     *            the attribute header
+     * @return the {@link ErrorCode} of the given encoding
+     * @throws IOException
+     *             if an I/O exception occurs
+     * @throws MessageFormatException
+     *             if the encoded {@link ErrorCode} is malformed
+     */
+    public static ErrorCode fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header)
+            throws IOException, MessageFormatException {
+        ByteBufferUtil.checkLength(header.getLength(), 4);
+        final int leading32Bits = encoded.getInt(offset);
         // leading zeros
         final int leadingZeroBits = leading32Bits & LEADING_ZEROS_MASK;
         if (leadingZeroBits != 0) {
@@ -194,9 +214,8 @@ public final class ErrorCode implements Attribute {
         final int errorCodeBITS = leading32Bits & ERROR_CODE_MASK;
         final STUNErrorCode errorCode = STUNErrorCode.fromErrorCode(errorCodeBITS);
         // error phrase
-        final byte[] reasonPhraseBytes = new byte[header.getLength() - 4];
-        din.readFully(reasonPhraseBytes);
-        final String reasonPhrase = new String(reasonPhraseBytes, STRING_ENCODING);
+        final String reasonPhrase = ByteBufferUtil.getString(encoded, offset + 4, header.getLength() - 4,
+                STRING_ENCODING);
 
         return new ErrorCode(errorCode, reasonPhrase);
     }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.attribute;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Base class for attributes whose type, length and value never change after
+ * construction. The complete encoding of such an attribute (header and value)
+ * is created by {@link #writeTo(java.io.OutputStream)} only once and cached, so
+ * instances which are added to many messages, e.g. the OTHER-ADDRESS of a stun
+ * server, are encoded by copying the cached bytes.
+ *
+ * <p>
+ * Subclasses must not change any state which influences the encoding of the
+ * attribute. Instances are thread-safe if the subclass is.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public abstract class ImmutableAttribute implements Attribute {
+    // header and value, created on the first encoding
+    private volatile byte[] encoded;
+
+    /**
+     * Writes the complete encoded attribute (header and value) to the given
+     * buffer.
+     *
+     * @param buffer
+     *            the buffer the attribute gets written to
+     * @throws IOException
+     *             if the attribute could not be encoded
+     * @throws java.nio.BufferOverflowException
+     *             if the buffer has not enough space left
+     */
+    public final void writeEncodedTo(final ByteBuffer buffer) throws IOException {
+        byte[] result = this.encoded;
+        if (result == null) {
+            // concurrent first encodings create equal arrays
+            result = this.encode();
+            this.encoded = result;
+        }
+        buffer.put(result);
+    }
+
+    private byte[] encode() throws IOException {
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream(AttributeHeader.HEADER_LENGTH
+                + this.getLength());
+        final DataOutputStream dout = new DataOutputStream(bout);
+        dout.writeShort(this.getType().encode());
+        dout.writeShort(this.getLength());
+        this.writeTo(dout);
+        dout.flush();
+        return bout.toByteArray();
+    }
+}
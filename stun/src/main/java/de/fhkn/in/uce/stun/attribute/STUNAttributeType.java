@@ -17,6 +17,7 @@
 package de.fhkn.in.uce.stun.attribute;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -34,56 +35,56 @@ import de.fhkn.in.uce.stun.util.MessageFormatException;
 public enum STUNAttributeType implements AttributeType {
     MAPPED_ADDRESS(0x0001) {
         @Override
-        public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
-                throws MessageFormatException, IOException {
-            return MappedAddress.fromBytes(encoded, header);
+        public Attribute fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+                final MessageHeader messageHeader) throws MessageFormatException, IOException {
+            return MappedAddress.fromBytes(encoded, offset, header);
         }
     },
 
     USERNAME(0x0006) {
         @Override
-        public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
-                throws MessageFormatException, IOException {
-            return Username.fromBytes(encoded, header);
+        public Attribute fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+                final MessageHeader messageHeader) throws MessageFormatException, IOException {
+            return Username.fromBytes(encoded, offset, header);
         }
     },
 
     MESSAGE_INTEGRITY(0x0008) {
         @Override
-        public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
-                throws MessageFormatException, IOException {
+        public Attribute fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+                final MessageHeader messageHeader) throws MessageFormatException, IOException {
             return null;
         }
     },
 
     ERROR_CODE(0x0009) {
         @Override
-        public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
-                throws MessageFormatException, IOException {
-            return ErrorCode.fromBytes(encoded, header);
+        public Attribute fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+                final MessageHeader messageHeader) throws MessageFormatException, IOException {
+            return ErrorCode.fromBytes(encoded, offset, header);
         }
     },
 
     UNKNOWN_ATTRIBUTES(0x000A) {
         @Override
-        public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
-                throws MessageFormatException, IOException {
-            return Unknown.fromBytes(encoded, header);
+        public Attribute fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+                final MessageHeader messageHeader) throws MessageFormatException, IOException {
+            return Unknown.fromBytes(encoded, offset, header);
         }
     },
 
     REALM(0x0014) {
         @Override
-        public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
-                throws MessageFormatException, IOException {
+        public Attribute fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+                final MessageHeader messageHeader) throws MessageFormatException, IOException {
             return null;
         }
     },
 
     NONCE(0x0015) {
         @Override
-        public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
-                throws MessageFormatException, IOException {
+        public Attribute fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+                final MessageHeader messageHeader) throws MessageFormatException, IOException {
             return null;
         }
     },
@@ -92,49 +93,49 @@ public enum STUNAttributeType implements AttributeType {
     // servers use 0x8020
     XOR_MAPPED_ADDRESS(0x0020) {
         @Override
-        public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
-                throws MessageFormatException, IOException {
-            return XorMappedAddress.fromBytes(encoded, header, messageHeader);
+        public Attribute fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+                final MessageHeader messageHeader) throws MessageFormatException, IOException {
+            return XorMappedAddress.fromBytes(encoded, offset, header, messageHeader);
         }
     },
 
     CHANGE_REQUEST(0x0003) {
         @Override
-        public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
-                throws MessageFormatException, IOException {
-            return ChangeRequest.fromBytes(encoded, header);
+        public Attribute fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+                final MessageHeader messageHeader) throws MessageFormatException, IOException {
+            return ChangeRequest.fromBytes(encoded, offset, header);
         }
     },
 
     ENDPOINT_CLASS(0x1001) {
         @Override
-        public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
-                throws MessageFormatException, IOException {
-            return EndpointClass.fromBytes(encoded, header);
+        public Attribute fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+                final MessageHeader messageHeader) throws MessageFormatException, IOException {
+            return EndpointClass.fromBytes(encoded, offset, header);
         }
     },
 
     TOKEN(0x1003) {
         @Override
-        public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
-                throws MessageFormatException, IOException {
-            return Token.fromBytes(encoded);
+        public Attribute fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+                final MessageHeader messageHeader) throws MessageFormatException, IOException {
+            return Token.fromBytes(encoded, offset, header.getLength());
         }
     },
 
     SOFTWARE(0x8022) {
         @Override
-        public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
-                throws MessageFormatException, IOException {
-            return Software.fromBytes(encoded, header);
+        public Attribute fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+                final MessageHeader messageHeader) throws MessageFormatException, IOException {
+            return Software.fromBytes(encoded, offset, header);
         }
     },
 
     OTHER_ADDRESS(0x802C) {
         @Override
-        public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
-                throws MessageFormatException, IOException {
-            return OtherAddress.fromBytes(encoded, header);
+        public Attribute fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+                final MessageHeader messageHeader) throws MessageFormatException, IOException {
+            return OtherAddress.fromBytes(encoded, offset, header);
         }
     };
 
@@ -163,6 +164,12 @@ public enum STUNAttributeType implements AttributeType {
         return this.encoded;
     }
 
+    @Override
+    public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
+            throws MessageFormatException, IOException {
+        return this.fromBytes(ByteBuffer.wrap(encoded), 0, header, messageHeader);
+    }
+
     /**
      * Decodes the specified byte encoded {@link STUNAttributeType}.
      * 
@@ -16,13 +16,14 @@
  */
 package de.fhkn.in.uce.stun.attribute;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
+import de.fhkn.in.uce.stun.util.ByteBufferUtil;
+
 /**
  * Attribute which carries a 128 bit token.
  * 
@@ -80,10 +81,27 @@ public final class Token implements Attribute {
      *             if an I/O error occurs
      */
     static Attribute fromBytes(byte[] encoded) throws IOException {
-        ByteArrayInputStream bin = new ByteArrayInputStream(encoded);
-        DataInputStream din = new DataInputStream(bin);
-        final long leastSignificantBits = din.readLong();
-        final long mostSignificantBits = din.readLong();
+        return fromBytes(ByteBuffer.wrap(encoded), 0, encoded.length);
+    }
+
+    /**
+     * Decodes a {@link Token} attribute which starts at the given absolute
+     * offset of the buffer.
+     * 
+     * @param encoded
+     *            the buffer which contains the encoded attribute
+     * @param offset
+     *            the absolute offset of the attribute value in the buffer
+     * @param length
+     *            the length of the attribute value
+     * @return the decoded {@link Token} attribute
+     * @throws IOException
+     *             if an I/O error occurs or the value is too short
+     */
+    static Attribute fromBytes(ByteBuffer encoded, int offset, int length) throws IOException {
+        ByteBufferUtil.checkLength(length, TOKEN_LENGTH_IN_BYTE);
+        final long leastSignificantBits = encoded.getLong(offset);
+        final long mostSignificantBits = encoded.getLong(offset + 8);
         final UUID decodedToken = new UUID(mostSignificantBits, leastSignificantBits);
         return new Token(decodedToken);
     }
@@ -18,6 +18,7 @@ package de.fhkn.in.uce.stun.attribute;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import de.fhkn.in.uce.stun.util.MessageFormatException;
 
@@ -80,6 +81,26 @@ public final class Unknown implements Attribute {
      *             if the encoded {@link Unknown} is malformed
      */
     public static Unknown fromBytes(final byte[] encoded, final AttributeHeader header) throws IOException {
+        return fromBytes(ByteBuffer.wrap(encoded), 0, header);
+    }
+
+    /**
+     * Creates a {@link Unknown} from the encoded attribute value which starts
+     * at the given absolute offset of the buffer.
+     * 
+     * @param encoded
+     *            the buffer which contains the encoded {@link Unknown}
+     *            attribute
+     * @param offset
+     *            the absolute offset of the attribute value in the buffer
+     * @param header
+     *            the attribute header
+     * @return the {@link Unknown} of the given encoding
+     * @throws IOException
+     *             if an I/O exception occurs
+     */
+    public static Unknown fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header)
+            throws IOException {
         return new Unknown();
     }
 }
@@ -21,7 +21,9 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 
+import de.fhkn.in.uce.stun.util.ByteBufferUtil;
 import de.fhkn.in.uce.stun.util.MessageFormatException;
 
 /**
@@ -129,4 +131,24 @@ public final class Username implements Attribute {
     public static Username fromBytes(final byte[] encoded, final AttributeHeader header) throws IOException {
         return new Username(new String(encoded, STRING_ENCODING));
     }
+
+    /**
+     * Creates a {@link Username} from the encoded attribute value which starts
+     * at the given absolute offset of the buffer.
+     * 
+     * @param encoded
+     *            the buffer which contains the encoded {@link Username}
+     *            attribute
+     * @param offset
+     *            the absolute offset of the attribute value in the buffer
+     * @param header
+     *            the attribute header
+     * @return the {@link Username} of the given encoding
+     * @throws IOException
+     *             if an I/O exception occurs
+     */
+    public static Username fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header)
+            throws IOException {
+        return new Username(ByteBufferUtil.getString(encoded, offset, header.getLength(), STRING_ENCODING));
+    }
 }
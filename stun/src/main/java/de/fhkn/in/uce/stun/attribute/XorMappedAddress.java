@@ -16,9 +16,7 @@
  */
 package de.fhkn.in.uce.stun.attribute;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -29,6 +27,7 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 
 import de.fhkn.in.uce.stun.header.MessageHeader;
+import de.fhkn.in.uce.stun.util.ByteBufferUtil;
 import de.fhkn.in.uce.stun.util.MessageFormatException;
 
 /**
@@ -162,23 +161,50 @@ public final class XorMappedAddress implements Attribute {
      */
     public static XorMappedAddress fromBytes(final byte[] encoded, final AttributeHeader header,
             final MessageHeader messageHeader) throws IOException, MessageFormatException {
-        final ByteArrayInputStream bin = new ByteArrayInputStream(encoded);
-        final DataInputStream din = new DataInputStream(bin);
+        return fromBytes(ByteBuffer.wrap(encoded), 0, header, messageHeader);
+    }
+
+    /**
+     * Creates a {@link XorMappedAddress} from the encoded attribute value which
+     * starts at the given absolute offset of the buffer.
+     * 
+     * @param encoded
+     *            the buffer which contains the encoded {@link XorMappedAddress}
+     *            attribute
+     * @param offset
+     *            the absolute offset of the attribute value in the buffer
+     * @param header
+     *            the attribute header
+     * @param messageHeader
+     *            the header of the corresponding message
+     * @return the {@link XorMappedAddress} of the given encoding
+     * @throws IOException
+     *             if an I/O exception occurs
+     * @throws MessageFormatException
+     *             if the encoded {@link XorMappedAddress} is malformed
+     */
+    public static XorMappedAddress fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+            final MessageHeader messageHeader) throws IOException, MessageFormatException {
+        ByteBufferUtil.checkLength(header.getLength(), 4);
         // leading zeros
-        final int leadingZeroBits = din.readUnsignedByte();
+        final int leadingZeroBits = encoded.get(offset) & 0xFF;
         checkLeadingZeros(leadingZeroBits);
         // ip family
-        final int ipFamilyBits = din.readUnsignedByte();
+        final int ipFamilyBits = encoded.get(offset + 1) & 0xFF;
         final byte[] xIpAsBytes = getByteArrayForIp(ipFamilyBits);
+        ByteBufferUtil.checkLength(header.getLength(), 4 + xIpAsBytes.length);
         // port
-        final int xport = din.readUnsignedShort();
+        final int xport = encoded.getShort(offset + 2) & 0xFFFF;
         final int port = xorPort(xport);
         // ip address
-        din.readFully(xIpAsBytes);
-        final ByteBuffer txid = ByteBuffer.wrap(messageHeader.getTransactionId());
-        final byte[] correctIp = xorIp(xIpAsBytes, ipFamilyBits, txid.getInt());
+        ByteBufferUtil.get(encoded, offset + 4, xIpAsBytes);
+        final int transactionId = ByteBuffer.wrap(messageHeader.getTransactionId()).getInt();
+        final byte[] correctIp = xorIp(xIpAsBytes, ipFamilyBits, transactionId);
         final InetAddress address = InetAddress.getByAddress(correctIp);
 
+        if (ipFamilyBits == IPV6_FAMILY) {
+            return new XorMappedAddress(new InetSocketAddress(address, port), transactionId);
+        }
         return new XorMappedAddress(new InetSocketAddress(address, port));
     }
 
@@ -17,6 +17,7 @@
 package de.fhkn.in.uce.stun.attribute.rfc3489;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -37,17 +38,17 @@ import de.fhkn.in.uce.stun.util.MessageFormatException;
 public enum Rfc3489AttributeType implements AttributeType {
     SOURCE_ADDRESS(0x0004) {
         @Override
-        public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
-                throws MessageFormatException, IOException {
-            return SourceAddress.fromBytes(encoded, header);
+        public Attribute fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+                final MessageHeader messageHeader) throws MessageFormatException, IOException {
+            return SourceAddress.fromBytes(encoded, offset, header);
         }
     },
 
     CHANGED_ADDRESS(0x0005) {
         @Override
-        public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
-                throws MessageFormatException, IOException {
-            return ChangedAddress.fromBytes(encoded, header);
+        public Attribute fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header,
+                final MessageHeader messageHeader) throws MessageFormatException, IOException {
+            return ChangedAddress.fromBytes(encoded, offset, header);
         }
     };
 
@@ -76,6 +77,12 @@ public enum Rfc3489AttributeType implements AttributeType {
         return this.encoded;
     }
 
+    @Override
+    public Attribute fromBytes(final byte[] encoded, final AttributeHeader header, final MessageHeader messageHeader)
+            throws MessageFormatException, IOException {
+        return this.fromBytes(ByteBuffer.wrap(encoded), 0, header, messageHeader);
+    }
+
     /**
      * Decodes the specified byte encoded {@link Rfc3489AttributeType}.
      * 
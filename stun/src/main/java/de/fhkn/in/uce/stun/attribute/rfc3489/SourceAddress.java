@@ -16,9 +16,7 @@
  */
 package de.fhkn.in.uce.stun.attribute.rfc3489;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -26,10 +24,12 @@ import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 
 import de.fhkn.in.uce.stun.attribute.Attribute;
 import de.fhkn.in.uce.stun.attribute.AttributeHeader;
 import de.fhkn.in.uce.stun.attribute.AttributeType;
+import de.fhkn.in.uce.stun.util.ByteBufferUtil;
 import de.fhkn.in.uce.stun.util.MessageFormatException;
 
 /**
@@ -139,14 +139,37 @@ public final class SourceAddress implements Attribute {
      */
     public static SourceAddress fromBytes(final byte[] encoded, final AttributeHeader header) throws IOException,
             MessageFormatException {
-        final ByteArrayInputStream bin = new ByteArrayInputStream(encoded);
-        final DataInputStream din = new DataInputStream(bin);
-        final int leadingZeroBits = din.readUnsignedByte();
+        return fromBytes(ByteBuffer.wrap(encoded), 0, header);
+    }
+
+    /**
+     * Creates a {@link SourceAddress} from the encoded attribute value which
+     * starts at the given absolute offset of the buffer.
+     * 
+     * @param encoded
+     *            the buffer which contains the encoded {@link SourceAddress}
+     *            attribute
+     * @param offset
+     *            the absolute offset of the attribute value in the buffer
+     * @param header
+     *            the attribute header
+     * @return the {@link SourceAddress} of the given encoding
+     * @throws IOException
+     *             if an I/O exception occurs
+     * @throws MessageFormatException
+     *             if the encoded {@link SourceAddress} is malformed
+     */
+    public static SourceAddress fromBytes(final ByteBuffer encoded, final int offset, final AttributeHeader header)
+            throws IOException, MessageFormatException {
+        // leading zeros, family and port
+        ByteBufferUtil.checkLength(header.getLength(), 4);
+        final int leadingZeroBits = encoded.get(offset) & 0xFF;
         checkLeadingZeros(leadingZeroBits);
-        final int ipFamilyBits = din.readUnsignedByte();
+        final int ipFamilyBits = encoded.get(offset + 1) & 0xFF;
         final byte[] ipAsBytes = getByteArrayForIp(ipFamilyBits);
-        final int port = din.readUnsignedShort();
-        din.readFully(ipAsBytes);
+        ByteBufferUtil.checkLength(header.getLength(), 4 + ipAsBytes.length);
+        final int port = encoded.getShort(offset + 2) & 0xFFFF;
+        ByteBufferUtil.get(encoded, offset + 4, ipAsBytes);
         final InetAddress address = InetAddress.getByAddress(ipAsBytes);
 
         return new SourceAddress(new InetSocketAddress(address, port));
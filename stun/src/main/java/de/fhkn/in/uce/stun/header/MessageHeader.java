@@ -18,6 +18,9 @@ package de.fhkn.in.uce.stun.header;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import de.fhkn.in.uce.stun.util.MessageFormatException;
 
 /**
  * The STUN message header is built as follows (according to RFC 5389):
@@ -51,6 +54,11 @@ public interface MessageHeader {
      */
     public static final int MAGIC_COOKIE = 0x2112A442;
 
+    /**
+     * The length of a message header.
+     */
+    public static final int HEADER_LENGTH = 20;
+
     /**
      * Returns the class of a message.
      *
@@ -88,4 +96,18 @@ public interface MessageHeader {
      *             if an I/O error occurs
      */
     void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Writes this STUN message header byte encoded to the given buffer,
+     * starting at the current position of the buffer.
+     *
+     * @param buffer
+     *            the buffer to that the header gets written to
+     * @throws MessageFormatException
+     *             if the header could not be encoded
+     * @throws java.nio.BufferOverflowException
+     *             if there are fewer than {@link #HEADER_LENGTH} bytes
+     *             remaining in the buffer
+     */
+    void writeTo(ByteBuffer buffer) throws MessageFormatException;
 }
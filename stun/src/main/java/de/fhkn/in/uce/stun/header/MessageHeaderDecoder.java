@@ -16,9 +16,7 @@
  */
 package de.fhkn.in.uce.stun.header;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -27,6 +25,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import de.fhkn.in.uce.stun.util.ByteBufferUtil;
 import de.fhkn.in.uce.stun.util.MessageFormatException;
 
 /**
@@ -36,8 +35,7 @@ import de.fhkn.in.uce.stun.util.MessageFormatException;
  *
  */
 public final class MessageHeaderDecoder {
-    // tzn: this should go into MessageHeader, it is header info anyway
-    private static final int HEADER_LENGTH = 20;
+    private static final int HEADER_LENGTH = MessageHeader.HEADER_LENGTH;
     private static final int LEADING_ZEROS_MASK = 0xC0000000;
     private static final int LEADING_ZEROS_SHIFT = 0x1E;
     private static final int MESSAGE_TYPE_MASK = 0x3FFF0000;
@@ -47,8 +45,7 @@ public final class MessageHeaderDecoder {
     private static final int MESSAGE_LENGTH_MASK = 0x0000FFFF;
     private static final int TRANSACTION_ID_LENGTH = 12;
 
-    private final MessageMethodDecoder commonMessageMethodDecoder;
-    private final List<MessageMethodDecoder> customMessageMethodDecoders;
+    private final MessageMethodTable messageMethodTable;
     private final MessageClassDecoder commonMethodClassDecoder;
 
     /**
@@ -62,6 +59,8 @@ public final class MessageHeaderDecoder {
      * Creates a new {@link MessageHeaderDecoder} that uses additionally to the
      * {@link STUNMessageMethodDecoder} the given
      * <code>customMethodDecoders</code> to decode the method of the message.
+     * All decoders are compiled into a {@link MessageMethodTable} at
+     * construction time, so later changes of the given list have no effect.
      *
      * @param customMethodDecoders
      *            a list with decoders that gets used to decode custom methods
@@ -72,8 +71,10 @@ public final class MessageHeaderDecoder {
         if (customMethodDecoders == null) {
             throw new NullPointerException();
         }
-        this.commonMessageMethodDecoder = new STUNMessageMethodDecoder();
-        this.customMessageMethodDecoders = customMethodDecoders;
+        final List<MessageMethodDecoder> decoders = new ArrayList<MessageMethodDecoder>();
+        decoders.add(new STUNMessageMethodDecoder());
+        decoders.addAll(customMethodDecoders);
+        this.messageMethodTable = MessageMethodTable.forDecoders(decoders);
         this.commonMethodClassDecoder = new STUNMessageClassDecoder();
     }
 
@@ -92,18 +93,38 @@ public final class MessageHeaderDecoder {
      */
     public MessageHeader decodeSTUNMessageHeader(final byte[] encoded) throws IOException, MessageFormatException {
         this.checkHeaderLength(encoded);
-        final ByteArrayInputStream bin = new ByteArrayInputStream(encoded);
-        final DataInputStream din = new DataInputStream(bin);
-        final int leading32Bits = din.readInt();
+        return this.decodeSTUNMessageHeader(ByteBuffer.wrap(encoded), 0);
+    }
+
+    /**
+     * Decodes the message header which starts at the given absolute offset of
+     * the buffer. The position of the buffer is not changed.
+     *
+     * @param encoded
+     *            the buffer which contains the byte encoded message header
+     * @param offset
+     *            the absolute offset of the message header in the buffer
+     * @return the decoded message header
+     * @throws MessageFormatException
+     *             if the message header is malformed or the buffer does not
+     *             contain a complete message header
+     * @throws NullPointerException
+     *             if the parameter <code>encoded</code> is null
+     */
+    public MessageHeader decodeSTUNMessageHeader(final ByteBuffer encoded, final int offset)
+            throws MessageFormatException {
+        if (encoded.limit() - offset < HEADER_LENGTH) {
+            throw new MessageFormatException("Header has not the expected length."); //$NON-NLS-1$
+        }
+        final int leading32Bits = encoded.getInt(offset);
         this.decodeLeadingZeroBits(leading32Bits);
         final int messageTypeBits = (leading32Bits & MESSAGE_TYPE_MASK) >> MESSAGE_TYPE_SHIFT;
         final MessageClass messageClass = this.decodeMessageClass(messageTypeBits);
         final MessageMethod messageMethod = this.decodeMessageMethod(messageTypeBits);
         final int length = leading32Bits & MESSAGE_LENGTH_MASK;
-        final int magicCookieBits = din.readInt();
+        final int magicCookieBits = encoded.getInt(offset + 4);
         this.checkMagicCookie(magicCookieBits);
-        final byte[] transactionIdBytes = new byte[TRANSACTION_ID_LENGTH];
-        din.readFully(transactionIdBytes);
+        final byte[] transactionIdBytes = ByteBufferUtil.getBytes(encoded, offset + 8, TRANSACTION_ID_LENGTH);
         return new MessageHeaderImpl(messageClass, messageMethod, length, transactionIdBytes);
     }
 
@@ -129,32 +150,13 @@ public final class MessageHeaderDecoder {
 
     private MessageMethod decodeMessageMethod(final int messageTypeBits) throws MessageFormatException {
         final int messageMethodBits = messageTypeBits & MESSAGE_METHOD_MASK;
-        MessageMethod result = this.decodeMessageMethodWithCommonDecoder(messageMethodBits);
+        final MessageMethod result = this.messageMethodTable.lookup(messageMethodBits);
         if (result == null) {
-            result = this.decodeMessageMethodWithCustomDecoders(messageMethodBits);
-            if (result == null) {
-                throw new MessageFormatException("Unknown message: " + messageMethodBits); //$NON-NLS-1$
-            }
+            throw new MessageFormatException("Unknown message: " + messageMethodBits); //$NON-NLS-1$
         }
         return result;
     }
 
-    private MessageMethod decodeMessageMethodWithCommonDecoder(final int messageMethodBits) {
-        return this.commonMessageMethodDecoder.decode(messageMethodBits);
-    }
-
-    private MessageMethod decodeMessageMethodWithCustomDecoders(final int messageMethodBits) {
-        MessageMethod result = null;
-        for (final MessageMethodDecoder customDecoder : this.customMessageMethodDecoders) {
-            result = customDecoder.decode(messageMethodBits);
-            if (result != null) {
-                break;
-            }
-        }
-
-        return result;
-    }
-
     private void checkMagicCookie(final int toCheck) throws MessageFormatException {
         if (toCheck != MessageHeader.MAGIC_COOKIE) {
             throw new MessageFormatException("The magic cookie is wrong: " + toCheck); //$NON-NLS-1$
@@ -250,6 +252,21 @@ public final class MessageHeaderDecoder {
             out.flush();
         }
 
+        @Override
+        public void writeTo(final ByteBuffer buffer) throws MessageFormatException {
+            if (this.transactionId.length != TRANSACTION_ID_LENGTH) {
+                throw new MessageFormatException("Header has the wrong length: " //$NON-NLS-1$
+                        + (HEADER_LENGTH - TRANSACTION_ID_LENGTH + this.transactionId.length));
+            }
+            final int methodBits = this.method.encode();
+            final int messageClassBits = this.messageClass.encode();
+            final int leading32bits = (0x0 << LEADING_ZEROS_SHIFT)
+                    | ((messageClassBits + methodBits) << MESSAGE_TYPE_SHIFT) | ((short) this.length);
+            buffer.putInt(leading32bits);
+            buffer.putInt(MessageHeader.MAGIC_COOKIE);
+            buffer.put(this.transactionId);
+        }
+
         @Override
         public int hashCode() {
             final int prime = 31;
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.header;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A dense lookup table which maps every 14 bit encoding of the method bits of
+ * a message type to its {@link MessageMethod}. The table is compiled once from a
+ * chain of {@link MessageMethodDecoder}s, so decoding a message method
+ * afterwards is a single array access instead of asking each decoder in turn.
+ *
+ * <p>
+ * Compiled tables are shared between all decoders which are created with the
+ * same classes of {@link MessageMethodDecoder}s in the same order, so
+ * {@link MessageMethodDecoder} implementations have to be stateless.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+final class MessageMethodTable {
+    private static final int TABLE_SIZE = 0x4000;
+    private static final ConcurrentMap<List<Class<?>>, MessageMethodTable> COMPILED_TABLES =
+            new ConcurrentHashMap<List<Class<?>>, MessageMethodTable>();
+
+    private final MessageMethod[] methods;
+
+    private MessageMethodTable(final List<MessageMethodDecoder> decoders) {
+        this.methods = new MessageMethod[TABLE_SIZE];
+        for (int encoded = 0; encoded < TABLE_SIZE; encoded++) {
+            this.methods[encoded] = decodeWithChain(decoders, encoded);
+        }
+    }
+
+    /**
+     * Returns the compiled table for the given chain of decoders.
+     *
+     * @param decoders
+     *            the decoders in the order they should be asked
+     * @return the table for the given decoders
+     */
+    static MessageMethodTable forDecoders(final List<MessageMethodDecoder> decoders) {
+        final List<Class<?>> key = new ArrayList<Class<?>>(decoders.size());
+        for (final MessageMethodDecoder decoder : decoders) {
+            key.add(decoder.getClass());
+        }
+        MessageMethodTable result = COMPILED_TABLES.get(key);
+        if (result == null) {
+            result = new MessageMethodTable(new ArrayList<MessageMethodDecoder>(decoders));
+            final MessageMethodTable previous = COMPILED_TABLES.putIfAbsent(key, result);
+            if (previous != null) {
+                result = previous;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the {@link MessageMethod} of the given method bits.
+     *
+     * @param encoded
+     *            the method bits of the message type
+     * @return the decoded {@link MessageMethod} or null if the method is
+     *         unknown
+     */
+    MessageMethod lookup(final int encoded) {
+        return this.methods[encoded & (TABLE_SIZE - 1)];
+    }
+
+    private static MessageMethod decodeWithChain(final List<MessageMethodDecoder> decoders, final int encoded) {
+        for (final MessageMethodDecoder decoder : decoders) {
+            final MessageMethod result = decoder.decode(encoded);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.message;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.fhkn.in.uce.stun.attribute.Attribute;
+import de.fhkn.in.uce.stun.attribute.AttributeHeader;
+
+/**
+ * Container for the attributes of a {@link Message}. The attributes are kept
+ * in insertion order for encoding, additionally a small open-addressed index
+ * maps each attribute class to the first attribute of this class, and the
+ * attributes of the same class are chained. So lookups by class are answered
+ * in constant time. The encoded length of all attributes is updated on every
+ * insertion. Instances of this class are not thread-safe.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+final class IndexedAttributes {
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int NO_INDEX = -1;
+
+    private Attribute[] elements;
+    // index of the next attribute of the same class
+    private int[] nextOfClass;
+    private int size;
+    private int length;
+
+    // open-addressed index: attribute class -> first and last element index
+    private Class<?>[] keys;
+    private int[] firstOfClass;
+    private int[] lastOfClass;
+    private int distinctClasses;
+
+    private final List<Attribute> listView;
+
+    /**
+     * Creates a new empty {@link IndexedAttributes}.
+     */
+    IndexedAttributes() {
+        this.elements = new Attribute[INITIAL_CAPACITY];
+        this.nextOfClass = new int[INITIAL_CAPACITY];
+        this.keys = new Class<?>[2 * INITIAL_CAPACITY];
+        this.firstOfClass = new int[2 * INITIAL_CAPACITY];
+        this.lastOfClass = new int[2 * INITIAL_CAPACITY];
+        this.listView = new ListView();
+    }
+
+    /**
+     * Appends the given attribute.
+     *
+     * @param attribute
+     *            the attribute to be appended
+     */
+    void add(final Attribute attribute) {
+        if (attribute == null) {
+            throw new NullPointerException();
+        }
+        if (this.size == this.elements.length) {
+            this.elements = Arrays.copyOf(this.elements, 2 * this.size);
+            this.nextOfClass = Arrays.copyOf(this.nextOfClass, 2 * this.size);
+        }
+        final int index = this.size;
+        this.elements[index] = attribute;
+        this.nextOfClass[index] = NO_INDEX;
+        this.size++;
+        this.length += AttributeHeader.HEADER_LENGTH + attribute.getLength();
+
+        final int slot = this.slotOf(attribute.getClass());
+        if (this.keys[slot] == null) {
+            this.keys[slot] = attribute.getClass();
+            this.firstOfClass[slot] = index;
+            this.lastOfClass[slot] = index;
+            this.distinctClasses++;
+            if (2 * this.distinctClasses > this.keys.length) {
+                this.rehash();
+            }
+        } else {
+            this.nextOfClass[this.lastOfClass[slot]] = index;
+            this.lastOfClass[slot] = index;
+        }
+    }
+
+    /**
+     * Returns the number of attributes.
+     *
+     * @return the number of attributes
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the encoded length (header and value) of all attributes.
+     *
+     * @return the length of all attributes in bytes
+     */
+    int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Returns the first attribute of the given class.
+     *
+     * @param attributeClass
+     *            the class of the desired attribute
+     * @return the first attribute of the given class or null if there is none
+     */
+    <T extends Attribute> T getFirst(final Class<T> attributeClass) {
+        final int slot = this.slotOf(attributeClass);
+        if (this.keys[slot] == null) {
+            return null;
+        }
+        return attributeClass.cast(this.elements[this.firstOfClass[slot]]);
+    }
+
+    /**
+     * Returns all attributes of the given class in insertion order.
+     *
+     * @param attributeClass
+     *            the class of the desired attributes
+     * @return a new list with the attributes of the given class
+     */
+    <T extends Attribute> List<T> getAll(final Class<T> attributeClass) {
+        final List<T> result = new ArrayList<T>();
+        final int slot = this.slotOf(attributeClass);
+        if (this.keys[slot] != null) {
+            for (int i = this.firstOfClass[slot]; i != NO_INDEX; i = this.nextOfClass[i]) {
+                result.add(attributeClass.cast(this.elements[i]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns an unmodifiable view of all attributes in insertion order.
+     *
+     * @return all attributes as a list
+     */
+    List<Attribute> asList() {
+        return this.listView;
+    }
+
+    private int slotOf(final Class<?> attributeClass) {
+        final int mask = this.keys.length - 1;
+        int slot = System.identityHashCode(attributeClass) & mask;
+        while ((this.keys[slot] != null) && (this.keys[slot] != attributeClass)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        final Class<?>[] oldKeys = this.keys;
+        final int[] oldFirst = this.firstOfClass;
+        final int[] oldLast = this.lastOfClass;
+        this.keys = new Class<?>[2 * oldKeys.length];
+        this.firstOfClass = new int[2 * oldKeys.length];
+        this.lastOfClass = new int[2 * oldKeys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                final int slot = this.slotOf(oldKeys[i]);
+                this.keys[slot] = oldKeys[i];
+                this.firstOfClass[slot] = oldFirst[i];
+                this.lastOfClass[slot] = oldLast[i];
+            }
+        }
+    }
+
+    private final class ListView extends AbstractList<Attribute> {
+        @Override
+        public Attribute get(final int index) {
+            if ((index < 0) || (index >= IndexedAttributes.this.size)) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " //$NON-NLS-1$ //$NON-NLS-2$
+                        + IndexedAttributes.this.size);
+            }
+            return IndexedAttributes.this.elements[index];
+        }
+
+        @Override
+        public int size() {
+            return IndexedAttributes.this.size;
+        }
+    }
+}
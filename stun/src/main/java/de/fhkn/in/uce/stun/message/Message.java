@@ -88,7 +88,9 @@ public interface Message {
     Message addAttribute(Attribute attribute);
 
     /**
-     * Returns all {@link Attribute} of this message.
+     * Returns all {@link Attribute} of this message in the order they were
+     * added. The returned list is an unmodifiable view, attributes have to be
+     * added by {@link #addAttribute(Attribute)}.
      * 
      * @return all attributes of this message as a list
      */
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+import de.fhkn.in.uce.stun.attribute.Attribute;
+import de.fhkn.in.uce.stun.attribute.ImmutableAttribute;
+import de.fhkn.in.uce.stun.header.MessageHeader;
+import de.fhkn.in.uce.stun.header.MessageHeaderDecoder.MessageHeaderImpl;
+import de.fhkn.in.uce.stun.util.ByteBufferOutputStream;
+import de.fhkn.in.uce.stun.util.ByteBufferPool;
+
+/**
+ * Encodes {@link Message} messages in a single pass into a {@link ByteBuffer}.
+ * The length of the message is computed once, afterwards the header and all
+ * attributes are written straight into the buffer, which then gets handed to
+ * the output stream or channel by a single write. The buffers are taken from a
+ * {@link ByteBufferPool}, so encoding a message does not allocate a new buffer
+ * in the common case. Instances of this class are thread-safe.
+ *
+ * <p>
+ * Every encoded message is reported to {@link MessageTraffic} as written
+ * message, however it is encoded and written afterwards, so components which
+ * encode messages by themselves do not have to report them.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class MessageEncoder {
+    /**
+     * The default capacity of pooled buffers, which is large enough for all
+     * messages of the UCE framework.
+     */
+    public static final int DEFAULT_BUFFER_CAPACITY = 1024;
+    /**
+     * The default maximum of idle buffers kept by the pool of an encoder.
+     */
+    public static final int DEFAULT_MAX_POOLED_BUFFERS = 64;
+
+    private static final MessageEncoder SHARED_INSTANCE = new MessageEncoder();
+
+    private final ByteBufferPool bufferPool;
+
+    /**
+     * Creates a new {@link MessageEncoder} which uses a pool of heap buffers
+     * with the default capacity.
+     */
+    public MessageEncoder() {
+        this(new ByteBufferPool(DEFAULT_BUFFER_CAPACITY, DEFAULT_MAX_POOLED_BUFFERS, false));
+    }
+
+    /**
+     * Creates a new {@link MessageEncoder} which takes its buffers from the
+     * given pool.
+     *
+     * @param bufferPool
+     *            the pool of buffers used for encoding
+     * @throws NullPointerException
+     *             if the given pool is null
+     */
+    public MessageEncoder(final ByteBufferPool bufferPool) {
+        if (bufferPool == null) {
+            throw new NullPointerException();
+        }
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Returns a {@link MessageEncoder} with a pool of heap buffers which is
+     * shared by all users of this method.
+     *
+     * @return the shared {@link MessageEncoder}
+     */
+    public static MessageEncoder getSharedInstance() {
+        return SHARED_INSTANCE;
+    }
+
+    /**
+     * Returns the length of the given message including the message header.
+     *
+     * @param message
+     *            the message
+     * @return the length of the encoded message in bytes
+     */
+    public static int getEncodedLength(final Message message) {
+        return MessageHeader.HEADER_LENGTH + message.getLength();
+    }
+
+    /**
+     * Encodes the given message into the given buffer, starting at its current
+     * position. After encoding the position of the buffer is advanced by the
+     * length of the encoded message. If the message does not fit into the
+     * buffer, the position of the buffer is left unchanged.
+     *
+     * @param message
+     *            the message to be encoded
+     * @param buffer
+     *            the buffer to that the message gets written to
+     * @return the given buffer
+     * @throws IOException
+     *             if the message could not be encoded
+     * @throws BufferOverflowException
+     *             if there is not enough space left in the buffer
+     */
+    public static ByteBuffer encode(final Message message, final ByteBuffer buffer) throws IOException {
+        final int length = message.getLength();
+        if (buffer.remaining() < MessageHeader.HEADER_LENGTH + length) {
+            throw new BufferOverflowException();
+        }
+        final ByteBuffer target = (buffer.order() == ByteOrder.BIG_ENDIAN) ? buffer : buffer.duplicate().order(
+                ByteOrder.BIG_ENDIAN);
+        final int start = target.position();
+        try {
+            encode(message, length, target);
+        } catch (final BufferOverflowException e) {
+            target.position(start);
+            throw e;
+        }
+        buffer.position(target.position());
+        return buffer;
+    }
+
+    private static void encode(final Message message, final int length, final ByteBuffer buffer) throws IOException {
+        new MessageHeaderImpl(message.getMessageClass(), message.getMessageMethod(), length,
+                message.getTransactionId()).writeTo(buffer);
+        final List<Attribute> attributes = message.getAttributes();
+        if (!attributes.isEmpty()) {
+            final ByteBufferOutputStream out = new ByteBufferOutputStream(buffer);
+            for (final Attribute a : attributes) {
+                if (a instanceof ImmutableAttribute) {
+                    // cached header and value
+                    ((ImmutableAttribute) a).writeEncodedTo(buffer);
+                } else {
+                    // header
+                    buffer.putShort((short) a.getType().encode());
+                    buffer.putShort((short) a.getLength());
+                    // value
+                    a.writeTo(out);
+                }
+            }
+        }
+        // a failed encoding is not counted, it is repeated by a larger buffer
+        // or by the stream fallback
+        MessageTraffic.written(message.getMessageMethod(), MessageHeader.HEADER_LENGTH + length);
+    }
+
+    /**
+     * Encodes the given message into a new byte array.
+     *
+     * @param message
+     *            the message to be encoded
+     * @return the encoded message
+     * @throws IOException
+     *             if the message could not be encoded
+     */
+    public static byte[] toByteArray(final Message message) throws IOException {
+        final int length = message.getLength();
+        final byte[] encoded = new byte[MessageHeader.HEADER_LENGTH + length];
+        try {
+            encode(message, length, ByteBuffer.wrap(encoded));
+            return encoded;
+        } catch (final BufferOverflowException e) {
+            // an attribute wrote more bytes than its length announced
+            return toByteArrayByStream(message, length);
+        }
+    }
+
+    /**
+     * Encodes the given message by the attribute streams into a new byte
+     * array. This is the fallback for attributes which write more bytes than
+     * their length announces.
+     *
+     * @param message
+     *            the message to be encoded
+     * @param length
+     *            the length of the message without header
+     * @return the encoded message
+     * @throws IOException
+     *             if the message could not be encoded
+     */
+    static byte[] toByteArrayByStream(final Message message, final int length) throws IOException {
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        final DataOutputStream dout = new DataOutputStream(bout);
+        new MessageHeaderImpl(message.getMessageClass(), message.getMessageMethod(), length,
+                message.getTransactionId()).writeTo(bout);
+        for (final Attribute a : message.getAttributes()) {
+            dout.writeShort(a.getType().encode());
+            dout.writeShort(a.getLength());
+            a.writeTo(bout);
+        }
+        final byte[] encoded = bout.toByteArray();
+        MessageTraffic.written(message.getMessageMethod(), encoded.length);
+        return encoded;
+    }
+
+    /**
+     * Encodes the given message into a pooled buffer and writes it by a single
+     * write to the given output stream. The stream gets flushed afterwards.
+     *
+     * @param message
+     *            the message to be written
+     * @param out
+     *            the output stream to that the message gets written to
+     * @throws IOException
+     *             if the message could not be encoded or an I/O error occurs
+     */
+    public void writeTo(final Message message, final OutputStream out) throws IOException {
+        final int length = message.getLength();
+        final ByteBuffer buffer = this.bufferPool.acquire(MessageHeader.HEADER_LENGTH + length);
+        try {
+            if (encodeInto(message, length, buffer)) {
+                writeBuffer(buffer, out);
+            } else {
+                out.write(toByteArrayByStream(message, length));
+            }
+            out.flush();
+        } finally {
+            this.bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Encodes the given message into a pooled buffer and writes it to the
+     * given channel. The method returns after the whole message was written,
+     * so the channel must be in blocking mode.
+     *
+     * @param message
+     *            the message to be written
+     * @param channel
+     *            the channel to that the message gets written to
+     * @throws IOException
+     *             if the message could not be encoded or an I/O error occurs
+     */
+    public void writeTo(final Message message, final WritableByteChannel channel) throws IOException {
+        final int length = message.getLength();
+        final ByteBuffer buffer = this.bufferPool.acquire(MessageHeader.HEADER_LENGTH + length);
+        try {
+            if (encodeInto(message, length, buffer)) {
+                writeBuffer(buffer, channel);
+            } else {
+                writeBuffer(ByteBuffer.wrap(toByteArrayByStream(message, length)), channel);
+            }
+        } finally {
+            this.bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Encodes the given message into the given cleared big-endian buffer and
+     * flips the buffer afterwards.
+     *
+     * @param message
+     *            the message to be encoded
+     * @param length
+     *            the length of the message without header
+     * @param buffer
+     *            the buffer to that the message gets written to
+     * @return true if the message was encoded, false if it did not fit into
+     *         the buffer
+     * @throws IOException
+     *             if the message could not be encoded
+     */
+    static boolean encodeInto(final Message message, final int length, final ByteBuffer buffer) throws IOException {
+        try {
+            encode(message, length, buffer);
+        } catch (final BufferOverflowException e) {
+            buffer.clear();
+            return false;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer to the given output
+     * stream. Heap buffers are written from their backing array without
+     * copying.
+     *
+     * @param buffer
+     *            the buffer to be written
+     * @param out
+     *            the output stream to that the buffer gets written to
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    static void writeBuffer(final ByteBuffer buffer, final OutputStream out) throws IOException {
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+        } else {
+            final byte[] copy = new byte[buffer.remaining()];
+            buffer.get(copy);
+            out.write(copy);
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer to the given channel.
+     *
+     * @param buffer
+     *            the buffer to be written
+     * @param channel
+     *            the channel to that the buffer gets written to
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    static void writeBuffer(final ByteBuffer buffer, final WritableByteChannel channel) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
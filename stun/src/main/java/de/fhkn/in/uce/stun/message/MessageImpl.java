@@ -16,16 +16,14 @@
  */
 package de.fhkn.in.uce.stun.message;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Vector;
 
 import de.fhkn.in.uce.stun.attribute.Attribute;
-import de.fhkn.in.uce.stun.attribute.AttributeHeader;
+import de.fhkn.in.uce.stun.attribute.EncodedAttributes;
 import de.fhkn.in.uce.stun.attribute.ErrorCode;
 import de.fhkn.in.uce.stun.attribute.ErrorCode.STUNErrorCode;
 import de.fhkn.in.uce.stun.header.MessageClass;
@@ -44,7 +42,9 @@ final class MessageImpl implements Message {
     private final MessageMethod messageMethod;
     private final MessageClass messageClass;
     private final byte[] transactionID;
-    private final List<Attribute> attributes;
+    private final IndexedAttributes attributes;
+    // attributes of a received message which are not decoded yet
+    private volatile EncodedAttributes encodedAttributes;
 
     /**
      * Creates a implementation of {@link Message}.
@@ -56,6 +56,24 @@ final class MessageImpl implements Message {
         this(header.getMessageClass(), header.getMethod(), header.getTransactionId());
     }
 
+    /**
+     * Creates a implementation of {@link Message} for a received message whose
+     * attributes get decoded lazily. An attribute is decoded the first time it
+     * is requested by its class, all attributes are decoded as soon as the
+     * list of attributes is requested or the message is modified or encoded.
+     * 
+     * @param header
+     *            the corresponding {@link MessageHeader}
+     * @param encodedAttributes
+     *            the encoded attributes of the message
+     */
+    MessageImpl(final MessageHeader header, final EncodedAttributes encodedAttributes) {
+        this(header);
+        if (encodedAttributes.size() > 0) {
+            this.encodedAttributes = encodedAttributes;
+        }
+    }
+
     /**
      * Creates a implementation of {@link Message}.
      * 
@@ -75,7 +93,7 @@ final class MessageImpl implements Message {
         this.messageMethod = method;
         this.messageClass = messageClass;
         this.transactionID = transactionID;
-        this.attributes = new Vector<Attribute>();
+        this.attributes = new IndexedAttributes();
     }
 
     @Override
@@ -100,90 +118,119 @@ final class MessageImpl implements Message {
 
     @Override
     public int getLength() {
-        int length = 0;
-        for (final Attribute a : this.attributes) {
-            length += AttributeHeader.HEADER_LENGTH;
-            length += a.getLength();
+        final EncodedAttributes encoded = this.encodedAttributes;
+        if (encoded != null) {
+            return encoded.getLength();
         }
-        return length;
+        return this.attributes.getLength();
     }
 
     @Override
     public void writeTo(final OutputStream out) throws IOException {
-        out.write(this.toByteArray());
-        out.flush();
+        MessageEncoder.getSharedInstance().writeTo(this, out);
     }
 
     @Override
     public byte[] toByteArray() {
-        // first write to local buffer to prevent half sent messages caused by
-        // exceptions
-        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        final DataOutputStream dout = new DataOutputStream(bout);
-        // header
         try {
-            this.getHeader().writeTo(bout);
-            // write attributes
-            for (final Attribute a : this.attributes) {
-                // header
-                dout.writeShort(a.getType().encode());
-                dout.writeShort(a.getLength());
-                // value
-                a.writeTo(bout);
-            }
-            return bout.toByteArray();
+            return MessageEncoder.toByteArray(this);
         } catch (final IOException e) {
-            // can't happen because we write on ByteArrayOutputStream
+            // can't happen because we write into a local buffer
             throw new AssertionError();
         }
     }
 
     @Override
     public Message addAttribute(final Attribute attribute) {
+        this.decodeAllAttributes();
         this.attributes.add(attribute);
         return this;
     }
 
     @Override
     public List<Attribute> getAttributes() {
-        return this.attributes;
+        this.decodeAllAttributes();
+        return this.attributes.asList();
     }
 
     @Override
     public <T extends Attribute> List<T> getAttributes(final Class<T> attributeClass) {
-        final List<T> reAttributes = new Vector<T>();
-        for (final Attribute a : this.attributes) {
-            if (a.getClass() == attributeClass) {
-                // this is safe because we check for class equality before
-                @SuppressWarnings("unchecked")
-                final T toAdd = (T) a;
-                reAttributes.add(toAdd);
-            }
+        final EncodedAttributes encoded = this.encodedAttributes;
+        if (encoded != null) {
+            return getAttributes(encoded, attributeClass);
         }
-        return reAttributes;
+        return this.attributes.getAll(attributeClass);
     }
 
     @Override
     public <T extends Attribute> T getAttribute(final Class<T> attributeClass) {
-        for (final Attribute a : this.attributes) {
-            if (a.getClass() == attributeClass) {
-                // this is safe because we check for class equality before
-                @SuppressWarnings("unchecked")
-                final T toReturn = (T) a;
-                return toReturn;
-            }
+        final EncodedAttributes encoded = this.encodedAttributes;
+        if (encoded != null) {
+            return getAttribute(encoded, attributeClass);
         }
-        return null;
+        return this.attributes.getFirst(attributeClass);
     }
 
     @Override
     public <T extends Attribute> boolean hasAttribute(final Class<T> attributeClass) {
-        for (final Attribute a : this.attributes) {
-            if (a.getClass() == attributeClass) {
-                return true;
+        final EncodedAttributes encoded = this.encodedAttributes;
+        if (encoded != null) {
+            return getAttribute(encoded, attributeClass) != null;
+        }
+        return this.attributes.getFirst(attributeClass) != null;
+    }
+
+    private static <T extends Attribute> T getAttribute(final EncodedAttributes encoded,
+            final Class<T> attributeClass) {
+        try {
+            final int index = encoded.indexOf(attributeClass, 0);
+            return (index < 0) ? null : attributeClass.cast(encoded.get(index));
+        } catch (final IOException e) {
+            throw new IllegalStateException("Malformed attribute in message", e); //$NON-NLS-1$
+        }
+    }
+
+    private static <T extends Attribute> List<T> getAttributes(final EncodedAttributes encoded,
+            final Class<T> attributeClass) {
+        final List<T> reAttributes = new ArrayList<T>();
+        try {
+            int index = encoded.indexOf(attributeClass, 0);
+            while (index >= 0) {
+                reAttributes.add(attributeClass.cast(encoded.get(index)));
+                index = encoded.indexOf(attributeClass, index + 1);
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException("Malformed attribute in message", e); //$NON-NLS-1$
+        }
+        return reAttributes;
+    }
+
+    /**
+     * Decodes all attributes of a received message which are not decoded yet
+     * and appends them to the list of attributes.
+     */
+    private void decodeAllAttributes() {
+        if (this.encodedAttributes == null) {
+            return;
+        }
+        synchronized (this) {
+            final EncodedAttributes encoded = this.encodedAttributes;
+            if (encoded == null) {
+                return;
+            }
+            final Attribute[] decoded = new Attribute[encoded.size()];
+            try {
+                for (int i = 0; i < decoded.length; i++) {
+                    decoded[i] = encoded.get(i);
+                }
+            } catch (final IOException e) {
+                throw new IllegalStateException("Malformed attribute in message", e); //$NON-NLS-1$
+            }
+            for (final Attribute a : decoded) {
+                this.attributes.add(a);
             }
+            this.encodedAttributes = null;
         }
-        return false;
     }
 
     // @Override
@@ -231,9 +278,10 @@ final class MessageImpl implements Message {
 
     @Override
     public int hashCode() {
+        this.decodeAllAttributes();
         final int prime = 31;
         int result = 1;
-        result = prime * result + ((this.attributes == null) ? 0 : this.attributes.hashCode());
+        result = prime * result + ((this.attributes == null) ? 0 : this.attributes.asList().hashCode());
         result = prime * result + ((this.messageMethod == null) ? 0 : this.messageMethod.hashCode());
         result = prime * result + ((this.messageClass == null) ? 0 : this.messageClass.hashCode());
         result = prime * result + ((this.transactionID == null) ? 0 : this.transactionID.hashCode());
@@ -252,11 +300,13 @@ final class MessageImpl implements Message {
             return false;
         }
         final MessageImpl other = (MessageImpl) obj;
+        this.decodeAllAttributes();
+        other.decodeAllAttributes();
         if (this.attributes == null) {
             if (other.attributes != null) {
                 return false;
             }
-        } else if (!this.attributes.equals(other.attributes)) {
+        } else if (!this.attributes.asList().equals(other.attributes.asList())) {
             return false;
         }
         if (this.messageMethod == null) {
@@ -16,19 +16,22 @@
  */
 package de.fhkn.in.uce.stun.message;
 
-import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
 
-import de.fhkn.in.uce.stun.attribute.Attribute;
 import de.fhkn.in.uce.stun.attribute.AttributeDecoder;
 import de.fhkn.in.uce.stun.attribute.AttributeTypeDecoder;
+import de.fhkn.in.uce.stun.attribute.EncodedAttributes;
 import de.fhkn.in.uce.stun.header.MessageHeader;
 import de.fhkn.in.uce.stun.header.MessageHeaderDecoder;
 import de.fhkn.in.uce.stun.header.MessageMethodDecoder;
+import de.fhkn.in.uce.stun.util.ByteBufferUtil;
+import de.fhkn.in.uce.stun.util.MessageFormatException;
 
 /**
  * A {@link MessageReader} is used to read and decode an encoded message.
@@ -140,7 +143,41 @@ public final class MessageReader {
      *             if an I/O error occurs
      */
     public Message readSTUNMessage(final byte[] encoded) throws IOException {
-        return this.readSTUNMessage(new ByteArrayInputStream(encoded));
+        return this.readSTUNMessage(ByteBuffer.wrap(encoded));
+    }
+
+    /**
+     * Decodes the STUN message which starts at the current position of the
+     * given buffer. The header and the attribute headers are decoded directly
+     * from the buffer by absolute offsets, so heap and direct buffers can be
+     * used. The attribute region is copied once, the values of the attributes
+     * get decoded lazily when they are requested from the returned message.
+     * After the message is decoded, the position of the buffer is set to the
+     * first byte after the message.
+     * 
+     * @param buffer
+     *            the buffer which contains the byte encoded message
+     * @return the decoded {@link Message}
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws MessageFormatException
+     *             if the message is malformed or the buffer does not contain
+     *             the complete message
+     */
+    public Message readSTUNMessage(final ByteBuffer buffer) throws IOException {
+        // messages are always encoded in network byte order
+        final ByteBuffer encoded = (buffer.order() == ByteOrder.BIG_ENDIAN) ? buffer : buffer.duplicate();
+        final int offset = encoded.position();
+        final MessageHeader header = this.headerDecoder.decodeSTUNMessageHeader(encoded, offset);
+        final int attributesOffset = offset + MessageHeader.HEADER_LENGTH;
+        if (encoded.limit() - attributesOffset < header.getLength()) {
+            throw new MessageFormatException("Attributes exceed the buffer: " + header.getLength()); //$NON-NLS-1$
+        }
+        // the buffer is owned by the caller, so keep a copy of the attributes
+        final byte[] attributeBytes = ByteBufferUtil.getBytes(encoded, attributesOffset, header.getLength());
+        final Message message = this.createMessage(header, attributeBytes);
+        buffer.position(attributesOffset + header.getLength());
+        return message;
     }
 
     /**
@@ -155,17 +192,20 @@ public final class MessageReader {
     public Message readSTUNMessage(final InputStream in) throws IOException {
         final DataInputStream dis = new DataInputStream(in);
         // read 20 bytes for message header
-        final byte[] headerBytes = new byte[20];
+        final byte[] headerBytes = new byte[MessageHeader.HEADER_LENGTH];
         dis.readFully(headerBytes);
         final MessageHeader header = this.headerDecoder.decodeSTUNMessageHeader(headerBytes);
         // read rest of message
         final byte[] attributeBytes = new byte[header.getLength()];
         dis.readFully(attributeBytes);
-        final List<Attribute> attributes = this.attributeDecoder.decodeSTUNAttributes(attributeBytes, header);
-        final Message message = new MessageImpl(header);
-        for (final Attribute a : attributes) {
-            message.addAttribute(a);
-        }
-        return message;
+        return this.createMessage(header, attributeBytes);
+    }
+
+    private Message createMessage(final MessageHeader header, final byte[] attributeBytes)
+            throws MessageFormatException {
+        final EncodedAttributes attributes = this.attributeDecoder.indexSTUNAttributes(ByteBuffer.wrap(attributeBytes),
+                0, attributeBytes.length, header);
+        MessageTraffic.read(header.getMethod(), MessageHeader.HEADER_LENGTH + attributeBytes.length);
+        return new MessageImpl(header, attributes);
     }
 }
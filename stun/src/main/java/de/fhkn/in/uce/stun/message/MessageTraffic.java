@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.message;
+
+import de.fhkn.in.uce.stun.header.MessageMethod;
+
+/**
+ * Holds the {@link MessageTrafficListener} of the VM. Without a listener the
+ * readers and writers only pay a volatile read per message.
+ * 
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ * 
+ */
+public final class MessageTraffic {
+    private static volatile MessageTrafficListener listener;
+
+    private MessageTraffic() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Installs the listener which is notified about all read and written
+     * messages, replacing the previous one.
+     * 
+     * @param newListener
+     *            the listener, null to remove the listener
+     */
+    public static void setListener(final MessageTrafficListener newListener) {
+        listener = newListener;
+    }
+
+    /**
+     * Returns the installed listener.
+     * 
+     * @return the listener or null if no listener is installed
+     */
+    public static MessageTrafficListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Notifies the listener about a read message. Called by the
+     * {@link MessageReader}.
+     * 
+     * @param method
+     *            the method of the message
+     * @param encodedLength
+     *            the number of bytes of the message including the header
+     */
+    static void read(final MessageMethod method, final int encodedLength) {
+        final MessageTrafficListener current = listener;
+        if (current != null) {
+            current.messageRead(method, encodedLength);
+        }
+    }
+
+    /**
+     * Notifies the listener about a written message. Called by the
+     * {@link MessageEncoder} for each encoded message, so all writers of
+     * messages are covered.
+     * 
+     * @param method
+     *            the method of the message
+     * @param encodedLength
+     *            the number of bytes of the message including the header
+     */
+    static void written(final MessageMethod method, final int encodedLength) {
+        final MessageTrafficListener current = listener;
+        if (current != null) {
+            current.messageWritten(method, encodedLength);
+        }
+    }
+}
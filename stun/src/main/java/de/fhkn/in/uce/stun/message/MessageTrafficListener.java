@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.message;
+
+import de.fhkn.in.uce.stun.header.MessageMethod;
+
+/**
+ * Listener which is notified about each message read by a
+ * {@link MessageReader} and each message encoded by the {@link MessageEncoder}
+ * to be written, e.g. to count messages and bytes per method. It is installed by
+ * {@link MessageTraffic#setListener(MessageTrafficListener)}.
+ * 
+ * <p>
+ * The listener is called by the threads which read or write the messages, so
+ * it has to be thread-safe and fast.
+ * </p>
+ * 
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ * 
+ */
+public interface MessageTrafficListener {
+
+    /**
+     * Called after a message is read.
+     * 
+     * @param method
+     *            the method of the message
+     * @param encodedLength
+     *            the number of bytes of the message including the header
+     */
+    void messageRead(MessageMethod method, int encodedLength);
+
+    /**
+     * Called after a message is encoded to be written.
+     * 
+     * @param method
+     *            the method of the message
+     * @param encodedLength
+     *            the number of bytes of the message including the header
+     */
+    void messageWritten(MessageMethod method, int encodedLength);
+}
@@ -18,16 +18,36 @@ package de.fhkn.in.uce.stun.message;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.fhkn.in.uce.stun.header.MessageHeader;
 
 /**
  * Helper class to write {@link Message} messages synchronized to an output
- * stream.
+ * stream or a channel. The writer keeps one encoding buffer for its whole
+ * lifetime, so each message is encoded in a single pass into this buffer and
+ * handed to the stream or channel by a single write without allocating new
+ * buffers per message. The buffer grows if a larger message has to be
+ * written.
+ * 
+ * <p>
+ * Writes are serialized by a {@link ReentrantLock} instead of the intrinsic
+ * lock, so a virtual thread which blocks in a write does not pin its carrier
+ * thread.
+ * </p>
  * 
  * @author Daniel Maier, Alexander Diener (aldiener@htwg-konstanz.de)
  * 
  */
 public final class MessageWriter {
     private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final boolean direct;
+    private final Lock writeLock = new ReentrantLock();
+    private ByteBuffer buffer;
 
     /**
      * Creates a new {@link MessageWriter}.
@@ -36,19 +56,70 @@ public final class MessageWriter {
      *            the output stream to that messages should be written to
      */
     public MessageWriter(final OutputStream out) {
+        this(out, null, false);
+    }
+
+    /**
+     * Creates a new {@link MessageWriter} which writes to the given channel.
+     * The channel must be in blocking mode.
+     * 
+     * @param channel
+     *            the channel to that messages should be written to
+     * @param direct
+     *            true if the writer should encode into a direct buffer,
+     *            otherwise false
+     */
+    public MessageWriter(final WritableByteChannel channel, final boolean direct) {
+        this(null, channel, direct);
+    }
+
+    private MessageWriter(final OutputStream out, final WritableByteChannel channel, final boolean direct) {
         this.out = out;
+        this.channel = channel;
+        this.direct = direct;
+        this.buffer = this.allocate(MessageEncoder.DEFAULT_BUFFER_CAPACITY);
     }
 
     /**
-     * Writes the given message synchronized on the intrinsic lock of this
-     * {@link MessageWriter} object to the output stream.
+     * Writes the given message to the output stream or channel. Concurrent
+     * writes of the same {@link MessageWriter} are serialized.
      * 
      * @param message
      *            the {@link Message} to be written
      * @throws IOException
      *             if an I/O error occurs
      */
-    public synchronized void writeMessage(final Message message) throws IOException {
-        message.writeTo(this.out);
+    public void writeMessage(final Message message) throws IOException {
+        this.writeLock.lock();
+        try {
+            this.write(message);
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    private void write(final Message message) throws IOException {
+        final int length = message.getLength();
+        final int encodedLength = MessageHeader.HEADER_LENGTH + length;
+        if (this.buffer.capacity() < encodedLength) {
+            this.buffer = this.allocate(encodedLength);
+        }
+        this.buffer.clear();
+        final ByteBuffer toWrite;
+        if (MessageEncoder.encodeInto(message, length, this.buffer)) {
+            toWrite = this.buffer;
+        } else {
+            toWrite = ByteBuffer.wrap(MessageEncoder.toByteArrayByStream(message, length));
+        }
+        if (this.channel != null) {
+            MessageEncoder.writeBuffer(toWrite, this.channel);
+        } else {
+            MessageEncoder.writeBuffer(toWrite, this.out);
+            this.out.flush();
+        }
+    }
+
+    private ByteBuffer allocate(final int capacity) {
+        return this.direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
     }
 }
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.message;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import de.fhkn.in.uce.stun.header.MessageHeader;
+import de.fhkn.in.uce.stun.util.MessageFormatException;
+
+/**
+ * Incremental decoder for STUN messages which arrive in arbitrary fragments,
+ * e.g. from a non-blocking {@link ReadableByteChannel}. The decoder collects
+ * the bytes of the current message until the header and the complete body are
+ * available and then decodes the message by the given {@link MessageReader},
+ * so the same header and attribute decoders as for blocking streams are used.
+ * The length of a message is checked against a configurable maximum as soon
+ * as its header is complete.
+ *
+ * <p>
+ * A decoder holds the state of a single connection and is not thread-safe.
+ * </p>
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class StunFrameDecoder {
+    /**
+     * The maximum length of a STUN message, which is limited by the 16 bit
+     * length field of the message header.
+     */
+    public static final int DEFAULT_MAX_MESSAGE_LENGTH = MessageHeader.HEADER_LENGTH + 0xFFFF;
+
+    private static final int INITIAL_BUFFER_CAPACITY = 512;
+    private static final int MAX_RETAINED_BUFFER_CAPACITY = 4096;
+    private static final int LENGTH_OFFSET = 2;
+    private static final int MAGIC_COOKIE_OFFSET = 4;
+
+    private final MessageReader messageReader;
+    private final int maxMessageLength;
+    private ByteBuffer frame;
+    // the length of the current message, or -1 while its header is incomplete
+    private int messageLength;
+
+    /**
+     * Creates a new {@link StunFrameDecoder} which accepts messages up to the
+     * {@link #DEFAULT_MAX_MESSAGE_LENGTH}.
+     *
+     * @param messageReader
+     *            the reader which decodes complete messages
+     */
+    public StunFrameDecoder(final MessageReader messageReader) {
+        this(messageReader, DEFAULT_MAX_MESSAGE_LENGTH);
+    }
+
+    /**
+     * Creates a new {@link StunFrameDecoder}.
+     *
+     * @param messageReader
+     *            the reader which decodes complete messages
+     * @param maxMessageLength
+     *            the maximum length of a message including its header
+     * @throws NullPointerException
+     *             if the given reader is null
+     * @throws IllegalArgumentException
+     *             if the maximum length is smaller than a message header
+     */
+    public StunFrameDecoder(final MessageReader messageReader, final int maxMessageLength) {
+        if (messageReader == null) {
+            throw new NullPointerException();
+        }
+        if (maxMessageLength < MessageHeader.HEADER_LENGTH) {
+            throw new IllegalArgumentException("Maximum message length is too small: " //$NON-NLS-1$
+                    + maxMessageLength);
+        }
+        this.messageReader = messageReader;
+        this.maxMessageLength = maxMessageLength;
+        this.frame = ByteBuffer.allocate(Math.min(INITIAL_BUFFER_CAPACITY, maxMessageLength));
+        this.reset();
+    }
+
+    /**
+     * Consumes bytes of the given buffer until a message is complete or the
+     * buffer has no bytes left. At most one message is consumed, bytes of
+     * following messages are left in the buffer, so the method should be
+     * called again as long as it returns a message.
+     *
+     * @param in
+     *            the buffer with the received bytes
+     * @return the decoded message, or null if the message is not complete yet
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws MessageFormatException
+     *             if the message is malformed or exceeds the maximum length
+     */
+    public Message decode(final ByteBuffer in) throws IOException {
+        while (in.hasRemaining()) {
+            final int toCopy = Math.min(this.frame.remaining(), in.remaining());
+            final ByteBuffer slice = in.duplicate();
+            slice.limit(slice.position() + toCopy);
+            this.frame.put(slice);
+            in.position(in.position() + toCopy);
+            final Message message = this.frameCompleted();
+            if (message != null) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the missing bytes of the current message from the given channel.
+     * Only the bytes of the current message are read, so no bytes of following
+     * messages have to be buffered. With a non-blocking channel the method
+     * returns null if not all bytes of the message are available yet.
+     *
+     * @param channel
+     *            the channel to read from
+     * @return the decoded message, or null if the message is not complete yet
+     * @throws EOFException
+     *             if the end of the stream is reached
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws MessageFormatException
+     *             if the message is malformed or exceeds the maximum length
+     */
+    public Message read(final ReadableByteChannel channel) throws IOException {
+        while (true) {
+            final int read = channel.read(this.frame);
+            if (read < 0) {
+                throw new EOFException("End of stream reached after " + this.frame.position() //$NON-NLS-1$
+                        + " bytes of a message"); //$NON-NLS-1$
+            }
+            final Message message = this.frameCompleted();
+            if (message != null) {
+                return message;
+            }
+            if (read == 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the decoder holds the bytes of an incomplete message.
+     *
+     * @return true if a message is partially received, otherwise false
+     */
+    public boolean hasPartialMessage() {
+        return this.frame.position() > 0;
+    }
+
+    /**
+     * Discards the bytes of a partially received message.
+     */
+    public void reset() {
+        if (this.frame.capacity() > MAX_RETAINED_BUFFER_CAPACITY) {
+            this.frame = ByteBuffer.allocate(Math.min(INITIAL_BUFFER_CAPACITY, this.maxMessageLength));
+        }
+        this.frame.clear();
+        this.frame.limit(MessageHeader.HEADER_LENGTH);
+        this.messageLength = -1;
+    }
+
+    private Message frameCompleted() throws IOException {
+        if (this.frame.hasRemaining()) {
+            return null;
+        }
+        if (this.messageLength < 0) {
+            this.headerCompleted();
+            if (this.frame.hasRemaining()) {
+                return null;
+            }
+        }
+        this.frame.flip();
+        try {
+            return this.messageReader.readSTUNMessage(this.frame);
+        } finally {
+            this.reset();
+        }
+    }
+
+    private void headerCompleted() throws MessageFormatException {
+        if (this.frame.getInt(MAGIC_COOKIE_OFFSET) != MessageHeader.MAGIC_COOKIE) {
+            this.reset();
+            throw new MessageFormatException("The magic cookie is wrong"); //$NON-NLS-1$
+        }
+        final int length = MessageHeader.HEADER_LENGTH + (this.frame.getShort(LENGTH_OFFSET) & 0xFFFF);
+        if (length > this.maxMessageLength) {
+            this.reset();
+            throw new MessageFormatException("Message exceeds the maximum length: " + length); //$NON-NLS-1$
+        }
+        if (length > this.frame.capacity()) {
+            final ByteBuffer larger = ByteBuffer.allocate(length);
+            this.frame.flip();
+            larger.put(this.frame);
+            this.frame = larger;
+        }
+        this.messageLength = length;
+        this.frame.limit(length);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.util;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link OutputStream} which writes directly into a {@link ByteBuffer},
+ * starting at the current position of the buffer. The stream can be pointed to
+ * another buffer by {@link #setBuffer(ByteBuffer)}, so a single instance can be
+ * reused for many encodings. Writing beyond the limit of the buffer throws a
+ * {@link java.nio.BufferOverflowException}. Instances are not thread-safe.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class ByteBufferOutputStream extends OutputStream {
+    private ByteBuffer buffer;
+
+    /**
+     * Creates a new {@link ByteBufferOutputStream} which writes to the given
+     * buffer.
+     *
+     * @param buffer
+     *            the buffer to write to
+     */
+    public ByteBufferOutputStream(final ByteBuffer buffer) {
+        this.setBuffer(buffer);
+    }
+
+    /**
+     * Sets the buffer to which this stream writes.
+     *
+     * @param buffer
+     *            the buffer to write to
+     * @throws NullPointerException
+     *             if the given buffer is null
+     */
+    public void setBuffer(final ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new NullPointerException();
+        }
+        this.buffer = buffer;
+    }
+
+    /**
+     * Returns the buffer to which this stream writes.
+     *
+     * @return the buffer of this stream
+     */
+    public ByteBuffer getBuffer() {
+        return this.buffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.nio.BufferOverflowException
+     *             if there is no space left in the buffer
+     */
+    @Override
+    public void write(final int b) {
+        this.buffer.put((byte) b);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws java.nio.BufferOverflowException
+     *             if there is not enough space left in the buffer
+     */
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+        this.buffer.put(b, off, len);
+    }
+}
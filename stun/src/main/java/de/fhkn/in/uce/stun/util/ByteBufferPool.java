@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of equally sized {@link ByteBuffer}s. Buffers are handed out
+ * cleared by {@link #acquire()} and should be given back by
+ * {@link #release(ByteBuffer)} after use. If the pool is empty a new buffer
+ * gets allocated; buffers which are released while the pool is full are left
+ * to the garbage collector. This class is thread-safe.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class ByteBufferPool {
+    private final int bufferCapacity;
+    private final int maxPooledBuffers;
+    private final boolean direct;
+    private final Queue<ByteBuffer> buffers;
+    private final AtomicInteger pooledBuffers;
+
+    /**
+     * Creates a new {@link ByteBufferPool}.
+     *
+     * @param bufferCapacity
+     *            the capacity of the buffers of this pool
+     * @param maxPooledBuffers
+     *            the maximum number of idle buffers which are kept by this pool
+     * @param direct
+     *            true if the pool should hand out direct buffers, false for
+     *            heap buffers
+     * @throws IllegalArgumentException
+     *             if the capacity is not positive or the maximum number of
+     *             pooled buffers is negative
+     */
+    public ByteBufferPool(final int bufferCapacity, final int maxPooledBuffers, final boolean direct) {
+        if (bufferCapacity <= 0) {
+            throw new IllegalArgumentException("Buffer capacity must be positive, but was: " + bufferCapacity); //$NON-NLS-1$
+        }
+        if (maxPooledBuffers < 0) {
+            throw new IllegalArgumentException("Maximum of pooled buffers must not be negative, but was: " //$NON-NLS-1$
+                    + maxPooledBuffers);
+        }
+        this.bufferCapacity = bufferCapacity;
+        this.maxPooledBuffers = maxPooledBuffers;
+        this.direct = direct;
+        this.buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+        this.pooledBuffers = new AtomicInteger();
+    }
+
+    /**
+     * Returns the capacity of the buffers of this pool.
+     *
+     * @return the capacity of the buffers
+     */
+    public int getBufferCapacity() {
+        return this.bufferCapacity;
+    }
+
+    /**
+     * Returns whether this pool hands out direct buffers.
+     *
+     * @return true if the buffers of this pool are direct, otherwise false
+     */
+    public boolean isDirect() {
+        return this.direct;
+    }
+
+    /**
+     * Returns a cleared big-endian buffer of this pool or a newly allocated one
+     * if the pool is empty.
+     *
+     * @return a cleared buffer with the capacity of this pool
+     */
+    public ByteBuffer acquire() {
+        final ByteBuffer buffer = this.buffers.poll();
+        if (buffer == null) {
+            return this.allocate(this.bufferCapacity);
+        }
+        this.pooledBuffers.decrementAndGet();
+        buffer.clear();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Returns a cleared buffer which has at least the given capacity. Requests
+     * which exceed the capacity of this pool are served by a newly allocated
+     * buffer.
+     *
+     * @param minCapacity
+     *            the minimum capacity of the returned buffer
+     * @return a cleared buffer with at least the given capacity
+     */
+    public ByteBuffer acquire(final int minCapacity) {
+        if (minCapacity > this.bufferCapacity) {
+            return this.allocate(minCapacity);
+        }
+        return this.acquire();
+    }
+
+    /**
+     * Gives the given buffer back to this pool. Buffers which were not handed
+     * out by this pool are ignored.
+     *
+     * @param buffer
+     *            the buffer to be released
+     */
+    public void release(final ByteBuffer buffer) {
+        if ((buffer == null) || (buffer.capacity() != this.bufferCapacity) || (buffer.isDirect() != this.direct)) {
+            return;
+        }
+        if (this.pooledBuffers.incrementAndGet() > this.maxPooledBuffers) {
+            this.pooledBuffers.decrementAndGet();
+            return;
+        }
+        this.buffers.offer(buffer);
+    }
+
+    private ByteBuffer allocate(final int capacity) {
+        return this.direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.util;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Helper methods to read byte encoded message parts from a {@link ByteBuffer}
+ * by absolute offsets. The position and limit of the buffers are never
+ * changed, so the same buffer can be shared by all decoders of a message.
+ *
+ * @author Alexander Diener (aldiener@htwg-konstanz.de)
+ *
+ */
+public final class ByteBufferUtil {
+
+    private ByteBufferUtil() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Checks that the value of an attribute holds at least the given number of
+     * bytes. A decoder which reads fixed widths calls it first, so it does not
+     * read the bytes of the following attribute or beyond the buffer.
+     *
+     * @param length
+     *            the length of the attribute value from its header
+     * @param minLength
+     *            the number of bytes the decoder reads
+     * @throws MessageFormatException
+     *             if the value of the attribute is shorter
+     */
+    public static void checkLength(final int length, final int minLength) throws MessageFormatException {
+        if (length < minLength) {
+            throw new MessageFormatException("Attribute value has " + length //$NON-NLS-1$
+                    + " bytes, expected at least " + minLength); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Copies {@code length} bytes starting at the absolute {@code offset} of
+     * the given buffer into a new byte array.
+     *
+     * @param buffer
+     *            the buffer to read from
+     * @param offset
+     *            the absolute offset of the first byte
+     * @param length
+     *            the number of bytes to copy
+     * @return a new byte array with the copied bytes
+     */
+    public static byte[] getBytes(final ByteBuffer buffer, final int offset, final int length) {
+        final byte[] result = new byte[length];
+        get(buffer, offset, result);
+        return result;
+    }
+
+    /**
+     * Fills the given byte array with the bytes starting at the absolute
+     * {@code offset} of the given buffer.
+     *
+     * @param buffer
+     *            the buffer to read from
+     * @param offset
+     *            the absolute offset of the first byte
+     * @param dst
+     *            the byte array to fill
+     */
+    public static void get(final ByteBuffer buffer, final int offset, final byte[] dst) {
+        if (buffer.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + offset, dst, 0, dst.length);
+        } else {
+            for (int i = 0; i < dst.length; i++) {
+                dst[i] = buffer.get(offset + i);
+            }
+        }
+    }
+
+    /**
+     * Decodes {@code length} bytes starting at the absolute {@code offset} of
+     * the given buffer to a string. Heap buffers are decoded directly from
+     * their backing array.
+     *
+     * @param buffer
+     *            the buffer to read from
+     * @param offset
+     *            the absolute offset of the first byte
+     * @param length
+     *            the number of bytes to decode
+     * @param charsetName
+     *            the name of the encoding of the bytes
+     * @return the decoded string
+     * @throws UnsupportedEncodingException
+     *             if the encoding is not supported
+     */
+    public static String getString(final ByteBuffer buffer, final int offset, final int length,
+            final String charsetName) throws UnsupportedEncodingException {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, charsetName);
+        }
+        return new String(getBytes(buffer, offset, length), charsetName);
+    }
+}
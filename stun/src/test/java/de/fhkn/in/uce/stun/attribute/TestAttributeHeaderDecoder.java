@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.attribute;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhkn.in.uce.stun.attribute.rfc3489.Rfc3489AttributeType;
+import de.fhkn.in.uce.stun.attribute.rfc3489.Rfc3489AttributeTypeDecoder;
+import de.fhkn.in.uce.stun.util.MessageFormatException;
+
+public final class TestAttributeHeaderDecoder {
+    private List<AttributeTypeDecoder> customDecoders;
+    private AttributeHeaderDecoder decoder;
+
+    @Before
+    public void setUp() {
+        this.customDecoders = new ArrayList<AttributeTypeDecoder>();
+        this.customDecoders.add(new Rfc3489AttributeTypeDecoder());
+        this.decoder = new AttributeHeaderDecoder(this.customDecoders);
+    }
+
+    @Test
+    public void testDecodeCommonAttributeType() throws MessageFormatException {
+        final AttributeHeader header = this.decoder.decodeSTUNAttributeHeader(encode(0x0020, 8), 0);
+        assertSame(STUNAttributeType.XOR_MAPPED_ADDRESS, header.getType());
+        assertEquals(8, header.getLength());
+    }
+
+    @Test
+    public void testDecodeCustomAttributeType() throws MessageFormatException {
+        final AttributeHeader header = this.decoder.decodeSTUNAttributeHeader(encode(0x0005, 8), 0);
+        assertSame(Rfc3489AttributeType.CHANGED_ADDRESS, header.getType());
+    }
+
+    @Test
+    public void testDecodeUnknownAttributeType() throws MessageFormatException {
+        final AttributeHeader header = this.decoder.decodeSTUNAttributeHeader(encode(0xFFFE, 0), 0);
+        assertSame(STUNAttributeType.UNKNOWN_ATTRIBUTES, header.getType());
+    }
+
+    @Test
+    public void testCompiledTablesAreShared() {
+        final List<AttributeTypeDecoder> decoders = new ArrayList<AttributeTypeDecoder>();
+        decoders.add(new STUNAttributeTypeDecoder());
+        decoders.addAll(this.customDecoders);
+        assertSame(AttributeTypeTable.forDecoders(decoders), AttributeTypeTable.forDecoders(decoders));
+    }
+
+    private static ByteBuffer encode(final int type, final int length) {
+        final ByteBuffer buffer = ByteBuffer.allocate(AttributeHeader.HEADER_LENGTH);
+        buffer.putShort((short) type);
+        buffer.putShort((short) length);
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhkn.in.uce.stun.attribute.Attribute;
+import de.fhkn.in.uce.stun.attribute.AttributeHeader;
+import de.fhkn.in.uce.stun.attribute.ChangeRequest;
+import de.fhkn.in.uce.stun.attribute.EndpointClass;
+import de.fhkn.in.uce.stun.attribute.EndpointClass.EndpointCategory;
+import de.fhkn.in.uce.stun.attribute.ErrorCode;
+import de.fhkn.in.uce.stun.attribute.ErrorCode.STUNErrorCode;
+import de.fhkn.in.uce.stun.attribute.MappedAddress;
+import de.fhkn.in.uce.stun.attribute.OtherAddress;
+import de.fhkn.in.uce.stun.attribute.Software;
+import de.fhkn.in.uce.stun.attribute.Token;
+import de.fhkn.in.uce.stun.attribute.Username;
+import de.fhkn.in.uce.stun.attribute.XorMappedAddress;
+import de.fhkn.in.uce.stun.attribute.rfc3489.ChangedAddress;
+
+public final class TestIndexedAttributes {
+    private final InetSocketAddress endpoint = new InetSocketAddress("192.168.1.10", 4711); //$NON-NLS-1$
+    private List<Attribute> added;
+    private IndexedAttributes attributes;
+
+    @Before
+    public void setUp() throws IOException {
+        this.added = new ArrayList<Attribute>();
+        this.added.add(new Username("user")); //$NON-NLS-1$
+        this.added.add(new Token(UUID.randomUUID()));
+        this.added.add(new XorMappedAddress(this.endpoint));
+        this.added.add(new MappedAddress(this.endpoint));
+        this.added.add(new Token(UUID.randomUUID()));
+        this.added.add(new OtherAddress(this.endpoint));
+        this.added.add(new ChangeRequest());
+        this.added.add(new EndpointClass(EndpointCategory.PRIVATE));
+        this.added.add(new Software("uce")); //$NON-NLS-1$
+        this.added.add(new ErrorCode(STUNErrorCode.BAD_REQUEST, "bad request")); //$NON-NLS-1$
+        this.added.add(new Token(UUID.randomUUID()));
+        this.attributes = new IndexedAttributes();
+        for (final Attribute a : this.added) {
+            this.attributes.add(a);
+        }
+    }
+
+    @Test
+    public void testKeepsInsertionOrder() {
+        assertEquals(this.added.size(), this.attributes.size());
+        assertEquals(this.added, this.attributes.asList());
+    }
+
+    @Test
+    public void testGetFirst() {
+        assertSame(this.added.get(1), this.attributes.getFirst(Token.class));
+        assertSame(this.added.get(9), this.attributes.getFirst(ErrorCode.class));
+        assertNull(this.attributes.getFirst(ChangedAddress.class));
+    }
+
+    @Test
+    public void testGetAll() {
+        final List<Token> tokens = this.attributes.getAll(Token.class);
+        assertEquals(3, tokens.size());
+        assertSame(this.added.get(1), tokens.get(0));
+        assertSame(this.added.get(4), tokens.get(1));
+        assertSame(this.added.get(10), tokens.get(2));
+        assertEquals(0, this.attributes.getAll(ChangedAddress.class).size());
+    }
+
+    @Test
+    public void testLength() {
+        int expected = 0;
+        for (final Attribute a : this.added) {
+            expected += AttributeHeader.HEADER_LENGTH + a.getLength();
+        }
+        assertEquals(expected, this.attributes.getLength());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testListViewIsUnmodifiable() {
+        this.attributes.asList().add(new ChangeRequest());
+    }
+}
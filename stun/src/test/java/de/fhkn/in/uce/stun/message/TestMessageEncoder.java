@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.message;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhkn.in.uce.stun.attribute.EndpointClass;
+import de.fhkn.in.uce.stun.attribute.EndpointClass.EndpointCategory;
+import de.fhkn.in.uce.stun.attribute.ErrorCode.STUNErrorCode;
+import de.fhkn.in.uce.stun.attribute.OtherAddress;
+import de.fhkn.in.uce.stun.attribute.Token;
+import de.fhkn.in.uce.stun.attribute.Username;
+import de.fhkn.in.uce.stun.attribute.XorMappedAddress;
+import de.fhkn.in.uce.stun.header.MessageHeader;
+import de.fhkn.in.uce.stun.header.MessageMethod;
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.util.ByteBufferPool;
+
+public final class TestMessageEncoder {
+    private Message message;
+    private byte[] expected;
+
+    @Before
+    public void setUp() throws IOException {
+        this.message = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.CONNECTION_REQUEST);
+        this.message.addAttribute(new Username("user")); //$NON-NLS-1$
+        this.message.addAttribute(new XorMappedAddress(new InetSocketAddress("192.168.1.10", 4711))); //$NON-NLS-1$
+        this.message.addAttribute(new Token(UUID.randomUUID()));
+        this.expected = MessageEncoder.toByteArrayByStream(this.message, this.message.getLength());
+    }
+
+    @Test
+    public void testToByteArray() {
+        assertArrayEquals(this.expected, this.message.toByteArray());
+        assertEquals(MessageEncoder.getEncodedLength(this.message), this.expected.length);
+    }
+
+    @Test
+    public void testEncodedMessagesAreCountedOnce() throws IOException {
+        final CountingListener listener = new CountingListener();
+        final MessageTrafficListener previous = MessageTraffic.getListener();
+        MessageTraffic.setListener(listener);
+        try {
+            this.message.toByteArray();
+            this.message.writeTo(new ByteArrayOutputStream());
+            new MessageWriter(new ByteArrayOutputStream()).writeMessage(this.message);
+            final ByteBuffer tooSmall = ByteBuffer.allocate(this.expected.length - 1);
+            try {
+                MessageEncoder.encode(this.message, tooSmall);
+            } catch (final BufferOverflowException e) {
+                // not counted, the caller retries with a larger buffer
+            }
+            MessageEncoder.encode(this.message, ByteBuffer.allocate(this.expected.length));
+        } finally {
+            MessageTraffic.setListener(previous);
+        }
+        assertEquals(4, listener.messages);
+        assertEquals(4 * this.expected.length, listener.bytes);
+    }
+
+    @Test
+    public void testEncodeIntoLittleEndianBuffer() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(this.expected.length + 5).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(5);
+        MessageEncoder.encode(this.message, buffer);
+        assertEquals(this.expected.length + 5, buffer.position());
+        final byte[] encoded = new byte[this.expected.length];
+        buffer.position(5);
+        buffer.get(encoded);
+        assertArrayEquals(this.expected, encoded);
+    }
+
+    @Test(expected = java.nio.BufferOverflowException.class)
+    public void testEncodeIntoTooSmallBuffer() throws IOException {
+        MessageEncoder.encode(this.message, ByteBuffer.allocate(this.expected.length - 1));
+    }
+
+    @Test
+    public void testWriteToChannelWithDirectPool() throws IOException {
+        final MessageEncoder encoder = new MessageEncoder(new ByteBufferPool(MessageHeader.HEADER_LENGTH, 1, true));
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        encoder.writeTo(this.message, Channels.newChannel(bout));
+        encoder.writeTo(this.message, Channels.newChannel(bout));
+        final byte[] twice = bout.toByteArray();
+        assertEquals(2 * this.expected.length, twice.length);
+        final ByteBuffer written = ByteBuffer.wrap(twice);
+        final byte[] encoded = new byte[this.expected.length];
+        written.get(encoded);
+        assertArrayEquals(this.expected, encoded);
+        written.get(encoded);
+        assertArrayEquals(this.expected, encoded);
+    }
+
+    @Test
+    public void testWriteFailureResponse() throws IOException {
+        final Message failureResponse = this.message.buildFailureResponse(STUNErrorCode.BAD_REQUEST,
+                "bad request"); //$NON-NLS-1$
+        final byte[] legacy = MessageEncoder.toByteArrayByStream(failureResponse, failureResponse.getLength());
+        assertArrayEquals(legacy, failureResponse.toByteArray());
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        failureResponse.writeTo(bout);
+        assertArrayEquals(legacy, bout.toByteArray());
+    }
+
+    @Test
+    public void testMessageWriterReusesBuffer() throws IOException {
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        final MessageWriter writer = new MessageWriter(bout);
+        writer.writeMessage(this.message);
+        writer.writeMessage(this.message);
+        final MessageReader reader = MessageReader.createMessageReader();
+        final ByteBuffer written = ByteBuffer.wrap(bout.toByteArray());
+        assertArrayEquals(this.message.getTransactionId(), reader.readSTUNMessage(written).getTransactionId());
+        assertArrayEquals(this.message.getTransactionId(), reader.readSTUNMessage(written).getTransactionId());
+        assertEquals(0, written.remaining());
+    }
+
+    @Test
+    public void testMessageWriterWithChannel() throws IOException {
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        final MessageWriter writer = new MessageWriter(Channels.newChannel(bout), true);
+        writer.writeMessage(this.message);
+        assertArrayEquals(this.expected, bout.toByteArray());
+    }
+
+    @Test
+    public void testSharedImmutableAttributes() throws IOException {
+        final OtherAddress otherAddress = new OtherAddress(new InetSocketAddress("192.168.1.20", 3478)); //$NON-NLS-1$
+        final EndpointClass endpointClass = new EndpointClass(EndpointCategory.RELAY);
+        for (int i = 0; i < 2; i++) {
+            final Message response = this.message.buildSuccessResponse();
+            response.addAttribute(otherAddress);
+            response.addAttribute(endpointClass);
+            final byte[] encoded = response.toByteArray();
+            assertArrayEquals(MessageEncoder.toByteArrayByStream(response, response.getLength()), encoded);
+            final Message decoded = MessageReader.createMessageReader().readSTUNMessage(ByteBuffer.wrap(encoded));
+            assertEquals(otherAddress.getEndpoint(), decoded.getAttribute(OtherAddress.class).getEndpoint());
+            assertEquals(EndpointCategory.RELAY, decoded.getAttribute(EndpointClass.class).getEndpointCategory());
+        }
+    }
+
+    private static final class CountingListener implements MessageTrafficListener {
+        private int messages;
+        private int bytes;
+
+        @Override
+        public void messageRead(final MessageMethod method, final int encodedLength) {
+            // only written messages are counted
+        }
+
+        @Override
+        public void messageWritten(final MessageMethod method, final int encodedLength) {
+            this.messages++;
+            this.bytes += encodedLength;
+        }
+    }
+}
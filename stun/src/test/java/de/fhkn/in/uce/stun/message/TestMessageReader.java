@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.message;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhkn.in.uce.stun.attribute.Attribute;
+import de.fhkn.in.uce.stun.attribute.ErrorCode;
+import de.fhkn.in.uce.stun.attribute.STUNAttributeType;
+import de.fhkn.in.uce.stun.attribute.Token;
+import de.fhkn.in.uce.stun.attribute.Username;
+import de.fhkn.in.uce.stun.attribute.XorMappedAddress;
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.util.MessageFormatException;
+
+public final class TestMessageReader {
+    private static final String USERNAME = "user"; //$NON-NLS-1$
+    private final InetSocketAddress endpoint = new InetSocketAddress("192.168.1.10", 4711); //$NON-NLS-1$
+    private final UUID token = UUID.randomUUID();
+    private MessageReader reader;
+    private Message message;
+
+    @Before
+    public void setUp() throws IOException {
+        this.reader = MessageReader.createMessageReader();
+        this.message = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.CONNECTION_REQUEST);
+        this.message.addAttribute(new Username(USERNAME));
+        this.message.addAttribute(new XorMappedAddress(this.endpoint));
+        this.message.addAttribute(new Token(this.token));
+    }
+
+    @Test
+    public void testReadFromInputStream() throws IOException {
+        final Message decoded = this.reader.readSTUNMessage(new ByteArrayInputStream(this.message.toByteArray()));
+        this.assertDecodedMessage(decoded);
+    }
+
+    @Test
+    public void testReadFromHeapBuffer() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(this.message.toByteArray());
+        final Message decoded = this.reader.readSTUNMessage(buffer);
+        this.assertDecodedMessage(decoded);
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void testReadConsecutiveMessagesFromDirectBuffer() throws IOException {
+        final byte[] encoded = this.message.toByteArray();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(2 * encoded.length + 7);
+        buffer.position(7);
+        buffer.put(encoded).put(encoded);
+        buffer.flip().position(7);
+
+        this.assertDecodedMessage(this.reader.readSTUNMessage(buffer));
+        assertEquals(encoded.length, buffer.remaining());
+        this.assertDecodedMessage(this.reader.readSTUNMessage(buffer));
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void testReadIPv6XorMappedAddress() throws IOException {
+        final Message ipv6Message = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.SUCCESS_RESPONSE,
+                STUNMessageMethod.BINDING);
+        final int transactionId = ByteBuffer.wrap(ipv6Message.getHeader().getTransactionId()).getInt();
+        final InetSocketAddress ipv6Endpoint = new InetSocketAddress("2001:db8::1", 4711); //$NON-NLS-1$
+        ipv6Message.addAttribute(new XorMappedAddress(ipv6Endpoint, transactionId));
+        final Message decoded = this.reader.readSTUNMessage(ipv6Message.toByteArray());
+        final InetSocketAddress decodedEndpoint = decoded.getAttribute(XorMappedAddress.class).getEndpoint();
+        assertTrue(decodedEndpoint.getAddress() instanceof Inet6Address);
+        assertEquals(4711, decodedEndpoint.getPort());
+    }
+
+    @Test(expected = MessageFormatException.class)
+    public void testReadTruncatedBuffer() throws IOException {
+        final byte[] encoded = this.message.toByteArray();
+        this.reader.readSTUNMessage(ByteBuffer.wrap(encoded, 0, encoded.length - 1));
+    }
+
+    @Test
+    public void testLazilyDecodedMessage() throws IOException {
+        final byte[] encoded = this.message.toByteArray();
+        final Message decoded = this.reader.readSTUNMessage(encoded);
+        assertEquals(this.token, decoded.getAttribute(Token.class).getToken());
+        assertFalse(decoded.hasAttribute(ErrorCode.class));
+        assertTrue(decoded.hasAttribute(Username.class));
+        assertEquals(1, decoded.getAttributes(XorMappedAddress.class).size());
+        assertEquals(this.message.getLength(), decoded.getLength());
+        assertArrayEquals(encoded, decoded.toByteArray());
+        assertEquals(3, decoded.getAttributes().size());
+        assertTrue(decoded.getAttributes().get(0) instanceof Username);
+    }
+
+    @Test
+    public void testAddAttributeToDecodedMessage() throws IOException {
+        final Message decoded = this.reader.readSTUNMessage(this.message.toByteArray());
+        final Token other = new Token(UUID.randomUUID());
+        decoded.addAttribute(other);
+        assertEquals(4, decoded.getAttributes().size());
+        assertEquals(this.token, decoded.getAttribute(Token.class).getToken());
+        assertEquals(2, decoded.getAttributes(Token.class).size());
+    }
+
+    @Test
+    public void testShortAttributeDoesNotReadFollowingAttribute() throws IOException {
+        // a token of 4 instead of 16 bytes, followed by the username
+        final ByteBuffer attributes = ByteBuffer.allocate(16);
+        attributes.putShort((short) STUNAttributeType.TOKEN.encode()).putShort((short) 4).putInt(0);
+        attributes.putShort((short) STUNAttributeType.USERNAME.encode()).putShort((short) 4);
+        attributes.put(USERNAME.getBytes("UTF-8")); //$NON-NLS-1$
+        final Message decoded = this.reader.readSTUNMessage(this.withAttributes(attributes.array()));
+        assertEquals(USERNAME, decoded.getAttribute(Username.class).getUsernameAsString());
+        this.assertMalformed(decoded, Token.class);
+    }
+
+    @Test
+    public void testShortAttributeAtEndOfBuffer() throws IOException {
+        // a XOR-MAPPED-ADDRESS with family and port, but without address
+        final ByteBuffer attributes = ByteBuffer.allocate(8);
+        attributes.putShort((short) STUNAttributeType.XOR_MAPPED_ADDRESS.encode()).putShort((short) 4);
+        attributes.put((byte) 0).put((byte) 1).putShort((short) 4711);
+        final Message decoded = this.reader.readSTUNMessage(this.withAttributes(attributes.array()));
+        this.assertMalformed(decoded, XorMappedAddress.class);
+    }
+
+    private byte[] withAttributes(final byte[] attributes) {
+        final byte[] header = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.CONNECTION_REQUEST).toByteArray();
+        final ByteBuffer encoded = ByteBuffer.allocate(header.length + attributes.length);
+        encoded.put(header).put(attributes);
+        encoded.putShort(2, (short) attributes.length);
+        return encoded.array();
+    }
+
+    private void assertMalformed(final Message decoded, final Class<? extends Attribute> attributeClass) {
+        try {
+            decoded.getAttribute(attributeClass);
+            fail("Malformed attribute was decoded"); //$NON-NLS-1$
+        } catch (final IllegalStateException e) {
+            assertTrue(e.getCause() instanceof MessageFormatException);
+        }
+    }
+
+    private void assertDecodedMessage(final Message decoded) throws IOException {
+        assertEquals(this.message.getMessageClass(), decoded.getMessageClass());
+        assertEquals(this.message.getMessageMethod(), decoded.getMessageMethod());
+        assertEquals(this.message.getLength(), decoded.getLength());
+        assertArrayEquals(this.message.getTransactionId(), decoded.getTransactionId());
+        assertEquals(USERNAME, decoded.getAttribute(Username.class).getUsernameAsString());
+        assertEquals(this.endpoint, decoded.getAttribute(XorMappedAddress.class).getEndpoint());
+        assertEquals(this.token, decoded.getAttribute(Token.class).getToken());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2012 Alexander Diener,
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fhkn.in.uce.stun.message;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhkn.in.uce.stun.attribute.Token;
+import de.fhkn.in.uce.stun.attribute.Username;
+import de.fhkn.in.uce.stun.header.STUNMessageClass;
+import de.fhkn.in.uce.stun.header.STUNMessageMethod;
+import de.fhkn.in.uce.stun.util.MessageFormatException;
+
+public final class TestStunFrameDecoder {
+    private final UUID token = UUID.randomUUID();
+    private byte[] encoded;
+    private StunFrameDecoder decoder;
+
+    @Before
+    public void setUp() throws IOException {
+        final Message message = MessageStaticFactory.newSTUNMessageInstance(STUNMessageClass.REQUEST,
+                STUNMessageMethod.KEEP_ALIVE);
+        message.addAttribute(new Username("user")); //$NON-NLS-1$
+        message.addAttribute(new Token(this.token));
+        this.encoded = message.toByteArray();
+        this.decoder = new StunFrameDecoder(MessageReader.createMessageReader());
+    }
+
+    @Test
+    public void testDecodeByteByByte() throws IOException {
+        for (int i = 0; i < this.encoded.length - 1; i++) {
+            assertNull(this.decoder.decode(ByteBuffer.wrap(this.encoded, i, 1)));
+            assertTrue(this.decoder.hasPartialMessage());
+        }
+        final Message message = this.decoder.decode(ByteBuffer.wrap(this.encoded, this.encoded.length - 1, 1));
+        assertNotNull(message);
+        assertEquals(this.token, message.getAttribute(Token.class).getToken());
+        assertFalse(this.decoder.hasPartialMessage());
+    }
+
+    @Test
+    public void testDecodeConsecutiveMessages() throws IOException {
+        final ByteBuffer in = ByteBuffer.allocate(2 * this.encoded.length + 3);
+        in.put(this.encoded).put(this.encoded).put(this.encoded, 0, 3);
+        in.flip();
+        assertArrayEquals(this.encoded, this.decoder.decode(in).toByteArray());
+        assertArrayEquals(this.encoded, this.decoder.decode(in).toByteArray());
+        assertNull(this.decoder.decode(in));
+        assertEquals(0, in.remaining());
+        assertTrue(this.decoder.hasPartialMessage());
+    }
+
+    @Test
+    public void testReadFromChannel() throws IOException {
+        final byte[] twice = new byte[2 * this.encoded.length];
+        System.arraycopy(this.encoded, 0, twice, 0, this.encoded.length);
+        System.arraycopy(this.encoded, 0, twice, this.encoded.length, this.encoded.length);
+        final ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(twice));
+        assertArrayEquals(this.encoded, this.decoder.read(channel).toByteArray());
+        assertArrayEquals(this.encoded, this.decoder.read(channel).toByteArray());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testReadTruncatedMessageFromChannel() throws IOException {
+        final ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(this.encoded, 0,
+                this.encoded.length - 1));
+        this.decoder.read(channel);
+    }
+
+    @Test(expected = MessageFormatException.class)
+    public void testMessageExceedsMaximumLength() throws IOException {
+        final StunFrameDecoder limited = new StunFrameDecoder(MessageReader.createMessageReader(),
+                this.encoded.length - 1);
+        limited.decode(ByteBuffer.wrap(this.encoded));
+    }
+
+    @Test
+    public void testWrongMagicCookie() throws IOException {
+        final byte[] corrupted = this.encoded.clone();
+        corrupted[4] = 0;
+        try {
+            this.decoder.decode(ByteBuffer.wrap(corrupted));
+        } catch (final MessageFormatException e) {
+            assertFalse(this.decoder.hasPartialMessage());
+            return;
+        }
+        throw new AssertionError("Expected MessageFormatException"); //$NON-NLS-1$
+    }
+}